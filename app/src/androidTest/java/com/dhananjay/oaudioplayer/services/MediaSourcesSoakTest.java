@@ -0,0 +1,81 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.dhananjay.oaudioplayer.R;
+import com.dhananjay.oaudioplayer.metrics.DescriptorGauge;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.source.BlockCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Skips through a queue the way the service does, pointing a player at the next source and
+ * resetting it, and checks that the open descriptors of the process don't grow with the skips
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaSourcesSoakTest {
+    private static final String TAG = MediaSourcesSoakTest.class.getSimpleName();
+    private static final int SKIP_COUNT = 10000;
+    // Descriptors other threads of the process may open meanwhile
+    private static final int SLACK = 16;
+
+    @Test
+    public void skipping_keepsDescriptorsFlat() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        File copy = new File(context.getCacheDir(), "soak.opus");
+        try (InputStream in = context.getResources().openRawResource(R.raw.my_file);
+             OutputStream out = new FileOutputStream(copy)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+        // raw resources are read from the mapped package, files through a descriptor
+        MediaItem[] items = {
+                new MediaItem("Raw", "my_file", null),
+                new MediaItem("File", copy.getPath(), null)};
+        MediaSources sources = new MediaSources(context,
+                new ResourceResolver(context.getResources(), context.getPackageName()),
+                new BlockCache(new File(context.getCacheDir(), "soak-streams"), 64 * 1024, 1024 * 1024),
+                new File(context.getPackageCodePath()));
+
+        MediaPlayer player = new MediaPlayer();
+        try {
+            // warms up the mapping and the player
+            sources.setDataSource(player, items[0]);
+            player.reset();
+            int baseline = DescriptorGauge.getOpenCount();
+            int max = baseline;
+            long start = System.nanoTime();
+            for (int i = 0; i < SKIP_COUNT; i++) {
+                sources.setDataSource(player, items[i % items.length]);
+                player.reset();
+                if (i % 500 == 0) max = Math.max(max, DescriptorGauge.getOpenCount());
+            }
+            long nanos = System.nanoTime() - start;
+            int end = DescriptorGauge.getOpenCount();
+
+            Log.i(TAG, SKIP_COUNT + " skips in " + nanos / 1000000 + " ms, descriptors " + baseline
+                    + " at start, " + max + " at most, " + end + " at end");
+            assertTrue("descriptors grew from " + baseline + " to " + end, end <= baseline + SLACK);
+            assertTrue("descriptors peaked at " + max, max <= baseline + SLACK);
+        } finally {
+            player.release();
+            copy.delete();
+        }
+    }
+}
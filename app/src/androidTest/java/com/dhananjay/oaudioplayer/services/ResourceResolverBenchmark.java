@@ -0,0 +1,71 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares resolving resource ids through {@link Resources#getIdentifier(String, String, String)}
+ * on every use against the cold and warm paths of {@link ResourceResolver}
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResourceResolverBenchmark {
+    private static final String TAG = ResourceResolverBenchmark.class.getSimpleName();
+    private static final int ITEM_COUNT = 5000;
+
+    private static ArrayList<MediaItem> createItems() {
+        String[] images = {"ic_music", "ic_music_error", "ic_close"};
+        ArrayList<MediaItem> items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(new MediaItem("Track " + i, "my_file", images[i % images.length]));
+        }
+        return items;
+    }
+
+    @Test
+    public void resolve_coldAndWarm() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Resources resources = context.getResources();
+        String packageName = context.getPackageName();
+        ArrayList<MediaItem> items = createItems();
+
+        long start = System.nanoTime();
+        for (MediaItem item : items) {
+            resources.getIdentifier(item.getLocation(), "raw", packageName);
+            resources.getIdentifier(item.getImage(), "drawable", packageName);
+        }
+        long uncached = System.nanoTime() - start;
+
+        ResourceResolver resolver = new ResourceResolver(resources, packageName);
+        start = System.nanoTime();
+        resolver.resolveAll(items);
+        long cold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (MediaItem item : items) {
+            resolver.getRawId(item);
+            resolver.getDrawableId(item);
+        }
+        long warm = System.nanoTime() - start;
+
+        Log.i(TAG, "getIdentifier: " + uncached / ITEM_COUNT + " ns/item, cold: "
+                + cold / ITEM_COUNT + " ns/item, warm: " + warm / ITEM_COUNT + " ns/item");
+
+        // one raw name and three drawable names
+        assertEquals(4, resolver.getLookupCount());
+        assertTrue(items.get(0).getLocationResId() != 0);
+        assertTrue(warm < uncached);
+    }
+}
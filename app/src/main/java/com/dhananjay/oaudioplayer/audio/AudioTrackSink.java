@@ -0,0 +1,122 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.SystemClock;
+
+/**
+ * {@link PcmSink} writing to a streaming {@link AudioTrack}
+ *
+ * @author Dhananjay Kumar
+ */
+public class AudioTrackSink implements PcmSink {
+    private static final long DRAIN_POLL_MS = 5;
+    // Slack on top of the buffered duration before draining gives up
+    private static final long DRAIN_SLACK_MS = 1000;
+
+    private final AudioTrack mTrack;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBufferBytes;
+
+    private volatile long mWrittenFrames;
+    private volatile long mHeadBase;
+
+    /**
+     * @param sampleRate  sample rate in Hz
+     * @param channels    1 or 2
+     * @param bufferBytes requested size of the track buffer, raised to the device minimum
+     */
+    public AudioTrackSink(int sampleRate, int channels, int bufferBytes) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        int channelMask = channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBytes = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        mBufferBytes = Math.max(minBytes, bufferBytes);
+        mTrack = new AudioTrack(
+                new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build(),
+                new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(channelMask)
+                        .build(),
+                mBufferBytes, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        if (mTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+            mTrack.release();
+            throw new IllegalStateException("AudioTrack not initialized");
+        }
+    }
+
+    @Override
+    public void write(short[] source, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            int count = mTrack.write(source, offset + done, length - done);
+            // negative on errors, 0 once the track was paused or stopped
+            if (count <= 0) break;
+            done += count;
+        }
+        mWrittenFrames += done / mChannels;
+    }
+
+    @Override
+    public void play() {
+        mTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        mTrack.pause();
+    }
+
+    @Override
+    public void flush() {
+        mTrack.flush();
+        mWrittenFrames = 0;
+        // Some releases reset the head on flush, others don't
+        mHeadBase = getHead();
+    }
+
+    @Override
+    public void drain() {
+        // Stopping a streaming track plays out what was written
+        mTrack.stop();
+        long deadline = SystemClock.uptimeMillis()
+                + (mWrittenFrames - getPlayedFrames()) * 1000 / mSampleRate + DRAIN_SLACK_MS;
+        while (getPlayedFrames() < mWrittenFrames && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(DRAIN_POLL_MS);
+        }
+    }
+
+    @Override
+    public long getPlayedFrames() {
+        return Math.max(0, getHead() - mHeadBase);
+    }
+
+    private long getHead() {
+        // the head is an unsigned 32 bit frame counter
+        return mTrack.getPlaybackHeadPosition() & 0xffffffffL;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mTrack.setVolume(volume);
+    }
+
+    /**
+     * @return size of the track buffer, at least the device minimum
+     */
+    public int getBufferBytes() {
+        return mBufferBytes;
+    }
+
+    @Override
+    public void release() {
+        mTrack.release();
+    }
+}
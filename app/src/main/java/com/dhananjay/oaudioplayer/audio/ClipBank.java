@@ -0,0 +1,106 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decoded sound clips kept as interleaved 16-bit PCM in direct buffers, outside the Java heap, with
+ * their total size capped by a memory budget. Clips are only ever added, so an id stays valid for
+ * the lifetime of the bank.
+ * <p>
+ * Clips may be added from any thread and read from any thread which learned their id afterwards.
+ *
+ * @author Dhananjay Kumar
+ */
+public class ClipBank {
+    private final int mSampleRate;
+    private final long mBudgetBytes;
+    private final ShortBuffer[] mSamples;
+    private final int[] mChannels;
+
+    private long mUsedBytes;
+    // Written after the slot, so a reader seeing an id below it sees the complete clip
+    private volatile int mCount;
+
+    /**
+     * @param sampleRate  sample rate of all clips in Hz
+     * @param maxClips    number of clips the bank can hold
+     * @param budgetBytes total size of the decoded clips
+     */
+    public ClipBank(int sampleRate, int maxClips, long budgetBytes) {
+        mSampleRate = sampleRate;
+        mBudgetBytes = budgetBytes;
+        mSamples = new ShortBuffer[maxClips];
+        mChannels = new int[maxClips];
+    }
+
+    /**
+     * Copies a decoded clip into the bank
+     *
+     * @param samples  interleaved samples
+     * @param length   number of samples, a multiple of channels
+     * @param channels 1 or 2
+     * @return id of the clip, or -1 if it doesn't fit the remaining budget or all slots are taken
+     */
+    public synchronized int add(short[] samples, int length, int channels) {
+        if (channels != 1 && channels != 2) throw new IllegalArgumentException("channels: " + channels);
+        if (length % channels != 0) throw new IllegalArgumentException("length: " + length);
+        long bytes = length * 2L;
+        if (mCount == mSamples.length || mUsedBytes + bytes > mBudgetBytes) return -1;
+
+        ShortBuffer buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(samples, 0, length);
+        int id = mCount;
+        mSamples[id] = buffer;
+        mChannels[id] = channels;
+        mUsedBytes += bytes;
+        mCount = id + 1;
+        return id;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * @return number of clips added so far, ids run from 0 below it
+     */
+    public int getClipCount() {
+        return mCount;
+    }
+
+    /**
+     * @return bytes taken by the clips added so far
+     */
+    public synchronized long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    /**
+     * @return bytes still available for clips
+     */
+    public synchronized long getRemainingBytes() {
+        return mBudgetBytes - mUsedBytes;
+    }
+
+    /**
+     * @param id clip id
+     * @return samples of the clip, read with absolute gets only as the buffer is shared
+     */
+    ShortBuffer getSamples(int id) {
+        return mSamples[id];
+    }
+
+    int getChannels(int id) {
+        return mChannels[id];
+    }
+
+    /**
+     * @param id clip id
+     * @return length of the clip in frames
+     */
+    int getFrameCount(int id) {
+        return mSamples[id].capacity() / mChannels[id];
+    }
+}
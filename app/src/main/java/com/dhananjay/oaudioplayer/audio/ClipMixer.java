@@ -0,0 +1,233 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Plays clips of a {@link ClipBank} on a fixed number of voices, mixed into interleaved stereo
+ * 16-bit PCM. A trigger beyond the number of voices takes over the voice which started first.
+ * <p>
+ * Triggers may come from any thread and are picked up at the start of the next mix, which runs on
+ * the output thread. Both only work on arrays allocated up front, neither allocates.
+ *
+ * @author Dhananjay Kumar
+ */
+public class ClipMixer {
+    public static final int OUTPUT_CHANNELS = 2;
+
+    public interface Listener {
+        /**
+         * A voice started, called on the output thread
+         *
+         * @param latencyNanos time from the trigger to the first frame of the clip being heard
+         */
+        void onVoiceStarted(long latencyNanos);
+    }
+
+    private final ClipBank mBank;
+    private final Listener mListener;
+    private final float[] mMix;
+
+    // Triggers not picked up yet, guarded by mPendingLock
+    private final Object mPendingLock = new Object();
+    private final int[] mPendingClips;
+    private final float[] mPendingVolumes;
+    private final long[] mPendingNanos;
+    private int mPendingCount;
+
+    // Copy of the pending triggers taken by the output thread
+    private final int[] mStartClips;
+    private final float[] mStartVolumes;
+    private final long[] mStartNanos;
+
+    // Voice state, output thread only. A clip of -1 marks a free voice.
+    private final int[] mVoiceClips;
+    private final int[] mVoiceFrames;
+    private final float[] mVoiceVolumes;
+    private final long[] mVoiceSerials;
+    private long mNextSerial;
+
+    private volatile int mActiveCount;
+    private volatile int mStolenCount;
+    private volatile int mDroppedCount;
+
+    /**
+     * @param bank      clips to play, at the output sample rate
+     * @param voices    number of clips playing at once
+     * @param maxFrames largest number of frames mixed at once
+     * @param listener  notified about started voices
+     */
+    public ClipMixer(ClipBank bank, int voices, int maxFrames, Listener listener) {
+        mBank = bank;
+        mListener = listener;
+        mMix = new float[maxFrames * OUTPUT_CHANNELS];
+
+        // a burst of more triggers than voices could only steal its own voices
+        mPendingClips = new int[voices];
+        mPendingVolumes = new float[voices];
+        mPendingNanos = new long[voices];
+        mStartClips = new int[voices];
+        mStartVolumes = new float[voices];
+        mStartNanos = new long[voices];
+
+        mVoiceClips = new int[voices];
+        mVoiceFrames = new int[voices];
+        mVoiceVolumes = new float[voices];
+        mVoiceSerials = new long[voices];
+        for (int i = 0; i < voices; i++) {
+            mVoiceClips[i] = -1;
+        }
+    }
+
+    /**
+     * Queues a clip to start with the next mix
+     *
+     * @param clip   id from {@link ClipBank#add(short[], int, int)}
+     * @param volume gain applied to the clip, 1 for unchanged
+     * @param nanos  time of the trigger from {@link System#nanoTime()}
+     * @return false if as many triggers as there are voices are already waiting
+     */
+    public boolean trigger(int clip, float volume, long nanos) {
+        if (clip < 0 || clip >= mBank.getClipCount()) throw new IllegalArgumentException("clip: " + clip);
+        synchronized (mPendingLock) {
+            if (mPendingCount == mPendingClips.length) {
+                mDroppedCount++;
+                return false;
+            }
+            mPendingClips[mPendingCount] = clip;
+            mPendingVolumes[mPendingCount] = volume;
+            mPendingNanos[mPendingCount] = nanos;
+            mPendingCount++;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if no voice is playing and no trigger is waiting
+     */
+    public boolean isIdle() {
+        if (mActiveCount > 0) return false;
+        synchronized (mPendingLock) {
+            return mPendingCount == 0;
+        }
+    }
+
+    /**
+     * Starts the waiting triggers and mixes the next frames of all playing voices. Output thread
+     * only.
+     *
+     * @param target      array receiving interleaved stereo samples, silence if nothing plays
+     * @param frames      number of frames to mix
+     * @param outputNanos time the first of the frames will be heard, from {@link System#nanoTime()}
+     * @return number of voices still playing after these frames
+     */
+    public int mix(short[] target, int frames, long outputNanos) {
+        if (frames * OUTPUT_CHANNELS > mMix.length) throw new IllegalArgumentException("frames: " + frames);
+        startPending(outputNanos);
+
+        float[] mix = mMix;
+        int samples = frames * OUTPUT_CHANNELS;
+        for (int i = 0; i < samples; i++) {
+            mix[i] = 0;
+        }
+
+        int active = 0;
+        for (int v = 0; v < mVoiceClips.length; v++) {
+            int clip = mVoiceClips[v];
+            if (clip < 0) continue;
+            ShortBuffer source = mBank.getSamples(clip);
+            float volume = mVoiceVolumes[v];
+            int position = mVoiceFrames[v];
+            int count = Math.min(frames, mBank.getFrameCount(clip) - position);
+            if (mBank.getChannels(clip) == 1) {
+                for (int f = 0; f < count; f++) {
+                    float value = source.get(position + f) * volume;
+                    mix[2 * f] += value;
+                    mix[2 * f + 1] += value;
+                }
+            } else {
+                int offset = position * 2;
+                for (int i = 0; i < count * 2; i++) {
+                    mix[i] += source.get(offset + i) * volume;
+                }
+            }
+            position += count;
+            if (position < mBank.getFrameCount(clip)) {
+                mVoiceFrames[v] = position;
+                active++;
+            } else {
+                mVoiceClips[v] = -1;
+            }
+        }
+        mActiveCount = active;
+
+        for (int i = 0; i < samples; i++) {
+            float value = mix[i];
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+            target[i] = (short) value;
+        }
+        return active;
+    }
+
+    private void startPending(long outputNanos) {
+        int count;
+        synchronized (mPendingLock) {
+            count = mPendingCount;
+            System.arraycopy(mPendingClips, 0, mStartClips, 0, count);
+            System.arraycopy(mPendingVolumes, 0, mStartVolumes, 0, count);
+            System.arraycopy(mPendingNanos, 0, mStartNanos, 0, count);
+            mPendingCount = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int voice = findVoice();
+            mVoiceClips[voice] = mStartClips[i];
+            mVoiceFrames[voice] = 0;
+            mVoiceVolumes[voice] = mStartVolumes[i];
+            mVoiceSerials[voice] = mNextSerial++;
+            if (mListener != null) mListener.onVoiceStarted(outputNanos - mStartNanos[i]);
+        }
+    }
+
+    /**
+     * @return a free voice, or the one playing longest if all are taken
+     */
+    private int findVoice() {
+        int oldest = 0;
+        for (int v = 0; v < mVoiceClips.length; v++) {
+            if (mVoiceClips[v] < 0) return v;
+            if (mVoiceSerials[v] < mVoiceSerials[oldest]) oldest = v;
+        }
+        mStolenCount++;
+        return oldest;
+    }
+
+    /**
+     * @return number of voices taken over by a later trigger
+     */
+    public int getStolenCount() {
+        return mStolenCount;
+    }
+
+    /**
+     * @return number of triggers dropped because too many were waiting
+     */
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Stops all voices. Output thread only.
+     */
+    public void stopAll() {
+        synchronized (mPendingLock) {
+            mPendingCount = 0;
+        }
+        for (int v = 0; v < mVoiceClips.length; v++) {
+            mVoiceClips[v] = -1;
+        }
+        mActiveCount = 0;
+    }
+}
@@ -0,0 +1,89 @@
+package com.dhananjay.oaudioplayer.audio;
+
+/**
+ * Mixes two interleaved 16-bit PCM streams along equal-power curves, the outgoing one falling with
+ * the cosine and the incoming one rising with the sine of the fade position, each stream scaled by
+ * its own gain on top, e.g. its loudness normalization. The curve is taken
+ * from a precomputed table with linear interpolation and the sum is built in a float buffer
+ * allocated up front, so mixing does no trigonometry and allocates nothing.
+ *
+ * @author Dhananjay Kumar
+ */
+public class CrossfadeMixer {
+    // Segments of the gain table, fine enough that the interpolation error stays below 16-bit noise
+    static final int CURVE_STEPS = 1024;
+
+    // Gains of the incoming and the outgoing stream, one extra entry so the interpolation never
+    // needs a bounds check at the end of the fade
+    private static final float[] FADE_IN = new float[CURVE_STEPS + 2];
+    private static final float[] FADE_OUT = new float[CURVE_STEPS + 2];
+
+    static {
+        for (int i = 0; i <= CURVE_STEPS; i++) {
+            double angle = Math.PI / 2 * i / CURVE_STEPS;
+            FADE_IN[i] = (float) Math.sin(angle);
+            FADE_OUT[i] = (float) Math.cos(angle);
+        }
+        FADE_IN[CURVE_STEPS + 1] = 1;
+        FADE_OUT[CURVE_STEPS + 1] = 0;
+        // cos(pi/2) isn't exactly 0 in floating point
+        FADE_OUT[CURVE_STEPS] = 0;
+    }
+
+    private final float[] mMix;
+
+    /**
+     * @param maxSamples largest number of samples mixed at once
+     */
+    public CrossfadeMixer(int maxSamples) {
+        mMix = new float[maxSamples];
+    }
+
+    /**
+     * Mixes a stretch of the fade
+     *
+     * @param outgoing samples of the stream fading out
+     * @param incoming samples of the stream fading in
+     * @param target   array receiving the mix, may be one of the inputs
+     * @param samples  number of interleaved samples to mix, a multiple of channels
+     * @param channels number of interleaved channels
+     * @param frame    position of the first frame within the fade
+     * @param length   length of the whole fade in frames
+     * @param outGain  gain of the outgoing stream
+     * @param inGain   gain of the incoming stream
+     */
+    public void mix(short[] outgoing, short[] incoming, short[] target, int samples, int channels,
+                    long frame, long length, float outGain, float inGain) {
+        if (samples > mMix.length) throw new IllegalArgumentException("samples: " + samples);
+        float[] mix = mMix;
+        float scale = (float) CURVE_STEPS / length;
+        // Whole frame numbers are exact in a float up to 2^24, far beyond the longest fade, so the
+        // gains don't depend on how the fade is split into calls
+        float position = frame;
+
+        for (int i = 0; i < samples; i += channels, position++) {
+            float phase = position * scale;
+            int index = (int) phase;
+            float fraction = phase - index;
+            if (index >= CURVE_STEPS) {
+                index = CURVE_STEPS;
+                fraction = 0;
+            }
+            float gainIn = (FADE_IN[index] + (FADE_IN[index + 1] - FADE_IN[index]) * fraction) * inGain;
+            float gainOut = (FADE_OUT[index] + (FADE_OUT[index + 1] - FADE_OUT[index]) * fraction) * outGain;
+            for (int c = i; c < i + channels; c++) {
+                mix[c] = outgoing[c] * gainOut + incoming[c] * gainIn;
+            }
+        }
+
+        for (int i = 0; i < samples; i++) {
+            float value = mix[i];
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+            target[i] = (short) value;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.dhananjay.oaudioplayer.audio;
+
+/**
+ * Processes interleaved 16-bit PCM with a preamp, the biquad equalizer bands and a look-ahead peak
+ * limiter of {@link DspSettings}, in place on a float block allocated up front.
+ * <p>
+ * New settings are turned into coefficients on the calling thread and published as one immutable
+ * object, which the output thread picks up at the start of its next block, so it never waits for
+ * a change and never sees half of one. Filter and limiter state belong to the output thread.
+ * <p>
+ * The conversion with the preamp and the conversion back are plain counted loops over the block
+ * the JIT can vectorize. The bands are recursive in time, so each runs over the whole block per
+ * channel with its state in locals instead, and the limiter computes the gains of the block before
+ * applying them in a pass of its own.
+ * <p>
+ * The limiter delays the stream by {@link #LOOKAHEAD_MS}, so its gain is down before a peak
+ * arrives: the lowest gain needed over the look-ahead window is held and then averaged over the
+ * window, which fades it in ahead of the peak without ever letting the peak through.
+ *
+ * @author Dhananjay Kumar
+ */
+public class DspChain {
+    /**
+     * Delay of the limiter
+     */
+    public static final int LOOKAHEAD_MS = 5;
+    // Filter state this close to 0 is flushed, decaying into denormals would slow down the loops
+    private static final float DENORMAL = 1e-25f;
+
+    /**
+     * Everything the output thread needs from a {@link DspSettings}, derived once per change
+     */
+    private static final class Coefficients {
+        final int bands;
+        // Normalized biquad coefficients per band, a0 is 1
+        final float[] b0;
+        final float[] b1;
+        final float[] b2;
+        final float[] a1;
+        final float[] a2;
+        // Linear preamp including the conversion from 16-bit to full scale
+        final float preamp;
+        final float threshold;
+        // Share of the remaining gain reduction the limiter recovers per frame
+        final float release;
+
+        Coefficients(int bands, float preamp, float threshold, float release) {
+            this.bands = bands;
+            b0 = new float[bands];
+            b1 = new float[bands];
+            b2 = new float[bands];
+            a1 = new float[bands];
+            a2 = new float[bands];
+            this.preamp = preamp;
+            this.threshold = threshold;
+            this.release = release;
+        }
+    }
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final float[] mBlock;
+    private volatile Coefficients mCoefficients;
+
+    // Output thread only: the coefficients the state belongs to, null while bypassed
+    private Coefficients mApplied;
+    // z1 and z2 of the transposed direct form II, per band and channel
+    private final float[] mFilterState;
+
+    // Limiter state, output thread only
+    private final int mLookahead;
+    private final float[] mDelay;
+    private int mDelayFrame;
+    // Gain needed by each frame of the window, a monotonic queue holding its minimum at the head
+    private final float[] mMinGains;
+    private final long[] mMinFrames;
+    private int mMinHead;
+    private int mMinCount;
+    private long mFrame;
+    // Held gain after release, and the last mLookahead of them for the average
+    private float mHeldGain;
+    private final float[] mHeldGains;
+    private int mHeldIndex;
+    private double mHeldSum;
+    // Gain of each frame of the block, applied in a separate pass
+    private final float[] mFrameGains;
+
+    /**
+     * @param sampleRate frames per second of the stream
+     * @param channels   number of interleaved channels
+     * @param maxSamples largest number of samples processed at once
+     */
+    public DspChain(int sampleRate, int channels, int maxSamples) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mBlock = new float[maxSamples];
+        mFilterState = new float[DspSettings.MAX_BANDS * channels * 2];
+        mLookahead = Math.max(1, sampleRate * LOOKAHEAD_MS / 1000);
+        mDelay = new float[mLookahead * channels];
+        // The window covers the delayed frame and every frame after it
+        mMinGains = new float[mLookahead + 1];
+        mMinFrames = new long[mLookahead + 1];
+        mHeldGains = new float[mLookahead];
+        mFrameGains = new float[maxSamples / channels + 1];
+        resetLimiter();
+    }
+
+    /**
+     * Publishes new settings, the output thread switches to them with its next block. Filter state
+     * is kept while the number of bands stays the same, so moving a band doesn't click.
+     *
+     * @param settings settings to apply, null to pass the samples through untouched
+     */
+    public void setSettings(DspSettings settings) {
+        if (settings == null) {
+            mCoefficients = null;
+            return;
+        }
+        int bands = settings.getBandCount();
+        Coefficients coefficients = new Coefficients(bands,
+                (float) (decibelsToGain(settings.preampDb) / 32768),
+                (float) decibelsToGain(settings.limiterThresholdDb),
+                (float) (1 - Math.exp(-1000 / (settings.limiterReleaseMs * mSampleRate))));
+        for (int band = 0; band < bands; band++) {
+            design(settings.getBand(band), coefficients, band);
+        }
+        mCoefficients = coefficients;
+    }
+
+    private static double decibelsToGain(double db) {
+        return Math.pow(10, db / 20);
+    }
+
+    /**
+     * Derives the coefficients of a band from the formulas of the Audio EQ Cookbook
+     */
+    private void design(DspSettings.Band band, Coefficients target, int index) {
+        double frequency = Math.min(band.frequencyHz, mSampleRate * 0.49);
+        double a = Math.pow(10, band.gainDb / 40);
+        double w0 = 2 * Math.PI * frequency / mSampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * band.q);
+        double root = 2 * Math.sqrt(a) * alpha;
+        double b0, b1, b2, a0, a1, a2;
+        switch (band.type) {
+            case DspSettings.Band.TYPE_LOW_SHELF:
+                b0 = a * ((a + 1) - (a - 1) * cos + root);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - root);
+                a0 = (a + 1) + (a - 1) * cos + root;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - root;
+                break;
+            case DspSettings.Band.TYPE_HIGH_SHELF:
+                b0 = a * ((a + 1) + (a - 1) * cos + root);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - root);
+                a0 = (a + 1) - (a - 1) * cos + root;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - root;
+                break;
+            default:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+        }
+        target.b0[index] = (float) (b0 / a0);
+        target.b1[index] = (float) (b1 / a0);
+        target.b2[index] = (float) (b2 / a0);
+        target.a1[index] = (float) (a1 / a0);
+        target.a2[index] = (float) (a2 / a0);
+    }
+
+    /**
+     * Processes samples in place, called on the output thread
+     *
+     * @param samples interleaved samples
+     * @param offset  index of the first sample
+     * @param length  number of samples, a multiple of the channel count and at most the size
+     *                given to the constructor
+     */
+    public void process(short[] samples, int offset, int length) {
+        Coefficients coefficients = mCoefficients;
+        if (coefficients == null) {
+            mApplied = null;
+            return;
+        }
+        if (length > mBlock.length) throw new IllegalArgumentException("length: " + length);
+        if (coefficients != mApplied) {
+            // the delay line of a bypassed chain is stale
+            if (mApplied == null) resetLimiter();
+            if (mApplied == null || mApplied.bands != coefficients.bands) clearFilters();
+            mApplied = coefficients;
+        }
+
+        float[] block = mBlock;
+        float preamp = coefficients.preamp;
+        for (int i = 0; i < length; i++) {
+            block[i] = samples[offset + i] * preamp;
+        }
+        for (int band = 0; band < coefficients.bands; band++) {
+            filter(coefficients, band, block, length);
+        }
+        limit(coefficients, block, length);
+        for (int i = 0; i < length; i++) {
+            float value = block[i] * 32768;
+            value = Math.max(-32768f, Math.min(32767f, value));
+            samples[offset + i] = (short) value;
+        }
+    }
+
+    /**
+     * Runs one band over the block, channel by channel
+     */
+    private void filter(Coefficients coefficients, int band, float[] block, int length) {
+        float b0 = coefficients.b0[band];
+        float b1 = coefficients.b1[band];
+        float b2 = coefficients.b2[band];
+        float a1 = coefficients.a1[band];
+        float a2 = coefficients.a2[band];
+        int channels = mChannels;
+        for (int channel = 0; channel < channels; channel++) {
+            int state = (band * channels + channel) * 2;
+            float z1 = mFilterState[state];
+            float z2 = mFilterState[state + 1];
+            for (int i = channel; i < length; i += channels) {
+                float x = block[i];
+                float y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                block[i] = y;
+            }
+            mFilterState[state] = Math.abs(z1) < DENORMAL ? 0 : z1;
+            mFilterState[state + 1] = Math.abs(z2) < DENORMAL ? 0 : z2;
+        }
+    }
+
+    /**
+     * Delays the block by the look-ahead and applies the gain keeping it below the threshold
+     */
+    private void limit(Coefficients coefficients, float[] block, int length) {
+        int channels = mChannels;
+        float threshold = coefficients.threshold;
+        float release = coefficients.release;
+        int window = mMinGains.length;
+        float[] gains = mFrameGains;
+
+        for (int i = 0, frame = 0; i < length; i += channels, frame++) {
+            // Gain the incoming frame needs, and the lowest one still in the window
+            float peak = 0;
+            for (int c = i; c < i + channels; c++) {
+                peak = Math.max(peak, Math.abs(block[c]));
+            }
+            float needed = peak > threshold ? threshold / peak : 1;
+            if (mMinCount > 0 && mMinFrames[mMinHead] <= mFrame - window) {
+                mMinHead = (mMinHead + 1) % window;
+                mMinCount--;
+            }
+            while (mMinCount > 0 && mMinGains[(mMinHead + mMinCount - 1) % window] >= needed) {
+                mMinCount--;
+            }
+            int tail = (mMinHead + mMinCount) % window;
+            mMinGains[tail] = needed;
+            mMinFrames[tail] = mFrame;
+            mMinCount++;
+            float lowest = mMinGains[mMinHead];
+            mFrame++;
+
+            // Drops to the lowest gain at once and recovers slowly, then the average over the
+            // look-ahead turns the drop into a fade
+            float held = mHeldGain + (1 - mHeldGain) * release;
+            if (held > lowest) held = lowest;
+            mHeldGain = held;
+            mHeldSum += held - mHeldGains[mHeldIndex];
+            mHeldGains[mHeldIndex] = held;
+            if (++mHeldIndex == mLookahead) mHeldIndex = 0;
+            gains[frame] = (float) (mHeldSum / mLookahead);
+
+            // Swaps the frame with the one written a look-ahead ago
+            int delay = mDelayFrame * channels;
+            for (int c = 0; c < channels; c++) {
+                float delayed = mDelay[delay + c];
+                mDelay[delay + c] = block[i + c];
+                block[i + c] = delayed;
+            }
+            if (++mDelayFrame == mLookahead) mDelayFrame = 0;
+        }
+
+        if (channels == 2) {
+            for (int i = 0; i < length; i += 2) {
+                float gain = gains[i >> 1];
+                block[i] *= gain;
+                block[i + 1] *= gain;
+            }
+        } else {
+            for (int i = 0, frame = 0; i < length; i += channels, frame++) {
+                float gain = gains[frame];
+                for (int c = i; c < i + channels; c++) {
+                    block[c] *= gain;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops filter and limiter state, e.g. after a seek. Must not run concurrently with
+     * {@link #process(short[], int, int)}.
+     */
+    public void reset() {
+        clearFilters();
+        resetLimiter();
+    }
+
+    private void clearFilters() {
+        for (int i = 0; i < mFilterState.length; i++) {
+            mFilterState[i] = 0;
+        }
+    }
+
+    private void resetLimiter() {
+        for (int i = 0; i < mDelay.length; i++) {
+            mDelay[i] = 0;
+        }
+        for (int i = 0; i < mHeldGains.length; i++) {
+            mHeldGains[i] = 1;
+        }
+        mDelayFrame = 0;
+        mMinHead = 0;
+        mMinCount = 0;
+        mFrame = 0;
+        mHeldGain = 1;
+        mHeldIndex = 0;
+        mHeldSum = mLookahead;
+    }
+
+    /**
+     * @return frames the processed stream lags behind its input, 0 while bypassed
+     */
+    public int getLatencyFrames() {
+        return mCoefficients != null ? mLookahead : 0;
+    }
+}
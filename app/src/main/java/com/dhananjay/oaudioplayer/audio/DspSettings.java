@@ -0,0 +1,95 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * Parameters of a {@link DspChain}: the preamp, the equalizer bands and the limiter. Immutable, a
+ * change is made by passing new settings to the chain, which derives its coefficients from them
+ * once.
+ *
+ * @author Dhananjay Kumar
+ */
+public final class DspSettings {
+    /**
+     * Most equalizer bands a chain accepts
+     */
+    public static final int MAX_BANDS = 10;
+
+    /**
+     * One biquad section of the equalizer
+     */
+    public static final class Band {
+        /**
+         * Bell around the frequency, q sets its width
+         */
+        public static final int TYPE_PEAK = 0;
+        /**
+         * Shelf below the frequency, q sets the slope
+         */
+        public static final int TYPE_LOW_SHELF = 1;
+        /**
+         * Shelf above the frequency, q sets the slope
+         */
+        public static final int TYPE_HIGH_SHELF = 2;
+
+        public final int type;
+        public final float frequencyHz;
+        public final float gainDb;
+        public final float q;
+
+        /**
+         * @param type        {@link #TYPE_PEAK}, {@link #TYPE_LOW_SHELF} or {@link #TYPE_HIGH_SHELF}
+         * @param frequencyHz center or corner frequency, limited to just below the Nyquist frequency
+         *                    of the stream
+         * @param gainDb      boost or cut, 0 leaves the band flat
+         * @param q           quality, e.g. 1.41 for an octave wide bell or 0.71 for a plain shelf
+         */
+        public Band(int type, float frequencyHz, float gainDb, float q) {
+            if (type < TYPE_PEAK || type > TYPE_HIGH_SHELF) throw new IllegalArgumentException("type: " + type);
+            if (!(frequencyHz > 0)) throw new IllegalArgumentException("frequencyHz: " + frequencyHz);
+            if (!(q > 0)) throw new IllegalArgumentException("q: " + q);
+            this.type = type;
+            this.frequencyHz = frequencyHz;
+            this.gainDb = gainDb;
+            this.q = q;
+        }
+    }
+
+    public final float preampDb;
+    private final Band[] mBands;
+    /**
+     * Highest output level, at most 0
+     */
+    public final float limiterThresholdDb;
+    /**
+     * Time the limiter takes to recover about two thirds of its gain reduction
+     */
+    public final float limiterReleaseMs;
+
+    /**
+     * @param preampDb           gain applied ahead of the equalizer, negative values make room for
+     *                           boosting bands
+     * @param bands              equalizer bands applied in order, up to {@link #MAX_BANDS}
+     * @param limiterThresholdDb highest output level, from -24 to 0
+     * @param limiterReleaseMs   recovery time of the limiter, e.g. 50
+     */
+    public DspSettings(float preampDb, Band[] bands, float limiterThresholdDb, float limiterReleaseMs) {
+        if (bands.length > MAX_BANDS) throw new IllegalArgumentException("bands: " + bands.length);
+        if (!(limiterThresholdDb >= -24 && limiterThresholdDb <= 0)) {
+            throw new IllegalArgumentException("limiterThresholdDb: " + limiterThresholdDb);
+        }
+        if (!(limiterReleaseMs > 0)) throw new IllegalArgumentException("limiterReleaseMs: " + limiterReleaseMs);
+        this.preampDb = preampDb;
+        mBands = Arrays.copyOf(bands, bands.length);
+        this.limiterThresholdDb = limiterThresholdDb;
+        this.limiterReleaseMs = limiterReleaseMs;
+    }
+
+    public int getBandCount() {
+        return mBands.length;
+    }
+
+    public Band getBand(int index) {
+        return mBands[index];
+    }
+}
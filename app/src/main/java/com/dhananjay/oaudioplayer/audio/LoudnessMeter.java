@@ -0,0 +1,165 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * Measures the integrated loudness of a stream of 16-bit PCM as defined by ITU-R BS.1770 and EBU
+ * R128: the samples are K-weighted, their power is taken over 400 ms blocks overlapping by 75 %,
+ * and blocks below -70 LUFS and then those more than 10 LU below the average of the rest are
+ * gated out.
+ *
+ * @author Dhananjay Kumar
+ */
+public class LoudnessMeter {
+    private static final double ABSOLUTE_GATE_LUFS = -70;
+    private static final double RELATIVE_GATE_LU = -10;
+    // Sub-blocks of 100 ms, a block spans four of them
+    private static final int SUB_BLOCKS = 4;
+
+    private final int mChannels;
+    private final double[] mWeights;
+    private final int mSubBlockFrames;
+
+    // Two biquads per channel, the pre-filter shelf followed by the RLB high-pass whose numerator
+    // is 1, -2, 1, both in transposed direct form II
+    private final double mB0, mB1, mB2, mA1, mA2;
+    private final double mHa1, mHa2;
+    private final double[] mState;
+
+    // Energy of the sub-block being summed and of the last ones completed
+    private double mEnergy;
+    private int mFrames;
+    private final double[] mRecent = new double[SUB_BLOCKS];
+    private long mSubBlockCount;
+
+    private double[] mBlocks = new double[256];
+    private int mBlockCount;
+    private long mFrameCount;
+
+    /**
+     * @param sampleRate sample rate of the stream in Hz
+     * @param channels   number of interleaved channels, 6 are taken as 5.1 with the LFE channel
+     *                   ignored and the surround channels weighted up
+     */
+    public LoudnessMeter(int sampleRate, int channels) {
+        mChannels = channels;
+        mWeights = new double[channels];
+        Arrays.fill(mWeights, 1);
+        if (channels == 6) {
+            mWeights[3] = 0;
+            mWeights[4] = 1.41;
+            mWeights[5] = 1.41;
+        }
+        mSubBlockFrames = Math.max(1, Math.round(sampleRate / 10f));
+        mState = new double[channels * 4];
+
+        // BS.1770 filters derived for any sample rate, matching the published 48 kHz coefficients
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, gain / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        mB0 = (vh + vb * k / q + k * k) / a0;
+        mB1 = 2 * (k * k - vh) / a0;
+        mB2 = (vh - vb * k / q + k * k) / a0;
+        mA1 = 2 * (k * k - 1) / a0;
+        mA2 = (1 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1 + k / q + k * k;
+        mHa1 = 2 * (k * k - 1) / a0;
+        mHa2 = (1 - k / q + k * k) / a0;
+    }
+
+    /**
+     * @param samples interleaved samples
+     * @param offset  index of the first sample
+     * @param length  number of samples, a multiple of the channel count
+     */
+    public void add(short[] samples, int offset, int length) {
+        int channels = mChannels;
+        double[] state = mState;
+        double energy = mEnergy;
+        int frames = mFrames;
+        for (int i = offset; i < offset + length; i += channels) {
+            for (int c = 0; c < channels; c++) {
+                double x = samples[i + c] / 32768.0;
+                int s = c * 4;
+                double y = mB0 * x + state[s];
+                state[s] = mB1 * x - mA1 * y + state[s + 1];
+                state[s + 1] = mB2 * x - mA2 * y;
+                double z = y + state[s + 2];
+                state[s + 2] = -2 * y - mHa1 * z + state[s + 3];
+                state[s + 3] = y - mHa2 * z;
+                energy += mWeights[c] * z * z;
+            }
+            if (++frames == mSubBlockFrames) {
+                completeSubBlock(energy);
+                energy = 0;
+                frames = 0;
+            }
+        }
+        mEnergy = energy;
+        mFrames = frames;
+        mFrameCount += length / channels;
+    }
+
+    private void completeSubBlock(double energy) {
+        mRecent[(int) (mSubBlockCount++ % SUB_BLOCKS)] = energy;
+        if (mSubBlockCount < SUB_BLOCKS) return;
+        double sum = 0;
+        for (double recent : mRecent) {
+            sum += recent;
+        }
+        if (mBlockCount == mBlocks.length) mBlocks = Arrays.copyOf(mBlocks, mBlockCount * 2);
+        mBlocks[mBlockCount++] = sum / (SUB_BLOCKS * mSubBlockFrames);
+    }
+
+    /**
+     * @return number of frames measured so far
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Gets the gated loudness of the complete blocks measured so far
+     *
+     * @return loudness in LUFS, negative infinity if no block is above the absolute gate
+     */
+    public double getIntegratedLoudness() {
+        double absolute = toEnergy(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlocks[i] > absolute) {
+                sum += mBlocks[i];
+                count++;
+            }
+        }
+        if (count == 0) return Double.NEGATIVE_INFINITY;
+
+        double relative = sum / count * Math.pow(10, RELATIVE_GATE_LU / 10);
+        sum = 0;
+        count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlocks[i] > absolute && mBlocks[i] > relative) {
+                sum += mBlocks[i];
+                count++;
+            }
+        }
+        return toLoudness(sum / count);
+    }
+
+    private static double toEnergy(double lufs) {
+        return Math.pow(10, (lufs + 0.691) / 10);
+    }
+
+    private static double toLoudness(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+}
@@ -0,0 +1,255 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link PcmDecoder} running {@link MediaExtractor} and {@link MediaCodec} on the first audio track
+ * of a file region or data source. Decoded buffers are handed out in pieces as the caller has room, so nothing is
+ * copied or allocated beyond what the codec does itself.
+ * <p>
+ * The sample rate and channel count are those of the codec output, read before the decoder is
+ * returned, as they differ from the track format for e.g. HE-AAC, where SBR doubles the rate and
+ * parametric stereo the channels. A later change of either fails decoding, the sink was set up for
+ * the first.
+ *
+ * @author Dhananjay Kumar
+ */
+public class MediaCodecDecoder implements PcmDecoder {
+    private static final long TIMEOUT_US = 10000;
+    // Dequeue attempts for the output format before keeping the track format
+    private static final int FORMAT_ATTEMPTS = 100;
+
+    private final MediaExtractor mExtractor;
+    private final MediaCodec mCodec;
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+    private int mSampleRate;
+    private int mChannels;
+    private final long mDurationUs;
+    private boolean mFormatKnown;
+
+    private boolean mInputDone;
+    private boolean mOutputDone;
+    // Output buffer being handed out, -1 if none
+    private int mOutputIndex = -1;
+    private ByteBuffer mOutput;
+    private int mOutputPosition;
+    private int mOutputLimit;
+    // Target of the last seek until output reaches it, -1 afterwards
+    private long mSkipUntilUs = -1;
+
+    private MediaCodecDecoder(MediaExtractor extractor, MediaCodec codec, MediaFormat format) {
+        mExtractor = extractor;
+        mCodec = codec;
+        mSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        mChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        mDurationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+    }
+
+    /**
+     * Creates a started decoder for the first audio track of a file region
+     *
+     * @param fd     descriptor of the file, may be closed once this returns
+     * @param offset start of the region
+     * @param length length of the region
+     * @return decoder at the start of the track
+     * @throws IOException if there is no decodable audio track
+     */
+    public static MediaCodecDecoder open(FileDescriptor fd, long offset, long length) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(fd, offset, length);
+            return open(extractor);
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a started decoder for the first audio track of a data source
+     *
+     * @param source source of the stream, closed when the decoder is released
+     * @return decoder at the start of the track
+     * @throws IOException if there is no decodable audio track
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    public static MediaCodecDecoder open(MediaDataSource source) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(source);
+            return open(extractor);
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e;
+        }
+    }
+
+    private static MediaCodecDecoder open(MediaExtractor extractor) throws IOException {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime == null || !mime.startsWith("audio/")) continue;
+
+            extractor.selectTrack(i);
+            MediaCodec codec = MediaCodec.createDecoderByType(mime);
+            try {
+                codec.configure(format, null, null, 0);
+                codec.start();
+                MediaCodecDecoder decoder = new MediaCodecDecoder(extractor, codec, format);
+                decoder.readOutputFormat();
+                return decoder;
+            } catch (IOException | RuntimeException e) {
+                codec.release();
+                throw e;
+            }
+        }
+        throw new IOException("No audio track");
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannels;
+    }
+
+    @Override
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    @Override
+    public int decode(short[] target, int offset, int length) throws IOException {
+        if (mOutputIndex < 0) {
+            if (mOutputDone) return -1;
+            nextOutput();
+            if (mOutputIndex < 0) return mOutputDone ? -1 : 0;
+        }
+
+        int count = Math.min(length, (mOutputLimit - mOutputPosition) / 2);
+        for (int i = 0; i < count; i++) {
+            target[offset + i] = mOutput.getShort(mOutputPosition + 2 * i);
+        }
+        mOutputPosition += 2 * count;
+        if (mOutputLimit - mOutputPosition < 2) releaseOutput();
+        return count;
+    }
+
+    /**
+     * Runs the codec until it reports its output format, keeping a first output buffer for decode
+     */
+    private void readOutputFormat() throws IOException {
+        for (int i = 0; i < FORMAT_ATTEMPTS && !mFormatKnown && mOutputIndex < 0 && !mOutputDone; i++) {
+            nextOutput();
+        }
+        mFormatKnown = true;
+    }
+
+    /**
+     * Takes the next output buffer to hand out, if the codec has one ready
+     *
+     * @throws IOException if the codec failed or changed its output format
+     */
+    private void nextOutput() throws IOException {
+        try {
+            queueInput();
+            int index = mCodec.dequeueOutputBuffer(mInfo, TIMEOUT_US);
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                setOutputFormat(mCodec.getOutputFormat());
+                return;
+            }
+            if (index < 0) return;
+            // the output format is known once a buffer arrives, with or without the change before it
+            if (!mFormatKnown) setOutputFormat(mCodec.getOutputFormat());
+            if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) mOutputDone = true;
+            if (mInfo.size == 0) {
+                mCodec.releaseOutputBuffer(index, false);
+                return;
+            }
+            mOutputIndex = index;
+            mOutput = mCodec.getOutputBuffer(index).order(ByteOrder.nativeOrder());
+            mOutputPosition = mInfo.offset;
+            mOutputLimit = mInfo.offset + mInfo.size;
+            if (mSkipUntilUs >= 0 && skipToSeekTarget()) releaseOutput();
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void setOutputFormat(MediaFormat format) throws IOException {
+        int rate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        if (mFormatKnown && (rate != mSampleRate || channels != mChannels)) {
+            throw new IOException("Output format changed from " + mSampleRate + " Hz, " + mChannels
+                    + " channels to " + rate + " Hz, " + channels + " channels");
+        }
+        mSampleRate = rate;
+        mChannels = channels;
+        mFormatKnown = true;
+    }
+
+    private void queueInput() {
+        if (mInputDone) return;
+        int index = mCodec.dequeueInputBuffer(0);
+        if (index < 0) return;
+
+        int size = mExtractor.readSampleData(mCodec.getInputBuffer(index), 0);
+        if (size < 0) {
+            mCodec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            mInputDone = true;
+        } else {
+            mCodec.queueInputBuffer(index, 0, size, mExtractor.getSampleTime(), 0);
+            mExtractor.advance();
+        }
+    }
+
+    /**
+     * Drops the output before the seek target, the extractor lands on the sync sample before it
+     *
+     * @return true if the whole output buffer precedes the target
+     */
+    private boolean skipToSeekTarget() {
+        long frames = (mSkipUntilUs - mInfo.presentationTimeUs) * mSampleRate / 1000000;
+        int available = (mOutputLimit - mOutputPosition) / (2 * mChannels);
+        if (frames < available) mSkipUntilUs = -1;
+        if (frames > 0) mOutputPosition += (int) Math.min(frames, available) * 2 * mChannels;
+        return mOutputLimit - mOutputPosition < 2;
+    }
+
+    private void releaseOutput() {
+        if (mOutputIndex >= 0) mCodec.releaseOutputBuffer(mOutputIndex, false);
+        mOutputIndex = -1;
+        mOutput = null;
+    }
+
+    @Override
+    public void seekTo(long us) {
+        releaseOutput();
+        mExtractor.seekTo(us, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        mCodec.flush();
+        mInputDone = false;
+        mOutputDone = false;
+        mSkipUntilUs = us;
+    }
+
+    @Override
+    public void release() {
+        releaseOutput();
+        mCodec.stop();
+        mCodec.release();
+        mExtractor.release();
+    }
+}
@@ -0,0 +1,186 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Index from granule position to byte offset of the audio pages of an Ogg/Opus stream, built by a
+ * single pass over the page headers. Page bodies are skipped without being read, so scanning a
+ * memory-mapped resource only touches a few bytes per page.
+ *
+ * @author Dhananjay Kumar
+ */
+public class OggPageIndex {
+    // "OggS" and "OpusHead" read as little endian
+    private static final int CAPTURE_PATTERN = 0x5367674f;
+    private static final long OPUS_HEAD = 0x646165487375704fL;
+
+    private static final int HEADER_SIZE = 27;
+    private static final int OPUS_HEAD_SIZE = 19;
+
+    // Opus granule positions always count 48 kHz samples
+    private static final int GRANULE_RATE = 48000;
+    // Opus decoders need 80 ms of audio to converge after a seek
+    private static final int PRE_ROLL = 3840;
+
+    private static final OggPageIndex EMPTY = new OggPageIndex(new long[0], new int[0], 0, 0);
+
+    private final long[] mGranules;
+    private final int[] mOffsets;
+    private final int mCount;
+    private final int mPreSkip;
+
+    private OggPageIndex(long[] granules, int[] offsets, int count, int preSkip) {
+        mGranules = granules;
+        mOffsets = offsets;
+        mCount = count;
+        mPreSkip = preSkip;
+    }
+
+    /**
+     * Scans the Ogg pages between position and limit of the buffer, which is left untouched.
+     * Pages of other logical streams than the first one are ignored, corrupt data is skipped up to
+     * the next capture pattern.
+     *
+     * @param source Ogg/Opus data, e.g. a mapped region of a raw resource
+     * @return index of the audio pages with offsets relative to the buffer position, empty if the
+     * data isn't an Opus stream
+     */
+    public static OggPageIndex scan(ByteBuffer source) {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int base = buffer.position();
+        final int limit = buffer.limit();
+
+        long[] granules = new long[256];
+        int[] offsets = new int[256];
+        int count = 0;
+        int preSkip = -1;
+        int serial = 0;
+
+        int offset = base;
+        while (offset + HEADER_SIZE <= limit) {
+            if (buffer.getInt(offset) != CAPTURE_PATTERN || buffer.get(offset + 4) != 0) {
+                offset = resync(buffer, offset + 1, limit);
+                if (offset < 0) break;
+                continue;
+            }
+
+            int segments = buffer.get(offset + 26) & 0xff;
+            int bodyStart = offset + HEADER_SIZE + segments;
+            if (bodyStart > limit) break;
+            int bodySize = 0;
+            for (int i = offset + HEADER_SIZE; i < bodyStart; i++) {
+                bodySize += buffer.get(i) & 0xff;
+            }
+            int next = bodyStart + bodySize;
+            if (next > limit) break;
+
+            int pageSerial = buffer.getInt(offset + 14);
+            if (preSkip < 0) {
+                // The first page of an Opus stream carries only the identification header
+                if (bodySize < OPUS_HEAD_SIZE || buffer.getLong(bodyStart) != OPUS_HEAD) return EMPTY;
+                preSkip = buffer.getShort(bodyStart + 10) & 0xffff;
+                serial = pageSerial;
+            } else if (pageSerial == serial) {
+                // Header pages have granule 0 and pages without a packet end have -1
+                long granule = buffer.getLong(offset + 6);
+                if (granule > 0) {
+                    if (count == granules.length) {
+                        granules = Arrays.copyOf(granules, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    granules[count] = granule;
+                    offsets[count] = offset - base;
+                    count++;
+                }
+            }
+            offset = next;
+        }
+
+        if (preSkip < 0) return EMPTY;
+        return new OggPageIndex(Arrays.copyOf(granules, count), Arrays.copyOf(offsets, count),
+                count, preSkip);
+    }
+
+    private static int resync(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i + 4 <= limit; i++) {
+            if (buffer.get(i) == 'O' && buffer.getInt(i) == CAPTURE_PATTERN) return i;
+        }
+        return -1;
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    public int getPageCount() {
+        return mCount;
+    }
+
+    public int getPreSkip() {
+        return mPreSkip;
+    }
+
+    /**
+     * Gets the playable duration without preparing a player
+     *
+     * @return duration in milliseconds
+     */
+    public long getDurationMs() {
+        return mCount == 0 ? 0 : toMs(mGranules[mCount - 1]);
+    }
+
+    /**
+     * Finds the page holding the given sample
+     *
+     * @param granule granule position including the pre-skip
+     * @return index of the first page ending at or after granule, clamped to the last page
+     */
+    public int findPage(long granule) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mGranules[mid] < granule) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the byte offset a decoder has to start from to output the given time, including the
+     * Opus pre-roll
+     *
+     * @param ms target time in milliseconds
+     * @return offset of the page relative to the scanned buffer, -1 if the index is empty
+     */
+    public long getDecodeOffset(long ms) {
+        if (mCount == 0) return -1;
+        return mOffsets[findPage(Math.max(0, toGranule(ms) - PRE_ROLL))];
+    }
+
+    /**
+     * Gets the start time of the page holding the given time, which is where a page-granular
+     * extractor lands when seeking to it
+     *
+     * @param ms target time in milliseconds, clamped to the duration
+     * @return page start in milliseconds
+     */
+    public long getPageStartMs(long ms) {
+        if (mCount == 0) return 0;
+        int page = findPage(toGranule(Math.max(0, ms)));
+        return page == 0 ? 0 : toMs(mGranules[page - 1]);
+    }
+
+    private long toGranule(long ms) {
+        return ms * GRANULE_RATE / 1000 + mPreSkip;
+    }
+
+    private long toMs(long granule) {
+        return Math.max(0, (granule - mPreSkip) * 1000 / GRANULE_RATE);
+    }
+}
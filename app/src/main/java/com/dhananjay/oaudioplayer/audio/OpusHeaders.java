@@ -0,0 +1,153 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Identification and comment headers of an Ogg/Opus stream, read from the first two packets
+ * without decoding any audio.
+ *
+ * @author Dhananjay Kumar
+ */
+public class OpusHeaders {
+    private static final int CAPTURE_PATTERN = 0x5367674f;
+    private static final int HEADER_SIZE = 27;
+    private static final int OPUS_HEAD_SIZE = 19;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Comment headers holding cover art can be large, the text tags come first anyway
+    private static final int MAX_TAGS_SIZE = 64 * 1024;
+
+    public final int channels;
+    public final int preSkip;
+    /**
+     * Sample rate of the encoder input, informational only as Opus always decodes at 48 kHz
+     */
+    public final int inputSampleRate;
+    public final String vendor;
+    private final Map<String, String> mComments;
+
+    private OpusHeaders(int channels, int preSkip, int inputSampleRate, String vendor,
+                        Map<String, String> comments) {
+        this.channels = channels;
+        this.preSkip = preSkip;
+        this.inputSampleRate = inputSampleRate;
+        this.vendor = vendor;
+        mComments = comments;
+    }
+
+    /**
+     * Reads the headers at the position of the buffer, which is left untouched
+     *
+     * @param source Ogg/Opus data, e.g. a mapped region of a raw resource
+     * @return the headers or null if the data doesn't start with an Opus stream
+     */
+    public static OpusHeaders parse(ByteBuffer source) {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] head = new byte[OPUS_HEAD_SIZE];
+        byte[] tags = new byte[MAX_TAGS_SIZE];
+        int headSize = 0;
+        int tagsSize = 0;
+        int packet = 0;
+        int serial = 0;
+
+        int offset = buffer.position();
+        final int limit = buffer.limit();
+        while (packet < 2 && offset + HEADER_SIZE <= limit) {
+            if (buffer.getInt(offset) != CAPTURE_PATTERN) return null;
+            int segments = buffer.get(offset + 26) & 0xff;
+            int bodyOffset = offset + HEADER_SIZE + segments;
+            if (bodyOffset > limit) return null;
+
+            int pageSerial = buffer.getInt(offset + 14);
+            if (headSize == 0 && packet == 0) serial = pageSerial;
+            boolean ours = pageSerial == serial;
+            for (int i = 0; i < segments; i++) {
+                int lacing = buffer.get(offset + HEADER_SIZE + i) & 0xff;
+                if (bodyOffset + lacing > limit) return null;
+                if (ours && packet == 0) {
+                    headSize += copy(buffer, bodyOffset, lacing, head, headSize);
+                } else if (ours && packet == 1) {
+                    tagsSize += copy(buffer, bodyOffset, lacing, tags, tagsSize);
+                }
+                bodyOffset += lacing;
+                // A lacing value below 255 ends the packet
+                if (ours && lacing < 255 && ++packet == 2) break;
+            }
+            if (packet == 0 && headSize < 8) return null;
+            offset = bodyOffset;
+        }
+
+        ByteBuffer headBuffer = ByteBuffer.wrap(head, 0, headSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (headSize < OPUS_HEAD_SIZE || !startsWith(head, "OpusHead")) return null;
+        int channels = head[9] & 0xff;
+        int preSkip = headBuffer.getShort(10) & 0xffff;
+        int inputSampleRate = headBuffer.getInt(12);
+
+        String vendor = null;
+        Map<String, String> comments = Collections.emptyMap();
+        if (packet == 2 && startsWith(tags, "OpusTags")) {
+            ByteBuffer tagsBuffer = ByteBuffer.wrap(tags, 0, tagsSize).order(ByteOrder.LITTLE_ENDIAN);
+            tagsBuffer.position(8);
+            vendor = readString(tagsBuffer);
+            comments = readComments(tagsBuffer);
+        }
+        return new OpusHeaders(channels, preSkip, inputSampleRate, vendor, comments);
+    }
+
+    private static int copy(ByteBuffer buffer, int offset, int length, byte[] target, int targetOffset) {
+        int count = Math.min(length, target.length - targetOffset);
+        for (int i = 0; i < count; i++) {
+            target[targetOffset + i] = buffer.get(offset + i);
+        }
+        return count;
+    }
+
+    private static boolean startsWith(byte[] data, String magic) {
+        for (int i = 0; i < magic.length(); i++) {
+            if (data[i] != magic.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return null;
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        String value = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static Map<String, String> readComments(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return Collections.emptyMap();
+        int count = buffer.getInt();
+        Map<String, String> comments = new HashMap<>();
+        // A truncated header just ends the list early
+        for (int i = 0; i < count; i++) {
+            String comment = readString(buffer);
+            if (comment == null) break;
+            int separator = comment.indexOf('=');
+            if (separator <= 0) continue;
+            String key = comment.substring(0, separator).toUpperCase(Locale.US);
+            // Keys may repeat, e.g. several artists, the first one is kept
+            if (!comments.containsKey(key)) comments.put(key, comment.substring(separator + 1));
+        }
+        return comments;
+    }
+
+    /**
+     * Gets the first value of a user comment
+     *
+     * @param key field name like TITLE or ARTIST, case-insensitive
+     * @return the value or null if the stream has no such comment
+     */
+    public String getComment(String key) {
+        return mComments.get(key.toUpperCase(Locale.US));
+    }
+}
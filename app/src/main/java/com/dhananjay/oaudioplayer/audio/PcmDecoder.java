@@ -0,0 +1,41 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.io.IOException;
+
+/**
+ * Source of interleaved 16-bit PCM samples, called from the decode thread of a {@link PcmPipeline}
+ * only
+ *
+ * @author Dhananjay Kumar
+ */
+public interface PcmDecoder {
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * @return duration of the stream in microseconds, -1 if unknown
+     */
+    long getDurationUs();
+
+    /**
+     * Decodes the next samples
+     *
+     * @param target array to fill
+     * @param offset index of the first sample in target
+     * @param length maximum number of samples, a multiple of the channel count
+     * @return number of samples written, 0 if no output is ready yet, -1 at the end of the stream
+     * @throws IOException if the stream can't be decoded
+     */
+    int decode(short[] target, int offset, int length) throws IOException;
+
+    /**
+     * Moves decoding to a new position, dropping any buffered output
+     *
+     * @param us target position in microseconds
+     */
+    void seekTo(long us);
+
+    void release();
+}
@@ -0,0 +1,528 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link PcmDecoder} through a {@link PcmSink} with a decode thread filling a
+ * {@link PcmRingBuffer} ahead of an output thread draining it. The depth of the ring trades start
+ * and seek latency against robustness to decoder hiccups.
+ * <p>
+ * A following decoder can be queued with {@link #setNext(PcmDecoder, int, float)}. The decode thread then
+ * mixes it in with a {@link CrossfadeMixer} over the end of the current stream, or appends it
+ * without a gap if no fade is wanted, and the position restarts from the new stream once the
+ * output reaches it.
+ * <p>
+ * The output thread runs the samples through a {@link DspChain} on their way to the sink, so
+ * changes of {@link #setDsp(DspSettings)} are heard within a chunk rather than after the ring.
+ * <p>
+ * All buffers are allocated up front, the running threads only copy samples and park on each
+ * other, so nothing is allocated while playing. The control methods are meant to be called from
+ * one thread.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PcmPipeline {
+    // Duration of the chunks moved at once
+    private static final int CHUNK_MS = 10;
+    // Upper bound for a missed wake-up of the other side
+    private static final long PARK_NANOS = 2000000;
+
+    /**
+     * Gets notified on one of the pipeline threads, or on the control thread if a seek forces a
+     * transition, must not call back into the pipeline directly
+     */
+    public interface Listener {
+        /**
+         * The stream queued by {@link #setNext(PcmDecoder, int, float)} reached the output
+         */
+        void onTransition();
+
+        void onCompletion();
+
+        void onError(IOException e);
+    }
+
+    private final PcmSink mSink;
+    private final Listener mListener;
+    private final int mSampleRate;
+    private final int mChannels;
+
+    private final PcmRingBuffer mRing;
+    private final short[] mDecodeChunk;
+    private final short[] mOutputChunk;
+    private final DspChain mDsp;
+    // Buffered samples needed before output starts, so it doesn't start with an underrun
+    private final int mStartThreshold;
+
+    // Owned by the decode thread while it runs, by the control thread otherwise
+    private PcmDecoder mDecoder;
+    // Gain of the current stream, applied as it's decoded
+    private volatile float mGain = 1;
+    private long mDurationFrames;
+    private long mTrackFrames;
+    private long mRingFrames;
+
+    // Queued by the control thread and taken by the decode thread
+    private final AtomicReference<PcmDecoder> mNext = new AtomicReference<>();
+    private volatile long mNextFadeFrames;
+    private volatile float mNextGain = 1;
+
+    // State of a running fade, owned like mDecoder
+    private final CrossfadeMixer mMixer;
+    private final short[] mIncomingChunk;
+    private final short[] mMixChunk;
+    private PcmDecoder mIncoming;
+    private float mIncomingGain;
+    private long mFadeLength;
+    private long mFadePosition;
+    private int mOutgoingFill;
+    private int mIncomingFill;
+    private boolean mOutgoingDone;
+    private boolean mIncomingDone;
+
+    // Output frame where the last queued stream starts and the last one announced, -1 for none
+    private volatile long mTransitionFrame = -1;
+    private volatile long mAnnouncedFrame = -1;
+    // Owned by the output thread while it runs
+    private long mOutputFrames;
+
+    private volatile boolean mRunning;
+    private volatile boolean mEndOfStream;
+    private volatile Thread mDecodeThread;
+    private volatile Thread mOutputThread;
+    // Position of the output frame mBaseFrame
+    private volatile long mBaseUs;
+    private volatile long mBaseFrame;
+    private volatile int mUnderrunCount;
+
+    private final Runnable mDecodeLoop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (mRunning && !mEndOfStream) {
+                    int length = Math.min(mDecodeChunk.length, mRing.free());
+                    length -= length % mChannels;
+                    if (length == 0) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                        continue;
+                    }
+                    if (mIncoming != null) {
+                        decodeFade(length);
+                    } else {
+                        decode(length);
+                    }
+                    LockSupport.unpark(mOutputThread);
+                }
+            } catch (IOException e) {
+                mRunning = false;
+                mListener.onError(e);
+            }
+        }
+    };
+
+    private final Runnable mOutputLoop = new Runnable() {
+        @Override
+        public void run() {
+            boolean primed = false;
+            boolean starving = false;
+            while (mRunning) {
+                if (!primed) {
+                    if (mRing.available() < mStartThreshold && !mEndOfStream) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                        continue;
+                    }
+                    primed = true;
+                }
+
+                int count = mRing.read(mOutputChunk, 0, mOutputChunk.length);
+                if (count == 0) {
+                    // End of stream is set after the last write, so an empty ring seen afterwards is final
+                    if (mEndOfStream && mRing.available() == 0) {
+                        flushDsp();
+                        mSink.drain();
+                        mRunning = false;
+                        mListener.onCompletion();
+                        return;
+                    }
+                    if (!starving) {
+                        starving = true;
+                        mUnderrunCount++;
+                    }
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                    continue;
+                }
+                starving = false;
+                mDsp.process(mOutputChunk, 0, count);
+                mSink.write(mOutputChunk, 0, count);
+                mOutputFrames += count / mChannels;
+                LockSupport.unpark(mDecodeThread);
+
+                long transition = mTransitionFrame;
+                if (transition >= 0 && transition != mAnnouncedFrame && mOutputFrames >= transition) {
+                    mAnnouncedFrame = transition;
+                    mListener.onTransition();
+                }
+            }
+        }
+    };
+
+    /**
+     * Pushes the samples the limiter still holds for its look-ahead out with silence, so the end of
+     * the stream is heard
+     */
+    private void flushDsp() {
+        int remaining = mDsp.getLatencyFrames() * mChannels;
+        while (remaining > 0) {
+            int count = Math.min(remaining, mOutputChunk.length);
+            Arrays.fill(mOutputChunk, 0, count, (short) 0);
+            mDsp.process(mOutputChunk, 0, count);
+            mSink.write(mOutputChunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * @param decoder  source of the samples, owned by the pipeline from now on
+     * @param sink     output of the samples, owned by the pipeline from now on
+     * @param bufferMs depth of the ring buffer
+     * @param listener notified about transitions, completion and decode errors
+     */
+    public PcmPipeline(PcmDecoder decoder, PcmSink sink, int bufferMs, Listener listener) {
+        mDecoder = decoder;
+        mSink = sink;
+        mListener = listener;
+        mSampleRate = decoder.getSampleRate();
+        mChannels = decoder.getChannelCount();
+        mDurationFrames = toFrames(decoder.getDurationUs());
+
+        int chunk = mSampleRate * CHUNK_MS / 1000 * mChannels;
+        mRing = new PcmRingBuffer(Math.max(4 * chunk, (int) ((long) mSampleRate * bufferMs / 1000) * mChannels));
+        mDecodeChunk = new short[chunk];
+        mOutputChunk = new short[chunk];
+        mIncomingChunk = new short[chunk];
+        mMixChunk = new short[chunk];
+        mMixer = new CrossfadeMixer(chunk);
+        mDsp = new DspChain(mSampleRate, mChannels, chunk);
+        mStartThreshold = Math.min(mRing.capacity() / 4, 2 * chunk);
+    }
+
+    private long toFrames(long us) {
+        return us < 0 ? -1 : us * mSampleRate / 1000000;
+    }
+
+    /**
+     * Decodes the current stream only, starting the fade or the switch to a queued stream when
+     * the end comes close
+     */
+    private void decode(int length) throws IOException {
+        long fadeFrames = mNextFadeFrames;
+        if (mDurationFrames >= 0 && fadeFrames > 0 && mNext.get() != null) {
+            // Stops right where the fade begins, so it starts on the exact frame
+            long lead = mDurationFrames - mTrackFrames - fadeFrames;
+            if (lead > 0 && lead * mChannels < length) length = (int) lead * mChannels;
+        }
+        int count = mDecoder.decode(mDecodeChunk, 0, length);
+        if (count < 0) {
+            PcmDecoder next = mNext.getAndSet(null);
+            if (next == null) {
+                mEndOfStream = true;
+                return;
+            }
+            // Never got to a fade, the next stream follows without a gap
+            mDecoder.release();
+            startStream(next);
+            mGain = mNextGain;
+            mTransitionFrame = mRingFrames;
+            return;
+        }
+        if (count == 0) return;
+
+        float gain = mGain;
+        if (gain != 1) {
+            for (int i = 0; i < count; i++) {
+                mDecodeChunk[i] = (short) (mDecodeChunk[i] * gain);
+            }
+        }
+        mRing.write(mDecodeChunk, 0, count);
+        mRingFrames += count / mChannels;
+        mTrackFrames += count / mChannels;
+
+        long remaining = mDurationFrames - mTrackFrames;
+        if (mDurationFrames < 0 || fadeFrames == 0 || remaining <= 0 || remaining > fadeFrames) return;
+        PcmDecoder next = mNext.getAndSet(null);
+        if (next == null) return;
+
+        // Whatever is left of the current stream is faded, a late queue only shortens the fade
+        mIncoming = next;
+        mIncomingGain = mNextGain;
+        mFadeLength = remaining;
+        mFadePosition = 0;
+        mOutgoingFill = 0;
+        mIncomingFill = 0;
+        mOutgoingDone = false;
+        mIncomingDone = false;
+        mTransitionFrame = mRingFrames;
+    }
+
+    /**
+     * Decodes both streams in step and writes their mix, finishing the fade once it's complete
+     */
+    private void decodeFade(int length) throws IOException {
+        length = (int) Math.min(length, (mFadeLength - mFadePosition) * mChannels);
+        mOutgoingFill = fill(mDecoder, mDecodeChunk, mOutgoingFill, length, true);
+        mIncomingFill = fill(mIncoming, mIncomingChunk, mIncomingFill, length, false);
+
+        // A stream which ended early is continued with silence
+        if (mOutgoingDone) mOutgoingFill = silence(mDecodeChunk, mOutgoingFill, mIncomingFill);
+        if (mIncomingDone) mIncomingFill = silence(mIncomingChunk, mIncomingFill, mOutgoingFill);
+        if (mOutgoingDone && mIncomingDone && mOutgoingFill == 0) {
+            finishFade();
+            return;
+        }
+
+        int count = Math.min(mOutgoingFill, mIncomingFill);
+        if (count == 0) return;
+        mMixer.mix(mDecodeChunk, mIncomingChunk, mMixChunk, count, mChannels, mFadePosition, mFadeLength,
+                mGain, mIncomingGain);
+        mRing.write(mMixChunk, 0, count);
+        mRingFrames += count / mChannels;
+        mFadePosition += count / mChannels;
+
+        // Keeps what one stream decoded beyond the other for the next round
+        System.arraycopy(mDecodeChunk, count, mDecodeChunk, 0, mOutgoingFill - count);
+        System.arraycopy(mIncomingChunk, count, mIncomingChunk, 0, mIncomingFill - count);
+        mOutgoingFill -= count;
+        mIncomingFill -= count;
+
+        if (mFadePosition >= mFadeLength) finishFade();
+    }
+
+    private int fill(PcmDecoder decoder, short[] chunk, int fill, int length, boolean outgoing)
+            throws IOException {
+        if (fill >= length || (outgoing ? mOutgoingDone : mIncomingDone)) return fill;
+        int count = decoder.decode(chunk, fill, length - fill);
+        if (count >= 0) return fill + count;
+        if (outgoing) {
+            mOutgoingDone = true;
+        } else {
+            mIncomingDone = true;
+        }
+        return fill;
+    }
+
+    private static int silence(short[] chunk, int fill, int target) {
+        if (fill >= target) return fill;
+        for (int i = fill; i < target; i++) chunk[i] = 0;
+        return target;
+    }
+
+    /**
+     * Drops the faded out stream and continues with the incoming one alone
+     */
+    private void finishFade() {
+        mDecoder.release();
+        startStream(mIncoming);
+        mGain = mIncomingGain;
+        mTrackFrames = mFadePosition;
+        mIncoming = null;
+        mFadeLength = 0;
+    }
+
+    private void startStream(PcmDecoder decoder) {
+        mDecoder = decoder;
+        mDurationFrames = toFrames(decoder.getDurationUs());
+        mTrackFrames = 0;
+    }
+
+    /**
+     * Queues the stream to play after the current one. May be called once per transition, i.e.
+     * again only after {@link Listener#onTransition()} for the previous one.
+     *
+     * @param decoder stream to play next, owned by the pipeline if accepted
+     * @param fadeMs  length of the crossfade, 0 to append the stream without a gap
+     * @param gain    gain of the stream, between 0 and 1
+     * @return false if the stream doesn't match the format of the current one or a transition is
+     * still on its way to the output
+     */
+    public boolean setNext(PcmDecoder decoder, int fadeMs, float gain) {
+        if (decoder.getSampleRate() != mSampleRate || decoder.getChannelCount() != mChannels) return false;
+        long transition = mTransitionFrame;
+        if (transition >= 0) {
+            if (transition != mAnnouncedFrame) return false;
+            // The previous transition becomes the origin of the position
+            mBaseFrame = transition;
+            mBaseUs = 0;
+            mTransitionFrame = -1;
+        }
+        mNextFadeFrames = (long) mSampleRate * fadeMs / 1000;
+        mNextGain = gain;
+        PcmDecoder previous = mNext.getAndSet(decoder);
+        if (previous != null) previous.release();
+        return true;
+    }
+
+    /**
+     * Drops the stream queued by {@link #setNext(PcmDecoder, int, float)} unless it's already being
+     * faded in
+     */
+    public void clearNext() {
+        PcmDecoder next = mNext.getAndSet(null);
+        if (next != null) next.release();
+    }
+
+    /**
+     * Starts or resumes playback
+     */
+    public void start() {
+        if (mRunning) return;
+        mRunning = true;
+        mSink.play();
+
+        mDecodeThread = new Thread(mDecodeLoop, "PcmPipeline-decode");
+        mOutputThread = new Thread(mOutputLoop, "PcmPipeline-output");
+        mOutputThread.setPriority(Thread.MAX_PRIORITY);
+        mDecodeThread.start();
+        mOutputThread.start();
+    }
+
+    /**
+     * Pauses playback, the buffered samples are kept
+     */
+    public void pause() {
+        stopThreads();
+        mSink.pause();
+    }
+
+    /**
+     * Moves playback to a new position, keeping it running if it was. The position is within the
+     * stream announced last, a queued stream which hasn't reached the output yet is rewound and
+     * faded in again later.
+     *
+     * @param us target position in microseconds
+     */
+    public void seekTo(long us) {
+        boolean running = mRunning;
+        stopThreads();
+        mSink.pause();
+        mSink.flush();
+        mRing.clear();
+        mDsp.reset();
+
+        if (mTransitionFrame >= 0) {
+            if (mTransitionFrame == mAnnouncedFrame) {
+                if (mIncoming != null) finishFade();
+            } else if (mIncoming != null) {
+                // Not heard yet, the fade starts over
+                mIncoming.seekTo(0);
+                mNext.set(mIncoming);
+                mIncoming = null;
+                mFadeLength = 0;
+            } else {
+                // The previous stream is gone already, so the seek has to apply to the new one
+                mListener.onTransition();
+            }
+            mTransitionFrame = -1;
+            mAnnouncedFrame = -1;
+        }
+
+        mDecoder.seekTo(us);
+        mTrackFrames = toFrames(us);
+        mRingFrames = 0;
+        mOutputFrames = 0;
+        mEndOfStream = false;
+        mBaseUs = us;
+        mBaseFrame = 0;
+        if (running) start();
+    }
+
+    public void release() {
+        stopThreads();
+        mSink.release();
+        mDecoder.release();
+        if (mIncoming != null) mIncoming.release();
+        clearNext();
+    }
+
+    public boolean isPlaying() {
+        return mRunning;
+    }
+
+    /**
+     * Sets the volume of the output, applying at once to all streams
+     *
+     * @param volume volume between 0 and 1
+     */
+    public void setVolume(float volume) {
+        mSink.setVolume(volume);
+    }
+
+    /**
+     * Sets the gain of the current stream, the streams queued by
+     * {@link #setNext(PcmDecoder, int, float)} bring their own. Applies from the samples decoded
+     * next on, i.e. after what's buffered.
+     *
+     * @param gain gain between 0 and 1
+     */
+    public void setGain(float gain) {
+        mGain = gain;
+    }
+
+    /**
+     * Sets the equalizer, preamp and limiter applied on output, may be called while playing
+     *
+     * @param settings settings to apply, null to play the samples unprocessed
+     */
+    public void setDsp(DspSettings settings) {
+        mDsp.setSettings(settings);
+    }
+
+    /**
+     * @return position of the sample played last in microseconds, within the stream it belongs to
+     */
+    public long getPositionUs() {
+        // the output lags the ring by the look-ahead of the limiter
+        long played = Math.max(0, mSink.getPlayedFrames() - mDsp.getLatencyFrames());
+        long transition = mTransitionFrame;
+        if (transition >= 0 && played >= transition) {
+            return (played - transition) * 1000000 / mSampleRate;
+        }
+        return mBaseUs + Math.max(0, played - mBaseFrame) * 1000000 / mSampleRate;
+    }
+
+    /**
+     * @return number of times the output found the ring empty before the end of the stream
+     */
+    public int getUnderrunCount() {
+        return mUnderrunCount;
+    }
+
+    public int getBufferCapacity() {
+        return mRing.capacity();
+    }
+
+    private void stopThreads() {
+        mRunning = false;
+        join(mDecodeThread);
+        join(mOutputThread);
+        mDecodeThread = null;
+        mOutputThread = null;
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null || thread == Thread.currentThread()) return;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
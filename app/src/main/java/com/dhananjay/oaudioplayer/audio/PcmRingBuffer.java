@@ -0,0 +1,103 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of 16-bit PCM samples for exactly one producer thread and one consumer
+ * thread. The sample array is allocated once, writes and reads only copy into or out of it.
+ * <p>
+ * Both sides keep a running count of the samples they moved. Each count is advanced by its own
+ * side only, after the copy, so the other side never sees a sample before it's complete and never
+ * gets a slot back before it was read.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PcmRingBuffer {
+    private final short[] mSamples;
+    private final int mMask;
+
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mRead = new AtomicLong();
+
+    /**
+     * @param minCapacity number of samples the buffer must hold, rounded up to a power of two
+     */
+    public PcmRingBuffer(int minCapacity) {
+        if (minCapacity <= 0 || minCapacity > 1 << 30) {
+            throw new IllegalArgumentException("minCapacity: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) capacity <<= 1;
+        mSamples = new short[capacity];
+        mMask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mSamples.length;
+    }
+
+    /**
+     * @return number of samples which can be read right now
+     */
+    public int available() {
+        return (int) (mWritten.get() - mRead.get());
+    }
+
+    /**
+     * @return number of samples which can be written right now
+     */
+    public int free() {
+        return mSamples.length - available();
+    }
+
+    /**
+     * Copies as many samples as fit into the buffer. Producer thread only.
+     *
+     * @param source samples to write
+     * @param offset index of the first sample in source
+     * @param length number of samples to write
+     * @return number of samples written, less than length if the buffer got full
+     */
+    public int write(short[] source, int offset, int length) {
+        long written = mWritten.get();
+        int count = Math.min(length, mSamples.length - (int) (written - mRead.get()));
+        if (count <= 0) return 0;
+
+        int start = (int) written & mMask;
+        int first = Math.min(count, mSamples.length - start);
+        System.arraycopy(source, offset, mSamples, start, first);
+        System.arraycopy(source, offset + first, mSamples, 0, count - first);
+        // publishes the copied samples to the consumer
+        mWritten.lazySet(written + count);
+        return count;
+    }
+
+    /**
+     * Copies as many samples as are available out of the buffer. Consumer thread only.
+     *
+     * @param target array to fill
+     * @param offset index of the first sample in target
+     * @param length maximum number of samples to read
+     * @return number of samples read, 0 if the buffer is empty
+     */
+    public int read(short[] target, int offset, int length) {
+        long read = mRead.get();
+        int count = Math.min(length, (int) (mWritten.get() - read));
+        if (count <= 0) return 0;
+
+        int start = (int) read & mMask;
+        int first = Math.min(count, mSamples.length - start);
+        System.arraycopy(mSamples, start, target, offset, first);
+        System.arraycopy(mSamples, 0, target, offset + first, count - first);
+        // hands the slots back to the producer
+        mRead.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * Drops all buffered samples. Only safe while neither side is running, e.g. for a seek.
+     */
+    public void clear() {
+        mRead.set(mWritten.get());
+    }
+}
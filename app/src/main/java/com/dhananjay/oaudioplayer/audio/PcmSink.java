@@ -0,0 +1,42 @@
+package com.dhananjay.oaudioplayer.audio;
+
+/**
+ * Output for interleaved 16-bit PCM samples, written from the output thread of a
+ * {@link PcmPipeline}
+ *
+ * @author Dhananjay Kumar
+ */
+public interface PcmSink {
+
+    /**
+     * Writes samples, blocking while the output is full
+     *
+     * @param source samples to play
+     * @param offset index of the first sample in source
+     * @param length number of samples, a multiple of the channel count
+     */
+    void write(short[] source, int offset, int length);
+
+    void play();
+
+    void pause();
+
+    /**
+     * Drops samples written but not played yet
+     */
+    void flush();
+
+    /**
+     * Blocks until every written sample was played
+     */
+    void drain();
+
+    /**
+     * @return frames played since the sink was created or last flushed
+     */
+    long getPlayedFrames();
+
+    void setVolume(float volume);
+
+    void release();
+}
@@ -0,0 +1,117 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.io.IOException;
+
+/**
+ * Computes a min/max peak pyramid of 16-bit PCM in one streaming pass. The finest level is taken
+ * from the samples, every coarser one from the buckets of the level below, so each sample is only
+ * looked at once. Peaks are reduced to 8 bits, the upper byte of the sample, which is all a
+ * waveform drawing can show.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PeakAccumulator {
+
+    /**
+     * Receives the completed buckets
+     */
+    public interface Output {
+        /**
+         * @param level index into the bucket sizes
+         * @param min   lowest sample of the bucket over all channels
+         * @param max   highest sample of the bucket over all channels
+         */
+        void onBucket(int level, byte min, byte max) throws IOException;
+    }
+
+    private final int mChannels;
+    private final int[] mFramesPerBucket;
+    private final Output mOutput;
+
+    // Bucket being built per level, the count is in frames for level 0 and in buckets above
+    private final int[] mMin;
+    private final int[] mMax;
+    private final int[] mCount;
+
+    /**
+     * @param channels        number of interleaved channels
+     * @param framesPerBucket frames covered by a bucket of each level, finest first, each a
+     *                        multiple of the one before
+     * @param output          receives the buckets
+     */
+    public PeakAccumulator(int channels, int[] framesPerBucket, Output output) {
+        for (int i = 1; i < framesPerBucket.length; i++) {
+            if (framesPerBucket[i] % framesPerBucket[i - 1] != 0) {
+                throw new IllegalArgumentException("framesPerBucket: " + framesPerBucket[i]);
+            }
+        }
+        mChannels = channels;
+        mFramesPerBucket = framesPerBucket.clone();
+        mOutput = output;
+        mMin = new int[framesPerBucket.length];
+        mMax = new int[framesPerBucket.length];
+        mCount = new int[framesPerBucket.length];
+        for (int i = 0; i < framesPerBucket.length; i++) {
+            reset(i);
+        }
+    }
+
+    /**
+     * @param samples interleaved samples
+     * @param offset  index of the first sample
+     * @param length  number of samples, a multiple of the channel count
+     */
+    public void add(short[] samples, int offset, int length) throws IOException {
+        int frameSize = mChannels;
+        int bucket = mFramesPerBucket[0];
+        int min = mMin[0];
+        int max = mMax[0];
+        int count = mCount[0];
+        for (int i = offset; i < offset + length; i += frameSize) {
+            for (int c = i; c < i + frameSize; c++) {
+                int value = samples[c];
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            if (++count == bucket) {
+                mMin[0] = min;
+                mMax[0] = max;
+                emit(0);
+                min = Integer.MAX_VALUE;
+                max = Integer.MIN_VALUE;
+                count = 0;
+            }
+        }
+        mMin[0] = min;
+        mMax[0] = max;
+        mCount[0] = count;
+    }
+
+    /**
+     * Emits the buckets left incomplete at the end of the stream
+     */
+    public void finish() throws IOException {
+        for (int level = 0; level < mCount.length; level++) {
+            if (mCount[level] > 0) emit(level);
+        }
+    }
+
+    private void emit(int level) throws IOException {
+        int min = mMin[level];
+        int max = mMax[level];
+        reset(level);
+        mOutput.onBucket(level, (byte) (min >> 8), (byte) (max >> 8));
+
+        int parent = level + 1;
+        if (parent == mCount.length) return;
+        if (min < mMin[parent]) mMin[parent] = min;
+        if (max > mMax[parent]) mMax[parent] = max;
+        if (++mCount[parent] == mFramesPerBucket[parent] / mFramesPerBucket[level]) emit(parent);
+    }
+
+    private void reset(int level) {
+        mMin[level] = Integer.MAX_VALUE;
+        mMax[level] = Integer.MIN_VALUE;
+        mCount[level] = 0;
+    }
+}
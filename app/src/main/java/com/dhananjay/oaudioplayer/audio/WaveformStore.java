@@ -0,0 +1,338 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Waveform peaks of tracks stored per zoom level, one file of min/max byte pairs per level and
+ * track. A track's files carry a ".part" suffix until all of its samples went into them, and an
+ * interrupted computation continues from the last whole bucket of the coarsest level.
+ * <p>
+ * Complete tracks share a byte budget, the least recently read or written ones are deleted once
+ * it's exceeded, and the access order survives restarts through the modification times like in
+ * the stream block cache. A key is the id of the track, '_' and the version of its source, so
+ * completing a new version of a track deletes the peaks of the earlier ones.
+ *
+ * @author Dhananjay Kumar
+ */
+public class WaveformStore {
+    /**
+     * Frames per bucket of the stored levels, finest first
+     */
+    public static final int[] LEVELS = {256, 1024, 4096};
+
+    private static final String SUFFIX = ".peaks";
+    private static final String PART_SUFFIX = ".part";
+    private static final int BYTES_PER_BUCKET = 2;
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    // Key of each complete track to the length of its files in access order, guarded by this
+    private final LinkedHashMap<String, Long> mTracks = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+
+    /**
+     * Opens the store in a directory, evicting down to the budget
+     *
+     * @param dir      directory of the files, created when the first track is written
+     * @param maxBytes budget of the complete tracks
+     */
+    public WaveformStore(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        // the coarsest file is touched on every access
+        String top = "." + LEVELS[LEVELS.length - 1] + SUFFIX;
+        final List<File> tops = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(top)) tops.add(file);
+        }
+        final long[] modified = new long[tops.size()];
+        Integer[] order = new Integer[tops.size()];
+        for (int i = 0; i < order.length; i++) {
+            modified[i] = tops.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        synchronized (this) {
+            for (int i : order) {
+                String name = tops.get(i).getName();
+                String key = name.substring(0, name.length() - top.length());
+                long bytes = getLength(key);
+                mTracks.put(key, bytes);
+                mBytes += bytes;
+            }
+            evict(null);
+        }
+    }
+
+    private File getFile(String key, int framesPerBucket, boolean part) {
+        return new File(mDir, key + "." + framesPerBucket + SUFFIX + (part ? PART_SUFFIX : ""));
+    }
+
+    private long getLength(String key) {
+        long bytes = 0;
+        for (int level : LEVELS) {
+            bytes += getFile(key, level, false).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Deletes the least recently used tracks beyond the budget, guarded by this
+     *
+     * @param keep key of a track to keep anyway, may be null
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> entries = mTracks.entrySet().iterator();
+        while (mBytes > mMaxBytes && entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (entry.getKey().equals(keep)) continue;
+            entries.remove();
+            mBytes -= entry.getValue();
+            delete(entry.getKey());
+        }
+    }
+
+    private void delete(String key) {
+        // coarsest first, its absence marks the track incomplete
+        for (int i = LEVELS.length - 1; i >= 0; i--) {
+            getFile(key, LEVELS[i], false).delete();
+            getFile(key, LEVELS[i], true).delete();
+        }
+    }
+
+    /**
+     * Deletes the complete and partial files of the other versions of a track, guarded by this
+     */
+    private void deleteOtherVersions(String key) {
+        int separator = key.indexOf('_');
+        if (separator < 0) return;
+        String track = key.substring(0, separator + 1);
+        Iterator<Map.Entry<String, Long>> entries = mTracks.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (entry.getKey().startsWith(track) && !entry.getKey().equals(key)) {
+                entries.remove();
+                mBytes -= entry.getValue();
+            }
+        }
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(track) && !name.startsWith(key + ".")) file.delete();
+        }
+    }
+
+    /**
+     * Records a completed track and makes room for it
+     */
+    private synchronized void onCompleted(String key) {
+        long bytes = getLength(key);
+        Long previous = mTracks.put(key, bytes);
+        mBytes += bytes - (previous != null ? previous : 0);
+        deleteOtherVersions(key);
+        evict(key);
+    }
+
+    private static int getLevel(int framesPerBucket) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == framesPerBucket) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param key key of the track
+     * @return true if the peaks of the track were completely computed
+     */
+    public synchronized boolean isComplete(String key) {
+        return mTracks.containsKey(key);
+    }
+
+    /**
+     * @return length of the files of the complete tracks
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    /**
+     * @param key             key of the track
+     * @param framesPerBucket one of {@link #LEVELS}
+     * @return number of buckets of the level, -1 if the track isn't complete
+     */
+    public int getBucketCount(String key, int framesPerBucket) {
+        if (getLevel(framesPerBucket) < 0 || !isComplete(key)) return -1;
+        return (int) (getFile(key, framesPerBucket, false).length() / BYTES_PER_BUCKET);
+    }
+
+    /**
+     * Reads a range of buckets of a complete track
+     *
+     * @param key             key of the track
+     * @param framesPerBucket one of {@link #LEVELS}
+     * @param from            index of the first bucket
+     * @param count           maximum number of buckets
+     * @return min and max of each bucket in turn, fewer than requested at the end of the track, or
+     * null if the track isn't complete
+     * @throws IOException if the file can't be read
+     */
+    public byte[] read(String key, int framesPerBucket, int from, int count) throws IOException {
+        if (getLevel(framesPerBucket) < 0) {
+            throw new IllegalArgumentException("framesPerBucket: " + framesPerBucket);
+        }
+        synchronized (this) {
+            // moves the track to the end of the access order
+            if (mTracks.get(key) == null) return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(getFile(key, framesPerBucket, false), "r")) {
+            long start = (long) from * BYTES_PER_BUCKET;
+            long available = Math.max(0, file.length() - start);
+            byte[] peaks = new byte[(int) Math.min(available, (long) count * BYTES_PER_BUCKET)];
+            file.seek(start);
+            file.readFully(peaks);
+            getFile(key, LEVELS[LEVELS.length - 1], false).setLastModified(System.currentTimeMillis());
+            return peaks;
+        } catch (FileNotFoundException e) {
+            // replaced between the check and the read
+            return null;
+        }
+    }
+
+    /**
+     * Opens the files of a track for writing, keeping the buckets written before an interruption
+     *
+     * @param key key of the track
+     * @return writer continuing at {@link Writer#getResumeFrame()}
+     * @throws IOException if the files can't be opened
+     */
+    public Writer openWriter(String key) throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) throw new IOException("Can't create " + mDir);
+        return new Writer(key);
+    }
+
+    /**
+     * Receives the peaks of one track from a {@link PeakAccumulator}. Buckets are collected in
+     * memory and appended to the files every {@link #CHECKPOINT_BUCKETS} coarsest buckets, finest
+     * level first, so the coarsest file never gets ahead of the others.
+     */
+    public class Writer implements PeakAccumulator.Output {
+        // About 3 seconds of 44.1 kHz audio per checkpoint
+        static final int CHECKPOINT_BUCKETS = 32;
+
+        private final String mKey;
+        private final FileOutputStream[] mOut = new FileOutputStream[LEVELS.length];
+        private final byte[][] mPending = new byte[LEVELS.length][];
+        private final int[] mPendingLength = new int[LEVELS.length];
+        private final long mResumeFrame;
+        private int mTopCount;
+
+        private Writer(String key) throws IOException {
+            mKey = key;
+            int top = LEVELS.length - 1;
+            // whole coarsest buckets all levels hold, they may be short after a crash
+            long resumeBuckets = Long.MAX_VALUE;
+            for (int i = 0; i < LEVELS.length; i++) {
+                long buckets = getFile(key, LEVELS[i], true).length() / BYTES_PER_BUCKET;
+                resumeBuckets = Math.min(resumeBuckets, buckets / (LEVELS[top] / LEVELS[i]));
+            }
+            mResumeFrame = resumeBuckets * LEVELS[top];
+
+            try {
+                for (int i = 0; i < LEVELS.length; i++) {
+                    File file = getFile(key, LEVELS[i], true);
+                    try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                        truncate.setLength(mResumeFrame / LEVELS[i] * BYTES_PER_BUCKET);
+                    }
+                    mOut[i] = new FileOutputStream(file, true);
+                    mPending[i] = new byte[CHECKPOINT_BUCKETS * LEVELS[top] / LEVELS[i] * BYTES_PER_BUCKET];
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return first frame to compute, everything before it is stored already
+         */
+        public long getResumeFrame() {
+            return mResumeFrame;
+        }
+
+        @Override
+        public void onBucket(int level, byte min, byte max) throws IOException {
+            if (mPendingLength[level] == mPending[level].length) flush();
+            byte[] pending = mPending[level];
+            pending[mPendingLength[level]++] = min;
+            pending[mPendingLength[level]++] = max;
+            if (level == LEVELS.length - 1 && ++mTopCount % CHECKPOINT_BUCKETS == 0) flush();
+        }
+
+        private void flush() throws IOException {
+            for (int i = 0; i < LEVELS.length; i++) {
+                mOut[i].write(mPending[i], 0, mPendingLength[i]);
+                mPendingLength[i] = 0;
+            }
+        }
+
+        /**
+         * Stores the remaining buckets and marks the track complete
+         *
+         * @throws IOException if the files can't be written or renamed
+         */
+        public void complete() throws IOException {
+            try {
+                flush();
+            } finally {
+                close();
+            }
+            // coarsest last, its presence marks the track complete
+            for (int i = 0; i < LEVELS.length; i++) {
+                if (!getFile(mKey, LEVELS[i], true).renameTo(getFile(mKey, LEVELS[i], false))) {
+                    throw new IOException("Can't complete " + mKey);
+                }
+            }
+            onCompleted(mKey);
+        }
+
+        /**
+         * Stores the buckets collected so far and closes the files, the track can be resumed
+         */
+        public void close() throws IOException {
+            IOException error = null;
+            for (int i = 0; i < LEVELS.length; i++) {
+                if (mOut[i] == null) continue;
+                try {
+                    mOut[i].write(mPending[i], 0, mPendingLength[i]);
+                    mPendingLength[i] = 0;
+                    mOut[i].close();
+                } catch (IOException e) {
+                    error = e;
+                }
+                mOut[i] = null;
+            }
+            if (error != null) throw error;
+        }
+    }
+}
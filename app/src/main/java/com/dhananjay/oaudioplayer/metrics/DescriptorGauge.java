@@ -0,0 +1,24 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import java.io.File;
+
+/**
+ * Reads the number of file descriptors open in the process from {@code /proc/self/fd}, a leak
+ * shows as a count growing with the number of tracks played
+ *
+ * @author Dhananjay Kumar
+ */
+public final class DescriptorGauge {
+    private static final File FD_DIR = new File("/proc/self/fd");
+
+    private DescriptorGauge() {
+    }
+
+    /**
+     * @return open descriptors including the one listing them, -1 if the system doesn't tell
+     */
+    public static int getOpenCount() {
+        String[] names = FD_DIR.list();
+        return names != null ? names.length : -1;
+    }
+}
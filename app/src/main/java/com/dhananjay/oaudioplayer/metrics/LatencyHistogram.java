@@ -0,0 +1,125 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+/**
+ * Histogram of durations in a fixed array of log-linear buckets, in the manner of HdrHistogram:
+ * every power-of-two range is split into {@link #SUB_BUCKETS} equal buckets, so any value up to
+ * {@link #MAX_TRACKABLE_NANOS} is kept with a relative error below 1/{@link #SUB_BUCKETS} in a
+ * couple of kilobytes, however many values are recorded. Larger values land in the top bucket,
+ * the exact maximum is kept apart.
+ * <p>
+ * Not thread-safe, {@link PlaybackMetrics} guards its histograms.
+ *
+ * @author Dhananjay Kumar
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Largest value told apart from larger ones, about 18 minutes
+     */
+    public static final long MAX_TRACKABLE_NANOS = (1L << 40) - 1;
+    static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mTotal;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    /**
+     * Read-only copy of a histogram
+     */
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotal;
+        private final long mMin;
+        private final long mMax;
+
+        private Snapshot(LatencyHistogram histogram) {
+            mCounts = histogram.mCounts.clone();
+            mCount = histogram.mCount;
+            mTotal = histogram.mTotal;
+            mMin = histogram.mCount == 0 ? 0 : histogram.mMin;
+            mMax = histogram.mMax;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMinNanos() {
+            return mMin;
+        }
+
+        public long getMaxNanos() {
+            return mMax;
+        }
+
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotal / mCount;
+        }
+
+        /**
+         * Gets the value below or at which the given share of the recorded values lies
+         *
+         * @param percentile share from 0 to 100
+         * @return the largest value of the bucket reaching the share, at most the maximum, 0 if
+         * nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mCount == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen < rank) continue;
+                // the top bucket also holds everything beyond the trackable range
+                if (i == mCounts.length - 1) return mMax;
+                return Math.max(mMin, Math.min(highestInBucket(i), mMax));
+            }
+            return mMax;
+        }
+    }
+
+    /**
+     * @param value value to count, at least 0
+     * @return index of the bucket counting the value
+     */
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @param index index of a bucket
+     * @return largest value counted in the bucket
+     */
+    static long highestInBucket(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @param nanos duration to count, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        mCounts[bucketIndex(Math.min(value, MAX_TRACKABLE_NANOS))]++;
+        mCount++;
+        mTotal += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+}
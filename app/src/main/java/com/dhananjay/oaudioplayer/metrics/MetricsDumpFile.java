@@ -0,0 +1,50 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Log file of {@link MetricsSnapshot}s for analysis of field devices, one line per snapshot. Once
+ * the file grows beyond {@link #MAX_BYTES} it's moved to a ".1" file replacing the previous one,
+ * so at most twice that is kept.
+ *
+ * @author Dhananjay Kumar
+ */
+public class MetricsDumpFile {
+    public static final long MAX_BYTES = 256 * 1024;
+
+    private final File mFile;
+    private final File mRotated;
+
+    /**
+     * @param file file to append to, created if missing
+     */
+    public MetricsDumpFile(File file) {
+        mFile = file;
+        mRotated = new File(file.getPath() + ".1");
+    }
+
+    /**
+     * Appends a line with the snapshot, prefixed by the wall clock time
+     *
+     * @param snapshot    figures to write
+     * @param wallMillis  time from {@link System#currentTimeMillis()} the snapshot was taken at
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void append(MetricsSnapshot snapshot, long wallMillis) throws IOException {
+        if (mFile.length() > MAX_BYTES) {
+            mRotated.delete();
+            if (!mFile.renameTo(mRotated)) throw new IOException("Can't rotate " + mFile);
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(mFile, true), "UTF-8")) {
+            out.write("time=" + wallMillis + " " + snapshot.format() + "\n");
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+}
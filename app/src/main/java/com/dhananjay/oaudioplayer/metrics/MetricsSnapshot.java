@@ -0,0 +1,149 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable copy of the {@link PlaybackMetrics} at one moment
+ *
+ * @author Dhananjay Kumar
+ */
+public final class MetricsSnapshot {
+    /**
+     * Time since the metrics were created
+     */
+    public final long uptimeNanos;
+    /**
+     * From the start request of a playlist to the start of playback
+     */
+    public final LatencyHistogram.Snapshot timeToFirstAudio;
+    /**
+     * From setting the data source of a track to it being prepared
+     */
+    public final LatencyHistogram.Snapshot prepareLatency;
+    /**
+     * Durations of the buffering stalls which ended
+     */
+    public final LatencyHistogram.Snapshot stallDuration;
+    /**
+     * From a transport command to the start of playback
+     */
+    public final LatencyHistogram.Snapshot commandLatency;
+    /**
+     * From triggering a sound clip to its first frame being heard
+     */
+    public final LatencyHistogram.Snapshot clipLatency;
+    /**
+     * From resuming after an idle release to the start of playback
+     */
+    public final LatencyHistogram.Snapshot idleResumeLatency;
+    public final int bufferingCount;
+    /**
+     * Time spent buffering, including a stall still going on
+     */
+    public final long totalStallNanos;
+    public final int notificationCount;
+    /**
+     * Number of player errors keyed by "what/extra", sorted by key
+     */
+    public final Map<String, Integer> errorCounts;
+    /**
+     * Descriptors open in the process when last sampled, -1 if never sampled
+     */
+    public final int openDescriptors;
+    /**
+     * Highest sample of {@link #openDescriptors}
+     */
+    public final int maxOpenDescriptors;
+    /**
+     * Number of times the players were released after a long pause
+     */
+    public final int idleReleaseCount;
+    /**
+     * Memory given back by those releases in total
+     */
+    public final long idleFreedBytes;
+
+    MetricsSnapshot(long uptimeNanos, LatencyHistogram.Snapshot timeToFirstAudio,
+                    LatencyHistogram.Snapshot prepareLatency, LatencyHistogram.Snapshot stallDuration,
+                    LatencyHistogram.Snapshot commandLatency, LatencyHistogram.Snapshot clipLatency,
+                    LatencyHistogram.Snapshot idleResumeLatency, int bufferingCount, long totalStallNanos,
+                    int notificationCount, Map<String, Integer> errorCounts,
+                    int openDescriptors, int maxOpenDescriptors, int idleReleaseCount, long idleFreedBytes) {
+        this.uptimeNanos = uptimeNanos;
+        this.timeToFirstAudio = timeToFirstAudio;
+        this.prepareLatency = prepareLatency;
+        this.stallDuration = stallDuration;
+        this.commandLatency = commandLatency;
+        this.clipLatency = clipLatency;
+        this.idleResumeLatency = idleResumeLatency;
+        this.bufferingCount = bufferingCount;
+        this.totalStallNanos = totalStallNanos;
+        this.notificationCount = notificationCount;
+        this.errorCounts = Collections.unmodifiableMap(new TreeMap<>(errorCounts));
+        this.openDescriptors = openDescriptors;
+        this.maxOpenDescriptors = maxOpenDescriptors;
+        this.idleReleaseCount = idleReleaseCount;
+        this.idleFreedBytes = idleFreedBytes;
+    }
+
+    /**
+     * @return notifications sent per minute since the metrics were created
+     */
+    public float getNotificationsPerMinute() {
+        return uptimeNanos == 0 ? 0 : notificationCount * 60e9f / uptimeNanos;
+    }
+
+    /**
+     * Formats the snapshot as a single line of space separated key=value pairs, latencies as
+     * count/p50/p90/p99/max in milliseconds
+     *
+     * @return line without a line break
+     */
+    public String format() {
+        StringBuilder line = new StringBuilder(256);
+        line.append("uptime_s=").append(uptimeNanos / 1000000000);
+        append(line, "ttfa", timeToFirstAudio);
+        append(line, "prepare", prepareLatency);
+        append(line, "stall", stallDuration);
+        append(line, "command", commandLatency);
+        append(line, "clip", clipLatency);
+        append(line, "idle_resume", idleResumeLatency);
+        line.append(" buffering=").append(bufferingCount);
+        line.append(" stall_ms=").append(totalStallNanos / 1000000);
+        line.append(" notifications=").append(notificationCount);
+        line.append(String.format(Locale.US, " notifications_per_min=%.1f", getNotificationsPerMinute()));
+        line.append(" idle_releases=").append(idleReleaseCount);
+        line.append(" idle_freed_kb=").append(idleFreedBytes / 1024);
+        line.append(" fds=").append(openDescriptors).append('/').append(maxOpenDescriptors);
+        line.append(" errors=");
+        if (errorCounts.isEmpty()) line.append('-');
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : errorCounts.entrySet()) {
+            if (!first) line.append(',');
+            line.append(entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return line.toString();
+    }
+
+    private static void append(StringBuilder line, String name, LatencyHistogram.Snapshot histogram) {
+        line.append(' ').append(name).append('=').append(histogram.getCount());
+        double[] percentiles = {50, 90, 99};
+        for (double percentile : percentiles) {
+            line.append('/').append(toMillis(histogram.getValueAtPercentile(percentile)));
+        }
+        line.append('/').append(toMillis(histogram.getMaxNanos()));
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.US, "%.1f", nanos / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
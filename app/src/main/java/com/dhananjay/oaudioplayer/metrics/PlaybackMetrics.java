@@ -0,0 +1,179 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the performance figures of the playback service: time to first audio, prepare latency,
+ * buffering stalls, command latency, clip latency, notification updates, errors, open descriptors
+ * and releases while idle. Events are reported with {@link System#nanoTime()} timestamps from
+ * whichever thread sees them and read back as an immutable {@link MetricsSnapshot}.
+ * <p>
+ * Memory use is fixed apart from the error counts, which only grow with distinct error codes.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PlaybackMetrics {
+    private final long mCreatedAt;
+
+    private final LatencyHistogram mTimeToFirstAudio = new LatencyHistogram();
+    private final LatencyHistogram mPrepareLatency = new LatencyHistogram();
+    private final LatencyHistogram mStallDuration = new LatencyHistogram();
+    private final LatencyHistogram mCommandLatency = new LatencyHistogram();
+    private final LatencyHistogram mClipLatency = new LatencyHistogram();
+    private final LatencyHistogram mIdleResumeLatency = new LatencyHistogram();
+
+    private long mStartRequestedAt = -1;
+    private long mPrepareStartedAt = -1;
+    private long mBufferingStartedAt = -1;
+    private int mBufferingCount;
+    private long mStallNanos;
+    private int mNotificationCount;
+    private int mOpenDescriptors = -1;
+    private int mMaxOpenDescriptors = -1;
+    private int mIdleReleaseCount;
+    private long mIdleFreedBytes;
+    // Keyed by what in the upper and extra in the lower half
+    private final HashMap<Long, Integer> mErrorCounts = new HashMap<>();
+
+    /**
+     * @param nanos timestamp from {@link System#nanoTime()} the rates are measured from
+     */
+    public PlaybackMetrics(long nanos) {
+        mCreatedAt = nanos;
+    }
+
+    /**
+     * Records that playback of a playlist was requested, the next start completes the time to
+     * first audio
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markStartRequested(long nanos) {
+        mStartRequestedAt = nanos;
+    }
+
+    /**
+     * Records that playback started
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markPlaybackStarted(long nanos) {
+        if (mStartRequestedAt < 0) return;
+        mTimeToFirstAudio.record(nanos - mStartRequestedAt);
+        mStartRequestedAt = -1;
+    }
+
+    /**
+     * Records that a track started preparing, replacing a prepare which never finished
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markPrepareStarted(long nanos) {
+        mPrepareStartedAt = nanos;
+    }
+
+    /**
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markPrepared(long nanos) {
+        if (mPrepareStartedAt < 0) return;
+        mPrepareLatency.record(nanos - mPrepareStartedAt);
+        mPrepareStartedAt = -1;
+    }
+
+    /**
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markBufferingStarted(long nanos) {
+        if (mBufferingStartedAt >= 0) return;
+        mBufferingStartedAt = nanos;
+        mBufferingCount++;
+    }
+
+    /**
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markBufferingEnded(long nanos) {
+        if (mBufferingStartedAt < 0) return;
+        long stall = Math.max(0, nanos - mBufferingStartedAt);
+        mStallDuration.record(stall);
+        mStallNanos += stall;
+        mBufferingStartedAt = -1;
+    }
+
+    /**
+     * @param nanos time from a transport command to the start of playback
+     */
+    public synchronized void recordCommandLatency(long nanos) {
+        mCommandLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos time from triggering a sound clip to its first frame being heard
+     */
+    public synchronized void recordClipLatency(long nanos) {
+        mClipLatency.record(nanos);
+    }
+
+    /**
+     * Records that the notification was sent
+     */
+    public synchronized void recordNotification() {
+        mNotificationCount++;
+    }
+
+    /**
+     * @param count descriptors open in the process, from {@link DescriptorGauge#getOpenCount()}
+     */
+    public synchronized void recordOpenDescriptors(int count) {
+        mOpenDescriptors = count;
+        mMaxOpenDescriptors = Math.max(mMaxOpenDescriptors, count);
+    }
+
+    /**
+     * Records that the players were released after a long pause
+     *
+     * @param freedBytes size of the sample buffers and decoded clips given back by the release
+     */
+    public synchronized void recordIdleRelease(long freedBytes) {
+        mIdleReleaseCount++;
+        mIdleFreedBytes += freedBytes;
+    }
+
+    /**
+     * @param nanos time from resuming after an idle release to the start of playback
+     */
+    public synchronized void recordIdleResume(long nanos) {
+        mIdleResumeLatency.record(nanos);
+    }
+
+    /**
+     * @param what  error type as reported by {@link android.media.MediaPlayer.OnErrorListener}
+     * @param extra error detail as reported by {@link android.media.MediaPlayer.OnErrorListener}
+     */
+    public synchronized void recordError(int what, int extra) {
+        Long key = (long) what << 32 | extra & 0xffffffffL;
+        Integer count = mErrorCounts.get(key);
+        mErrorCounts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @param nanos timestamp from {@link System#nanoTime()}, a stall still going on counts up to it
+     * @return copy of the figures collected so far
+     */
+    public synchronized MetricsSnapshot snapshot(long nanos) {
+        long stallNanos = mStallNanos;
+        if (mBufferingStartedAt >= 0) stallNanos += Math.max(0, nanos - mBufferingStartedAt);
+        HashMap<String, Integer> errors = new HashMap<>(mErrorCounts.size() * 2);
+        for (Map.Entry<Long, Integer> entry : mErrorCounts.entrySet()) {
+            long key = entry.getKey();
+            errors.put((int) (key >> 32) + "/" + (int) key, entry.getValue());
+        }
+        return new MetricsSnapshot(Math.max(0, nanos - mCreatedAt), mTimeToFirstAudio.snapshot(),
+                mPrepareLatency.snapshot(), mStallDuration.snapshot(), mCommandLatency.snapshot(),
+                mClipLatency.snapshot(), mIdleResumeLatency.snapshot(), mBufferingCount, stallNanos,
+                mNotificationCount, errors, mOpenDescriptors, mMaxOpenDescriptors, mIdleReleaseCount,
+                mIdleFreedBytes);
+    }
+}
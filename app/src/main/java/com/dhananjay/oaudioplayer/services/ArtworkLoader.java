@@ -0,0 +1,242 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads artwork files for the media notification. Images are decoded on a background thread
+ * straight to the square boxes the notification shows them in, center-cropped and in RGB_565, so
+ * only small bitmaps travel to the system UI, and kept in an LRU cache bounded by bytes and keyed
+ * by {@link com.dhananjay.oaudioplayer.model.MediaItem#getImage()}.
+ *
+ * @author Dhananjay Kumar
+ */
+class ArtworkLoader {
+    private static final String TAG = ArtworkLoader.class.getSimpleName();
+    private static final String FILE_SCHEME = "file://";
+
+    /**
+     * Gets notified on the looper thread of the loader once an image finished loading
+     */
+    interface Callback {
+        void onArtworkLoaded(String image);
+    }
+
+    /**
+     * An image decoded for both notification layouts
+     */
+    static final class Artwork {
+        /**
+         * Bitmap for the expanded notification
+         */
+        final Bitmap large;
+        /**
+         * Bitmap for the collapsed notification
+         */
+        final Bitmap small;
+
+        Artwork(Bitmap large, Bitmap small) {
+            this.large = large;
+            this.small = small;
+        }
+    }
+
+    private final int mTargetSize;
+    private final int mSmallSize;
+    private final Callback mCallback;
+    private final LruCache<String, Artwork> mCache;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler;
+
+    // Accessed on the looper thread only
+    private final HashSet<String> mLoading = new HashSet<>();
+    private final HashSet<String> mFailed = new HashSet<>();
+    // Image of the last get, asked again for every state shown with it
+    private String mRequested;
+
+    private volatile int mHitCount;
+    private volatile int mMissCount;
+    private volatile int mDecodeCount;
+    private volatile long mDecodeNanos;
+
+    /**
+     * @param targetSize side in pixels of the large bitmaps
+     * @param smallSize  side in pixels of the small bitmaps
+     * @param maxBytes   byte budget of the cache
+     * @param looper     thread the loader is used on and the callback is invoked on
+     * @param callback   notified when a requested image is ready
+     */
+    ArtworkLoader(int targetSize, int smallSize, int maxBytes, Looper looper, Callback callback) {
+        mTargetSize = targetSize;
+        mSmallSize = smallSize;
+        mCallback = callback;
+        mHandler = new Handler(looper);
+        mCache = new LruCache<String, Artwork>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Artwork value) {
+                return value.large.getByteCount() + value.small.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Checks whether an image name refers to a file rather than a drawable resource
+     *
+     * @param image value of {@link com.dhananjay.oaudioplayer.model.MediaItem#getImage()}
+     * @return true for absolute paths and file URIs
+     */
+    static boolean isFile(String image) {
+        return image != null && (image.startsWith("/") || image.startsWith(FILE_SCHEME));
+    }
+
+    /**
+     * Gets a cached image or starts loading it. Must be called on the looper thread. Only the first
+     * of consecutive calls for the same image counts towards the hit rate.
+     *
+     * @param image file path or URI of the image
+     * @return the artwork or null while it's loading or if it can't be decoded
+     */
+    Artwork get(String image) {
+        Artwork artwork = mCache.get(image);
+        boolean counted = !image.equals(mRequested);
+        mRequested = image;
+        if (artwork != null) {
+            if (counted) mHitCount++;
+            return artwork;
+        }
+        if (counted) mMissCount++;
+        load(image);
+        return null;
+    }
+
+    /**
+     * Gets a cached image without loading it or counting towards the hit rate
+     *
+     * @param image file path or URI of the image
+     * @return the artwork or null if it isn't cached
+     */
+    Artwork peek(String image) {
+        return mCache.get(image);
+    }
+
+    /**
+     * Starts loading an image which will be needed soon, e.g. for the next track. Must be called on
+     * the looper thread.
+     *
+     * @param image file path or URI of the image
+     */
+    void prefetch(String image) {
+        if (isFile(image) && mCache.get(image) == null) load(image);
+    }
+
+    void shutdown() {
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacksAndMessages(null);
+        mCache.evictAll();
+    }
+
+    /**
+     * Gets the share of images already decoded when {@link #get(String)} first asked for them
+     */
+    float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (float) mHitCount / total;
+    }
+
+    /**
+     * Gets the average time a decode took
+     *
+     * @return milliseconds per decoded image
+     */
+    float getAverageDecodeMs() {
+        int count = mDecodeCount;
+        return count == 0 ? 0 : mDecodeNanos / 1e6f / count;
+    }
+
+    private void load(final String image) {
+        if (mFailed.contains(image) || !mLoading.add(image)) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long start = System.nanoTime();
+                final Artwork artwork = decode(image);
+                mDecodeNanos += System.nanoTime() - start;
+                mDecodeCount++;
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoading.remove(image);
+                        if (artwork == null) {
+                            mFailed.add(image);
+                            return;
+                        }
+                        mCache.put(image, artwork);
+                        mCallback.onArtworkLoaded(image);
+                    }
+                });
+            }
+        });
+    }
+
+    private Artwork decode(String image) {
+        String path = image.startsWith(FILE_SCHEME) ? image.substring(FILE_SCHEME.length()) : image;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Can't decode artwork: " + image);
+            return null;
+        }
+
+        // Largest power of two keeping the shorter side at or above the target, the remaining
+        // factor is applied by a final scale
+        int shorter = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shorter / (sampleSize * 2) >= mTargetSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // half the bytes of ARGB_8888, artwork has no transparency to keep
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) return null;
+
+        Bitmap large = crop(sampled, mTargetSize);
+        Bitmap small = crop(large, mSmallSize);
+        if (large != sampled) sampled.recycle();
+        return new Artwork(large, small);
+    }
+
+    /**
+     * Crops the center square of a bitmap and scales it down to the given side
+     *
+     * @param source bitmap to crop, left as it is
+     * @param size   side in pixels of the result, at most
+     * @return the cropped bitmap, source itself if it's square and small enough already
+     */
+    private static Bitmap crop(Bitmap source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        Matrix matrix = new Matrix();
+        if (side > size) {
+            float scale = (float) size / side;
+            matrix.setScale(scale, scale);
+        }
+        return Bitmap.createBitmap(source, (source.getWidth() - side) / 2, (source.getHeight() - side) / 2,
+                side, side, matrix, true);
+    }
+}
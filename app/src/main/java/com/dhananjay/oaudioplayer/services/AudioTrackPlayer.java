@@ -0,0 +1,291 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.dhananjay.oaudioplayer.audio.AudioTrackSink;
+import com.dhananjay.oaudioplayer.audio.DspSettings;
+import com.dhananjay.oaudioplayer.audio.MediaCodecDecoder;
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.audio.PcmPipeline;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Player built on {@link PcmPipeline} with {@link MediaCodecDecoder} and {@link AudioTrackSink},
+ * offering the part of the {@link android.media.MediaPlayer} API the service uses. Codec and track
+ * are set up on a background thread, the callbacks arrive on the looper passed in.
+ *
+ * @author Dhananjay Kumar
+ */
+class AudioTrackPlayer {
+    private static final String TAG = AudioTrackPlayer.class.getSimpleName();
+    // Size of the AudioTrack buffer, the ring buffer in front of it holds the rest
+    private static final int TRACK_BUFFER_MS = 100;
+
+    interface Listener {
+        void onPrepared(AudioTrackPlayer player);
+
+        /**
+         * The source queued by {@link #setNextAsync(MediaItem, int, float)} started playing
+         */
+        void onTransition(AudioTrackPlayer player);
+
+        void onCompletion(AudioTrackPlayer player);
+
+        void onError(AudioTrackPlayer player, Exception e);
+    }
+
+    private final Handler mHandler;
+    private final DecoderSource mSource;
+    private final int mBufferMs;
+    private final Listener mListener;
+    private final ExecutorService mPrepareExecutor = Executors.newSingleThreadExecutor();
+
+    // Incremented by reset, results of earlier prepares are dropped
+    private volatile int mGeneration;
+    // Incremented by cancelNext and reset, next sources opened for earlier ones are dropped
+    private volatile int mNextGeneration;
+    private PcmPipeline mPipeline;
+    // Ring and track buffers of the pipeline
+    private int mBufferBytes;
+    private int mUnderrunCount;
+    // Applied to every prepared source
+    private DspSettings mDspSettings;
+
+    /**
+     * @param looper   thread the player is used on and the callbacks are invoked on
+     * @param source   decoders of the items, opened on a background thread
+     * @param bufferMs depth of the decode-ahead buffer
+     * @param listener notified about the player state
+     */
+    AudioTrackPlayer(Looper looper, DecoderSource source, int bufferMs, Listener listener) {
+        mHandler = new Handler(looper);
+        mSource = source;
+        mBufferMs = bufferMs;
+        mListener = listener;
+    }
+
+    /**
+     * Starts setting up decoding of the item, {@link Listener#onPrepared(AudioTrackPlayer)} follows
+     * once playback can start
+     *
+     * @param item media-item to play
+     */
+    void prepareAsync(final MediaItem item) {
+        final int generation = mGeneration;
+        mPrepareExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PcmPipeline pipeline = null;
+                int bufferBytes = 0;
+                Exception error = null;
+                try {
+                    PcmDecoder decoder = mSource.open(item);
+                    if (generation != mGeneration) {
+                        decoder.release();
+                        return;
+                    }
+                    AudioTrackSink sink;
+                    try {
+                        sink = new AudioTrackSink(decoder.getSampleRate(), decoder.getChannelCount(),
+                                decoder.getSampleRate() * TRACK_BUFFER_MS / 1000 * decoder.getChannelCount() * 2);
+                    } catch (RuntimeException e) {
+                        decoder.release();
+                        throw e;
+                    }
+                    pipeline = new PcmPipeline(decoder, sink, mBufferMs, createPipelineListener(generation));
+                    bufferBytes = pipeline.getBufferCapacity() * 2 + sink.getBufferBytes();
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+                postPrepared(generation, pipeline, bufferBytes, error);
+            }
+        });
+    }
+
+    /**
+     * Starts opening the source to play after the current one, it's faded in over the end of the
+     * current source or follows it without a gap
+     *
+     * @param item   media-item to play next
+     * @param fadeMs length of the crossfade, 0 for none
+     * @param gain   gain of the item, applied to it alone during the crossfade
+     */
+    void setNextAsync(final MediaItem item, final int fadeMs, final float gain) {
+        final int generation = mGeneration;
+        final int nextGeneration = mNextGeneration;
+        mPrepareExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PcmDecoder decoder;
+                try {
+                    decoder = mSource.open(item);
+                } catch (IOException | RuntimeException e) {
+                    // Only costs the transition, the source is tried again when it becomes current
+                    Log.e(TAG, "setNextAsync", e);
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration || nextGeneration != mNextGeneration || mPipeline == null
+                                || !mPipeline.setNext(decoder, fadeMs, gain)) {
+                            decoder.release();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the source queued after the current one, unless it's already being faded in
+     */
+    void cancelNext() {
+        mNextGeneration++;
+        if (mPipeline != null) mPipeline.clearNext();
+    }
+
+    private void postPrepared(final int generation, final PcmPipeline pipeline, final int bufferBytes,
+                              final Exception error) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    if (pipeline != null) pipeline.release();
+                    return;
+                }
+                if (error != null) {
+                    Log.e(TAG, "prepare", error);
+                    mListener.onError(AudioTrackPlayer.this, error);
+                    return;
+                }
+                mPipeline = pipeline;
+                mBufferBytes = bufferBytes;
+                pipeline.setDsp(mDspSettings);
+                mListener.onPrepared(AudioTrackPlayer.this);
+            }
+        });
+    }
+
+    private PcmPipeline.Listener createPipelineListener(final int generation) {
+        return new PcmPipeline.Listener() {
+            @Override
+            public void onTransition() {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) mListener.onTransition(AudioTrackPlayer.this);
+                    }
+                });
+            }
+
+            @Override
+            public void onCompletion() {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) mListener.onCompletion(AudioTrackPlayer.this);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final IOException e) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) mListener.onError(AudioTrackPlayer.this, e);
+                    }
+                });
+            }
+        };
+    }
+
+    void start() {
+        if (mPipeline == null) throw new IllegalStateException("not prepared");
+        mPipeline.start();
+    }
+
+    void pause() {
+        if (mPipeline == null) throw new IllegalStateException("not prepared");
+        mPipeline.pause();
+    }
+
+    boolean isPlaying() {
+        return mPipeline != null && mPipeline.isPlaying();
+    }
+
+    /**
+     * @return playback position in milliseconds
+     */
+    int getCurrentPosition() {
+        return mPipeline != null ? (int) (mPipeline.getPositionUs() / 1000) : 0;
+    }
+
+    void seekTo(int ms) {
+        if (mPipeline == null) throw new IllegalStateException("not prepared");
+        mPipeline.seekTo(ms * 1000L);
+    }
+
+    void setVolume(float volume) {
+        if (mPipeline != null) mPipeline.setVolume(volume);
+    }
+
+    /**
+     * Sets the gain of the current source, queued sources bring their own
+     *
+     * @param gain gain between 0 and 1
+     */
+    void setGain(float gain) {
+        if (mPipeline != null) mPipeline.setGain(gain);
+    }
+
+    /**
+     * Sets the equalizer, preamp and limiter of the current and all following sources
+     *
+     * @param settings settings to apply, null for none
+     */
+    void setDsp(DspSettings settings) {
+        mDspSettings = settings;
+        if (mPipeline != null) mPipeline.setDsp(settings);
+    }
+
+    /**
+     * Stops playback and drops the current source, a prepare still running is abandoned
+     */
+    void reset() {
+        mGeneration++;
+        mNextGeneration++;
+        if (mPipeline != null) {
+            mUnderrunCount += mPipeline.getUnderrunCount();
+            mPipeline.release();
+            mPipeline = null;
+            mBufferBytes = 0;
+        }
+    }
+
+    void release() {
+        reset();
+        mPrepareExecutor.shutdown();
+    }
+
+    /**
+     * @return size of the sample buffers of the prepared source, 0 if none is prepared
+     */
+    int getBufferBytes() {
+        return mBufferBytes;
+    }
+
+    /**
+     * @return number of buffer underruns of all sources played so far
+     */
+    int getUnderrunCount() {
+        return mUnderrunCount + (mPipeline != null ? mPipeline.getUnderrunCount() : 0);
+    }
+}
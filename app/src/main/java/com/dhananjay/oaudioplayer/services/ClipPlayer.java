@@ -0,0 +1,215 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.dhananjay.oaudioplayer.audio.AudioTrackSink;
+import com.dhananjay.oaudioplayer.audio.ClipBank;
+import com.dhananjay.oaudioplayer.audio.ClipMixer;
+import com.dhananjay.oaudioplayer.audio.MediaCodecDecoder;
+import com.dhananjay.oaudioplayer.metrics.PlaybackMetrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plays short sound clips over the music. Clips are decoded once into a {@link ClipBank}, and a
+ * trigger only queues a voice for the {@link ClipMixer}, whose output thread feeds an AudioTrack
+ * of its own. The track keeps running for a while after the last clip ended, so clips following
+ * each other don't wait for it to start again.
+ *
+ * @author Dhananjay Kumar
+ */
+class ClipPlayer {
+    static final int SAMPLE_RATE = 48000;
+    private static final int MAX_CLIPS = 64;
+    // Frames mixed and written at once, 5 ms
+    private static final int CHUNK_FRAMES = 240;
+    // Requested track buffer, the device minimum is usually larger
+    private static final int TRACK_BUFFER_FRAMES = 2 * CHUNK_FRAMES;
+    // The output stops this long after the last clip ended
+    private static final long IDLE_TIMEOUT_MS = 3000;
+
+    private final Resources mResources;
+    private final ClipBank mBank;
+    private final ClipMixer mMixer;
+    private final AudioTrackSink mSink;
+    private final Object mLock = new Object();
+    private volatile boolean mReleased;
+
+    /**
+     * @param resources   resources the clips are loaded from
+     * @param voices      number of clips playing at once
+     * @param budgetBytes memory available for decoded clips
+     * @param metrics     receives the trigger latency of every clip played
+     */
+    ClipPlayer(Resources resources, int voices, long budgetBytes, final PlaybackMetrics metrics) {
+        mResources = resources;
+        mBank = new ClipBank(SAMPLE_RATE, MAX_CLIPS, budgetBytes);
+        mMixer = new ClipMixer(mBank, voices, CHUNK_FRAMES, new ClipMixer.Listener() {
+            @Override
+            public void onVoiceStarted(long latencyNanos) {
+                metrics.recordClipLatency(latencyNanos);
+            }
+        });
+        // Created up front, so the first trigger doesn't wait for it
+        mSink = new AudioTrackSink(SAMPLE_RATE, ClipMixer.OUTPUT_CHANNELS,
+                TRACK_BUFFER_FRAMES * ClipMixer.OUTPUT_CHANNELS * 2);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                try {
+                    runOutput();
+                } finally {
+                    mSink.release();
+                }
+            }
+        }, ClipPlayer.class.getSimpleName()).start();
+    }
+
+    /**
+     * Decodes a raw resource into the clip bank, on the calling thread
+     *
+     * @param rawId raw resource stored uncompressed, 48 kHz mono or stereo
+     * @return id of the clip, or -1 if it doesn't fit the remaining memory budget
+     * @throws IOException if the resource can't be opened or decoded
+     */
+    int load(int rawId) throws IOException {
+        MediaCodecDecoder decoder;
+        try (AssetFileDescriptor afd = mResources.openRawResourceFd(rawId)) {
+            decoder = MediaCodecDecoder.open(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+        } catch (Resources.NotFoundException e) {
+            // compressed resources have no descriptor
+            throw new IOException("Can't open raw resource " + rawId, e);
+        }
+        try {
+            int channels = decoder.getChannelCount();
+            if (decoder.getSampleRate() != SAMPLE_RATE || channels > 2) {
+                throw new IOException("Unsupported clip format: " + decoder.getSampleRate() + " Hz, "
+                        + channels + " channels");
+            }
+            // Never more than the bank can still take, in whole stereo frames so the decode length
+            // is a multiple of the channel count
+            int limit = (int) Math.min(mBank.getRemainingBytes() / 4 * 2, Integer.MAX_VALUE - 8);
+            short[] samples = new short[Math.min(limit, SAMPLE_RATE * 2)];
+            int length = 0;
+            while (true) {
+                if (length == samples.length) {
+                    if (length >= limit) {
+                        // a clip filling the budget exactly still fits, if the stream ends here
+                        if (!isAtEnd(decoder, channels)) return -1;
+                        break;
+                    }
+                    samples = Arrays.copyOf(samples, (int) Math.min(limit, samples.length * 2L));
+                }
+                int count = decoder.decode(samples, length, samples.length - length);
+                if (count < 0) break;
+                length += count;
+            }
+            return mBank.add(samples, length, channels);
+        } finally {
+            decoder.release();
+        }
+    }
+
+    /**
+     * Decodes until the decoder either ends or produces another frame
+     *
+     * @param decoder  decoder of the clip
+     * @param channels channel count of the clip
+     * @return true if the stream ended without further samples
+     * @throws IOException if the resource can't be decoded
+     */
+    private static boolean isAtEnd(MediaCodecDecoder decoder, int channels) throws IOException {
+        short[] frame = new short[channels];
+        int count;
+        do {
+            // 0 while no output is ready yet
+            count = decoder.decode(frame, 0, channels);
+        } while (count == 0);
+        return count < 0;
+    }
+
+    /**
+     * Starts a clip with the next output chunk
+     *
+     * @param clip   id from {@link #load(int)}
+     * @param volume gain of the clip, 1 for unchanged
+     * @return false if the trigger was dropped because too many are waiting
+     */
+    boolean play(int clip, float volume) {
+        boolean queued = mMixer.trigger(clip, volume, System.nanoTime());
+        synchronized (mLock) {
+            mLock.notify();
+        }
+        return queued;
+    }
+
+    /**
+     * @return size of the decoded clips and the track buffer, given back by {@link #release()}
+     */
+    long getBufferBytes() {
+        return mBank.getUsedBytes() + mSink.getBufferBytes();
+    }
+
+    /**
+     * Stops the output, clips can't be played afterwards
+     */
+    void release() {
+        mReleased = true;
+        synchronized (mLock) {
+            mLock.notify();
+        }
+    }
+
+    /**
+     * Output thread: mixes while clips play and sleeps in between
+     */
+    private void runOutput() {
+        short[] chunk = new short[CHUNK_FRAMES * ClipMixer.OUTPUT_CHANNELS];
+        while (awaitTrigger()) {
+            mSink.play();
+            long written = 0;
+            long idleSince = -1;
+            while (!mReleased) {
+                // the first frame of the chunk is heard once the frames queued before it played
+                long queued = written - mSink.getPlayedFrames();
+                long outputNanos = System.nanoTime() + queued * 1000000000L / SAMPLE_RATE;
+                if (mMixer.mix(chunk, CHUNK_FRAMES, outputNanos) > 0 || !mMixer.isIdle()) {
+                    idleSince = -1;
+                } else if (idleSince < 0) {
+                    idleSince = SystemClock.uptimeMillis();
+                } else if (SystemClock.uptimeMillis() - idleSince > IDLE_TIMEOUT_MS) {
+                    break;
+                }
+                mSink.write(chunk, 0, chunk.length);
+                written += CHUNK_FRAMES;
+            }
+            mSink.pause();
+            // only silence is left in the track
+            mSink.flush();
+        }
+        mMixer.stopAll();
+    }
+
+    /**
+     * Blocks until a clip is triggered
+     *
+     * @return false once the player was released
+     */
+    private boolean awaitTrigger() {
+        synchronized (mLock) {
+            while (!mReleased && mMixer.isIdle()) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return !mReleased;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.dhananjay.oaudioplayer.services;
+
+/**
+ * Measures the time from a transport command (start, next, previous, play) to the moment playback
+ * actually starts. Commands issued before playback started are one burst, e.g. several quick taps
+ * on next, and are measured from the first of them, which is the delay the user notices.
+ *
+ * @author Dhananjay Kumar
+ */
+public class CommandLatencyMeter {
+    private long mIssuedAt = -1;
+
+    private long mLastNanos;
+    private long mMaxNanos;
+    private long mTotalNanos;
+    private int mSampleCount;
+
+    /**
+     * Records that a command which should end in playback was issued
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     */
+    public synchronized void markIssued(long nanos) {
+        if (mIssuedAt < 0) mIssuedAt = nanos;
+    }
+
+    /**
+     * Records that playback started
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     * @return true if this call completed a latency sample
+     */
+    public synchronized boolean markStarted(long nanos) {
+        if (mIssuedAt < 0) return false;
+        mLastNanos = Math.max(0, nanos - mIssuedAt);
+        mMaxNanos = Math.max(mMaxNanos, mLastNanos);
+        mTotalNanos += mLastNanos;
+        mSampleCount++;
+        mIssuedAt = -1;
+        return true;
+    }
+
+    /**
+     * Drops an unserved command, e.g. when the user paused before playback started
+     */
+    public synchronized void cancel() {
+        mIssuedAt = -1;
+    }
+
+    public synchronized long getLastNanos() {
+        return mLastNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    public synchronized long getAverageNanos() {
+        return mSampleCount == 0 ? 0 : mTotalNanos / mSampleCount;
+    }
+
+    public synchronized int getSampleCount() {
+        return mSampleCount;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.IOException;
+
+/**
+ * Decoder access to the sources of media items, for the scanners analyzing their audio
+ *
+ * @author Dhananjay Kumar
+ */
+interface DecoderSource {
+    /**
+     * @return decoder positioned at the start of the item
+     * @throws IOException if the source can't be opened or decoded
+     */
+    PcmDecoder open(MediaItem item) throws IOException;
+}
@@ -0,0 +1,158 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.model.LoudnessCache;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the integrated loudness of playlist items into a {@link LoudnessCache} and derives the
+ * gain normalizing them to a common level. A scan is a fork-join job splitting the playlist down to
+ * single tracks, so idle workers steal the remaining halves of busy ones. Unchanged items are
+ * only looked up, and the cache is saved once the job completes.
+ * <p>
+ * Tracks are decoded by a {@link TrackAnalyzer} shared with the {@link WaveformScanner}, which
+ * computes the peaks of the tracks in its window in the same pass. Tracks the waveform scan is
+ * decoding are left to it.
+ *
+ * @author Dhananjay Kumar
+ */
+class LoudnessScanner {
+    /**
+     * Level tracks are normalized to, the ReplayGain 2.0 reference
+     */
+    static final float TARGET_LUFS = -18;
+
+    private final TrackAnalyzer mAnalyzer;
+    private final ForkJoinPool mPool;
+
+    // Incremented by every scan, tracks of a replaced scan which didn't start yet are skipped
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicInteger mMeasuredCount = new AtomicInteger();
+    private final AtomicInteger mSkippedCount = new AtomicInteger();
+    private volatile boolean mShutdown;
+
+    /**
+     * @param analyzer    decoder of the tracks filling the cache, saved after every scan
+     * @param parallelism number of workers
+     */
+    LoudnessScanner(TrackAnalyzer analyzer, int parallelism) {
+        mAnalyzer = analyzer;
+        mPool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                };
+                thread.setName("LoudnessScanner-" + thread.getPoolIndex());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }, null, false);
+    }
+
+    /**
+     * Starts measuring the items, a scan still running stops after the tracks it already started
+     *
+     * @param items items to scan, must be safe to read from several threads
+     * @param done  run on a worker once the whole list was scanned and the cache saved, may be null
+     */
+    void scan(final List<MediaItem> items, final Runnable done) {
+        final int generation = mGeneration.incrementAndGet();
+        mPool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                new ScanTask(items, 0, items.size(), generation).invoke();
+                if (mGeneration.get() != generation || mShutdown) return;
+                try {
+                    mAnalyzer.saveLoudness();
+                } catch (IOException e) {
+                    // the cache stays dirty, the next scan saves it again
+                }
+                if (done != null) done.run();
+            }
+        });
+    }
+
+    /**
+     * Measures a range of the items, split in halves down to single items
+     */
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<MediaItem> mItems;
+        private final int mFrom;
+        private final int mTo;
+        private final int mGen;
+
+        ScanTask(List<MediaItem> items, int from, int to, int generation) {
+            mItems = items;
+            mFrom = from;
+            mTo = to;
+            mGen = generation;
+        }
+
+        @Override
+        protected void compute() {
+            if (mGeneration.get() != mGen || mShutdown || mFrom >= mTo) return;
+            if (mTo - mFrom == 1) {
+                scanItem(mItems.get(mFrom), mAnalyzer.isPeakWanted(mFrom, mItems.size()));
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new ScanTask(mItems, mFrom, middle, mGen), new ScanTask(mItems, middle, mTo, mGen));
+        }
+    }
+
+    private void scanItem(MediaItem item, boolean peaks) {
+        try {
+            int produced = mAnalyzer.analyze(item, peaks);
+            if (produced == 0) {
+                mSkippedCount.incrementAndGet();
+            } else if (produced > 0 && (produced & TrackAnalyzer.LOUDNESS) != 0) {
+                mMeasuredCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            // unreadable sources are tried again by the next scan
+        }
+    }
+
+    /**
+     * Gets the volume bringing an item to {@link #TARGET_LUFS}. Players can only attenuate, so
+     * tracks quieter than the target stay as they are.
+     *
+     * @param item media-item to look up, may be null
+     * @return gain between 0 and 1, 1 if the item wasn't measured yet
+     */
+    float getGain(MediaItem item) {
+        if (item == null) return 1;
+        float loudness = mAnalyzer.getLoudness(item);
+        if (Float.isNaN(loudness) || Float.isInfinite(loudness)) return 1;
+        return (float) Math.min(1, Math.pow(10, (TARGET_LUFS - loudness) / 20));
+    }
+
+    int getMeasuredCount() {
+        return mMeasuredCount.get();
+    }
+
+    int getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    /**
+     * @return frames decoded and measured so far, over all tracks
+     */
+    long getMeasuredFrames() {
+        return mAnalyzer.getMeasuredFrames();
+    }
+
+    void shutdown() {
+        mShutdown = true;
+        mAnalyzer.shutdown();
+        mPool.shutdown();
+    }
+}
@@ -1,34 +1,68 @@
 package com.dhananjay.oaudioplayer.services;
 
 
-import android.app.Notification;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.AssetFileDescriptor;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.NotificationManagerCompat;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.util.Log;
-import android.view.View;
-import android.widget.RemoteViews;
 
 import com.dhananjay.oaudioplayer.R;
+import com.dhananjay.oaudioplayer.audio.DspSettings;
+import com.dhananjay.oaudioplayer.audio.OggPageIndex;
+import com.dhananjay.oaudioplayer.audio.WaveformStore;
+import com.dhananjay.oaudioplayer.core.NotificationState;
+import com.dhananjay.oaudioplayer.core.PlaybackController;
+import com.dhananjay.oaudioplayer.core.PlaybackState;
+import com.dhananjay.oaudioplayer.core.StatePublisher;
+import com.dhananjay.oaudioplayer.library.TitleIndex;
+import com.dhananjay.oaudioplayer.metrics.DescriptorGauge;
+import com.dhananjay.oaudioplayer.metrics.MetricsDumpFile;
+import com.dhananjay.oaudioplayer.metrics.MetricsSnapshot;
+import com.dhananjay.oaudioplayer.metrics.PlaybackMetrics;
+import com.dhananjay.oaudioplayer.model.LoudnessCache;
 import com.dhananjay.oaudioplayer.model.MediaItem;
-
+import com.dhananjay.oaudioplayer.model.MetadataCache;
+import com.dhananjay.oaudioplayer.model.PagedMediaList;
+import com.dhananjay.oaudioplayer.model.Playlist;
+import com.dhananjay.oaudioplayer.model.PlaylistFile;
+import com.dhananjay.oaudioplayer.model.PlaylistSource;
+import com.dhananjay.oaudioplayer.model.TrackMetadata;
+import com.dhananjay.oaudioplayer.source.BlockCache;
+
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * {@link Service} class to perform media play with notification in status bar
+ * <p>
+ * The players and all playback state belong to a dedicated command thread. Buttons, audio focus,
+ * phone state and the public methods only queue typed commands for it, and the main thread is
+ * left with rendering the notification.
+ * <p>
+ * What the commands do is decided by {@link PlaybackController}, the service drives the players
+ * for it and shows, persists and measures the outcome.
  *
  * @author Dhananjay Kumar
  */
@@ -43,20 +77,207 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
     private static final String ACTION_PLAY = TAG + ".ACTION_PLAY";
     private static final String ACTION_NEXT = TAG + ".ACTION_NEXT";
 
-    private static final String EXTRA_PLAYLIST = "extraPlaylist";
+    /**
+     * Plays through {@link MediaPlayer}, with gapless transitions
+     */
+    public static final int ENGINE_MEDIA_PLAYER = 0;
+    /**
+     * Decodes with MediaCodec into a ring buffer played through an AudioTrack, with gapless
+     * transitions or crossfades
+     */
+    public static final int ENGINE_AUDIO_TRACK = 1;
+    /**
+     * Longest crossfade accepted by {@link #setCrossfadeMs(int)}
+     */
+    public static final int MAX_CROSSFADE_MS = 12000;
+
+    private static final String EXTRA_PLAYLIST_HANDLE = "extraPlaylistHandle";
+    private static final String EXTRA_ENGINE = "extraEngine";
+    private static final String EXTRA_BUFFER_MS = "extraBufferMs";
+    private static final int DEFAULT_BUFFER_MS = 500;
+
+    private static final String PLAYLIST_FILE_PREFIX = "playlist-";
+    private static final String PLAYLIST_FILE_SUFFIX = ".bin";
+    private static final String JOURNAL_FILE = "playback.journal";
+    private static final long JOURNAL_INTERVAL_MS = 5000;
+    private static final int ARTWORK_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final String METADATA_CACHE_FILE = "metadata.cache";
+    private static final int METADATA_THREADS = 2;
+    private static final String WAVEFORM_DIR = "waveforms";
+    private static final long WAVEFORM_STORE_BYTES = 32 * 1024 * 1024;
+    // Items scanned from the one playing, scanned again once playback moved half of it
+    private static final int WAVEFORM_WINDOW = 200;
+    private static final String LOUDNESS_CACHE_FILE = "loudness.cache";
+    // Blocks of remote sources, kept in the cache directory the system may clear
+    private static final String STREAM_CACHE_DIR = "streams";
+    private static final int STREAM_BLOCK_SIZE = 256 * 1024;
+    private static final long STREAM_CACHE_BYTES = 128 * 1024 * 1024;
+    // Volume while another app holds the focus and allows ducking
+    private static final float DUCK_VOLUME = 0.1f;
+    // Tracks analyzed at once by the waveform and loudness scans, a core is left to playback
+    private static final int ANALYSIS_DECODERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // Peaks are decoded at low priority, on up to half of the cores
+    private static final int WAVEFORM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final String METRICS_FILE = "metrics.log";
+    private static final long METRICS_DUMP_INTERVAL_MS = 60000;
+    private static final int CLIP_VOICES = 8;
+    private static final long CLIP_BUDGET_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_IDLE_RELEASE_MINUTES = 10;
+
+    // Commands of the player thread, arguments travel in Message.arg1 or Message.obj
+    private static final int CMD_INIT = 1;
+    private static final int CMD_START = 2;
+    private static final int CMD_RESTORE = 3;
+    private static final int CMD_QUIT = 4;
+    private static final int CMD_PREV = 5;
+    private static final int CMD_NEXT = 6;
+    private static final int CMD_PLAY_PAUSE = 7;
+    private static final int CMD_PAUSE = 8;
+    private static final int CMD_PREPARE = 9;
+    private static final int CMD_SEEK = 10;
+    private static final int CMD_SHUFFLE = 11;
+    private static final int CMD_REPEAT = 12;
+    private static final int CMD_GAPLESS = 13;
+    private static final int CMD_FOCUS = 14;
+    private static final int CMD_CALL_STATE = 15;
+    private static final int CMD_RELEASE = 16;
+    private static final int CMD_WARM_UP = 17;
+    private static final int CMD_DSP = 18;
+
+    private HandlerThread mCommandThread;
+    private Handler mCommandHandler;
+    private final CommandLatencyMeter mCommandLatency = new CommandLatencyMeter();
+    // Navigation commands which didn't need a prepare of their own
+    private volatile int mCoalescedCount;
 
     private MediaPlayer mMediaPlayer;
-    private boolean mIsBuffering = true;
-    private boolean mIsReady = false;
 
-    private Notification mNotification;
-    private ArrayList<RemoteViews> mRemoteViews;
+    // Second player holding the upcoming track for gapless transitions
+    private MediaPlayer mNextPlayer;
+    private MediaItem mNextItem;
+    private boolean mIsNextArmed = false;
+    private volatile boolean mGaplessEnabled = true;
+    // Overlap of consecutive tracks on the AudioTrack engine, 0 for none
+    private volatile int mCrossfadeMs;
+    // Equalizer, preamp and limiter of the AudioTrack engine, null for none
+    private volatile DspSettings mDspSettings;
+    private final TransitionGapMeter mGapMeter = new TransitionGapMeter();
+
+    // Short clips played over the music, created with the first loaded clip and released with the
+    // players when idle, guarded by this
+    private volatile ClipPlayer mClipPlayer;
+    // Resources of the loaded clips by id, decoded again in the same order after an idle release
+    private final List<Integer> mClipResources = new ArrayList<>();
+    private final Runnable mClipReload = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MediaService.this) {
+                if (mClipResources.isEmpty()) return;
+                try {
+                    openClipPlayer();
+                } catch (IOException e) {
+                    Log.e(TAG, "reloadClips", e);
+                }
+            }
+        }
+    };
+
+    // Replaces mMediaPlayer for playback when the AudioTrack engine is selected, mMediaPlayer then
+    // only marks whether the players are open
+    private volatile AudioTrackPlayer mTrackPlayer;
+
+    private NotificationRenderer mNotificationRenderer;
+    private ArtworkLoader mArtworkLoader;
+
+    private PlaybackController mController;
+
+    // Minutes paused before the players are released, 0 to keep them
+    private volatile int mIdleReleaseMinutes = DEFAULT_IDLE_RELEASE_MINUTES;
+    // true while the players are released by mIdleRelease rather than a focus loss
+    private boolean mIdleReleased;
+    // Held from the first start until lost for good or given up, also while paused
+    private boolean mHasAudioFocus;
+    // Resume after an idle release waiting for playback to start, -1 if none
+    private long mIdleResumeStartedAt = -1;
+    private final Runnable mIdleRelease = new Runnable() {
+        @Override
+        public void run() {
+            onIdleTimeout();
+        }
+    };
+
+    // Ticks of the state publisher, run on the player thread
+    private final Runnable mStateTick = new Runnable() {
+        @Override
+        public void run() {
+            mStatePublisher.tick();
+        }
+    };
+
+    /**
+     * Pushes the playback state to bound clients, published and ticked on the player thread
+     */
+    private final StatePublisher mStatePublisher = new StatePublisher(new StatePublisher.Host() {
+        @Override
+        public void scheduleTick(long delayMs) {
+            mCommandHandler.removeCallbacks(mStateTick);
+            mCommandHandler.postDelayed(mStateTick, delayMs);
+        }
+
+        @Override
+        public void cancelTick() {
+            mCommandHandler.removeCallbacks(mStateTick);
+        }
+
+        @Override
+        public PlaybackState sample() {
+            return samplePlaybackState();
+        }
+    });
+    private long mPlaylistId;
+
+    private PlaybackJournal mJournal;
+    private final Runnable mJournalTick = new Runnable() {
+        @Override
+        public void run() {
+            // posted only while playing, paused states are journaled when pausing
+            journalState(false);
+            mCommandHandler.postDelayed(this, JOURNAL_INTERVAL_MS);
+        }
+    };
+
+    private final PlaybackMetrics mMetrics = new PlaybackMetrics(System.nanoTime());
+    private MetricsDumpFile mMetricsDump;
+    private final Runnable mMetricsTick = new Runnable() {
+        @Override
+        public void run() {
+            dumpMetrics();
+            mCommandHandler.postDelayed(this, METRICS_DUMP_INTERVAL_MS);
+        }
+    };
 
-    private ArrayList<MediaItem> mPlaylist;
-    private MediaItem mCurrent;
+    private ResourceResolver mResolver;
+    // Created on the player thread, which opens the stream cache
+    private volatile MediaSources mSources;
+    private ScheduledExecutorService mBackgroundExecutor;
+    private Future<?> mResolveTask;
+    // Title search over the current playlist, null until built in the background
+    private volatile TitleIndex mTitleIndex;
+    private volatile List<MediaItem> mIndexedPlaylist;
+    // Created on the player thread, which loads the cache
+    private volatile MetadataScanner mMetadataScanner;
+    private volatile WaveformScanner mWaveformScanner;
+    // Items and first index of the last waveform scan, player thread only
+    private List<MediaItem> mWaveformItems;
+    private int mWaveformFirst;
+    private volatile LoudnessScanner mLoudnessScanner;
+    // Normalization gain of the current item and the ducking factor, the players get their product
+    private float mTrackGain = 1;
+    private float mDuckVolume = 1;
+
+    // Ogg page indexes of played tracks keyed by raw resource id
+    private final ConcurrentHashMap<Integer, OggPageIndex> mSeekIndexes = new ConcurrentHashMap<>();
 
-    private String mTrackImageUrl;
-    private int mTrackImageId;
     private AudioManager audioManager;
     //Handle incoming phone calls
     private boolean ongoingCall = false;
@@ -65,11 +286,105 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
 
     private IBinder mBinder = new MyBinder();
 
+    private final Handler.Callback mCommands = new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_INIT:
+                    // Players deliver their callbacks to the looper of the thread creating them
+                    mMediaPlayer = new MediaPlayer();
+                    File packageFile = new File(getPackageCodePath());
+                    mSources = new MediaSources(MediaService.this, mResolver, new BlockCache(
+                            new File(getCacheDir(), STREAM_CACHE_DIR), STREAM_BLOCK_SIZE, STREAM_CACHE_BYTES),
+                            packageFile);
+                    ResourceMetadataProbe probe = new ResourceMetadataProbe(mSources, packageFile);
+                    mMetadataScanner = new MetadataScanner(
+                            MetadataCache.load(new File(getFilesDir(), METADATA_CACHE_FILE)), probe,
+                            METADATA_THREADS);
+                    TrackAnalyzer analyzer = new TrackAnalyzer(
+                            LoudnessCache.load(new File(getFilesDir(), LOUDNESS_CACHE_FILE)),
+                            new WaveformStore(new File(getFilesDir(), WAVEFORM_DIR), WAVEFORM_STORE_BYTES), probe, probe,
+                            ANALYSIS_DECODERS);
+                    mWaveformScanner = new WaveformScanner(analyzer, WAVEFORM_THREADS);
+                    mLoudnessScanner = new LoudnessScanner(analyzer, ANALYSIS_DECODERS);
+                    break;
+                case CMD_START:
+                    selectEngine(msg.arg1, msg.arg2);
+                    onCommandStart((PlaylistSource) msg.obj, System.currentTimeMillis(), null);
+                    break;
+                case CMD_RESTORE:
+                    if (!restoreFromJournal()) stopSelf();
+                    break;
+                case CMD_QUIT:
+                    onCommandQuit();
+                    break;
+                case CMD_PREV:
+                    onCommandPrev();
+                    break;
+                case CMD_NEXT:
+                    onCommandNext();
+                    break;
+                case CMD_PLAY_PAUSE:
+                    onCommandPlayPause();
+                    break;
+                case CMD_PAUSE:
+                    onCommandPause();
+                    break;
+                case CMD_PREPARE:
+                    mController.prepareCurrent();
+                    break;
+                case CMD_SEEK:
+                    onCommandSeek(msg.arg1);
+                    break;
+                case CMD_SHUFFLE:
+                    if (mController.getPlaylist() == null) break;
+                    mController.getPlaylist().setShuffle(msg.arg1 != 0);
+                    onPlayOrderChanged();
+                    break;
+                case CMD_REPEAT:
+                    if (mController.getPlaylist() == null) break;
+                    mController.getPlaylist().setRepeatMode(msg.arg1);
+                    onPlayOrderChanged();
+                    break;
+                case CMD_GAPLESS:
+                    onCommandGaplessChanged();
+                    break;
+                case CMD_FOCUS:
+                    onCommandFocusChange(msg.arg1);
+                    break;
+                case CMD_CALL_STATE:
+                    onCommandCallState(msg.arg1);
+                    break;
+                case CMD_RELEASE:
+                    onCommandRelease();
+                    break;
+                case CMD_DSP:
+                    if (mTrackPlayer != null) mTrackPlayer.setDsp(mDspSettings);
+                    break;
+                case CMD_WARM_UP:
+                    // a client about to show the player, only worth it after an idle release
+                    if (mIdleReleased) mController.warmUp();
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    };
+
     private MediaPlayer.OnCompletionListener mMediaCompleted = new MediaPlayer.OnCompletionListener() {
         @Override
         public void onCompletion(MediaPlayer mp) {
             Log.d(TAG, "MediaPlayer.onCompletion");
-            onCommandQuit();
+            if (mp != mMediaPlayer) return;
+
+            if (mIsNextArmed) {
+                // The next player has already taken over, only the roles need to be swapped
+                if (mGapMeter.markCompleted(System.nanoTime())) logTransitionGap();
+                swapToNextPlayer();
+            } else {
+                onPlayerCompleted();
+            }
         }
     };
 
@@ -77,15 +392,22 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
         @Override
         public boolean onInfo(MediaPlayer mp, int what, int extra) {
             Log.d(TAG, "MediaPlayer.onInfo: " + what + ", " + extra);
+            if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT) {
+                if (mGapMeter.markStarted(System.nanoTime())) logTransitionGap();
+                return true;
+            }
+            // Buffering of the standby player is not visible to the user
+            if (mp != mMediaPlayer) return true;
+
             switch (what) {
                 case MediaPlayer.MEDIA_INFO_BUFFERING_START:
-                    mIsBuffering = true;
-                    updateRemoteViews();
+                    mMetrics.markBufferingStarted(System.nanoTime());
+                    mController.setBuffering(true);
                     break;
 
                 case MediaPlayer.MEDIA_INFO_BUFFERING_END:
-                    mIsBuffering = false;
-                    updateRemoteViews();
+                    mMetrics.markBufferingEnded(System.nanoTime());
+                    mController.setBuffering(false);
                     break;
             }
 
@@ -97,7 +419,13 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
         @Override
         public boolean onError(MediaPlayer mp, int what, int extra) {
             Log.e(TAG, "MediaPlayer.onError: " + what + ", " + extra);
-            onCommandQuit();
+            mMetrics.recordError(what, extra);
+            if (mp == mNextPlayer) {
+                // Losing the pre-buffered track only costs the gapless transition
+                cancelNext();
+                return true;
+            }
+            mController.quit();
             return true;
         }
     };
@@ -105,10 +433,173 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
     private MediaPlayer.OnPreparedListener mMediaPrepared = new MediaPlayer.OnPreparedListener() {
         @Override
         public void onPrepared(MediaPlayer mp) {
+            if (mp == mNextPlayer) {
+                Log.d(TAG, "MediaPlayer.onPrepared: next");
+                armNextPlayer();
+                return;
+            }
             Log.d(TAG, "MediaPlayer.onPrepared");
-            mIsReady = true;
-            mIsBuffering = false;
-            onCommandPlay();
+            onPlayerPrepared();
+        }
+    };
+
+    private AudioTrackPlayer.Listener mTrackListener = new AudioTrackPlayer.Listener() {
+        @Override
+        public void onPrepared(AudioTrackPlayer player) {
+            Log.d(TAG, "AudioTrackPlayer.onPrepared");
+            onPlayerPrepared();
+        }
+
+        @Override
+        public void onTransition(AudioTrackPlayer player) {
+            Log.d(TAG, "AudioTrackPlayer.onTransition");
+            // A skip queued meanwhile replaces the track anyway
+            if (mCommandHandler.hasMessages(CMD_PREPARE)) return;
+            onNextStarted();
+        }
+
+        @Override
+        public void onCompletion(AudioTrackPlayer player) {
+            Log.d(TAG, "AudioTrackPlayer.onCompletion");
+            onPlayerCompleted();
+        }
+
+        @Override
+        public void onError(AudioTrackPlayer player, Exception e) {
+            mMetrics.recordError(MediaPlayer.MEDIA_ERROR_UNKNOWN,
+                    e instanceof IOException ? MediaPlayer.MEDIA_ERROR_IO : 0);
+            mController.quit();
+        }
+    };
+
+    /**
+     * Drives the engine selected for the session on behalf of {@link PlaybackController}
+     */
+    private final PlaybackController.Player mPlayer = new PlaybackController.Player() {
+        @Override
+        public void prepare(MediaItem item) throws IOException {
+            if (mMediaPlayer == null) {
+                // The players were released, the focus is only taken again by start, so a warm-up
+                // doesn't interrupt other apps
+                mMediaPlayer = new MediaPlayer();
+            }
+            mMetrics.markPrepareStarted(System.nanoTime());
+            cancelNext();
+            mGapMeter.cancel();
+            try {
+                // Also abandons a prepare still running for an earlier target, its onPrepared never comes
+                mMediaPlayer.reset();
+                if (mTrackPlayer != null) {
+                    mTrackPlayer.reset();
+                    mTrackPlayer.prepareAsync(item);
+                } else {
+                    setListeners(mMediaPlayer);
+                    mSources.setDataSource(mMediaPlayer, item);
+                    mMediaPlayer.prepareAsync();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "prepare", e);
+                throw e;
+            }
+            indexTrack(item);
+        }
+
+        @Override
+        public void start() {
+            if (!mHasAudioFocus && !requestAudioFocus()) throw new IllegalStateException("Audio focus not granted");
+            if (mTrackPlayer != null) {
+                mTrackPlayer.start();
+            } else if (mMediaPlayer != null) {
+                mMediaPlayer.start();
+            } else {
+                throw new IllegalStateException("released");
+            }
+        }
+
+        @Override
+        public void pause() {
+            if (mTrackPlayer != null) {
+                mTrackPlayer.pause();
+            } else if (mMediaPlayer != null) {
+                mMediaPlayer.pause();
+            } else {
+                throw new IllegalStateException("released");
+            }
+        }
+
+        @Override
+        public void seekTo(int ms) {
+            try {
+                if (mTrackPlayer != null) {
+                    mTrackPlayer.seekTo(ms);
+                } else if (mMediaPlayer != null) {
+                    mMediaPlayer.seekTo(ms);
+                }
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "seekTo", e);
+            }
+        }
+
+        @Override
+        public void release() {
+            // Lost focus for an unbounded amount of time or paused for long: release the players and
+            // decoders, the controller keeps the item and position
+            releaseNextPlayer();
+            if (mTrackPlayer != null) mTrackPlayer.reset();
+            if (mMediaPlayer != null) {
+                mMediaPlayer.release();
+                mMediaPlayer = null;
+            }
+        }
+
+        @Override
+        public void stop() {
+            mCommandHandler.removeMessages(CMD_PREPARE);
+            cancelNext();
+            if (mMediaPlayer != null) mMediaPlayer.reset();
+            if (mTrackPlayer != null) mTrackPlayer.reset();
+        }
+    };
+
+    /**
+     * Shows, persists and measures the changes of {@link PlaybackController}
+     */
+    private final PlaybackController.Listener mControllerListener = new PlaybackController.Listener() {
+        @Override
+        public void onStateChanged(int previousState, boolean checkpoint) {
+            int state = mController.getState();
+            if (state == PlaybackController.STATE_PLAYING && previousState != PlaybackController.STATE_PLAYING) {
+                long now = System.nanoTime();
+                mMetrics.markPlaybackStarted(now);
+                if (mCommandLatency.markStarted(now)) {
+                    Log.d(TAG, "Command latency: " + mCommandLatency.getLastNanos() / 1000 + "us");
+                    mMetrics.recordCommandLatency(mCommandLatency.getLastNanos());
+                }
+            } else if (state == PlaybackController.STATE_PAUSED && previousState == PlaybackController.STATE_PLAYING) {
+                mCommandLatency.cancel();
+            }
+            updateIdleRelease(previousState, state);
+            updateTicks(previousState, state);
+            updateRemoteViews();
+            mStatePublisher.publish(samplePlaybackState());
+            if (checkpoint) journalState(true);
+        }
+
+        @Override
+        public void onQuit() {
+            Log.d(TAG, "onQuit");
+            mCommandLatency.cancel();
+            mCommandHandler.removeCallbacks(mIdleRelease);
+            mIdleReleased = false;
+            mIdleResumeStartedAt = -1;
+            mNotificationRenderer.cancel();
+            mStatePublisher.publish(samplePlaybackState());
+            mCommandHandler.removeCallbacks(mJournalTick);
+            mCommandHandler.removeCallbacks(mMetricsTick);
+            // Quitting ends the session, nothing to resume after a restart
+            mJournal.clear();
+            stopForeground(true);
+            stopSelf();
         }
     };
 
@@ -123,13 +614,13 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
             Log.d(TAG, "onReceive: " + intent.getAction());
 
             if (ACTION_QUIT.equals(action)) {
-                onCommandQuit();
+                postCommand(CMD_QUIT);
             } else if (ACTION_PREV.equals(action)) {
-                onCommandPrev();
+                postTransportCommand(CMD_PREV, null);
             } else if (ACTION_PLAY.equals(action)) {
-                onCommandPlayPause();
+                postTransportCommand(CMD_PLAY_PAUSE, null);
             } else if (ACTION_NEXT.equals(action)) {
-                onCommandNext();
+                postTransportCommand(CMD_NEXT, null);
             }
         }
     };
@@ -138,7 +629,7 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
         @Override
         public void onReceive(Context context, Intent intent) {
             //pause audio on ACTION_AUDIO_BECOMING_NOISY
-            onCommandPause();
+            postCommand(CMD_PAUSE);
         }
     };
 
@@ -149,22 +640,82 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
      * @param playlist provide media items to play
      * @return Intent for starting {@link MediaService}
      */
-    public static Intent createPlaylistIntent(Context context, ArrayList<MediaItem> playlist) {
+    public static Intent createPlaylistIntent(Context context, List<MediaItem> playlist) {
+        return createPlaylistIntent(context, PlaylistRegistry.fromList(playlist));
+    }
+
+    /**
+     * Creates {@link MediaService} {@link Intent} for a playlist whose items are pulled page by page
+     * while playing. The intent only carries a handle, so its size doesn't depend on the playlist.
+     *
+     * @param context Context from where the service is starting
+     * @param source  provider of the media items to play
+     * @return Intent for starting {@link MediaService} once, the service takes the playlist when it
+     * receives the intent. An intent which is never started is released with
+     * {@link #releasePlaylistIntent(Intent)}.
+     */
+    public static Intent createPlaylistIntent(Context context, PlaylistSource source) {
         return new Intent(context, MediaService.class).setAction(ACTION_START)
-                .putParcelableArrayListExtra(EXTRA_PLAYLIST, playlist);
+                .putExtra(EXTRA_PLAYLIST_HANDLE, PlaylistRegistry.register(source));
+    }
+
+    /**
+     * Selects the AudioTrack engine for the service started with the intent
+     *
+     * @param intent   intent from {@link #createPlaylistIntent(Context, PlaylistSource)}
+     * @param bufferMs depth of the decode-ahead buffer, larger values survive longer decoder stalls
+     *                 but make seeking and skipping slower
+     * @return the intent
+     */
+    public static Intent setAudioTrackEngine(Intent intent, int bufferMs) {
+        return intent.putExtra(EXTRA_ENGINE, ENGINE_AUDIO_TRACK).putExtra(EXTRA_BUFFER_MS, bufferMs);
+    }
+
+    /**
+     * Drops the playlist referenced by an intent from {@link #createPlaylistIntent(Context, PlaylistSource)}
+     * which won't be started
+     *
+     * @param intent intent which won't be used anymore
+     */
+    public static void releasePlaylistIntent(Intent intent) {
+        PlaylistRegistry.release(intent.getLongExtra(EXTRA_PLAYLIST_HANDLE, 0));
     }
 
     @Override
     public IBinder onBind(Intent intent) {
         Log.v(TAG, "onBind");
+        postCommand(CMD_WARM_UP);
         return mBinder;
     }
 
+    @Override
+    public void onRebind(Intent intent) {
+        Log.v(TAG, "onRebind");
+        postCommand(CMD_WARM_UP);
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        // have onRebind called for the next client, which warms the players up again
+        return true;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
 
-        mMediaPlayer = new MediaPlayer();
+        mController = new PlaybackController(mPlayer, mControllerListener);
+        mCommandThread = new HandlerThread(TAG + ".commands", Process.THREAD_PRIORITY_FOREGROUND);
+        mCommandThread.start();
+        mCommandHandler = new Handler(mCommandThread.getLooper(), mCommands);
+        // read by CMD_INIT
+        mResolver = new ResourceResolver(getResources(), getPackageName());
+        mCommandHandler.sendEmptyMessage(CMD_INIT);
+
+        mBackgroundExecutor = Executors.newSingleThreadScheduledExecutor();
+        mJournal = new PlaybackJournal(new File(getFilesDir(), JOURNAL_FILE), mBackgroundExecutor,
+                JOURNAL_INTERVAL_MS);
+        mMetricsDump = new MetricsDumpFile(new File(getFilesDir(), METRICS_FILE));
 
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(ACTION_QUIT);
@@ -174,6 +725,21 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
 
         registerReceiver(mButtonReceiver, intentFilter);
 
+        int artworkSize = getResources().getDimensionPixelSize(R.dimen.notification_artwork_size);
+        int smallArtworkSize = getResources().getDimensionPixelSize(R.dimen.notification_artwork_small_size);
+        mArtworkLoader = new ArtworkLoader(artworkSize, smallArtworkSize, ARTWORK_CACHE_BYTES,
+                mCommandThread.getLooper(),
+                new ArtworkLoader.Callback() {
+                    @Override
+                    public void onArtworkLoaded(String image) {
+                        MediaItem current = mController.getCurrent();
+                        if (current != null && image.equals(current.getImage())) updateRemoteViews();
+                    }
+                });
+        mNotificationRenderer = new NotificationRenderer(this, NOTIFICATION_ID, mArtworkLoader, mMetrics,
+                getButtonPendingIntent(ACTION_QUIT), getButtonPendingIntent(ACTION_PREV),
+                getButtonPendingIntent(ACTION_PLAY), getButtonPendingIntent(ACTION_NEXT));
+
         // Pause MediaPlayer on incoming call,
         // Resume on hangup.
         callStateListener();
@@ -185,26 +751,111 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(mButtonReceiver);
-        if (mMediaPlayer != null) mMediaPlayer.release();
-        removeAudioFocus();
         //Disable the PhoneStateListener
         if (phoneStateListener != null) {
             telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
         }
         //unregister BroadcastReceivers
         unregisterReceiver(becomingNoisyReceiver);
+        // Runs after the commands queued so far, the quitting looper drops any later ones
+        mCommandHandler.sendEmptyMessage(CMD_RELEASE);
+        mCommandThread.quitSafely();
+    }
+
+    /**
+     * Releases the players and helpers, the last command the player thread runs
+     */
+    private void onCommandRelease() {
+        mCommandHandler.removeCallbacks(mJournalTick);
+        mCommandHandler.removeCallbacks(mStateTick);
+        mCommandHandler.removeCallbacks(mIdleRelease);
+        mCommandHandler.removeCallbacks(mMetricsTick);
+        dumpMetrics();
+        mNotificationRenderer.cancel();
+        mArtworkLoader.shutdown();
+        // let pending journal and playlist writes finish
+        mBackgroundExecutor.shutdown();
+        mMetadataScanner.shutdown();
+        mWaveformScanner.shutdown();
+        mLoudnessScanner.shutdown();
+        releaseNextPlayer();
+        if (mMediaPlayer != null) mMediaPlayer.release();
+        mMediaPlayer = null;
+        if (mTrackPlayer != null) mTrackPlayer.release();
+        mTrackPlayer = null;
+        synchronized (this) {
+            if (mClipPlayer != null) mClipPlayer.release();
+        }
+        removeAudioFocus();
+        mHasAudioFocus = false;
+    }
+
+    /**
+     * Queues a command for the player thread
+     *
+     * @param what one of the CMD_ constants
+     */
+    private void postCommand(int what) {
+        mCommandHandler.sendEmptyMessage(what);
+    }
+
+    /**
+     * Queues a command with an argument for the player thread
+     *
+     * @param what one of the CMD_ constants
+     * @param arg  argument passed in {@link Message#arg1}
+     */
+    private void postCommand(int what, int arg) {
+        mCommandHandler.obtainMessage(what, arg, 0).sendToTarget();
+    }
+
+    /**
+     * Queues a command which is expected to end in playback and starts measuring its latency
+     *
+     * @param what one of the CMD_ constants
+     * @param obj  argument passed in {@link Message#obj}
+     */
+    private void postTransportCommand(int what, Object obj) {
+        postTransportCommand(what, 0, 0, obj);
+    }
+
+    /**
+     * Queues a command with arguments which is expected to end in playback
+     *
+     * @param what one of the CMD_ constants
+     * @param arg1 argument passed in {@link Message#arg1}
+     * @param arg2 argument passed in {@link Message#arg2}
+     * @param obj  argument passed in {@link Message#obj}
+     */
+    private void postTransportCommand(int what, int arg1, int arg2, Object obj) {
+        mCommandLatency.markIssued(System.nanoTime());
+        mCommandHandler.obtainMessage(what, arg1, arg2, obj).sendToTarget();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null) {
+            // Restarted by the system after the process was killed
+            Log.d(TAG, "onStartCommand: restart");
+            // The player thread reads the journal and stops the service if there is nothing to restore
+            postCommand(CMD_RESTORE);
+            return START_STICKY;
+        }
+
         final String action = intent.getAction();
 
         Log.d(TAG, "onStartCommand: " + intent.getAction());
 
         if (ACTION_START.equals(action)) {
-            ArrayList<MediaItem> playlist = intent.getParcelableArrayListExtra(EXTRA_PLAYLIST);
-            onCommandStart(playlist);
-            return START_STICKY;
+            // single use, so the registry doesn't keep the playlist once the service owns it
+            PlaylistSource source = PlaylistRegistry.take(intent.getLongExtra(EXTRA_PLAYLIST_HANDLE, 0));
+            if (source != null && source.size() > 0) {
+                mMetrics.markStartRequested(System.nanoTime());
+                postTransportCommand(CMD_START, intent.getIntExtra(EXTRA_ENGINE, ENGINE_MEDIA_PLAYER),
+                        intent.getIntExtra(EXTRA_BUFFER_MS, DEFAULT_BUFFER_MS), source);
+                return START_STICKY;
+            }
+            Log.e(TAG, "onStartCommand: unknown or empty playlist");
         }
 
         stopSelf();
@@ -214,244 +865,955 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
     /**
      * Performs actions related to media player when Service onStartCommand method is called
      *
-     * @param playlist {@link ArrayList} of {@link MediaItem}s
+     * @param source     provider of the {@link MediaItem}s to play
+     * @param playlistId id the playlist is saved and journaled under
+     * @param restored   journaled state to continue from, null to start from the first item
      */
-    private void onCommandStart(ArrayList<MediaItem> playlist) {
-        //Request audio focus
-        if (!requestAudioFocus()) {
-            //Could not gain focus
-            stopSelf();
+    private void onCommandStart(PlaylistSource source, long playlistId, PlaybackJournal.State restored) {
+        // The audio focus is requested once playback starts, a paused restore leaves other apps alone
+        List<MediaItem> playlist = new PagedMediaList(source);
+        Playlist queue = new Playlist(playlist);
+        mPlaylistId = playlistId;
+
+        int position = -1;
+        boolean playWhenReady = true;
+        if (restored != null) {
+            queue.moveTo(restored.index);
+            queue.setShuffle(restored.isShuffled());
+            queue.setRepeatMode(restored.repeatMode);
+            playWhenReady = restored.isPlaying();
+            position = restored.positionMs;
         }
-        RemoteViews collapsed = new RemoteViews(getPackageName(), R.layout.notification_collapsed);
-        RemoteViews bigContentView = new RemoteViews(getPackageName(), R.layout.notification_expanded);
 
-        mPlaylist = playlist;
-        mCurrent = null;
+        if (!(source instanceof PlaylistFile)) savePlaylist(source, playlistId);
 
-        mRemoteViews = new ArrayList<>(2);
-        mRemoteViews.add(collapsed);
-        mRemoteViews.add(bigContentView);
+        // The background jobs below walk the whole playlist, each over its own page cache so they
+        // don't evict the pages being played or each other's
 
-        // Create Notifications with remote views
-        mNotification = new NotificationCompat.Builder(this).setTicker("Media Service started...")
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setContent(collapsed)
-                .setAutoCancel(false)
-                .setOngoing(true)
-                .setCustomBigContentView(bigContentView)
-                .build();
+        // Resolve resource ids of the whole playlist while the first item prepares
+        final List<MediaItem> resolved = new PagedMediaList(source);
+        if (mResolveTask != null) mResolveTask.cancel(true);
+        mResolveTask = mBackgroundExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                mResolver.resolveAll(resolved);
+            }
+        });
+        // Title search, a build still running for an earlier playlist is discarded
+        final List<MediaItem> indexed = new PagedMediaList(source);
+        mIndexedPlaylist = indexed;
+        mTitleIndex = null;
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mIndexedPlaylist != indexed) return;
+                TitleIndex index = TitleIndex.build(indexed);
+                if (mIndexedPlaylist == indexed) mTitleIndex = index;
+            }
+        });
+        // Durations and tags of the whole playlist, unchanged items are only looked up
+        mMetadataScanner.scan(new PagedMediaList(source), null);
+        // Waveform peaks, starting with the item about to play
+        mWaveformItems = new PagedMediaList(source);
+        mWaveformFirst = Math.max(0, queue.getCurrentIndex());
+        mWaveformScanner.scan(mWaveformItems, mWaveformFirst, WAVEFORM_WINDOW);
+        // Normalization gains, applied to each item as it starts
+        mLoudnessScanner.scan(new PagedMediaList(source), null);
+
+        mController.open(queue, position, playWhenReady);
+        // a failed prepare already quit the session
+        if (mController.getState() == PlaybackController.STATE_IDLE) return;
+
+        // Create Notification with remote views
+        startForeground(NOTIFICATION_ID, mNotificationRenderer.render(getNotificationState()));
+    }
 
-        updateRemoteViews();
+    /**
+     * Continues the session recorded in the journal: maps the saved playlist and prepares the
+     * journaled item at the journaled position, playing only if it was playing before
+     *
+     * @return true if the session could be restored
+     */
+    private boolean restoreFromJournal() {
+        PlaybackJournal.State state = mJournal.read();
+        if (state == null) return false;
 
-        startForeground(NOTIFICATION_ID, mNotification);
+        PlaylistFile source;
+        try {
+            source = PlaylistFile.open(getPlaylistFile(state.playlistId));
+        } catch (IOException e) {
+            Log.e(TAG, "restoreFromJournal", e);
+            return false;
+        }
+        if (state.index < 0 || state.index >= source.size()) return false;
 
-        startPlaying(mPlaylist.get(0));
+        onCommandStart(source, state.playlistId, state);
+        return true;
     }
 
-    private PendingIntent getButtonPendingIntent(String action) {
-        Intent intent = new Intent(action);
-        intent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        return PendingIntent.getBroadcast(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    private File getPlaylistFile(long playlistId) {
+        return new File(getFilesDir(), PLAYLIST_FILE_PREFIX + playlistId + PLAYLIST_FILE_SUFFIX);
     }
 
     /**
-     * Update Remote Views of notification bar
+     * Records the playback state in the journal
+     *
+     * @param immediate true to write right away instead of coalescing with other updates
      */
-    private void updateRemoteViews() {
-        for (RemoteViews remoteViews : mRemoteViews) {
-            remoteViews.setOnClickPendingIntent(R.id.ib_media_quit,
-                    getButtonPendingIntent(ACTION_QUIT));
-            remoteViews.setOnClickPendingIntent(R.id.ib_track_prev,
-                    getButtonPendingIntent(ACTION_PREV));
-            remoteViews.setOnClickPendingIntent(R.id.ib_track_play,
-                    getButtonPendingIntent(ACTION_PLAY));
-            remoteViews.setOnClickPendingIntent(R.id.ib_track_next,
-                    getButtonPendingIntent(ACTION_NEXT));
-
-            remoteViews.setTextViewText(R.id.tv_track_title,
-                    (mCurrent != null ? mCurrent.getTitle() : getString(R.string.loading)));
-
-            if (mCurrent != null) {
-                if (mTrackImageId == 0 || !mTrackImageUrl.equals(mCurrent.getImage())) {
-                    mTrackImageUrl = mCurrent.getImage();
-                    mTrackImageId = getResources().getIdentifier(mTrackImageUrl,
-                            "drawable", getPackageName());
-                }
-            } else {
-                mTrackImageId = 0;
+    private void journalState(boolean immediate) {
+        Playlist playlist = mController.getPlaylist();
+        if (playlist == null || mController.getCurrent() == null) return;
+
+        int position = 0;
+        if (mController.isReady()) {
+            try {
+                position = getPlayerPosition();
+            } catch (IllegalStateException e) {
+                //
             }
+        } else if (mController.getPendingSeekMs() >= 0) {
+            position = mController.getPendingSeekMs();
+        }
 
-            remoteViews.setImageViewResource(R.id.iv_track_image, mTrackImageId);
+        boolean willPlay = mController.isReady() ? mController.isPlaying() : mController.isPlayWhenReady();
+        int flags = (willPlay ? PlaybackJournal.State.FLAG_PLAYING : 0)
+                | (playlist.isShuffled() ? PlaybackJournal.State.FLAG_SHUFFLE : 0);
+        PlaybackJournal.State state = new PlaybackJournal.State(mPlaylistId,
+                playlist.getCurrentIndex(), position, flags, playlist.getRepeatMode());
+        if (immediate) {
+            mJournal.recordNow(state);
+        } else {
+            mJournal.record(state);
+        }
+    }
 
-            remoteViews.setBoolean(R.id.ib_track_prev, "setEnabled", canGoPrev());
-            remoteViews.setBoolean(R.id.ib_track_play, "setEnabled", mIsReady);
-            remoteViews.setBoolean(R.id.ib_track_next, "setEnabled", canGoNext());
+    /**
+     * Samples the gauges and copies the metrics
+     */
+    private MetricsSnapshot snapshotMetrics() {
+        mMetrics.recordOpenDescriptors(DescriptorGauge.getOpenCount());
+        return mMetrics.snapshot(System.nanoTime());
+    }
 
-            remoteViews.setViewVisibility(R.id.pb_track_buffering,
-                    mIsBuffering ? View.VISIBLE : View.GONE);
-            remoteViews.setViewVisibility(R.id.ib_track_play,
-                    !mIsBuffering ? View.VISIBLE : View.GONE);
+    /**
+     * Appends the current metrics to the dump file on the background thread
+     */
+    private void dumpMetrics() {
+        final MetricsSnapshot snapshot = snapshotMetrics();
+        final long now = System.currentTimeMillis();
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mMetricsDump.append(snapshot, now);
+                } catch (IOException e) {
+                    Log.e(TAG, "dumpMetrics", e);
+                }
+            }
+        });
+    }
 
-            if (mIsReady) {
+    /**
+     * Stores the playlist in the background, so it can be mapped back instantly later
+     *
+     * @param source provider of the playlist items
+     */
+    private void savePlaylist(final PlaylistSource source, final long playlistId) {
+        // Runs before any journal write referring to the new playlist, which is queued later on
+        // the same executor
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = getPlaylistFile(playlistId);
                 try {
-                    if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
-                        remoteViews.setImageViewResource(R.id.ib_track_play,
-                                android.R.drawable.ic_media_pause);
-                    } else {
-                        remoteViews.setImageViewResource(R.id.ib_track_play,
-                                android.R.drawable.ic_media_play);
+                    // separate page cache, so the write doesn't evict the pages being played
+                    PlaylistFile.write(file, new PagedMediaList(source));
+                } catch (IOException e) {
+                    Log.e(TAG, "savePlaylist", e);
+                    return;
+                }
+                File[] files = getFilesDir().listFiles();
+                if (files == null) return;
+                for (File old : files) {
+                    String name = old.getName();
+                    if (name.startsWith(PLAYLIST_FILE_PREFIX) && name.endsWith(PLAYLIST_FILE_SUFFIX)
+                            && !old.equals(file)) {
+                        old.delete();
                     }
-                } catch (IllegalStateException e) {
-                    //
                 }
             }
-        }
+        });
+    }
 
-        NotificationManagerCompat managerCompat = NotificationManagerCompat.from(this);
-        managerCompat.notify(NOTIFICATION_ID, mNotification);
+    private PendingIntent getButtonPendingIntent(String action) {
+        Intent intent = new Intent(action);
+        intent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getBroadcast(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
     /**
-     * Perform actions if Player is not closing
+     * Update Remote Views of notification bar
      */
-    private void onCommandQuit() {
-        mIsReady = false;
-        if (mMediaPlayer != null) mMediaPlayer.reset();
-        stopForeground(true);
-        stopSelf();
+    private void updateRemoteViews() {
+        mNotificationRenderer.update(getNotificationState());
     }
 
     /**
-     * Toggle the Play Pause action on media player
+     * Collects the current player state shown in the notification
+     *
+     * @return snapshot for {@link NotificationRenderer}
      */
-    private void onCommandPlayPause() {
-        try {
-            if (mMediaPlayer == null) {
-                initMediaPlayerIfClosed();
-            } else if (mMediaPlayer.isPlaying()) {
-                onCommandPause();
+    private NotificationState getNotificationState() {
+        MediaItem current = mController.getCurrent();
+        int imageId = 0;
+        String artwork = null;
+        if (current != null) {
+            String image = current.getImage();
+            if (ArtworkLoader.isFile(image)) {
+                // placeholder from the layout until the file is decoded
+                if (mArtworkLoader.get(image) != null) artwork = image;
             } else {
-                onCommandPlay();
+                imageId = mResolver.getDrawableId(current);
             }
-            updateRemoteViews();
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "onCommandPlayPause", e);
-            onCommandQuit();
         }
+
+        return new NotificationState(
+                current != null ? current.getTitle() : getString(R.string.loading),
+                imageId, artwork, mController.canGoPrevious(), mController.canGoNext(),
+                mController.isReady(), mController.isBuffering(), mController.isPlaying());
     }
 
     /**
-     * Plays the Media player
+     * Perform actions if Player is not closing
      */
-    private void onCommandPlay() {
-        try {
-            mMediaPlayer.start();
-            updateRemoteViews();
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "onCommandPlay", e);
-            onCommandQuit();
-        }
+    private void onCommandQuit() {
+        mController.quit();
     }
 
     /**
-     * Initiate the media player if it's closed
-     *
-     * @return true if media player was closed before
+     * Toggle the Play Pause action on media player
      */
-    private boolean initMediaPlayerIfClosed() {
-        if (mMediaPlayer == null) {
-            if (!requestAudioFocus()) {
-                //Could not gain focus
-                stopSelf();
-            } else {
-                mMediaPlayer = new MediaPlayer();
-                startPlaying(mCurrent);
-            }
-            return true;
-        }
-        return false;
+    private void onCommandPlayPause() {
+        mController.playPause();
     }
 
     /**
      * Pause the media player if playing
      */
     private void onCommandPause() {
-        try {
-            mMediaPlayer.pause();
-            updateRemoteViews();
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "onCommandPause", e);
-            onCommandQuit();
+        mController.pause();
+    }
+
+    /**
+     * Switches the playback engine, effective from the next prepared item
+     *
+     * @param engine   {@link #ENGINE_MEDIA_PLAYER} or {@link #ENGINE_AUDIO_TRACK}
+     * @param bufferMs decode-ahead of the AudioTrack engine
+     */
+    private void selectEngine(int engine, int bufferMs) {
+        if (mTrackPlayer != null) {
+            mTrackPlayer.release();
+            mTrackPlayer = null;
+        }
+        if (engine == ENGINE_AUDIO_TRACK) {
+            mTrackPlayer = new AudioTrackPlayer(mCommandThread.getLooper(), mSources, bufferMs, mTrackListener);
+            mTrackPlayer.setDsp(mDspSettings);
         }
     }
 
     /**
-     * Checks if there is any item for previous action
+     * Moves the window of the waveform scan to the current item once it left the first half of it
+     */
+    private void scanWaveforms() {
+        Playlist playlist = mController.getPlaylist();
+        if (playlist == null || mWaveformItems == null) return;
+        int current = Math.max(0, playlist.getCurrentIndex());
+        int ahead = (current - mWaveformFirst + playlist.size()) % Math.max(1, playlist.size());
+        if (ahead < WAVEFORM_WINDOW / 2) return;
+        mWaveformFirst = current;
+        mWaveformScanner.scan(mWaveformItems, current, WAVEFORM_WINDOW);
+    }
+
+    /**
+     * Continues once the current item is prepared, by either engine
+     */
+    private void onPlayerPrepared() {
+        mMetrics.markPrepared(System.nanoTime());
+        mTrackGain = mLoudnessScanner.getGain(mController.getCurrent());
+        applyVolume();
+        scanWaveforms();
+        mController.onPrepared();
+        // starting may have failed and ended the session
+        if (!mController.isReady()) return;
+        prepareNext();
+        prefetchNextArtwork();
+    }
+
+    /**
+     * Moves on once the current item played to its end without a chained player
+     */
+    private void onPlayerCompleted() {
+        // A track completing right after a skip was queued is replaced anyway
+        if (mCommandHandler.hasMessages(CMD_PREPARE)) return;
+        mController.onCompleted();
+    }
+
+    private int getPlayerPosition() {
+        if (mTrackPlayer != null) return mTrackPlayer.getCurrentPosition();
+        return mMediaPlayer != null ? mMediaPlayer.getCurrentPosition() : 0;
+    }
+
+    /**
+     * @return position in the current item, also while it prepares or its players are released
+     */
+    private int getCurrentPositionMs() {
+        return mController.isReady() ? getPlayerPosition() : Math.max(0, mController.getPendingSeekMs());
+    }
+
+    /**
+     * Journals the position and dumps the metrics periodically only while playing, dumping them
+     * once more whenever playback starts or stops
      *
-     * @return true if any previous media item exists
+     * @param previousState state of the controller before the change
+     * @param state         current state of the controller
      */
-    private boolean canGoPrev() {
-        return (mPlaylist != null && mCurrent != null &&
-                mPlaylist.indexOf(mCurrent) - 1 >= 0);
+    private void updateTicks(int previousState, int state) {
+        boolean playing = state == PlaybackController.STATE_PLAYING;
+        if (playing == (previousState == PlaybackController.STATE_PLAYING)) return;
+        mCommandHandler.removeCallbacks(mJournalTick);
+        mCommandHandler.removeCallbacks(mMetricsTick);
+        if (playing) {
+            mCommandHandler.postDelayed(mJournalTick, JOURNAL_INTERVAL_MS);
+            mCommandHandler.postDelayed(mMetricsTick, METRICS_DUMP_INTERVAL_MS);
+        }
+        // a paused or stopped player changes no metrics until it plays again
+        dumpMetrics();
     }
 
     /**
-     * Checks if there is any item for next action
+     * Schedules the idle release while paused, and restores the foreground and clips and measures
+     * the resume once the released item is prepared again
      *
-     * @return true if any next media item exists
+     * @param previousState state of the controller before the change
+     * @param state         current state of the controller
      */
-    private boolean canGoNext() {
-        return (mPlaylist != null && mCurrent != null &&
-                mPlaylist.indexOf(mCurrent) + 1 < mPlaylist.size());
+    private void updateIdleRelease(int previousState, int state) {
+        mCommandHandler.removeCallbacks(mIdleRelease);
+        int minutes = mIdleReleaseMinutes;
+        if (state == PlaybackController.STATE_PAUSED && minutes > 0) {
+            mCommandHandler.postDelayed(mIdleRelease, minutes * 60000L);
+        }
+
+        if (mIdleReleased && previousState == PlaybackController.STATE_RELEASED
+                && state == PlaybackController.STATE_PREPARING) {
+            mIdleReleased = false;
+            // a warm-up isn't timed, its play only has to start the prepared player
+            if (mController.isPlayWhenReady()) mIdleResumeStartedAt = System.nanoTime();
+            startForeground(NOTIFICATION_ID, mNotificationRenderer.render(getNotificationState()));
+            mBackgroundExecutor.execute(mClipReload);
+        } else if (state == PlaybackController.STATE_PLAYING && mIdleResumeStartedAt >= 0) {
+            long nanos = System.nanoTime() - mIdleResumeStartedAt;
+            Log.d(TAG, "Resume from idle: " + nanos / 1000000 + "ms");
+            mMetrics.recordIdleResume(nanos);
+            mIdleResumeStartedAt = -1;
+        } else if (state != PlaybackController.STATE_PREPARING) {
+            mIdleResumeStartedAt = -1;
+        }
+    }
+
+    /**
+     * Releases the players and decoders once paused for {@link #setIdleReleaseMinutes(int)}, keeping
+     * the item and position to prepare again on play, and leaves the foreground so the system may
+     * reclaim the idle service
+     */
+    private void onIdleTimeout() {
+        if (mController.getState() != PlaybackController.STATE_PAUSED) return;
+        // the buffers of known size, what MediaPlayer held natively isn't exposed
+        long freed = mTrackPlayer != null ? mTrackPlayer.getBufferBytes() : 0;
+        mIdleReleased = true;
+        mController.release(getPlayerPosition());
+        freed += releaseClips();
+        // nothing to duck or pause for while released, a warm-up doesn't take it back either
+        removeAudioFocus();
+        mHasAudioFocus = false;
+        Log.d(TAG, "Idle release freed " + freed / 1024 + "KB");
+        mMetrics.recordIdleRelease(freed);
+        stopForeground(false);
+    }
+
+    /**
+     * @return the current state for bound clients, called on the player thread
+     */
+    private PlaybackState samplePlaybackState() {
+        Playlist playlist = mController.getPlaylist();
+        int positionMs = getCurrentPositionMs();
+        return new PlaybackState(mController.getCurrent(), playlist != null ? playlist.getCurrentIndex() : -1,
+                mController.getState(), mController.isBuffering(), positionMs, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Sets the normalization gain of the current item, attenuated while ducking, on the player
+     */
+    private void applyVolume() {
+        float volume = mTrackGain * mDuckVolume;
+        if (mTrackPlayer != null) {
+            // the track gain goes with the stream, so a crossfade applies each one to its own
+            mTrackPlayer.setGain(mTrackGain);
+            mTrackPlayer.setVolume(mDuckVolume);
+        } else if (mMediaPlayer != null) {
+            mMediaPlayer.setVolume(volume, volume);
+        }
+    }
+
+    /**
+     * Gets the number of times the AudioTrack engine ran out of decoded audio
+     *
+     * @return underruns since the engine was selected, 0 for the MediaPlayer engine
+     */
+    public int getUnderrunCount() {
+        AudioTrackPlayer player = mTrackPlayer;
+        return player != null ? player.getUnderrunCount() : 0;
     }
 
     /**
      * Play previous media-item
      */
     private void onCommandPrev() {
-        int index = mPlaylist.indexOf(mCurrent) - 1;
-        if (index >= 0) {
-            startPlaying(mPlaylist.get(index));
-        }
+        if (mController.skipToPrevious() != null) schedulePrepare();
     }
 
     /**
      * Play next media-item
      */
     private void onCommandNext() {
-        int index = mPlaylist.indexOf(mCurrent) + 1;
-        if (index < mPlaylist.size()) {
-            startPlaying(mPlaylist.get(index));
+        if (mController.skipToNext() != null) schedulePrepare();
+    }
+
+    /**
+     * Prepares the item just made current only after the commands already queued have run, so a
+     * burst of skips ends in a single prepare of the last target
+     */
+    private void schedulePrepare() {
+        // The armed player mustn't take over from the track being skipped
+        cancelNext();
+        if (mCommandHandler.hasMessages(CMD_PREPARE)) {
+            mCommandHandler.removeMessages(CMD_PREPARE);
+            mCoalescedCount++;
         }
+        mCommandHandler.sendEmptyMessage(CMD_PREPARE);
     }
 
     /**
-     * Start playing the provided media item
+     * Attaches the service callbacks to the player, they are shared by the current and the next player
      *
-     * @param item media-item to play
+     * @param player player to attach the callbacks to
+     */
+    private void setListeners(MediaPlayer player) {
+        player.setOnPreparedListener(mMediaPrepared);
+        player.setOnCompletionListener(mMediaCompleted);
+        player.setOnInfoListener(mMediaInfo);
+        player.setOnErrorListener(mMediaError);
+    }
+
+    /**
+     * Starts preparing the next media item on the standby player, so it can be chained to the
+     * current one once prepared
      */
-    private void startPlaying(MediaItem item) {
-        mCurrent = item;
+    private void prepareNext() {
+        cancelNext();
+        if (mMediaPlayer == null || !isChainingEnabled()) return;
+
+        Playlist playlist = mController.getPlaylist();
+        MediaItem next = playlist != null ? playlist.peekNext() : null;
+        if (next == null) return;
+
+        if (mTrackPlayer != null) {
+            // The AudioTrack engine decodes the next item into the running pipeline instead
+            mTrackPlayer.setNextAsync(next, mCrossfadeMs, mLoudnessScanner.getGain(next));
+            mNextItem = next;
+            return;
+        }
+
+        if (mNextPlayer == null) mNextPlayer = new MediaPlayer();
         try {
-            mIsReady = false;
-            mIsBuffering = true;
-            mMediaPlayer.reset();
-            mMediaPlayer.setOnPreparedListener(mMediaPrepared);
-            mMediaPlayer.setOnCompletionListener(mMediaCompleted);
-            mMediaPlayer.setOnInfoListener(mMediaInfo);
-            mMediaPlayer.setOnErrorListener(mMediaError);
-            AssetFileDescriptor afd = getResources().openRawResourceFd(getResources().getIdentifier(item.getLocation(),
-                    "raw", getPackageName()));
-            mMediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            mMediaPlayer.prepareAsync();
+            setListeners(mNextPlayer);
+            mSources.setDataSource(mNextPlayer, next);
+            mNextItem = next;
+            mNextPlayer.prepareAsync();
+        } catch (IOException e) {
+            Log.e(TAG, "prepareNext", e);
+            cancelNext();
+        }
+    }
 
-            updateRemoteViews();
+    /**
+     * Chains the prepared standby player to the current one
+     */
+    private void armNextPlayer() {
+        if (mMediaPlayer == null || !mController.isReady()) {
+            cancelNext();
+            return;
+        }
+        try {
+            // the standby player starts on its own, with the gain of its item
+            float volume = mLoudnessScanner.getGain(mNextItem) * mDuckVolume;
+            mNextPlayer.setVolume(volume, volume);
+            mMediaPlayer.setNextMediaPlayer(mNextPlayer);
+            mIsNextArmed = true;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "armNextPlayer", e);
+            cancelNext();
+        }
+    }
+
+    /**
+     * Detaches and resets the standby player, the current player is left untouched
+     */
+    private void cancelNext() {
+        if (mIsNextArmed && mMediaPlayer != null) {
+            try {
+                mMediaPlayer.setNextMediaPlayer(null);
+            } catch (IllegalStateException e) {
+                //
+            }
+        }
+        mIsNextArmed = false;
+        mNextItem = null;
+        if (mNextPlayer != null) mNextPlayer.reset();
+        if (mTrackPlayer != null) mTrackPlayer.cancelNext();
+    }
+
+    /**
+     * Releases the standby player
+     */
+    private void releaseNextPlayer() {
+        cancelNext();
+        if (mNextPlayer != null) {
+            mNextPlayer.release();
+            mNextPlayer = null;
+        }
+    }
+
+    /**
+     * Makes the standby player, which has just started playing on its own, the current one and
+     * recycles the finished player for the following track
+     */
+    private void swapToNextPlayer() {
+        MediaPlayer finished = mMediaPlayer;
+        mMediaPlayer = mNextPlayer;
+        mNextPlayer = finished;
+        mIsNextArmed = false;
+        finished.reset();
+        onNextStarted();
+    }
+
+    /**
+     * Makes the next item current once it started playing after the previous one, by either engine
+     */
+    private void onNextStarted() {
+        mNextItem = null;
+        mController.onNextStarted();
+        // the AudioTrack engine switched to the gain queued with the item already
+        mTrackGain = mLoudnessScanner.getGain(mController.getCurrent());
+        if (mTrackPlayer == null) applyVolume();
+        prepareNext();
+        prefetchNextArtwork();
+    }
+
+    /**
+     * Starts decoding the artwork of the following item, so it's ready when the track changes
+     */
+    private void prefetchNextArtwork() {
+        Playlist playlist = mController.getPlaylist();
+        MediaItem next = playlist != null ? playlist.peekNext() : null;
+        if (next != null) mArtworkLoader.prefetch(next.getImage());
+    }
+
+    private void logTransitionGap() {
+        Log.d(TAG, "Track transition gap: " + mGapMeter.getLastGapNanos() / 1000 + "us, buffer: "
+                + getOutputBufferNanos() / 1000 + "us");
+    }
+
+    /**
+     * Enables or disables gapless transitions between playlist items
+     *
+     * @param enabled true to keep the next item prepared while the current one plays
+     */
+    public void setGaplessEnabled(boolean enabled) {
+        mGaplessEnabled = enabled;
+        postCommand(CMD_GAPLESS);
+    }
+
+    private void onCommandGaplessChanged() {
+        if (!isChainingEnabled()) {
+            cancelNext();
+        } else if (mController.isReady() && mNextItem == null) {
+            prepareNext();
+        }
+    }
+
+    public boolean isGaplessEnabled() {
+        return mGaplessEnabled;
+    }
+
+    /**
+     * @return true if the next item is to be queued behind the current one, for a gapless
+     * transition or a crossfade
+     */
+    private boolean isChainingEnabled() {
+        return mGaplessEnabled || mTrackPlayer != null && mCrossfadeMs > 0;
+    }
+
+    /**
+     * Sets the overlap of consecutive tracks, faded with equal-power curves. Only the AudioTrack
+     * engine mixes tracks, the MediaPlayer engine ignores this. Takes effect from the transition
+     * after the one already queued.
+     *
+     * @param ms length of the crossfade from 0 to {@link #MAX_CROSSFADE_MS}, 0 to switch tracks
+     *           without a fade
+     */
+    public void setCrossfadeMs(int ms) {
+        if (ms < 0 || ms > MAX_CROSSFADE_MS) throw new IllegalArgumentException("ms: " + ms);
+        mCrossfadeMs = ms;
+    }
+
+    public int getCrossfadeMs() {
+        return mCrossfadeMs;
+    }
+
+    /**
+     * Sets the equalizer bands, preamp and limiter applied to the output. Only the AudioTrack
+     * engine processes samples itself, the MediaPlayer engine ignores this. Takes effect within a
+     * few milliseconds, also in the middle of a track.
+     *
+     * @param settings settings to apply, null to play the samples unprocessed
+     */
+    public void setDsp(DspSettings settings) {
+        mDspSettings = settings;
+        postCommand(CMD_DSP);
+    }
+
+    public DspSettings getDsp() {
+        return mDspSettings;
+    }
+
+    /**
+     * Sets how long playback may stay paused before the players and decoders are released. The
+     * item and position are kept, so play prepares them again and binding a client warms them up
+     * ahead. Takes effect from the next pause.
+     *
+     * @param minutes time paused before releasing, 0 to never release
+     */
+    public void setIdleReleaseMinutes(int minutes) {
+        if (minutes < 0) throw new IllegalArgumentException("minutes: " + minutes);
+        mIdleReleaseMinutes = minutes;
+    }
+
+    public int getIdleReleaseMinutes() {
+        return mIdleReleaseMinutes;
+    }
+
+    /**
+     * Decodes a short raw resource, e.g. an alert sound, to be played with
+     * {@link #playClip(int, float)}. Decoding takes a while, so call this off the main thread and
+     * ahead of the first play. All clips share a memory budget of a few megabytes. After a long
+     * pause the clips are released with the players and decoded again on resume, keeping their ids.
+     *
+     * @param rawResId raw resource stored uncompressed, 48 kHz mono or stereo
+     * @return id of the clip, or -1 if the clip doesn't fit the remaining budget
+     * @throws IOException if the resource can't be opened or decoded
+     */
+    public synchronized int loadClip(int rawResId) throws IOException {
+        int id = openClipPlayer().load(rawResId);
+        // ids are handed out in order, the index of the resource is its id
+        if (id >= 0) mClipResources.add(rawResId);
+        return id;
+    }
+
+    /**
+     * Creates the clip player if there's none, decoding the clips loaded before an idle release
+     * again, called holding this
+     *
+     * @return the clip player
+     * @throws IOException if a clip can't be decoded again
+     */
+    private ClipPlayer openClipPlayer() throws IOException {
+        if (mClipPlayer != null) return mClipPlayer;
+        ClipPlayer player = new ClipPlayer(getResources(), CLIP_VOICES, CLIP_BUDGET_BYTES, mMetrics);
+        try {
+            for (int i = 0; i < mClipResources.size(); i++) {
+                if (player.load(mClipResources.get(i)) != i) throw new IOException("Can't reload clip " + i);
+            }
+        } catch (IOException e) {
+            player.release();
+            throw e;
+        }
+        mClipPlayer = player;
+        return player;
+    }
+
+    /**
+     * Releases the clip player, its clips are decoded again by {@link #openClipPlayer()}
+     *
+     * @return size of the buffers given back
+     */
+    private synchronized long releaseClips() {
+        if (mClipPlayer == null) return 0;
+        long bytes = mClipPlayer.getBufferBytes();
+        mClipPlayer.release();
+        mClipPlayer = null;
+        return bytes;
+    }
+
+    /**
+     * Plays a loaded clip over the music within a few milliseconds. With all voices busy the clip
+     * which started first is cut off. The latency from here to the clip being heard is part of
+     * {@link MyBinder#getMetrics()}.
+     *
+     * @param clip   id from {@link #loadClip(int)}
+     * @param volume gain of the clip, 1 for unchanged
+     * @return false if the clip was dropped because too many are waiting to start, or the clips
+     * are still being decoded again after an idle release
+     */
+    public boolean playClip(int clip, float volume) {
+        ClipPlayer player = mClipPlayer;
+        if (player == null) {
+            synchronized (this) {
+                if (clip < 0 || clip >= mClipResources.size()) throw new IllegalArgumentException("clip: " + clip);
+            }
+            return false;
+        }
+        return player.play(clip, volume);
+    }
+
+    /**
+     * Switches shuffled playback of the playlist
+     *
+     * @param shuffle true to play the remaining items in random order
+     */
+    public void setShuffle(boolean shuffle) {
+        postCommand(CMD_SHUFFLE, shuffle ? 1 : 0);
+    }
+
+    /**
+     * Sets the repeat mode of the playlist
+     *
+     * @param repeatMode one of {@link Playlist#REPEAT_OFF}, {@link Playlist#REPEAT_ONE} or
+     *                   {@link Playlist#REPEAT_ALL}
+     */
+    public void setRepeatMode(int repeatMode) {
+        // Checked here, the player thread has nobody to report to
+        if (repeatMode < Playlist.REPEAT_OFF || repeatMode > Playlist.REPEAT_ALL) {
+            throw new IllegalArgumentException("repeatMode: " + repeatMode);
+        }
+        postCommand(CMD_REPEAT, repeatMode);
+    }
+
+    /**
+     * Re-prepares the standby player and refreshes the buttons after the play order changed
+     */
+    private void onPlayOrderChanged() {
+        if (mController.isReady() && isChainingEnabled()) prepareNext();
+        mController.onPlayOrderChanged();
+    }
+
+    /**
+     * Seeks within the current track to the exact position, clamped to the duration of indexed
+     * Opus tracks. A seek issued while the track prepares is applied before playback starts.
+     *
+     * @param ms position in milliseconds
+     */
+    public void seekTo(int ms) {
+        postCommand(CMD_SEEK, ms);
+    }
+
+    private void onCommandSeek(int ms) {
+        MediaItem current = mController.getCurrent();
+        if (current == null) return;
+
+        OggPageIndex index = mSeekIndexes.get(mResolver.getRawId(current));
+        if (index != null && !index.isEmpty()) {
+            // players decode from the page before and drop what precedes the position
+            ms = (int) Math.max(0, Math.min(ms, index.getDurationMs()));
+        }
+        mController.seekTo(ms);
+        mStatePublisher.publish(samplePlaybackState());
+    }
+
+    /**
+     * Gets the duration of the current track without needing a prepared player
+     *
+     * @return duration in milliseconds or -1 if the track isn't indexed yet
+     */
+    public long getIndexedDuration() {
+        MediaItem current = mController.getCurrent();
+        if (current == null) return -1;
+        OggPageIndex index = mSeekIndexes.get(mResolver.getRawId(current));
+        return index == null || index.isEmpty() ? -1 : index.getDurationMs();
+    }
+
+    /**
+     * Builds the Ogg page index of the item in the background unless it's cached already
+     *
+     * @param item media-item to index
+     */
+    private void indexTrack(final MediaItem item) {
+        final int rawId = mResolver.getRawId(item);
+        if (rawId == 0 || mSeekIndexes.containsKey(rawId)) return;
+
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mSeekIndexes.containsKey(rawId)) return;
+                // Opus resources are stored uncompressed, so they are read from the mapped package
+                ByteBuffer region = mSources.mapRaw(item);
+                if (region == null) {
+                    // compressed or missing resources are seeked by the player only
+                    Log.e(TAG, "indexTrack: can't map " + item.getLocation());
+                    return;
+                }
+                mSeekIndexes.put(rawId, OggPageIndex.scan(region));
+            }
+        });
+    }
+
+    /**
+     * Gets the extracted metadata of a media item without preparing a player for it
+     *
+     * @param item media-item of the current playlist
+     * @return the metadata or null if the item wasn't scanned yet or its format isn't supported
+     */
+    public TrackMetadata getTrackMetadata(MediaItem item) {
+        MetadataScanner scanner = mMetadataScanner;
+        return scanner != null ? scanner.get(item) : null;
+    }
+
+    /**
+     * Finds the items of the current playlist whose title contains the query, ignoring case and
+     * diacritics. Queries shorter than three characters match the start of title words.
+     *
+     * @param query text to look for
+     * @param limit maximum number of results
+     * @return playlist indexes of the matching items in ascending order, empty while the playlist
+     * is being indexed
+     */
+    public int[] searchPlaylist(String query, int limit) {
+        TitleIndex index = mTitleIndex;
+        return index != null ? index.search(query, limit) : new int[0];
+    }
+
+    /**
+     * Gets a range of the waveform peaks of a media item, computed in the background once a
+     * playlist containing it was started
+     *
+     * @param item            media-item of the current playlist
+     * @param framesPerBucket zoom level, one of {@link WaveformStore#LEVELS}
+     * @param from            index of the first bucket
+     * @param count           maximum number of buckets
+     * @return min and max of each bucket in turn as the upper byte of the 16-bit samples, or null
+     * if the peaks aren't computed yet
+     */
+    public byte[] getWaveform(MediaItem item, int framesPerBucket, int from, int count) {
+        WaveformScanner scanner = mWaveformScanner;
+        if (scanner == null) return null;
+        try {
+            return scanner.read(item, framesPerBucket, from, count);
         } catch (IOException e) {
-            Log.e(TAG, "startPlaying", e);
-            onCommandQuit();
+            Log.e(TAG, "getWaveform", e);
+            return null;
         }
     }
 
+    /**
+     * Gets the total duration of the playlist from the extracted metadata
+     *
+     * @return duration in milliseconds or -1 while the playlist is being scanned
+     */
+    public long getQueueDurationMs() {
+        MetadataScanner scanner = mMetadataScanner;
+        return scanner != null ? scanner.getQueueDurationMs() : -1;
+    }
+
+    /**
+     * Gets the share of notification artwork already decoded when its track came up
+     *
+     * @return hit rate between 0 and 1
+     */
+    public float getArtworkHitRate() {
+        return mArtworkLoader.getHitRate();
+    }
+
+    /**
+     * Gets the average decode time of notification artwork
+     *
+     * @return milliseconds per decoded image
+     */
+    public float getArtworkDecodeMs() {
+        return mArtworkLoader.getAverageDecodeMs();
+    }
+
+    /**
+     * Gets the share of block reads of remote sources served from the disk cache
+     *
+     * @return hit ratio between 0 and 1, 0 until the service is initialized
+     */
+    public float getStreamCacheHitRatio() {
+        MediaSources sources = mSources;
+        return sources != null ? sources.getStreamCache().getHitRatio() : 0;
+    }
+
+    /**
+     * Gets the bytes of remote sources fetched from the network
+     *
+     * @return byte count since the service was created, 0 until it's initialized
+     */
+    public long getStreamFetchedBytes() {
+        MediaSources sources = mSources;
+        return sources != null ? sources.getStreamCache().getFetchedBytes() : 0;
+    }
+
+    /**
+     * Gets the meter recording the silence between chained tracks
+     *
+     * @return gap meter of this service
+     */
+    public TransitionGapMeter getTransitionGapMeter() {
+        return mGapMeter;
+    }
+
+    /**
+     * Gets the duration of one audio output buffer of the device, which is the upper bound for
+     * a gapless transition
+     *
+     * @return buffer duration in nanoseconds or 0 if the device doesn't report it
+     */
+    public long getOutputBufferNanos() {
+        AudioManager manager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        String rate = manager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+        String frames = manager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER);
+        if (rate == null || frames == null) return 0;
+        return Long.parseLong(frames) * 1000000000L / Long.parseLong(rate);
+    }
+
+    /**
+     * Gets the meter recording the time from a transport command to the start of playback
+     *
+     * @return command latency meter of this service
+     */
+    public CommandLatencyMeter getCommandLatencyMeter() {
+        return mCommandLatency;
+    }
+
+    /**
+     * Gets the number of next and previous commands which were merged into a later one instead of
+     * preparing their own target
+     *
+     * @return count since the service was created
+     */
+    public int getCoalescedCommandCount() {
+        return mCoalescedCount;
+    }
+
     public String showDebugConnectedMsg() {
         return "Service is connected";
     }
@@ -459,31 +1821,42 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
     @Override
     public void onAudioFocusChange(int focusState) {
         //Invoked when the audio focus of the system is updated.
+        postCommand(CMD_FOCUS, focusState);
+    }
+
+    /**
+     * Applies an audio focus change to the players
+     *
+     * @param focusState new focus state from {@link AudioManager}
+     */
+    private void onCommandFocusChange(int focusState) {
         switch (focusState) {
             case AudioManager.AUDIOFOCUS_GAIN:
-                // resume playback
-                if (!initMediaPlayerIfClosed()) {
-                    if (!mMediaPlayer.isPlaying()) onCommandPlay();
-                }
-                mMediaPlayer.setVolume(1.0f, 1.0f);
+                // resume playback, reopening the players if they were released
+                mController.play();
+                mDuckVolume = 1;
+                applyVolume();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS:
-                // Lost focus for an unbounded amount of time: stop playback and release media player
-                if (mMediaPlayer.isPlaying()) mMediaPlayer.stop();
-                mMediaPlayer.release();
-                mMediaPlayer = null;
-                updateRemoteViews();
+                // Lost focus for an unbounded amount of time: stop playback and release media player.
+                // Another app plays now, so a bound client mustn't warm the players up again.
+                mHasAudioFocus = false;
+                mIdleReleased = false;
+                mController.release(getCurrentPositionMs());
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
                 // Lost focus for a short time, but we have to stop
                 // playback. We don't release the media player because playback
                 // is likely to resume
-                if (mMediaPlayer.isPlaying()) onCommandPause();
+                if (mController.isPlaying()) onCommandPause();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
                 // Lost focus for a short time, but it's ok to keep playing
                 // at an attenuated level
-                if (mMediaPlayer.isPlaying()) mMediaPlayer.setVolume(0.1f, 0.1f);
+                if (mController.isPlaying()) {
+                    mDuckVolume = DUCK_VOLUME;
+                    applyVolume();
+                }
                 break;
         }
     }
@@ -498,6 +1871,7 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
         int result = audioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
         if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
             //Focus gained
+            mHasAudioFocus = true;
             return true;
         }
         //Could not gain focus
@@ -532,26 +1906,7 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
         phoneStateListener = new PhoneStateListener() {
             @Override
             public void onCallStateChanged(int state, String incomingNumber) {
-                switch (state) {
-                    //if at least one call exists or the phone is ringing
-                    //pause the MediaPlayer
-                    case TelephonyManager.CALL_STATE_OFFHOOK:
-                    case TelephonyManager.CALL_STATE_RINGING:
-                        if (mMediaPlayer != null) {
-                            onCommandPause();
-                            ongoingCall = true;
-                        }
-                        break;
-                    case TelephonyManager.CALL_STATE_IDLE:
-                        // Phone idle. Start playing.
-                        if (mMediaPlayer != null) {
-                            if (ongoingCall) {
-                                ongoingCall = false;
-                                onCommandPlay();
-                            }
-                        }
-                        break;
-                }
+                postCommand(CMD_CALL_STATE, state);
             }
         };
         // Register the listener with the telephony manager
@@ -560,10 +1915,67 @@ public class MediaService extends Service implements AudioManager.OnAudioFocusCh
                 PhoneStateListener.LISTEN_CALL_STATE);
     }
 
+    /**
+     * Pauses playback for a phone call and resumes it afterwards
+     *
+     * @param state call state from {@link TelephonyManager}
+     */
+    private void onCommandCallState(int state) {
+        switch (state) {
+            //if at least one call exists or the phone is ringing
+            //pause the MediaPlayer
+            case TelephonyManager.CALL_STATE_OFFHOOK:
+            case TelephonyManager.CALL_STATE_RINGING:
+                if (mController.isPlaying()) {
+                    onCommandPause();
+                    ongoingCall = true;
+                }
+                break;
+            case TelephonyManager.CALL_STATE_IDLE:
+                // Phone idle. Start playing.
+                if (ongoingCall) {
+                    ongoingCall = false;
+                    mController.play();
+                }
+                break;
+        }
+    }
+
     public class MyBinder extends Binder {
         public MediaService getService() {
             return MediaService.this;
         }
+
+        /**
+         * @return the playback metrics collected since the service was created
+         */
+        public MetricsSnapshot getMetrics() {
+            return snapshotMetrics();
+        }
+
+        /**
+         * Subscribes to the playback state, the current one is delivered right away and then every
+         * change, instead of polling the service
+         *
+         * @param listener       receives the states
+         * @param handler        handler the states are delivered on
+         * @param tickIntervalMs interval of position updates while playing, 0 for changes only,
+         *                       e.g. 250 while a position is visible
+         * @return subscription to pass to {@link #unsubscribe(StatePublisher.Subscription)}
+         */
+        public StatePublisher.Subscription subscribe(StatePublisher.Listener listener, final Handler handler,
+                                                     int tickIntervalMs) {
+            return mStatePublisher.subscribe(listener, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            }, tickIntervalMs);
+        }
+
+        public void unsubscribe(StatePublisher.Subscription subscription) {
+            mStatePublisher.unsubscribe(subscription);
+        }
     }
 
 }
\ No newline at end of file
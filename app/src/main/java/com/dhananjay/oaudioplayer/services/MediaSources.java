@@ -0,0 +1,224 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import com.dhananjay.oaudioplayer.audio.MediaCodecDecoder;
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.source.BlockCache;
+import com.dhananjay.oaudioplayer.source.ByteBufferSource;
+import com.dhananjay.oaudioplayer.source.HttpSource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Opens the sources behind {@link MediaItem#getLocation()}: raw resource names, absolute file paths,
+ * file and content URIs, and http or https URLs. Local sources are opened as descriptors, remote
+ * ones as {@link HttpSource} reading through a shared {@link BlockCache} and handed to the players
+ * as a {@link StreamDataSource}. Players before Android 6 have no data source API, they stream
+ * remote URLs themselves, bypassing the cache.
+ * <p>
+ * Raw resources are stored uncompressed, so they are regions of the installed package. The package
+ * is mapped once and every raw source is a {@link ByteBufferSource} over its region, which costs
+ * no descriptor at all. Descriptors opened for other sources or older players are closed as soon
+ * as the player or extractor took its own duplicate.
+ *
+ * @author Dhananjay Kumar
+ */
+class MediaSources implements DecoderSource {
+    // Region length the platform passes for a whole descriptor, content may not know its length
+    private static final long WHOLE_FILE = 0x7ffffffffffffffL;
+
+    private final Context mContext;
+    private final ResourceResolver mResolver;
+    private final BlockCache mStreamCache;
+    private final File mPackageFile;
+
+    // Mapping of the whole package shared by the raw sources, guarded by this
+    private MappedByteBuffer mPackageMap;
+    private boolean mPackageMapFailed;
+    // Offset and length of each raw resource in the package, guarded by this
+    private final HashMap<Integer, long[]> mRawRegions = new HashMap<>();
+
+    /**
+     * @param context     context resolving raw resources and content URIs
+     * @param resolver    resolver of raw resource names
+     * @param streamCache cache of the blocks of remote sources
+     * @param packageFile installed package holding the raw resources
+     */
+    MediaSources(Context context, ResourceResolver resolver, BlockCache streamCache, File packageFile) {
+        mContext = context;
+        mResolver = resolver;
+        mStreamCache = streamCache;
+        mPackageFile = packageFile;
+    }
+
+    /**
+     * @param item media-item to check
+     * @return true if the item location is an http or https URL
+     */
+    static boolean isStream(MediaItem item) {
+        String location = item.getLocation();
+        return location != null && (location.startsWith("http://") || location.startsWith("https://"));
+    }
+
+    /**
+     * Opens a local source
+     *
+     * @param item media-item to open
+     * @return descriptor of the file or resource region, its length may be
+     * {@link AssetFileDescriptor#UNKNOWN_LENGTH} for content URIs
+     * @throws IOException if the source doesn't exist or is remote
+     */
+    AssetFileDescriptor openFd(MediaItem item) throws IOException {
+        if (ResourceResolver.isFile(item)) {
+            File file = new File(item.getLocation());
+            return new AssetFileDescriptor(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY),
+                    0, file.length());
+        }
+        if (isStream(item)) throw new FileNotFoundException("Remote source: " + item.getLocation());
+        if (ResourceResolver.isUri(item)) {
+            AssetFileDescriptor afd = mContext.getContentResolver()
+                    .openAssetFileDescriptor(Uri.parse(item.getLocation()), "r");
+            if (afd == null) throw new FileNotFoundException("No content: " + item.getLocation());
+            return afd;
+        }
+        int rawId = mResolver.getRawId(item);
+        if (rawId == 0) throw new FileNotFoundException("No raw resource: " + item.getLocation());
+        try {
+            return mContext.getResources().openRawResourceFd(rawId);
+        } catch (Resources.NotFoundException e) {
+            throw new FileNotFoundException(e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the bytes of a raw resource from the shared mapping of the package
+     *
+     * @param item media-item to look up
+     * @return read-only buffer of the resource, null if it isn't a raw resource or can't be mapped
+     */
+    ByteBuffer mapRaw(MediaItem item) {
+        if (ResourceResolver.isFile(item) || ResourceResolver.isUri(item)) return null;
+        int rawId = mResolver.getRawId(item);
+        if (rawId == 0) return null;
+        synchronized (this) {
+            long[] region = mRawRegions.get(rawId);
+            if (region == null) {
+                region = findRegion(rawId);
+                mRawRegions.put(rawId, region);
+            }
+            MappedByteBuffer map = getPackageMap();
+            if (region.length == 0 || map == null || region[0] + region[1] > map.capacity()) return null;
+            ByteBuffer buffer = map.duplicate();
+            buffer.position((int) region[0]).limit((int) (region[0] + region[1]));
+            return buffer.slice().asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * @return offset and length of the resource in the package, empty if it's compressed or missing
+     */
+    private long[] findRegion(int rawId) {
+        try (AssetFileDescriptor afd = mContext.getResources().openRawResourceFd(rawId)) {
+            return new long[]{afd.getStartOffset(), afd.getLength()};
+        } catch (IOException | Resources.NotFoundException e) {
+            return new long[0];
+        }
+    }
+
+    private MappedByteBuffer getPackageMap() {
+        if (mPackageMap == null && !mPackageMapFailed) {
+            // the mapping stays valid once the file is closed
+            try (RandomAccessFile file = new RandomAccessFile(mPackageFile, "r")) {
+                mPackageMap = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            } catch (IOException | IllegalArgumentException e) {
+                // thrown for packages beyond 2 GB, raw sources fall back to descriptors then
+                mPackageMapFailed = true;
+            }
+        }
+        return mPackageMap;
+    }
+
+    /**
+     * Opens a remote source
+     *
+     * @param item media-item with an http or https location
+     * @return source reading through the stream cache
+     * @throws IOException if the location isn't a valid URL
+     */
+    HttpSource openStream(MediaItem item) throws IOException {
+        return new HttpSource(item.getLocation(), mStreamCache);
+    }
+
+    /**
+     * Points the player at the source of the media item
+     *
+     * @param player player in idle state
+     * @param item   media-item to load
+     * @throws IOException if the source can't be opened
+     */
+    void setDataSource(MediaPlayer player, MediaItem item) throws IOException {
+        if (isStream(item)) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                player.setDataSource(new StreamDataSource(openStream(item)));
+            } else {
+                player.setDataSource(item.getLocation());
+            }
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            ByteBuffer raw = mapRaw(item);
+            if (raw != null) {
+                player.setDataSource(new StreamDataSource(new ByteBufferSource(raw)));
+                return;
+            }
+        }
+        // the player duplicates the descriptor
+        try (AssetFileDescriptor afd = openFd(item)) {
+            player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), getLength(afd));
+        }
+    }
+
+    @Override
+    public PcmDecoder open(MediaItem item) throws IOException {
+        if (isStream(item)) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                throw new IOException("Streams need Android 6: " + item.getLocation());
+            }
+            return MediaCodecDecoder.open(new StreamDataSource(openStream(item)));
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            ByteBuffer raw = mapRaw(item);
+            if (raw != null) return MediaCodecDecoder.open(new StreamDataSource(new ByteBufferSource(raw)));
+        }
+        // the extractor holds its own reference to the descriptor
+        try (AssetFileDescriptor afd = openFd(item)) {
+            return MediaCodecDecoder.open(afd.getFileDescriptor(), afd.getStartOffset(), getLength(afd));
+        }
+    }
+
+    private static long getLength(AssetFileDescriptor afd) {
+        return afd.getLength() != AssetFileDescriptor.UNKNOWN_LENGTH ? afd.getLength() : WHOLE_FILE;
+    }
+
+    /**
+     * @return cache of the blocks of remote sources, with its hit and network counters
+     */
+    BlockCache getStreamCache() {
+        return mStreamCache;
+    }
+}
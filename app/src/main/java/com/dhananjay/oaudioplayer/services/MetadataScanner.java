@@ -0,0 +1,186 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.MetadataCache;
+import com.dhananjay.oaudioplayer.model.TrackMetadata;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts {@link TrackMetadata} of playlist items on a fixed number of low priority worker threads
+ * and keeps it in a {@link MetadataCache}. Items whose source didn't change since they were last
+ * extracted are skipped, so rescanning a known playlist only costs a size and time lookup per item.
+ *
+ * @author Dhananjay Kumar
+ */
+class MetadataScanner {
+
+    /**
+     * Access to the sources of media items
+     */
+    interface Probe {
+        /**
+         * @return size of the source in bytes or -1 if it doesn't exist
+         */
+        long getSize(MediaItem item);
+
+        /**
+         * @return modification time of the source, any value which changes when the source does
+         */
+        long getModified(MediaItem item);
+
+        /**
+         * Reads the metadata from the source
+         *
+         * @return the metadata or null if the format isn't supported
+         * @throws IOException if the source can't be read
+         */
+        TrackMetadata extract(MediaItem item) throws IOException;
+    }
+
+    private final MetadataCache mCache;
+    private final Probe mProbe;
+    private final int mThreads;
+    private final ExecutorService mWorkers;
+
+    // Incremented by every scan, workers of a replaced scan stop at the next item
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicInteger mExtractedCount = new AtomicInteger();
+    private final AtomicInteger mSkippedCount = new AtomicInteger();
+
+    private volatile long mQueueDurationMs = -1;
+    private volatile int mUnknownCount;
+
+    /**
+     * @param cache   cache to fill, saved after every scan
+     * @param probe   access to the media sources
+     * @param threads number of workers
+     */
+    MetadataScanner(MetadataCache cache, Probe probe, int threads) {
+        mCache = cache;
+        mProbe = probe;
+        mThreads = threads;
+        mWorkers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MetadataScanner-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts scanning the items, abandoning a scan still running. The workers pull items from a
+     * shared cursor, so a slow source only holds up one of them.
+     *
+     * @param items items to scan, must be safe to read from several threads
+     * @param done  run on a worker once the whole list was scanned and the cache saved, may be null
+     */
+    void scan(final List<MediaItem> items, final Runnable done) {
+        final int generation = mGeneration.incrementAndGet();
+        mQueueDurationMs = -1;
+        final AtomicInteger cursor = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger(mThreads);
+        final AtomicLong durationMs = new AtomicLong();
+        final AtomicInteger unknown = new AtomicInteger();
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int size = items.size();
+                int index;
+                while ((index = cursor.getAndIncrement()) < size) {
+                    if (mGeneration.get() != generation) return;
+                    TrackMetadata metadata = scanItem(items.get(index));
+                    if (metadata != null) {
+                        durationMs.addAndGet(metadata.durationMs);
+                    } else {
+                        unknown.incrementAndGet();
+                    }
+                }
+                if (running.decrementAndGet() > 0 || mGeneration.get() != generation) return;
+
+                mQueueDurationMs = durationMs.get();
+                mUnknownCount = unknown.get();
+                try {
+                    mCache.save();
+                } catch (IOException e) {
+                    // the cache stays dirty, the next scan saves it again
+                }
+                if (done != null) done.run();
+            }
+        };
+        for (int i = 0; i < mThreads; i++) {
+            mWorkers.execute(worker);
+        }
+    }
+
+    private TrackMetadata scanItem(MediaItem item) {
+        long size = mProbe.getSize(item);
+        if (size < 0) return null;
+        long modified = mProbe.getModified(item);
+
+        TrackMetadata metadata = mCache.getIfCurrent(item.getLocation(), size, modified);
+        if (metadata != null) {
+            mSkippedCount.incrementAndGet();
+            return metadata;
+        }
+        try {
+            metadata = mProbe.extract(item);
+        } catch (IOException e) {
+            return null;
+        }
+        if (metadata == null) return null;
+        mCache.put(item.getLocation(), size, modified, metadata);
+        mExtractedCount.incrementAndGet();
+        return metadata;
+    }
+
+    /**
+     * Gets the cached metadata of an item, which may be from before a change of its source
+     *
+     * @param item media-item to look up
+     * @return the metadata or null if the item wasn't scanned yet
+     */
+    TrackMetadata get(MediaItem item) {
+        return mCache.get(item.getLocation());
+    }
+
+    /**
+     * Gets the summed duration of the items of the last completed scan
+     *
+     * @return duration in milliseconds or -1 while a scan is running
+     */
+    long getQueueDurationMs() {
+        return mQueueDurationMs;
+    }
+
+    /**
+     * @return number of items of the last completed scan without metadata
+     */
+    int getUnknownCount() {
+        return mUnknownCount;
+    }
+
+    int getExtractedCount() {
+        return mExtractedCount.get();
+    }
+
+    int getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    void shutdown() {
+        mGeneration.incrementAndGet();
+        mWorkers.shutdown();
+    }
+}
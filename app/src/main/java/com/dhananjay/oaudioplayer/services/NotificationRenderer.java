@@ -0,0 +1,179 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import com.dhananjay.oaudioplayer.R;
+import com.dhananjay.oaudioplayer.core.NotificationState;
+import com.dhananjay.oaudioplayer.metrics.PlaybackMetrics;
+
+/**
+ * Renders {@link NotificationState}s into the media notification.
+ * <p>
+ * Updates are merged so that at most one {@link NotificationManagerCompat#notify(int, Notification)}
+ * is sent per {@link #NOTIFY_WINDOW_MS}, and states which look the same as the last rendered one
+ * are not sent at all. Every notification gets fresh {@link RemoteViews} setting each control, so
+ * it can be inflated on its own and the payload stays the same size however many updates are
+ * sent. The artwork is the bulk of it, each layout gets a bitmap cropped to its own image view.
+ *
+ * @author Dhananjay Kumar
+ */
+class NotificationRenderer {
+    // Roughly one display frame
+    static final long NOTIFY_WINDOW_MS = 16;
+
+    private final Context mContext;
+    private final int mNotificationId;
+    private final NotificationManagerCompat mManager;
+    private final ArtworkLoader mArtworkLoader;
+    private final PlaybackMetrics mMetrics;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final PendingIntent mQuitIntent;
+    private final PendingIntent mPrevIntent;
+    private final PendingIntent mPlayIntent;
+    private final PendingIntent mNextIntent;
+
+    private NotificationState mRendered;
+    private NotificationState mPending;
+    private long mLastNotifyAt;
+    private int mNotifyCount;
+    private int mSkippedCount;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            Notification notification;
+            synchronized (NotificationRenderer.this) {
+                NotificationState state = mPending;
+                mPending = null;
+                if (state == null) return;
+
+                if (state.changedFields(mRendered) == 0) {
+                    mSkippedCount++;
+                    return;
+                }
+                notification = build(state);
+                mLastNotifyAt = SystemClock.uptimeMillis();
+                mNotifyCount++;
+            }
+            mManager.notify(mNotificationId, notification);
+            mMetrics.recordNotification();
+        }
+    };
+
+    NotificationRenderer(Context context, int notificationId, ArtworkLoader artworkLoader,
+                         PlaybackMetrics metrics, PendingIntent quitIntent, PendingIntent prevIntent, PendingIntent playIntent,
+                         PendingIntent nextIntent) {
+        mContext = context;
+        mNotificationId = notificationId;
+        mManager = NotificationManagerCompat.from(context);
+        mArtworkLoader = artworkLoader;
+        mMetrics = metrics;
+        mQuitIntent = quitIntent;
+        mPrevIntent = prevIntent;
+        mPlayIntent = playIntent;
+        mNextIntent = nextIntent;
+    }
+
+    /**
+     * Builds the notification for the state right away, e.g. for
+     * {@link android.app.Service#startForeground(int, Notification)}
+     *
+     * @param state state to show
+     * @return notification showing the state
+     */
+    synchronized Notification render(NotificationState state) {
+        return build(state);
+    }
+
+    private Notification build(NotificationState state) {
+        mRendered = state;
+        // null if evicted meanwhile, the placeholder is shown until it's loaded again
+        ArtworkLoader.Artwork artwork = state.artwork != null ? mArtworkLoader.peek(state.artwork) : null;
+        return new NotificationCompat.Builder(mContext).setTicker("Media Service started...")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContent(createRemoteViews(R.layout.notification_collapsed, state,
+                        artwork != null ? artwork.small : null))
+                .setAutoCancel(false)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setCustomBigContentView(createRemoteViews(R.layout.notification_expanded, state,
+                        artwork != null ? artwork.large : null))
+                .build();
+    }
+
+    /**
+     * Schedules the state to be shown, replacing any state not shown yet
+     *
+     * @param state state to show
+     */
+    synchronized void update(NotificationState state) {
+        boolean scheduled = mPending != null;
+        mPending = state;
+        if (scheduled) return;
+
+        long due = mLastNotifyAt + NOTIFY_WINDOW_MS;
+        long now = SystemClock.uptimeMillis();
+        if (due <= now) {
+            mHandler.post(mFlush);
+        } else {
+            mHandler.postDelayed(mFlush, due - now);
+        }
+    }
+
+    /**
+     * Drops a scheduled update, e.g. when the notification is about to be removed
+     */
+    synchronized void cancel() {
+        mHandler.removeCallbacks(mFlush);
+        mPending = null;
+    }
+
+    synchronized int getNotifyCount() {
+        return mNotifyCount;
+    }
+
+    synchronized int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * @param artwork bitmap of the artwork sized for the layout, null to show the image resource
+     */
+    private RemoteViews createRemoteViews(int layoutId, NotificationState state, Bitmap artwork) {
+        RemoteViews remoteViews = new RemoteViews(mContext.getPackageName(), layoutId);
+        remoteViews.setOnClickPendingIntent(R.id.ib_media_quit, mQuitIntent);
+        remoteViews.setOnClickPendingIntent(R.id.ib_track_prev, mPrevIntent);
+        remoteViews.setOnClickPendingIntent(R.id.ib_track_play, mPlayIntent);
+        remoteViews.setOnClickPendingIntent(R.id.ib_track_next, mNextIntent);
+
+        remoteViews.setTextViewText(R.id.tv_track_title, state.title);
+
+        // Every control is set, the views may be inflated from this notification alone
+        if (artwork != null) {
+            remoteViews.setImageViewBitmap(R.id.iv_track_image, artwork);
+        } else {
+            remoteViews.setImageViewResource(R.id.iv_track_image,
+                    state.imageId != 0 ? state.imageId : R.drawable.ic_music);
+        }
+        remoteViews.setBoolean(R.id.ib_track_prev, "setEnabled", state.canGoPrev);
+        remoteViews.setBoolean(R.id.ib_track_play, "setEnabled", state.isReady);
+        remoteViews.setBoolean(R.id.ib_track_next, "setEnabled", state.canGoNext);
+
+        remoteViews.setViewVisibility(R.id.pb_track_buffering, state.isBuffering ? View.VISIBLE : View.GONE);
+        remoteViews.setViewVisibility(R.id.ib_track_play, state.isBuffering ? View.GONE : View.VISIBLE);
+        remoteViews.setImageViewResource(R.id.ib_track_play, state.isReady && state.isPlaying
+                ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play);
+        return remoteViews;
+    }
+}
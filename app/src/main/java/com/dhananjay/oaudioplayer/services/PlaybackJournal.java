@@ -0,0 +1,197 @@
+package com.dhananjay.oaudioplayer.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Small journal of the playback position, written on a background executor so a restarted service
+ * can continue where the killed one stopped.
+ * <p>
+ * Routine updates are coalesced into at most one write per interval, important ones (pause, track
+ * change) are written right away. Every write replaces the whole file through a rename and carries
+ * a checksum, so a torn write is never read back.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PlaybackJournal {
+    private static final int MAGIC = 0x4f414a4e; // "OAJN"
+    private static final int VERSION = 1;
+    private static final int PAYLOAD_SIZE = 32;
+
+    private final File mFile;
+    private final ScheduledExecutorService mExecutor;
+    private final long mIntervalMs;
+
+    private final AtomicReference<State> mPending = new AtomicReference<>();
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private volatile long mLastWriteAt;
+    private volatile int mWriteCount;
+
+    private final Runnable mWrite = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private final Runnable mScheduledWrite = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled.set(false);
+            writePending();
+        }
+    };
+
+    /**
+     * Immutable playback state as stored in the journal
+     */
+    public static class State {
+        public static final int FLAG_PLAYING = 1;
+        public static final int FLAG_SHUFFLE = 1 << 1;
+
+        public final long playlistId;
+        public final int index;
+        public final int positionMs;
+        public final int flags;
+        public final int repeatMode;
+
+        public State(long playlistId, int index, int positionMs, int flags, int repeatMode) {
+            this.playlistId = playlistId;
+            this.index = index;
+            this.positionMs = positionMs;
+            this.flags = flags;
+            this.repeatMode = repeatMode;
+        }
+
+        public boolean isPlaying() {
+            return (flags & FLAG_PLAYING) != 0;
+        }
+
+        public boolean isShuffled() {
+            return (flags & FLAG_SHUFFLE) != 0;
+        }
+    }
+
+    /**
+     * @param file       journal file
+     * @param executor   single threaded executor all writes run on
+     * @param intervalMs minimum time between coalesced writes
+     */
+    public PlaybackJournal(File file, ScheduledExecutorService executor, long intervalMs) {
+        mFile = file;
+        mExecutor = executor;
+        mIntervalMs = intervalMs;
+    }
+
+    /**
+     * Records a routine update, written at most once per interval
+     *
+     * @param state current playback state
+     */
+    public void record(State state) {
+        mPending.set(state);
+        if (mScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, mLastWriteAt + mIntervalMs - System.currentTimeMillis());
+            mExecutor.schedule(mScheduledWrite, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records an update which is written as soon as the executor gets to it
+     *
+     * @param state current playback state
+     */
+    public void recordNow(State state) {
+        mPending.set(state);
+        mExecutor.execute(mWrite);
+    }
+
+    /**
+     * Deletes the journal, e.g. when the user quit playback and nothing should be resumed
+     */
+    public void clear() {
+        mPending.set(null);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPending.set(null);
+                mFile.delete();
+            }
+        });
+    }
+
+    /**
+     * Reads the last written state
+     *
+     * @return stored state or null if there is none or it's unreadable
+     */
+    public State read() {
+        if (!mFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+            byte[] payload = new byte[PAYLOAD_SIZE];
+            in.readFully(payload);
+            long checksum = in.readLong();
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            if (crc.getValue() != checksum) return null;
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) return null;
+            long playlistId = data.readLong();
+            int index = data.readInt();
+            int positionMs = data.readInt();
+            int flags = data.readInt();
+            int repeatMode = data.readInt();
+            return new State(playlistId, index, positionMs, flags, repeatMode);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public int getWriteCount() {
+        return mWriteCount;
+    }
+
+    private void writePending() {
+        State state = mPending.getAndSet(null);
+        if (state == null) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(PAYLOAD_SIZE + 8);
+        File temp = new File(mFile.getPath() + ".tmp");
+        try {
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(state.playlistId);
+            data.writeInt(state.index);
+            data.writeInt(state.positionMs);
+            data.writeInt(state.flags);
+            data.writeInt(state.repeatMode);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray(), 0, PAYLOAD_SIZE);
+            data.writeLong(crc.getValue());
+
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                bytes.writeTo(out);
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(mFile)) throw new IOException("Can't replace " + mFile);
+            mLastWriteAt = System.currentTimeMillis();
+            mWriteCount++;
+        } catch (IOException e) {
+            // the previous journal stays in place, the next update retries
+            temp.delete();
+        }
+    }
+}
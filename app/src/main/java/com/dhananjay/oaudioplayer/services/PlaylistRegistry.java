@@ -0,0 +1,62 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.PlaylistSource;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide table of playlists handed to {@link MediaService} by handle, so only the handle
+ * travels in the start {@link android.content.Intent}
+ *
+ * @author Dhananjay Kumar
+ */
+final class PlaylistRegistry {
+    private static final ConcurrentHashMap<Long, PlaylistSource> sSources = new ConcurrentHashMap<>();
+    private static final AtomicLong sNextHandle = new AtomicLong(1);
+
+    private PlaylistRegistry() {
+    }
+
+    static long register(PlaylistSource source) {
+        long handle = sNextHandle.getAndIncrement();
+        sSources.put(handle, source);
+        return handle;
+    }
+
+    /**
+     * Removes a playlist, its handle is used once
+     *
+     * @param handle handle from {@link #register(PlaylistSource)}
+     * @return the playlist, or null if it was taken or released already
+     */
+    static PlaylistSource take(long handle) {
+        return sSources.remove(handle);
+    }
+
+    static void release(long handle) {
+        sSources.remove(handle);
+    }
+
+    /**
+     * Wraps an in-memory list, pages are views of the list so nothing is copied
+     *
+     * @param items playlist items
+     * @return source over the items
+     */
+    static PlaylistSource fromList(final List<MediaItem> items) {
+        return new PlaylistSource() {
+            @Override
+            public int size() {
+                return items.size();
+            }
+
+            @Override
+            public List<MediaItem> getItems(int from, int count) {
+                return items.subList(from, from + count);
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaMetadataRetriever;
+
+import com.dhananjay.oaudioplayer.audio.MediaCodecDecoder;
+import com.dhananjay.oaudioplayer.audio.OggPageIndex;
+import com.dhananjay.oaudioplayer.audio.OpusHeaders;
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.TrackMetadata;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link MetadataScanner.Probe} for the local sources of {@link MediaSources}. Opus streams are read by
+ * {@link OpusHeaders} and {@link OggPageIndex} from a mapped region, everything else goes through
+ * {@link MediaMetadataRetriever}. As {@link DecoderSource} it opens the same sources in a
+ * {@link MediaCodecDecoder}. Remote sources are reported missing, scanning them would download the
+ * whole catalog.
+ *
+ * @author Dhananjay Kumar
+ */
+class ResourceMetadataProbe implements MetadataScanner.Probe, DecoderSource {
+    // Opus always decodes at 48 kHz
+    private static final int OPUS_SAMPLE_RATE = 48000;
+
+    private final MediaSources mSources;
+    private final long mPackageModified;
+
+    /**
+     * @param sources     opener of the sources
+     * @param packageFile installed package, raw resources only change with it
+     */
+    ResourceMetadataProbe(MediaSources sources, File packageFile) {
+        mSources = sources;
+        mPackageModified = packageFile.lastModified();
+    }
+
+    @Override
+    public long getSize(MediaItem item) {
+        if (ResourceResolver.isFile(item)) {
+            File file = new File(item.getLocation());
+            return file.isFile() ? file.length() : -1;
+        }
+        if (MediaSources.isStream(item)) return -1;
+        ByteBuffer raw = mSources.mapRaw(item);
+        if (raw != null) return raw.capacity();
+        try (AssetFileDescriptor afd = mSources.openFd(item)) {
+            return afd.getLength();
+        } catch (IOException e) {
+            // compressed resources have no descriptor, they can't be played either
+            return -1;
+        }
+    }
+
+    @Override
+    public long getModified(MediaItem item) {
+        if (ResourceResolver.isFile(item)) return new File(item.getLocation()).lastModified();
+        // content providers don't tell, entries are told apart by their size then
+        return ResourceResolver.isUri(item) ? 0 : mPackageModified;
+    }
+
+    @Override
+    public TrackMetadata extract(MediaItem item) throws IOException {
+        ByteBuffer raw = mSources.mapRaw(item);
+        if (raw != null) {
+            TrackMetadata metadata = extractOpus(raw);
+            if (metadata != null) return metadata;
+        }
+        if (ResourceResolver.isFile(item)) {
+            try (FileInputStream in = new FileInputStream(item.getLocation())) {
+                FileChannel channel = in.getChannel();
+                return extract(in.getFD(), channel, 0, channel.size());
+            }
+        }
+        try (AssetFileDescriptor afd = mSources.openFd(item);
+             FileInputStream in = afd.createInputStream()) {
+            return extract(afd.getFileDescriptor(), in.getChannel(), afd.getStartOffset(), afd.getLength());
+        }
+    }
+
+    @Override
+    public PcmDecoder open(MediaItem item) throws IOException {
+        return mSources.open(item);
+    }
+
+    private TrackMetadata extract(FileDescriptor fd, FileChannel channel, long offset, long length)
+            throws IOException {
+        TrackMetadata opus = extractOpus(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        if (opus != null) return opus;
+
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(fd, offset, length);
+            String mimeType = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
+            if (mimeType == null) return null;
+            return new TrackMetadata(mimeType,
+                    parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)),
+                    0, 0,
+                    (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE)),
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE),
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST),
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM));
+        } catch (RuntimeException e) {
+            // thrown for data the retriever can't handle
+            return null;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * @return metadata of an Opus stream, null if the buffer holds another format
+     */
+    private static TrackMetadata extractOpus(ByteBuffer buffer) {
+        OpusHeaders headers = OpusHeaders.parse(buffer);
+        if (headers == null) return null;
+        long durationMs = OggPageIndex.scan(buffer).getDurationMs();
+        int bitrate = durationMs > 0 ? (int) (buffer.capacity() * 8000L / durationMs) : 0;
+        return new TrackMetadata(TrackMetadata.MIME_OPUS, durationMs, OPUS_SAMPLE_RATE,
+                headers.channels, bitrate, headers.getComment("TITLE"),
+                headers.getComment("ARTIST"), headers.getComment("ALBUM"));
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
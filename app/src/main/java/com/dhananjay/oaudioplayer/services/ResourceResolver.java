@@ -0,0 +1,129 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.content.res.Resources;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Resolves {@link MediaItem} locations to raw resource ids and images to drawable ids. Every
+ * distinct name goes through {@link Resources#getIdentifier(String, String, String)} only once and
+ * the result is kept on the item, so the play and notification paths only read an int.
+ *
+ * @author Dhananjay Kumar
+ */
+public class ResourceResolver {
+    private static final String TYPE_RAW = "raw";
+    private static final String TYPE_DRAWABLE = "drawable";
+
+    private final Resources mResources;
+    private final String mPackageName;
+
+    // Items usually share a handful of images, so names are cached across items
+    private final HashMap<String, Integer> mRawIds = new HashMap<>();
+    private final HashMap<String, Integer> mDrawableIds = new HashMap<>();
+
+    private int mLookupCount;
+
+    public ResourceResolver(Resources resources, String packageName) {
+        mResources = resources;
+        mPackageName = packageName;
+    }
+
+    /**
+     * Gets the raw resource id of the item location
+     *
+     * @param item media-item to resolve
+     * @return raw resource id or 0 if there is none
+     */
+    public int getRawId(MediaItem item) {
+        int id = item.getLocationResId();
+        if (id == MediaItem.UNRESOLVED) {
+            // file paths of a scanned library and URIs are never resource names
+            id = isResourceName(item.getLocation()) ? lookup(mRawIds, item.getLocation(), TYPE_RAW) : 0;
+            item.setLocationResId(id);
+        }
+        return id;
+    }
+
+    /**
+     * @param item media-item to check
+     * @return true if the item location is an absolute file path rather than a raw resource name
+     */
+    public static boolean isFile(MediaItem item) {
+        return isFilePath(item.getLocation());
+    }
+
+    /**
+     * @param item media-item to check
+     * @return true if the item location is a URI with a scheme, like content:// or https://
+     */
+    public static boolean isUri(MediaItem item) {
+        return isUri(item.getLocation());
+    }
+
+    private static boolean isFilePath(String name) {
+        return name != null && name.startsWith("/");
+    }
+
+    private static boolean isUri(String name) {
+        return name != null && name.contains("://");
+    }
+
+    /**
+     * @return true if the name may be a resource name, rather than a file path or URI
+     */
+    private static boolean isResourceName(String name) {
+        return !isFilePath(name) && !isUri(name);
+    }
+
+    /**
+     * Gets the drawable resource id of the item image
+     *
+     * @param item media-item to resolve
+     * @return drawable resource id or 0 if there is none
+     */
+    public int getDrawableId(MediaItem item) {
+        int id = item.getImageResId();
+        if (id == MediaItem.UNRESOLVED) {
+            // the cover files of a scanned library are decoded by ArtworkLoader instead
+            id = isResourceName(item.getImage()) ? lookup(mDrawableIds, item.getImage(), TYPE_DRAWABLE) : 0;
+            item.setImageResId(id);
+        }
+        return id;
+    }
+
+    /**
+     * Resolves all items up front, meant to run on a background thread after a playlist is loaded
+     *
+     * @param items media-items to resolve
+     */
+    public void resolveAll(List<MediaItem> items) {
+        for (int i = 0, size = items.size(); i < size; i++) {
+            if (Thread.currentThread().isInterrupted()) return;
+            MediaItem item = items.get(i);
+            getRawId(item);
+            getDrawableId(item);
+        }
+    }
+
+    /**
+     * Gets the number of {@link Resources#getIdentifier(String, String, String)} calls made so far
+     */
+    public synchronized int getLookupCount() {
+        return mLookupCount;
+    }
+
+    private synchronized int lookup(HashMap<String, Integer> cache, String name, String type) {
+        if (name == null) return 0;
+        Integer id = cache.get(name);
+        if (id == null) {
+            id = mResources.getIdentifier(name, type, mPackageName);
+            mLookupCount++;
+            cache.put(name, id);
+        }
+        return id;
+    }
+}
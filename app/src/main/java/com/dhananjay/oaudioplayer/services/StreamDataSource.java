@@ -0,0 +1,39 @@
+package com.dhananjay.oaudioplayer.services;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+
+import com.dhananjay.oaudioplayer.source.RandomAccessSource;
+
+import java.io.IOException;
+
+/**
+ * Hands a {@link RandomAccessSource} to {@link android.media.MediaPlayer} and
+ * {@link android.media.MediaExtractor}, which close it once done
+ *
+ * @author Dhananjay Kumar
+ */
+@TargetApi(Build.VERSION_CODES.M)
+class StreamDataSource extends MediaDataSource {
+    private final RandomAccessSource mSource;
+
+    StreamDataSource(RandomAccessSource source) {
+        mSource = source;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        return mSource.readAt(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mSource.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+}
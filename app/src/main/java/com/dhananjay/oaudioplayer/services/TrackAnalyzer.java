@@ -0,0 +1,243 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.audio.LoudnessMeter;
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.audio.PeakAccumulator;
+import com.dhananjay.oaudioplayer.audio.WaveformStore;
+import com.dhananjay.oaudioplayer.model.LoudnessCache;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes a track once for everything the background scanners derive from its samples, feeding
+ * a {@link LoudnessMeter} and a {@link PeakAccumulator} from the same chunks. Whichever scanner
+ * reaches a track first produces what's missing of both while the other one skips it, and the
+ * number of tracks decoded at once is limited over all scanners.
+ *
+ * @author Dhananjay Kumar
+ */
+class TrackAnalyzer {
+    /**
+     * Result flag of {@link #analyze}, the loudness was measured
+     */
+    static final int LOUDNESS = 1;
+    /**
+     * Result flag of {@link #analyze}, the peaks were completed
+     */
+    static final int PEAKS = 2;
+
+    // Samples decoded at once, a multiple of any channel count up to 8
+    private static final int CHUNK_SAMPLES = 8 * 1024 * 6;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LoudnessCache mCache;
+    private final WaveformStore mStore;
+    private final MetadataScanner.Probe mProbe;
+    private final DecoderSource mSource;
+    private final Semaphore mDecoders;
+
+    // Locations being decoded, by any scanner
+    private final Set<String> mBusy = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicLong mMeasuredFrames = new AtomicLong();
+    private volatile Window mPeakWindow;
+    private volatile boolean mShutdown;
+
+    /**
+     * Items of a playlist whose peaks are wanted, from the first on wrapping around the end
+     */
+    private static final class Window {
+        final int first;
+        final int count;
+        final int size;
+
+        Window(int first, int count, int size) {
+            this.first = first;
+            this.count = count;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param cache       loudness of the sources
+     * @param store       peaks of the sources, null if they aren't wanted
+     * @param probe       size and modification time of the sources
+     * @param source      decoders of the sources
+     * @param maxDecoders number of tracks decoded at once over all scanners
+     */
+    TrackAnalyzer(LoudnessCache cache, WaveformStore store, MetadataScanner.Probe probe, DecoderSource source,
+                  int maxDecoders) {
+        mCache = cache;
+        mStore = store;
+        mProbe = probe;
+        mSource = source;
+        mDecoders = new Semaphore(maxDecoders);
+    }
+
+    /**
+     * Sets the items whose peaks are computed when a scan of the playlist decodes them
+     *
+     * @param first index of the first item
+     * @param count number of items from the first on
+     * @param size  size of the playlist
+     */
+    void setPeakWindow(int first, int count, int size) {
+        mPeakWindow = new Window(first, count, size);
+    }
+
+    /**
+     * @return true if the item at index of a playlist of size is in the peak window
+     */
+    boolean isPeakWanted(int index, int size) {
+        Window window = mPeakWindow;
+        return window != null && window.size == size && (index - window.first + size) % size < window.count;
+    }
+
+    /**
+     * Produces what's missing of the item's loudness and, if asked, its peaks in one decode pass
+     *
+     * @param item  media-item to analyze
+     * @param peaks whether the peaks are wanted as well as the loudness
+     * @return {@link #LOUDNESS} and {@link #PEAKS} for what was produced, 0 if nothing was missing,
+     * or -1 if the source doesn't exist, another scanner is decoding it or the analyzer was shut
+     * down first
+     * @throws IOException if the source can't be decoded or the peaks stored
+     */
+    int analyze(MediaItem item, boolean peaks) throws IOException {
+        long size = mProbe.getSize(item);
+        if (size < 0) return -1;
+        long modified = mProbe.getModified(item);
+        String location = item.getLocation();
+        boolean loudness = !mCache.isCurrent(location, size, modified);
+        String key = peaks && mStore != null ? getPeakKey(location, size, modified) : null;
+        if (key != null && mStore.isComplete(key)) key = null;
+        if (!loudness && key == null) return 0;
+
+        if (!mBusy.add(location)) return -1;
+        try {
+            mDecoders.acquireUninterruptibly();
+            try {
+                return decode(item, size, modified, loudness, key);
+            } finally {
+                mDecoders.release();
+            }
+        } finally {
+            mBusy.remove(location);
+        }
+    }
+
+    private int decode(MediaItem item, long size, long modified, boolean loudness, String key) throws IOException {
+        if (mShutdown) return -1;
+        WaveformStore.Writer writer = key != null ? mStore.openWriter(key) : null;
+        PcmDecoder decoder = null;
+        try {
+            decoder = mSource.open(item);
+            int rate = decoder.getSampleRate();
+            int channels = decoder.getChannelCount();
+            // the peaks continue where they were interrupted, the loudness needs the whole track
+            long resumeFrame = writer != null ? writer.getResumeFrame() : 0;
+            long frame = 0;
+            if (!loudness && resumeFrame > 0) {
+                decoder.seekTo(resumeFrame * 1000000L / rate);
+                frame = resumeFrame;
+            }
+
+            LoudnessMeter meter = loudness ? new LoudnessMeter(rate, channels) : null;
+            PeakAccumulator accumulator = writer != null
+                    ? new PeakAccumulator(channels, WaveformStore.LEVELS, writer) : null;
+            short[] chunk = new short[CHUNK_SAMPLES / channels * channels];
+            int count;
+            while ((count = decoder.decode(chunk, 0, chunk.length)) >= 0) {
+                if (mShutdown) return -1;
+                if (meter != null) meter.add(chunk, 0, count);
+                if (accumulator != null) {
+                    int stored = (int) Math.min(count, Math.max(0, resumeFrame - frame) * channels);
+                    if (stored < count) accumulator.add(chunk, stored, count - stored);
+                }
+                frame += count / channels;
+            }
+
+            int produced = 0;
+            if (meter != null) {
+                mCache.put(item.getLocation(), size, modified, (float) meter.getIntegratedLoudness());
+                mMeasuredFrames.addAndGet(meter.getFrameCount());
+                produced |= LOUDNESS;
+            }
+            if (accumulator != null) {
+                accumulator.finish();
+                writer.complete();
+                produced |= PEAKS;
+            }
+            return produced;
+        } finally {
+            if (decoder != null) decoder.release();
+            // stores what was computed for the next scan to continue, no-op once complete
+            if (writer != null) writer.close();
+        }
+    }
+
+    /**
+     * @return key of the peaks of a source in the given state, see {@link WaveformStore}
+     */
+    private static String getPeakKey(String location, long size, long modified) {
+        return UUID.nameUUIDFromBytes(location.getBytes(UTF_8)) + "_"
+                + Long.toHexString(size) + "-" + Long.toHexString(modified);
+    }
+
+    /**
+     * Reads a range of the peaks of an item
+     *
+     * @param item            media-item to look up
+     * @param framesPerBucket one of {@link WaveformStore#LEVELS}
+     * @param from            index of the first bucket
+     * @param count           maximum number of buckets
+     * @return min and max of each bucket in turn, or null if the peaks aren't computed yet
+     * @throws IOException if the stored peaks can't be read
+     */
+    byte[] readPeaks(MediaItem item, int framesPerBucket, int from, int count) throws IOException {
+        long size = mProbe.getSize(item);
+        if (size < 0 || mStore == null) return null;
+        String key = getPeakKey(item.getLocation(), size, mProbe.getModified(item));
+        return mStore.read(key, framesPerBucket, from, count);
+    }
+
+    /**
+     * Gets the integrated loudness of an item
+     *
+     * @param item media-item to look up
+     * @return loudness in LUFS, NaN if it wasn't measured yet
+     */
+    float getLoudness(MediaItem item) {
+        return mCache.get(item.getLocation());
+    }
+
+    /**
+     * Writes the loudness measured since the last save
+     *
+     * @throws IOException if the cache can't be written
+     */
+    void saveLoudness() throws IOException {
+        mCache.save();
+    }
+
+    /**
+     * @return frames measured for loudness so far, over all tracks
+     */
+    long getMeasuredFrames() {
+        return mMeasuredFrames.get();
+    }
+
+    /**
+     * Stops the decode passes in progress within a chunk
+     */
+    void shutdown() {
+        mShutdown = true;
+    }
+}
@@ -0,0 +1,86 @@
+package com.dhananjay.oaudioplayer.services;
+
+/**
+ * Measures the silence between two chained tracks. The end of the outgoing track and the start of
+ * the incoming one are reported separately (in either order) and every pair is turned into one gap
+ * sample.
+ *
+ * @author Dhananjay Kumar
+ */
+public class TransitionGapMeter {
+    private long mCompletedAt = -1;
+    private long mStartedAt = -1;
+
+    private long mLastGapNanos;
+    private long mMaxGapNanos;
+    private long mTotalGapNanos;
+    private int mTransitionCount;
+
+    /**
+     * Records that the outgoing track finished playing
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     * @return true if this call completed a gap sample
+     */
+    public synchronized boolean markCompleted(long nanos) {
+        mCompletedAt = nanos;
+        return mStartedAt >= 0 && record();
+    }
+
+    /**
+     * Records that the incoming track started playing
+     *
+     * @param nanos timestamp from {@link System#nanoTime()}
+     * @return true if this call completed a gap sample
+     */
+    public synchronized boolean markStarted(long nanos) {
+        mStartedAt = nanos;
+        return mCompletedAt >= 0 && record();
+    }
+
+    /**
+     * Drops a half-recorded transition, e.g. when the user skipped while the next track was armed
+     */
+    public synchronized void cancel() {
+        mCompletedAt = -1;
+        mStartedAt = -1;
+    }
+
+    private boolean record() {
+        // The next player may report its start before the previous one reports completion,
+        // in which case there was no audible gap at all.
+        mLastGapNanos = Math.max(0, mStartedAt - mCompletedAt);
+        mMaxGapNanos = Math.max(mMaxGapNanos, mLastGapNanos);
+        mTotalGapNanos += mLastGapNanos;
+        mTransitionCount++;
+        mCompletedAt = -1;
+        mStartedAt = -1;
+        return true;
+    }
+
+    public synchronized long getLastGapNanos() {
+        return mLastGapNanos;
+    }
+
+    public synchronized long getMaxGapNanos() {
+        return mMaxGapNanos;
+    }
+
+    public synchronized long getAverageGapNanos() {
+        return mTransitionCount == 0 ? 0 : mTotalGapNanos / mTransitionCount;
+    }
+
+    public synchronized int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * Checks whether every measured transition stayed below the given budget
+     *
+     * @param budgetNanos allowed gap, usually the duration of one audio output buffer
+     * @return true if the worst gap so far fits into the budget
+     */
+    public synchronized boolean isWithin(long budgetNanos) {
+        return mMaxGapNanos <= budgetNanos;
+    }
+}
@@ -0,0 +1,125 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.audio.WaveformStore;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the waveform peaks of playlist items into a {@link WaveformStore} on low priority worker
+ * threads, one track per worker. Peaks are keyed by the location, size and modification time of
+ * the source, so a changed file is computed again while unchanged ones are skipped. A scan covers a
+ * window of items from the one playing rather than the whole playlist, the store keeps the peaks
+ * of the recently used ones within its budget.
+ * <p>
+ * Tracks are decoded by a {@link TrackAnalyzer} shared with the {@link LoudnessScanner}, which
+ * measures their loudness in the same pass and computes the peaks of the window when it gets to
+ * a track first. A new scan lets tracks in progress finish and only changes which ones come next.
+ * Shutting down stops the workers within a decode chunk, the tracks in progress continue with the
+ * next scan.
+ *
+ * @author Dhananjay Kumar
+ */
+class WaveformScanner {
+    private final TrackAnalyzer mAnalyzer;
+    private final int mThreads;
+    private final ExecutorService mWorkers;
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicInteger mComputedCount = new AtomicInteger();
+    private volatile boolean mShutdown;
+
+    /**
+     * @param analyzer decoder of the tracks, shared with the loudness scan
+     * @param threads  number of workers, each computing one track at a time
+     */
+    WaveformScanner(TrackAnalyzer analyzer, int threads) {
+        mAnalyzer = analyzer;
+        mThreads = threads;
+        mWorkers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "WaveformScanner-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts computing the peaks of the items, replacing a scan still running
+     *
+     * @param items items to scan, must be safe to read from several threads
+     * @param first index of the item to start with, usually the one playing
+     * @param count number of items to scan from the first on, wrapping around the end
+     */
+    void scan(final List<MediaItem> items, final int first, final int count) {
+        final int generation = mGeneration.incrementAndGet();
+        final AtomicInteger cursor = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger(mThreads);
+        mAnalyzer.setPeakWindow(first, count, items.size());
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int size = items.size();
+                int end = Math.min(count, size);
+                int index;
+                while ((index = cursor.getAndIncrement()) < end) {
+                    if (mGeneration.get() != generation || mShutdown) return;
+                    scanItem(items.get((first + index) % size));
+                }
+                // the last worker keeps the loudness measured along the way
+                if (running.decrementAndGet() > 0 || mGeneration.get() != generation || mShutdown) return;
+                try {
+                    mAnalyzer.saveLoudness();
+                } catch (IOException e) {
+                    // saved again by the next scan
+                }
+            }
+        };
+        for (int i = 0; i < mThreads; i++) {
+            mWorkers.execute(worker);
+        }
+    }
+
+    private void scanItem(MediaItem item) {
+        try {
+            int produced = mAnalyzer.analyze(item, true);
+            if (produced > 0 && (produced & TrackAnalyzer.PEAKS) != 0) mComputedCount.incrementAndGet();
+        } catch (IOException e) {
+            // unreadable sources are tried again by the next scan
+        }
+    }
+
+    /**
+     * Reads a range of the peaks of an item
+     *
+     * @param item            media-item to look up
+     * @param framesPerBucket one of {@link WaveformStore#LEVELS}
+     * @param from            index of the first bucket
+     * @param count           maximum number of buckets
+     * @return min and max of each bucket in turn, or null if the peaks aren't computed yet
+     * @throws IOException if the stored peaks can't be read
+     */
+    byte[] read(MediaItem item, int framesPerBucket, int from, int count) throws IOException {
+        return mAnalyzer.readPeaks(item, framesPerBucket, from, count);
+    }
+
+    int getComputedCount() {
+        return mComputedCount.get();
+    }
+
+    void shutdown() {
+        mShutdown = true;
+        mAnalyzer.shutdown();
+        mWorkers.shutdown();
+    }
+}
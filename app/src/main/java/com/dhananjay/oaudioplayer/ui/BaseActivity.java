@@ -5,14 +5,18 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 
+import com.dhananjay.oaudioplayer.core.PlaybackState;
+import com.dhananjay.oaudioplayer.core.StatePublisher;
 import com.dhananjay.oaudioplayer.services.MediaService;
 import com.dhananjay.oaudioplayer.model.MediaItem;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Base Activity class for all other activities containing common functionality extends {@link AppCompatActivity}
@@ -21,13 +25,24 @@ import java.util.ArrayList;
  */
 public class BaseActivity extends AppCompatActivity {
     private static final String TAG = BaseActivity.class.getSimpleName();
+    // Position updates while the activity is visible, it's only bound then
+    private static final int POSITION_TICK_MS = 250;
     private boolean mServiceBound = false;
-    private Intent serviceIntent;
+    private MediaService.MyBinder mBinder;
+    private StatePublisher.Subscription mStateSubscription;
+    private final StatePublisher.Listener mStateListener = new StatePublisher.Listener() {
+        @Override
+        public void onPlaybackState(PlaybackState state) {
+            BaseActivity.this.onPlaybackState(state);
+        }
+    };
     private ServiceConnection mServiceConnection = new ServiceConnection() {
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
             mServiceBound = false;
+            mBinder = null;
+            mStateSubscription = null;
         }
 
         @Override
@@ -36,6 +51,9 @@ public class BaseActivity extends AppCompatActivity {
             MediaService mMediaService = myBinder.getService();
             Log.d(TAG, mMediaService.showDebugConnectedMsg());
             mServiceBound = true;
+            mBinder = myBinder;
+            mStateSubscription = myBinder.subscribe(mStateListener, new Handler(Looper.getMainLooper()),
+                    POSITION_TICK_MS);
         }
     };
 
@@ -45,15 +63,23 @@ public class BaseActivity extends AppCompatActivity {
     }
 
     /**
-     * Creates {@link MediaService} {@link Intent} with provided playlist
+     * Receives the playback state of the service while the activity is visible, on the main thread
+     *
+     * @param state current state, pushed on every change and periodically while playing
+     */
+    protected void onPlaybackState(PlaybackState state) {
+    }
+
+    /**
+     * Creates {@link MediaService} {@link Intent} with provided playlist, to be passed to
+     * {@link #startService(Intent)} once. The service takes the playlist when it receives the
+     * intent, however long after the activity is gone.
      *
-     * @param sSamplePlaylist Arraylist of {@link MediaItem} for playlist
+     * @param playlist list of {@link MediaItem} for playlist, not modified afterwards
      * @return MediaService intent
      */
-    protected Intent getMediaServiceIntent(ArrayList<MediaItem> sSamplePlaylist) {
-        if (serviceIntent == null)
-            serviceIntent = MediaService.createPlaylistIntent(this, sSamplePlaylist);
-        return serviceIntent;
+    protected Intent getMediaServiceIntent(List<MediaItem> playlist) {
+        return MediaService.createPlaylistIntent(this, playlist);
     }
 
     @Override
@@ -84,6 +110,9 @@ public class BaseActivity extends AppCompatActivity {
     private void unbindService() {
         if (mServiceBound) {
             Log.d(TAG, "unbindService()");
+            if (mStateSubscription != null) mBinder.unsubscribe(mStateSubscription);
+            mStateSubscription = null;
+            mBinder = null;
             unbindService(mServiceConnection);
             mServiceBound = false;
         }
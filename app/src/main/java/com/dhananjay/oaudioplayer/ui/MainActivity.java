@@ -1,38 +1,135 @@
 package com.dhananjay.oaudioplayer.ui;
 
+import android.Manifest;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Environment;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
 import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
 
 import com.dhananjay.oaudioplayer.R;
+import com.dhananjay.oaudioplayer.core.PlaybackController;
+import com.dhananjay.oaudioplayer.core.PlaybackState;
+import com.dhananjay.oaudioplayer.library.LibraryIndex;
+import com.dhananjay.oaudioplayer.library.LibraryScanner;
 import com.dhananjay.oaudioplayer.model.MediaItem;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Activity for signing in existing users extends {@link BaseActivity}
+ * Activity listing the music library and playing it, extends {@link BaseActivity}
  *
  * @author Dhananjay Kumar
  */
 public class MainActivity extends BaseActivity {
-    // ArrayList of MediaItems for playlist
-    private static final ArrayList<MediaItem> sSamplePlaylist = new ArrayList<>();
+    private static final String LIBRARY_INDEX_FILE = "library.index";
+    // Items shown to the UI at once while the library is scanned
+    private static final int LIBRARY_BATCH_SIZE = 500;
+    private static final int REQUEST_READ_STORAGE = 1;
 
-    static {
-        // Put audio files in raw folder and image in drawable
-        sSamplePlaylist.add(new MediaItem("Opus Audio", "my_file", "ic_music"));
-    }
+    // Bundled track, played while the library is empty
+    private static final MediaItem SAMPLE_ITEM = new MediaItem("Opus Audio", "my_file", "ic_music");
+
+    private LibraryScanner mLibraryScanner;
+    // Items found so far, UI thread only
+    private ArrayList<MediaItem> mLibrary = new ArrayList<>();
+    private Button mPlayButton;
+    private TextView mNowPlaying;
+
+    private final LibraryScanner.Listener mLibraryListener = new LibraryScanner.Listener() {
+        @Override
+        public void onBatch(final List<MediaItem> items) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mLibrary.addAll(items);
+                    updatePlayButton();
+                }
+            });
+        }
+
+        @Override
+        public void onFinished(final List<MediaItem> library) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    // same items, now in path order
+                    mLibrary = new ArrayList<>(library);
+                    updatePlayButton();
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         setContentView(R.layout.activity_main);
-        findViewById(R.id.btn_media_play).setOnClickListener(new View.OnClickListener() {
+        mPlayButton = (Button) findViewById(R.id.btn_media_play);
+        mNowPlaying = (TextView) findViewById(R.id.txt_now_playing);
+        mPlayButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                startService(getMediaServiceIntent(sSamplePlaylist));
+                // the service pages through the list, it must not change underneath
+                List<MediaItem> playlist = mLibrary.isEmpty()
+                        ? Collections.singletonList(SAMPLE_ITEM) : new ArrayList<>(mLibrary);
+                startService(getMediaServiceIntent(playlist));
             }
         });
+
+        mLibraryScanner = new LibraryScanner(LibraryIndex.load(new File(getFilesDir(), LIBRARY_INDEX_FILE)),
+                "ic_music", LIBRARY_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.READ_EXTERNAL_STORAGE)
+                == PackageManager.PERMISSION_GRANTED) {
+            scanLibrary();
+        } else {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.READ_EXTERNAL_STORAGE},
+                    REQUEST_READ_STORAGE);
+        }
     }
 
-}
\ No newline at end of file
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_READ_STORAGE && grantResults.length > 0
+                && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            scanLibrary();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mLibraryScanner.shutdown();
+    }
+
+    /**
+     * Starts scanning the music directory, the items arrive in batches
+     */
+    private void scanLibrary() {
+        mLibrary = new ArrayList<>();
+        mLibraryScanner.scan(Collections.singletonList(
+                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MUSIC)), mLibraryListener);
+    }
+
+    @Override
+    protected void onPlaybackState(PlaybackState state) {
+        if (state.item == null || state.state == PlaybackController.STATE_RELEASED) {
+            mNowPlaying.setText(null);
+            return;
+        }
+        int seconds = state.positionMs / 1000;
+        mNowPlaying.setText(getString(R.string.now_playing, state.item.getTitle(), seconds / 60, seconds % 60));
+    }
+
+    private void updatePlayButton() {
+        mPlayButton.setText(getString(R.string.play_library, mLibrary.size()));
+    }
+}
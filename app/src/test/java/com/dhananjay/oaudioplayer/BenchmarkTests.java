@@ -0,0 +1,8 @@
+package com.dhananjay.oaudioplayer;
+
+/**
+ * JUnit category of the JVM tests which measure performance and only print their numbers. They
+ * are left out of the unit test run unless it's started with -Pbenchmarks.
+ */
+public interface BenchmarkTests {
+}
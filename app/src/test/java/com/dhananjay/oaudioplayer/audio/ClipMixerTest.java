@@ -0,0 +1,144 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link ClipMixer} and {@link ClipBank}
+ */
+public class ClipMixerTest {
+    private static final int RATE = 48000;
+
+    private static short[] constant(int samples, int value) {
+        short[] clip = new short[samples];
+        Arrays.fill(clip, (short) value);
+        return clip;
+    }
+
+    @Test
+    public void bank_rejectsClipsBeyondBudget() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1000);
+
+        assertEquals(0, bank.add(new short[400], 400, 2));
+        assertEquals(-1, bank.add(new short[101], 101, 1));
+        assertEquals(1, bank.add(new short[100], 100, 1));
+        assertEquals(0, bank.getRemainingBytes());
+        assertEquals(1000, bank.getUsedBytes());
+        assertEquals(2, bank.getClipCount());
+    }
+
+    @Test
+    public void mix_sumsVoicesAndUpmixesMono() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        short[] stereo = {1000, -1000, 1000, -1000, 1000, -1000, 1000, -1000, 1000, -1000};
+        int a = bank.add(stereo, stereo.length, 2);
+        int b = bank.add(constant(2, 400), 2, 1);
+        ClipMixer mixer = new ClipMixer(bank, 4, 16, null);
+
+        mixer.trigger(a, 1, 0);
+        mixer.trigger(b, 0.5f, 0);
+        short[] out = new short[8];
+        assertEquals(1, mixer.mix(out, 4, 0));
+
+        assertEquals("[1200, -800, 1200, -800, 1000, -1000, 1000, -1000]", Arrays.toString(out));
+        assertEquals(0, mixer.mix(out, 4, 0));
+        assertEquals("[1000, -1000, 0, 0, 0, 0, 0, 0]", Arrays.toString(out));
+        assertTrue(mixer.isIdle());
+    }
+
+    @Test
+    public void mix_clampsTheSum() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        int loud = bank.add(constant(2, 30000), 2, 2);
+        ClipMixer mixer = new ClipMixer(bank, 2, 4, null);
+
+        mixer.trigger(loud, 1, 0);
+        mixer.trigger(loud, 1, 0);
+        short[] out = new short[2];
+        mixer.mix(out, 1, 0);
+
+        assertEquals(Short.MAX_VALUE, out[0]);
+    }
+
+    @Test
+    public void trigger_stealsTheOldestVoice() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        int first = bank.add(constant(200, 1), 200, 1);
+        int second = bank.add(constant(200, 10), 200, 1);
+        int third = bank.add(constant(200, 100), 200, 1);
+        ClipMixer mixer = new ClipMixer(bank, 2, 4, null);
+        short[] out = new short[8];
+
+        mixer.trigger(first, 1, 0);
+        mixer.mix(out, 4, 0);
+        mixer.trigger(second, 1, 0);
+        mixer.mix(out, 4, 0);
+        assertEquals(11, out[0]);
+        mixer.trigger(third, 1, 0);
+        assertEquals(2, mixer.mix(out, 4, 0));
+
+        assertEquals(110, out[0]);
+        assertEquals(1, mixer.getStolenCount());
+    }
+
+    @Test
+    public void trigger_dropsBeyondVoicesWaiting() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        int clip = bank.add(constant(2, 1), 2, 1);
+        ClipMixer mixer = new ClipMixer(bank, 2, 4, null);
+
+        assertTrue(mixer.trigger(clip, 1, 0));
+        assertTrue(mixer.trigger(clip, 1, 0));
+        assertFalse(mixer.trigger(clip, 1, 0));
+        assertEquals(1, mixer.getDroppedCount());
+    }
+
+    @Test
+    public void mix_reportsTriggerToOutputLatency() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        int clip = bank.add(constant(2, 1), 2, 1);
+        final List<Long> latencies = new ArrayList<>();
+        ClipMixer mixer = new ClipMixer(bank, 2, 4, new ClipMixer.Listener() {
+            @Override
+            public void onVoiceStarted(long latencyNanos) {
+                latencies.add(latencyNanos);
+            }
+        });
+
+        mixer.trigger(clip, 1, 1000);
+        mixer.trigger(clip, 1, 4000);
+        mixer.mix(new short[8], 4, 9000);
+
+        assertEquals("[8000, 5000]", latencies.toString());
+    }
+
+    @Test
+    public void triggerAndMix_allocateNothing() throws Exception {
+        ClipBank bank = new ClipBank(RATE, 4, 1 << 20);
+        int mono = bank.add(constant(4800, 100), 4800, 1);
+        int stereo = bank.add(constant(9600, 100), 9600, 2);
+        ClipMixer mixer = new ClipMixer(bank, 4, 240, null);
+        short[] out = new short[480];
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 10000; i++) {
+                if (i % 7 == 0) mixer.trigger(i % 2 == 0 ? mono : stereo, 0.5f, i);
+                mixer.mix(out, 240, i);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            // the first rounds may still allocate in the interpreter and while compiling
+            if (round == 2) assertEquals(0, allocated);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import com.dhananjay.oaudioplayer.BenchmarkTests;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of {@link CrossfadeMixer} against what real-time playback needs
+ */
+@Category(BenchmarkTests.class)
+public class CrossfadeMixerBenchmark {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    // Chunk size of PcmPipeline, 10 ms
+    private static final int CHUNK = RATE / 100 * CHANNELS;
+    // Longest fade, 12 s
+    private static final long FADE_FRAMES = 12L * RATE;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void mix_throughput() throws Exception {
+        Random random = new Random(1);
+        short[] outgoing = new short[CHUNK];
+        short[] incoming = new short[CHUNK];
+        for (int i = 0; i < CHUNK; i++) {
+            outgoing[i] = (short) random.nextInt();
+            incoming[i] = (short) random.nextInt();
+        }
+        short[] target = new short[CHUNK];
+        CrossfadeMixer mixer = new CrossfadeMixer(CHUNK);
+
+        // warm up
+        fade(mixer, outgoing, incoming, target);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            fade(mixer, outgoing, incoming, target);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double samples = (double) FADE_FRAMES * CHANNELS * ROUNDS;
+        double perSecond = samples / (elapsed / 1e9);
+        System.out.println(String.format("CrossfadeMixer.mix: %.1f M samples/s, %.0fx real time at %d Hz stereo",
+                perSecond / 1e6, perSecond / (RATE * CHANNELS), RATE));
+    }
+
+    private static void fade(CrossfadeMixer mixer, short[] outgoing, short[] incoming, short[] target) {
+        for (long frame = 0; frame < FADE_FRAMES; frame += CHUNK / CHANNELS) {
+            mixer.mix(outgoing, incoming, target, CHUNK, CHANNELS, frame, FADE_FRAMES, 1, 1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link CrossfadeMixer}
+ */
+public class CrossfadeMixerTest {
+    private static final int FRAMES = 1000;
+
+    private static short[] level(int samples, int value) {
+        short[] level = new short[samples];
+        Arrays.fill(level, (short) value);
+        return level;
+    }
+
+    @Test
+    public void mix_followsEqualPowerCurves() throws Exception {
+        CrossfadeMixer mixer = new CrossfadeMixer(FRAMES);
+        short[] silence = new short[FRAMES];
+        short[] out = new short[FRAMES];
+        short[] in = new short[FRAMES];
+
+        mixer.mix(level(FRAMES, 10000), silence, out, FRAMES, 1, 0, FRAMES, 1, 1);
+        mixer.mix(silence, level(FRAMES, 10000), in, FRAMES, 1, 0, FRAMES, 1, 1);
+
+        assertEquals(10000, out[0]);
+        assertEquals(0, in[0]);
+        assertEquals(7071, out[FRAMES / 2], 1);
+        assertEquals(7071, in[FRAMES / 2], 1);
+        for (int i = 0; i < FRAMES; i++) {
+            // the summed power stays constant
+            double power = (double) out[i] * out[i] + (double) in[i] * in[i];
+            assertEquals(1e8, power, 1e8 * 0.003);
+        }
+    }
+
+    @Test
+    public void mix_inChunksMatchesWhole() throws Exception {
+        CrossfadeMixer mixer = new CrossfadeMixer(2 * FRAMES);
+        short[] outgoing = level(2 * FRAMES, 12000);
+        short[] incoming = level(2 * FRAMES, -8000);
+        short[] whole = new short[2 * FRAMES];
+        mixer.mix(outgoing, incoming, whole, 2 * FRAMES, 2, 0, FRAMES, 1, 1);
+
+        short[] chunk = new short[2 * 70];
+        short[] chunked = new short[2 * FRAMES];
+        for (int frame = 0; frame < FRAMES; frame += 70) {
+            int frames = Math.min(70, FRAMES - frame);
+            mixer.mix(outgoing, incoming, chunk, 2 * frames, 2, frame, FRAMES, 1, 1);
+            System.arraycopy(chunk, 0, chunked, 2 * frame, 2 * frames);
+        }
+        assertArrayEquals(whole, chunked);
+    }
+
+    @Test
+    public void mix_clampsToSampleRange() throws Exception {
+        CrossfadeMixer mixer = new CrossfadeMixer(2);
+        short[] target = new short[2];
+        mixer.mix(new short[]{30000, -30000}, new short[]{30000, -30000}, target, 2, 2, 50, 100, 1, 1);
+
+        assertEquals(Short.MAX_VALUE, target[0]);
+        assertEquals(Short.MIN_VALUE, target[1]);
+    }
+
+    @Test
+    public void mix_pastEndKeepsIncoming() throws Exception {
+        CrossfadeMixer mixer = new CrossfadeMixer(4);
+        short[] target = new short[4];
+        mixer.mix(level(4, 5000), level(4, 1234), target, 4, 2, 100, 100, 1, 1);
+
+        assertArrayEquals(level(4, 1234), target);
+    }
+
+    @Test
+    public void mix_scalesEachStreamByItsGain() throws Exception {
+        CrossfadeMixer mixer = new CrossfadeMixer(2);
+        short[] target = new short[2];
+        // at the start only the outgoing stream is heard, at the end only the incoming one
+        mixer.mix(level(2, 10000), level(2, 10000), target, 2, 2, 0, 100, 0.5f, 0.25f);
+        assertArrayEquals(level(2, 5000), target);
+        mixer.mix(level(2, 10000), level(2, 10000), target, 2, 2, 100, 100, 0.5f, 0.25f);
+        assertArrayEquals(level(2, 2500), target);
+    }
+}
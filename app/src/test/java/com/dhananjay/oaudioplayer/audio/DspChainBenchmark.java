@@ -0,0 +1,78 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import com.dhananjay.oaudioplayer.BenchmarkTests;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of {@link DspChain} by number of equalizer bands against what real-time
+ * playback needs, the limiter always on
+ */
+@Category(BenchmarkTests.class)
+public class DspChainBenchmark {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    // Chunk size of PcmPipeline, 10 ms
+    private static final int CHUNK = RATE / 100 * CHANNELS;
+    // Ten minutes of audio per measurement
+    private static final int CHUNKS = 60000;
+    private static final int[] BAND_COUNTS = {0, 1, 5, DspSettings.MAX_BANDS};
+
+    @Test
+    public void process_throughput() throws Exception {
+        Random random = new Random(1);
+        short[] samples = new short[CHUNK];
+        short[] source = new short[CHUNK];
+        for (int i = 0; i < CHUNK; i++) {
+            source[i] = (short) (random.nextGaussian() * 6000);
+        }
+
+        DspChain[] chains = new DspChain[BAND_COUNTS.length];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = new DspChain(RATE, CHANNELS, CHUNK);
+            chains[i].setSettings(settings(BAND_COUNTS[i]));
+        }
+        // warm up every configuration, so the first one isn't measured while compiling
+        for (DspChain chain : chains) {
+            run(chain, source, samples, CHUNKS / 5);
+        }
+
+        double count = (double) CHUNK * CHUNKS;
+        double limiterNanos = 0;
+        for (int i = 0; i < chains.length; i++) {
+            int bands = BAND_COUNTS[i];
+            long elapsed = run(chains[i], source, samples, CHUNKS);
+            double perSecond = count / (elapsed / 1e9);
+            double nanos = elapsed / count;
+            if (bands == 0) limiterNanos = nanos;
+            // time of one band alone, what the chain takes beyond the bare limiter
+            String perBand = bands == 0 ? "" : String.format(", %.1f M samples/s per band",
+                    1e3 * bands / (nanos - limiterNanos));
+            System.out.println(String.format("DspChain.process %d bands: %.1f M samples/s, %.0fx real time at %d Hz stereo%s",
+                    bands, perSecond / 1e6, perSecond / (RATE * CHANNELS), RATE, perBand));
+        }
+    }
+
+    private static DspSettings settings(int bands) {
+        DspSettings.Band[] peaks = new DspSettings.Band[bands];
+        for (int i = 0; i < bands; i++) {
+            peaks[i] = new DspSettings.Band(DspSettings.Band.TYPE_PEAK, 31.25f * (1 << i), i % 2 == 0 ? 4 : -4, 1.41f);
+        }
+        return new DspSettings(-4, peaks, -1, 50);
+    }
+
+    /**
+     * @return time taken in nanoseconds
+     */
+    private static long run(DspChain chain, short[] source, short[] samples, int chunks) {
+        long start = System.nanoTime();
+        for (int i = 0; i < chunks; i++) {
+            System.arraycopy(source, 0, samples, 0, CHUNK);
+            chain.process(samples, 0, CHUNK);
+        }
+        return System.nanoTime() - start;
+    }
+}
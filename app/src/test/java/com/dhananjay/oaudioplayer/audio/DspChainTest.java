@@ -0,0 +1,145 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DspChainTest {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int CHUNK = RATE / 100 * CHANNELS;
+
+    private static DspSettings settings(float preampDb, DspSettings.Band... bands) {
+        return new DspSettings(preampDb, bands, 0, 50);
+    }
+
+    /**
+     * @return stereo sine with the same signal on both channels
+     */
+    private static short[] sine(double frequency, double amplitude, int frames) {
+        short[] samples = new short[frames * CHANNELS];
+        for (int i = 0; i < frames; i++) {
+            short value = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * frequency * i / RATE));
+            samples[2 * i] = value;
+            samples[2 * i + 1] = value;
+        }
+        return samples;
+    }
+
+    private static void process(DspChain chain, short[] samples) {
+        for (int offset = 0; offset < samples.length; offset += CHUNK) {
+            chain.process(samples, offset, Math.min(CHUNK, samples.length - offset));
+        }
+    }
+
+    private static double rms(short[] samples, int from) {
+        double sum = 0;
+        for (int i = from; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (samples.length - from));
+    }
+
+    private static double gainDb(short[] processed, short[] original) {
+        // skips the settling of the filters
+        int from = processed.length / 2;
+        return 20 * Math.log10(rms(processed, from) / rms(original, from));
+    }
+
+    @Test
+    public void withoutSettings_leavesSamples() throws Exception {
+        DspChain chain = new DspChain(RATE, CHANNELS, CHUNK);
+        short[] original = sine(1000, 0.5, RATE / 10);
+        short[] samples = original.clone();
+        process(chain, samples);
+        assertArrayEquals(original, samples);
+        assertEquals(0, chain.getLatencyFrames());
+    }
+
+    @Test
+    public void peakBand_boostsCenterOnly() throws Exception {
+        DspSettings boost = settings(-12, new DspSettings.Band(DspSettings.Band.TYPE_PEAK, 1000, 6, 1.41f));
+        short[] center = sine(1000, 0.25, RATE / 2);
+        short[] far = sine(8000, 0.25, RATE / 2);
+
+        DspChain chain = new DspChain(RATE, CHANNELS, CHUNK);
+        chain.setSettings(boost);
+        short[] processed = center.clone();
+        process(chain, processed);
+        assertEquals(-6, gainDb(processed, center), 0.2);
+
+        chain = new DspChain(RATE, CHANNELS, CHUNK);
+        chain.setSettings(boost);
+        processed = far.clone();
+        process(chain, processed);
+        assertEquals(-12, gainDb(processed, far), 0.3);
+    }
+
+    @Test
+    public void shelves_boostTheirSide() throws Exception {
+        DspSettings shelves = settings(-10,
+                new DspSettings.Band(DspSettings.Band.TYPE_LOW_SHELF, 200, 4, 0.71f),
+                new DspSettings.Band(DspSettings.Band.TYPE_HIGH_SHELF, 6000, -4, 0.71f));
+        double[] frequencies = {50, 1500, 15000};
+        double[] expected = {-6, -10, -14};
+        for (int i = 0; i < frequencies.length; i++) {
+            DspChain chain = new DspChain(RATE, CHANNELS, CHUNK);
+            chain.setSettings(shelves);
+            short[] original = sine(frequencies[i], 0.25, RATE / 2);
+            short[] processed = original.clone();
+            process(chain, processed);
+            assertEquals("at " + frequencies[i] + " Hz", expected[i], gainDb(processed, original), 0.5);
+        }
+    }
+
+    @Test
+    public void limiter_keepsPeaksBelowThreshold() throws Exception {
+        DspChain chain = new DspChain(RATE, CHANNELS, CHUNK);
+        chain.setSettings(new DspSettings(12, new DspSettings.Band[0], -3, 50));
+        short[] samples = sine(440, 0.9, RATE / 2);
+        // a sudden full scale burst in the middle
+        for (int i = samples.length / 2; i < samples.length / 2 + 200; i++) {
+            samples[i] = (short) (i % 4 < 2 ? 32767 : -32768);
+        }
+        process(chain, samples);
+
+        int limit = (int) Math.ceil(32768 * Math.pow(10, -3 / 20.0)) + 1;
+        int peak = 0;
+        for (short sample : samples) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        assertTrue("peak " + peak, peak <= limit);
+        // held close to the threshold rather than pumping below it
+        double rms = rms(samples, samples.length / 4);
+        assertTrue("rms " + rms, rms > 0.9 * limit / Math.sqrt(2));
+        assertEquals(RATE * DspChain.LOOKAHEAD_MS / 1000, chain.getLatencyFrames());
+    }
+
+    @Test
+    public void process_allocatesNothing() throws Exception {
+        DspSettings.Band[] bands = new DspSettings.Band[DspSettings.MAX_BANDS];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = new DspSettings.Band(DspSettings.Band.TYPE_PEAK, 31.25f * (1 << i), i % 2 == 0 ? 3 : -3, 1.41f);
+        }
+        DspChain chain = new DspChain(RATE, CHANNELS, CHUNK);
+        short[] samples = sine(1000, 0.9, CHUNK / CHANNELS);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int round = 0; round < 3; round++) {
+            // picking up new coefficients is part of the steady state
+            chain.setSettings(new DspSettings(round, bands, -1, 50));
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 10000; i++) {
+                chain.process(samples, 0, samples.length);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            // the first rounds may still allocate in the interpreter and while compiling
+            if (round == 2) assertEquals(0, allocated);
+        }
+    }
+}
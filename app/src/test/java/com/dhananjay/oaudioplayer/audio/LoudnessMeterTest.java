@@ -0,0 +1,64 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link LoudnessMeter}
+ */
+public class LoudnessMeterTest {
+
+    /**
+     * Interleaved sine of the same phase on every channel
+     */
+    static short[] sine(int rate, int channels, double seconds, double frequency, double dbfs) {
+        int frames = (int) (rate * seconds);
+        double amplitude = 32767 * Math.pow(10, dbfs / 20);
+        short[] samples = new short[frames * channels];
+        for (int f = 0; f < frames; f++) {
+            short value = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * f / rate));
+            for (int c = 0; c < channels; c++) {
+                samples[f * channels + c] = value;
+            }
+        }
+        return samples;
+    }
+
+    private static double measure(int rate, int channels, short[]... parts) {
+        LoudnessMeter meter = new LoudnessMeter(rate, channels);
+        for (short[] part : parts) {
+            // uneven chunks, as decoders deliver them
+            for (int offset = 0; offset < part.length; offset += 1000 * channels) {
+                meter.add(part, offset, Math.min(1000 * channels, part.length - offset));
+            }
+        }
+        return meter.getIntegratedLoudness();
+    }
+
+    @Test
+    public void sineAtReferenceLevel_measuresMinus23() throws Exception {
+        // EBU Tech 3341 case 1: stereo 1 kHz at -23 dBFS
+        assertEquals(-23, measure(48000, 2, sine(48000, 2, 20, 1000, -23)), 0.1);
+        assertEquals(-23, measure(44100, 2, sine(44100, 2, 20, 1000, -23)), 0.1);
+        // one channel carries half the power
+        assertEquals(-26, measure(48000, 1, sine(48000, 1, 20, 1000, -23)), 0.1);
+    }
+
+    @Test
+    public void quietPassages_areGatedOut() throws Exception {
+        // EBU Tech 3341 case 3 shape: -36, -23 and -36 dBFS for 10, 60 and 10 s
+        double loudness = measure(48000, 2, sine(48000, 2, 10, 1000, -36), sine(48000, 2, 60, 1000, -23),
+                sine(48000, 2, 10, 1000, -36));
+
+        assertEquals(-23, loudness, 0.1);
+    }
+
+    @Test
+    public void silence_isNegativeInfinity() throws Exception {
+        double loudness = measure(48000, 2, new short[48000 * 2 * 5]);
+
+        assertTrue(Double.isInfinite(loudness) && loudness < 0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import com.dhananjay.oaudioplayer.BenchmarkTests;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the scan throughput of {@link OggPageIndex} over heap, direct and mapped buffers
+ */
+@Category(BenchmarkTests.class)
+public class OggPageIndexBenchmark {
+    // about 64 MB, i.e. several hours of typical Opus audio
+    private static final int PAGES = 16 * 1024;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void scan_throughput() throws Exception {
+        ByteBuffer heap = OggTestStreams.opus(PAGES, 16, 255, false);
+        ByteBuffer direct = OggTestStreams.opus(PAGES, 16, 255, true);
+
+        File file = File.createTempFile("bench", ".opus");
+        file.deleteOnExit();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.getChannel().write(heap.duplicate());
+        }
+
+        report("heap", heap);
+        report("direct", direct);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            report("mapped", mapped);
+        }
+    }
+
+    private static void report(String name, ByteBuffer buffer) {
+        // warm up
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(PAGES, OggPageIndex.scan(buffer).getPageCount());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            OggPageIndex.scan(buffer);
+        }
+        long elapsed = System.nanoTime() - start;
+        double megabytes = (double) buffer.remaining() * ROUNDS / (1024 * 1024);
+        System.out.println(String.format("OggPageIndex.scan %s: %.0f MB/s (%d pages, %.1f MB)", name,
+                megabytes / (elapsed / 1e9), PAGES, megabytes / ROUNDS));
+    }
+}
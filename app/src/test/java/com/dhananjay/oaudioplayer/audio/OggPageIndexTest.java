@@ -0,0 +1,85 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link OggPageIndex}
+ */
+public class OggPageIndexTest {
+    // Sample shipped as raw resource, relative to the module directory tests run in
+    private static final File SAMPLE = new File("src/main/res/raw/my_file.opus");
+
+    @Test
+    public void scan_indexesAudioPages() throws Exception {
+        OggPageIndex index = OggPageIndex.scan(OggTestStreams.opus(100, 10, 50, false));
+
+        assertEquals(100, index.getPageCount());
+        assertEquals(OggTestStreams.PRE_SKIP, index.getPreSkip());
+        // 100 pages of 10 packets of 20 ms
+        assertEquals(20000, index.getDurationMs());
+    }
+
+    @Test
+    public void seek_findsPageHoldingTime() throws Exception {
+        OggPageIndex index = OggPageIndex.scan(OggTestStreams.opus(100, 10, 50, false));
+
+        // every page holds 200 ms
+        assertEquals(0, index.getPageStartMs(0));
+        assertEquals(0, index.getPageStartMs(199));
+        assertEquals(1000, index.getPageStartMs(1100));
+        assertEquals(19800, index.getPageStartMs(60000));
+
+        int headers = 2 * 27 + 19 + 8 + 2;
+        int page = 27 + 10 + 500;
+        // 80 ms pre-roll moves 1050 ms into the page starting at 800 ms
+        assertEquals(headers + 4 * page, index.getDecodeOffset(1050));
+        assertEquals(headers, index.getDecodeOffset(0));
+    }
+
+    @Test
+    public void scan_resyncsAfterGarbage() throws Exception {
+        ByteBuffer stream = OggTestStreams.opus(20, 5, 30, false);
+        ByteBuffer corrupted = ByteBuffer.allocate(stream.remaining() + 1000);
+        ByteBuffer head = stream.duplicate();
+        head.limit(200);
+        corrupted.put(head);
+        corrupted.put(new byte[1000]);
+        stream.position(200);
+        corrupted.put(stream);
+        corrupted.flip();
+
+        OggPageIndex index = OggPageIndex.scan(corrupted);
+        assertTrue(index.getPageCount() > 0);
+        assertEquals(2000, index.getDurationMs());
+    }
+
+    @Test
+    public void scan_rejectsNonOpus() throws Exception {
+        OggPageIndex index = OggPageIndex.scan(ByteBuffer.wrap(new byte[4096]));
+
+        assertTrue(index.isEmpty());
+        assertEquals(-1, index.getDecodeOffset(0));
+    }
+
+    @Test
+    public void scan_mappedSample() throws Exception {
+        if (!SAMPLE.exists()) return;
+
+        try (RandomAccessFile file = new RandomAccessFile(SAMPLE, "r")) {
+            FileChannel channel = file.getChannel();
+            OggPageIndex index = OggPageIndex.scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            assertEquals(392, index.getPageCount());
+            assertEquals(312, index.getPreSkip());
+            assertEquals(23513, index.getDurationMs());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Builds synthetic Ogg/Opus streams for JVM tests. Packet contents are filler, only the page
+ * structure is real.
+ */
+class OggTestStreams {
+    static final int PRE_SKIP = 312;
+    // 20 ms Opus frames
+    static final int SAMPLES_PER_PACKET = 960;
+
+    private OggTestStreams() {
+    }
+
+    /**
+     * @param pages         number of audio pages
+     * @param packetsPerPage packets per audio page
+     * @param packetSize    size of every packet in bytes, at most 255
+     * @return buffer positioned at the first page
+     */
+    static ByteBuffer opus(int pages, int packetsPerPage, int packetSize, boolean direct) {
+        return opus(pages, packetsPerPage, packetSize, direct, "OpusTags".getBytes());
+    }
+
+    /**
+     * @param tags comment header packet, see {@link #tags(String, String...)}
+     * @return buffer positioned at the first page
+     */
+    static ByteBuffer opus(int pages, int packetsPerPage, int packetSize, boolean direct, byte[] tags) {
+        int headerPages = 2;
+        int size = (pages + headerPages) * (27 + packetsPerPage) + pages * packetsPerPage * packetSize
+                + 64 + tags.length + tags.length / 255 + 1;
+        ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] head = new byte[19];
+        System.arraycopy("OpusHead".getBytes(), 0, head, 0, 8);
+        head[8] = 1;
+        head[9] = 2;
+        head[10] = (byte) PRE_SKIP;
+        head[11] = (byte) (PRE_SKIP >> 8);
+        writePage(buffer, 0, 0, new int[]{head.length}, head);
+
+        // Packets of 255 bytes and more continue in the next lacing value
+        int[] tagsLacing = new int[tags.length / 255 + 1];
+        for (int i = 0; i < tagsLacing.length; i++) {
+            tagsLacing[i] = Math.min(255, tags.length - i * 255);
+        }
+        writePage(buffer, 0, 1, tagsLacing, tags);
+
+        byte[] body = new byte[packetsPerPage * packetSize];
+        int[] lacing = new int[packetsPerPage];
+        for (int i = 0; i < packetsPerPage; i++) lacing[i] = packetSize;
+        long granule = PRE_SKIP;
+        for (int page = 0; page < pages; page++) {
+            granule += packetsPerPage * SAMPLES_PER_PACKET;
+            writePage(buffer, granule, page + 2, lacing, body);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Builds an OpusTags packet
+     *
+     * @param vendor   vendor string
+     * @param comments user comments in KEY=value form
+     * @return packet bytes
+     */
+    static byte[] tags(String vendor, String... comments) {
+        ByteBuffer packet = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        packet.put("OpusTags".getBytes());
+        putString(packet, vendor);
+        packet.putInt(comments.length);
+        for (String comment : comments) putString(packet, comment);
+        byte[] bytes = new byte[packet.position()];
+        packet.flip();
+        packet.get(bytes);
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(Charset.forName("UTF-8"));
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void writePage(ByteBuffer buffer, long granule, int sequence, int[] lacing, byte[] body) {
+        buffer.put((byte) 'O').put((byte) 'g').put((byte) 'g').put((byte) 'S');
+        buffer.put((byte) 0);
+        buffer.put((byte) (sequence == 0 ? 2 : 0));
+        buffer.putLong(granule);
+        buffer.putInt(0x1234);
+        buffer.putInt(sequence);
+        buffer.putInt(0);
+        buffer.put((byte) lacing.length);
+        int bodySize = 0;
+        for (int segment : lacing) {
+            buffer.put((byte) segment);
+            bodySize += segment;
+        }
+        buffer.put(body, 0, bodySize);
+    }
+}
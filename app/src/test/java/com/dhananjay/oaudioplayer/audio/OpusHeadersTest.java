@@ -0,0 +1,72 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link OpusHeaders}
+ */
+public class OpusHeadersTest {
+    // Sample shipped as raw resource, relative to the module directory tests run in
+    private static final File SAMPLE = new File("src/main/res/raw/my_file.opus");
+
+    @Test
+    public void parse_readsHeadAndComments() throws Exception {
+        ByteBuffer stream = OggTestStreams.opus(10, 5, 40, false,
+                OggTestStreams.tags("test encoder", "TITLE=Opus Audio", "artist=First", "ARTIST=Second"));
+
+        OpusHeaders headers = OpusHeaders.parse(stream);
+
+        assertNotNull(headers);
+        assertEquals(2, headers.channels);
+        assertEquals(OggTestStreams.PRE_SKIP, headers.preSkip);
+        assertEquals("test encoder", headers.vendor);
+        assertEquals("Opus Audio", headers.getComment("title"));
+        assertEquals("First", headers.getComment("ARTIST"));
+        assertNull(headers.getComment("ALBUM"));
+        assertEquals(0, stream.position());
+    }
+
+    @Test
+    public void parse_commentsSpanningSegments() throws Exception {
+        char[] longValue = new char[1000];
+        Arrays.fill(longValue, 'x');
+        ByteBuffer stream = OggTestStreams.opus(2, 2, 10, true,
+                OggTestStreams.tags("vendor", "ALBUM=" + new String(longValue), "TITLE=Last"));
+
+        OpusHeaders headers = OpusHeaders.parse(stream);
+
+        assertEquals(1000, headers.getComment("ALBUM").length());
+        assertEquals("Last", headers.getComment("TITLE"));
+    }
+
+    @Test
+    public void parse_rejectsNonOpus() throws Exception {
+        assertNull(OpusHeaders.parse(ByteBuffer.wrap(new byte[100])));
+        assertNull(OpusHeaders.parse(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void parse_sample() throws Exception {
+        if (!SAMPLE.exists()) return;
+        try (RandomAccessFile file = new RandomAccessFile(SAMPLE, "r")) {
+            FileChannel channel = file.getChannel();
+            OpusHeaders headers = OpusHeaders.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            assertEquals(1, headers.channels);
+            assertEquals(312, headers.preSkip);
+            assertEquals(16000, headers.inputSampleRate);
+            assertTrue(headers.vendor.startsWith("libopus"));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link PcmPipeline} with a fake decoder and sink
+ */
+public class PcmPipelineTest {
+    private static final int RATE = 8000;
+    private static final int CHANNELS = 2;
+
+    /**
+     * Decodes a ramp of sample values, optionally stalling now and then
+     */
+    private static class RampDecoder implements PcmDecoder {
+        final int mTotal;
+        final int mStallEvery;
+        final long mStallMs;
+        // value of the first sample and increment per sample
+        int mFirst;
+        int mSlope = 1;
+        int mPosition;
+        int mCalls;
+        volatile boolean mReleased;
+
+        RampDecoder(int totalSamples, int stallEvery, long stallMs) {
+            mTotal = totalSamples;
+            mStallEvery = stallEvery;
+            mStallMs = stallMs;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return RATE;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return CHANNELS;
+        }
+
+        @Override
+        public long getDurationUs() {
+            return (long) mTotal / CHANNELS * 1000000 / RATE;
+        }
+
+        @Override
+        public int decode(short[] target, int offset, int length) throws IOException {
+            if (mStallEvery > 0 && ++mCalls % mStallEvery == 0) {
+                try {
+                    Thread.sleep(mStallMs);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (mPosition >= mTotal) return -1;
+            int count = Math.min(Math.min(length, 160), mTotal - mPosition);
+            for (int i = 0; i < count; i++) target[offset + i] = (short) (mFirst + mSlope * (mPosition + i));
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public void seekTo(long us) {
+            mPosition = (int) (us * RATE / 1000000) * CHANNELS;
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+
+    /**
+     * Collects the samples, taking a millisecond per write
+     */
+    private static class CollectingSink implements PcmSink {
+        final short[] mSamples = new short[1 << 20];
+        volatile int mCount;
+        volatile int mPlayed;
+        volatile boolean mPlaying;
+
+        @Override
+        public void write(short[] source, int offset, int length) {
+            System.arraycopy(source, offset, mSamples, mCount, length);
+            mCount += length;
+            mPlayed += length / CHANNELS;
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void play() {
+            mPlaying = true;
+        }
+
+        @Override
+        public void pause() {
+            mPlaying = false;
+        }
+
+        @Override
+        public void flush() {
+            mPlayed = 0;
+        }
+
+        @Override
+        public void drain() {
+        }
+
+        @Override
+        public long getPlayedFrames() {
+            return mPlayed;
+        }
+
+        @Override
+        public void setVolume(float volume) {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static class Completion implements PcmPipeline.Listener {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile int mTransitions;
+
+        @Override
+        public void onTransition() {
+            mTransitions++;
+        }
+
+        @Override
+        public void onCompletion() {
+            mDone.countDown();
+        }
+
+        @Override
+        public void onError(IOException e) {
+        }
+    }
+
+    @Test
+    public void play_deliversAllSamplesInOrder() throws Exception {
+        RampDecoder decoder = new RampDecoder(16000, 0, 0);
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(decoder, sink, 200, completion);
+
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        assertEquals(16000, sink.mCount);
+        for (int i = 0; i < 16000; i++) {
+            assertEquals((short) i, sink.mSamples[i]);
+        }
+        assertFalse(pipeline.isPlaying());
+        assertEquals(0, pipeline.getUnderrunCount());
+        // one second of stereo at 8 kHz
+        assertEquals(1000000, pipeline.getPositionUs());
+        pipeline.release();
+        assertTrue(decoder.mReleased);
+    }
+
+    @Test
+    public void stallingDecoder_countsUnderruns() throws Exception {
+        // every tenth call stalls longer than the buffer lasts
+        RampDecoder decoder = new RampDecoder(16000, 10, 150);
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(decoder, sink, 40, completion);
+
+        pipeline.start();
+        assertTrue(completion.mDone.await(10, TimeUnit.SECONDS));
+
+        assertEquals(16000, sink.mCount);
+        assertTrue(pipeline.getUnderrunCount() > 0);
+        pipeline.release();
+    }
+
+    @Test
+    public void seekTo_restartsFromTarget() throws Exception {
+        RampDecoder decoder = new RampDecoder(16000, 0, 0);
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(decoder, sink, 200, completion);
+
+        pipeline.seekTo(500000);
+        assertEquals(500000, pipeline.getPositionUs());
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        // the second half only
+        assertEquals(8000, sink.mCount);
+        assertEquals(8000, sink.mSamples[0]);
+        assertEquals(1000000, pipeline.getPositionUs());
+        pipeline.release();
+    }
+
+    @Test
+    public void pause_keepsBufferedSamples() throws Exception {
+        RampDecoder decoder = new RampDecoder(16000, 0, 0);
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(decoder, sink, 200, completion);
+
+        pipeline.start();
+        Thread.sleep(20);
+        pipeline.pause();
+        assertFalse(pipeline.isPlaying());
+        assertFalse(sink.mPlaying);
+        int paused = sink.mCount;
+        Thread.sleep(20);
+        assertEquals(paused, sink.mCount);
+
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(16000, sink.mCount);
+        for (int i = 0; i < 16000; i++) {
+            assertEquals((short) i, sink.mSamples[i]);
+        }
+        pipeline.release();
+    }
+
+    private static RampDecoder level(int value) {
+        RampDecoder decoder = new RampDecoder(16000, 0, 0);
+        decoder.mFirst = value;
+        decoder.mSlope = 0;
+        return decoder;
+    }
+
+    @Test
+    public void setNext_withoutFade_appendsWithoutGap() throws Exception {
+        RampDecoder second = new RampDecoder(16000, 0, 0);
+        second.mFirst = 16000;
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(new RampDecoder(16000, 0, 0), sink, 200, completion);
+
+        assertTrue(pipeline.setNext(second, 0, 1));
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        assertEquals(32000, sink.mCount);
+        for (int i = 0; i < 32000; i++) {
+            assertEquals((short) i, sink.mSamples[i]);
+        }
+        assertEquals(1, completion.mTransitions);
+        // the position restarted with the second stream
+        assertEquals(1000000, pipeline.getPositionUs());
+        pipeline.release();
+    }
+
+    @Test
+    public void setNext_crossfadesEqualPower() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(level(10000), sink, 200, completion);
+
+        assertTrue(pipeline.setNext(level(20000), 500, 1));
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        // two seconds overlapping by half a second
+        assertEquals(2 * 12000, sink.mCount);
+        assertEquals(10000, sink.mSamples[2 * 3999]);
+        assertEquals(10000, sink.mSamples[2 * 4000]);
+        // halfway both play at -3 dB
+        assertEquals(21213, sink.mSamples[2 * 6000], 2);
+        assertEquals(20000, sink.mSamples[2 * 7999], 20);
+        assertEquals(20000, sink.mSamples[2 * 8000]);
+        assertEquals(1, completion.mTransitions);
+        assertEquals(1000000, pipeline.getPositionUs());
+        pipeline.release();
+    }
+
+    @Test
+    public void setNext_fadesEachStreamWithItsGain() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(level(10000), sink, 200, completion);
+        pipeline.setGain(0.5f);
+
+        assertTrue(pipeline.setNext(level(20000), 500, 0.25f));
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        assertEquals(5000, sink.mSamples[2 * 3999]);
+        // both normalized to the same level, so it stays there through the fade at -3 dB each
+        assertEquals(7071, sink.mSamples[2 * 6000], 2);
+        assertEquals(5000, sink.mSamples[2 * 8000]);
+        assertEquals(5000, sink.mSamples[2 * 11999]);
+        pipeline.release();
+    }
+
+    @Test
+    public void dsp_flushesLookaheadAtEnd() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        Completion completion = new Completion();
+        PcmPipeline pipeline = new PcmPipeline(level(10000), sink, 200, completion);
+        // below the threshold, the limiter only delays
+        pipeline.setDsp(new DspSettings(0, new DspSettings.Band[0], 0, 50));
+
+        pipeline.start();
+        assertTrue(completion.mDone.await(5, TimeUnit.SECONDS));
+
+        int latency = RATE * DspChain.LOOKAHEAD_MS / 1000;
+        assertEquals(16000 + latency * CHANNELS, sink.mCount);
+        assertEquals(0, sink.mSamples[latency * CHANNELS - 1]);
+        assertEquals(10000, sink.mSamples[latency * CHANNELS], 1);
+        assertEquals(10000, sink.mSamples[sink.mCount - 1], 1);
+        // the frames still in the look-ahead aren't heard yet
+        assertEquals(1000000, pipeline.getPositionUs());
+        pipeline.release();
+    }
+
+    @Test
+    public void setNext_rejectsOtherFormat() throws Exception {
+        PcmPipeline pipeline = new PcmPipeline(new RampDecoder(16000, 0, 0), new CollectingSink(), 200,
+                new Completion());
+        PcmDecoder mono = new RampDecoder(16000, 0, 0) {
+            @Override
+            public int getChannelCount() {
+                return 1;
+            }
+        };
+
+        assertFalse(pipeline.setNext(mono, 0, 1));
+        pipeline.release();
+    }
+}
@@ -0,0 +1,91 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link PcmRingBuffer}
+ */
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacity_roundedToPowerOfTwo() throws Exception {
+        assertEquals(1024, new PcmRingBuffer(1000).capacity());
+        assertEquals(1024, new PcmRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void write_stopsWhenFull() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] samples = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        assertEquals(8, ring.write(samples, 0, 10));
+        assertEquals(0, ring.free());
+        assertEquals(0, ring.write(samples, 8, 2));
+    }
+
+    @Test
+    public void read_wrapsAround() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] out = new short[8];
+        ring.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(5, ring.read(out, 0, 5));
+
+        // the second write continues at index 6 and wraps to the start of the array
+        assertEquals(7, ring.write(new short[]{7, 8, 9, 10, 11, 12, 13}, 0, 7));
+        assertEquals(8, ring.read(out, 0, 8));
+        assertEquals(6, out[0]);
+        assertEquals(13, out[7]);
+        assertEquals(0, ring.read(out, 0, 8));
+    }
+
+    @Test
+    public void clear_dropsBufferedSamples() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(new short[10], 0, 10);
+        ring.clear();
+
+        assertEquals(0, ring.available());
+        assertEquals(16, ring.free());
+    }
+
+    @Test
+    public void concurrent_keepsOrder() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(256);
+        final int total = 2000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short[] chunk = new short[97];
+                int next = 0;
+                while (next < total) {
+                    int length = Math.min(chunk.length, total - next);
+                    for (int i = 0; i < length; i++) chunk[i] = (short) (next + i);
+                    int offset = 0;
+                    while (offset < length) {
+                        int written = ring.write(chunk, offset, length - offset);
+                        // full, lets the reader run on a single core
+                        if (written == 0) Thread.yield();
+                        offset += written;
+                    }
+                    next += length;
+                }
+            }
+        });
+        producer.start();
+
+        short[] chunk = new short[61];
+        int expected = 0;
+        int errors = 0;
+        while (expected < total) {
+            int count = ring.read(chunk, 0, chunk.length);
+            if (count == 0) Thread.yield();
+            for (int i = 0; i < count; i++) {
+                if (chunk[i] != (short) expected++) errors++;
+            }
+        }
+        producer.join();
+        assertEquals(0, errors);
+    }
+}
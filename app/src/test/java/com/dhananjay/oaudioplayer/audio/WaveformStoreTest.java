@@ -0,0 +1,222 @@
+package com.dhananjay.oaudioplayer.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link WaveformStore} and {@link PeakAccumulator}
+ */
+public class WaveformStoreTest {
+    private File mDir;
+    private WaveformStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = File.createTempFile("waveforms", "");
+        mDir.delete();
+        mStore = new WaveformStore(mDir, Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static short[] noise(int frames, int channels) {
+        Random random = new Random(frames);
+        short[] samples = new short[frames * channels];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        return samples;
+    }
+
+    /**
+     * Feeds the frames from start on in uneven chunks
+     */
+    private static void feed(PeakAccumulator peaks, short[] samples, int channels, int start) throws IOException {
+        int offset = start * channels;
+        while (offset < samples.length) {
+            int length = Math.min(samples.length - offset, 1234 * channels);
+            peaks.add(samples, offset, length);
+            offset += length;
+        }
+    }
+
+    private static void write(WaveformStore store, String key, int frames) throws IOException {
+        WaveformStore.Writer writer = store.openWriter(key);
+        PeakAccumulator peaks = new PeakAccumulator(1, WaveformStore.LEVELS, writer);
+        feed(peaks, noise(frames, 1), 1, 0);
+        peaks.finish();
+        writer.complete();
+    }
+
+    @Test
+    public void accumulator_buildsPyramidAcrossChannels() throws Exception {
+        final List<String> buckets = new ArrayList<>();
+        PeakAccumulator peaks = new PeakAccumulator(2, new int[]{2, 4}, new PeakAccumulator.Output() {
+            @Override
+            public void onBucket(int level, byte min, byte max) {
+                buckets.add(level + ":" + min + "/" + max);
+            }
+        });
+
+        peaks.add(new short[]{256, -256, 512, 0, 0, 0}, 0, 6);
+        peaks.add(new short[]{0, 1024, -32768, 32767, 0, 0}, 0, 6);
+        peaks.finish();
+
+        assertEquals("[0:-1/2, 0:0/4, 1:-1/4, 0:-128/127, 1:-128/127]", buckets.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void accumulator_rejectsLevelsNotNested() throws Exception {
+        new PeakAccumulator(1, new int[]{256, 1000}, null);
+    }
+
+    @Test
+    public void store_readsRangesOfEachLevel() throws Exception {
+        int frames = 100000;
+        short[] samples = noise(frames, 2);
+        WaveformStore.Writer writer = mStore.openWriter("track");
+        PeakAccumulator peaks = new PeakAccumulator(2, WaveformStore.LEVELS, writer);
+        feed(peaks, samples, 2, 0);
+        assertNull(mStore.read("track", 256, 0, 10));
+        peaks.finish();
+        writer.complete();
+
+        assertTrue(mStore.isComplete("track"));
+        assertEquals((frames + 255) / 256, mStore.getBucketCount("track", 256));
+        assertEquals((frames + 4095) / 4096, mStore.getBucketCount("track", 4096));
+
+        byte[] range = mStore.read("track", 1024, 10, 3);
+        assertEquals(6, range.length);
+        for (int b = 0; b < 3; b++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = (10 + b) * 1024 * 2; i < (11 + b) * 1024 * 2; i++) {
+                min = Math.min(min, samples[i]);
+                max = Math.max(max, samples[i]);
+            }
+            assertEquals(min >> 8, range[2 * b]);
+            assertEquals(max >> 8, range[2 * b + 1]);
+        }
+        // clipped at the end
+        assertEquals(4, mStore.read("track", 4096, 23, 10).length);
+    }
+
+    @Test
+    public void writer_resumesAfterInterruption() throws Exception {
+        int frames = 1000000;
+        short[] samples = noise(frames, 1);
+
+        WaveformStore.Writer writer = mStore.openWriter("whole");
+        PeakAccumulator peaks = new PeakAccumulator(1, WaveformStore.LEVELS, writer);
+        feed(peaks, samples, 1, 0);
+        peaks.finish();
+        writer.complete();
+
+        // interrupted in the middle of a bucket
+        writer = mStore.openWriter("resumed");
+        peaks = new PeakAccumulator(1, WaveformStore.LEVELS, writer);
+        peaks.add(samples, 0, 500000);
+        writer.close();
+        assertFalse(mStore.isComplete("resumed"));
+
+        writer = mStore.openWriter("resumed");
+        long resume = writer.getResumeFrame();
+        assertEquals(0, resume % 4096);
+        assertTrue(resume > 0 && resume <= 500000);
+        peaks = new PeakAccumulator(1, WaveformStore.LEVELS, writer);
+        feed(peaks, samples, 1, (int) resume);
+        peaks.finish();
+        writer.complete();
+
+        for (int level : WaveformStore.LEVELS) {
+            int count = mStore.getBucketCount("whole", level);
+            assertEquals(count, mStore.getBucketCount("resumed", level));
+            assertArrayEquals(mStore.read("whole", level, 0, count), mStore.read("resumed", level, 0, count));
+        }
+    }
+
+    @Test
+    public void writer_restartsWhenFinerLevelIsShort() throws Exception {
+        WaveformStore.Writer writer = mStore.openWriter("track");
+        PeakAccumulator peaks = new PeakAccumulator(1, WaveformStore.LEVELS, writer);
+        peaks.add(noise(200000, 1), 0, 200000);
+        writer.close();
+        // a crash after the coarse level but before the finest was written
+        try (RandomAccessFile file = new RandomAccessFile(new File(mDir, "track.256.peaks.part"), "rw")) {
+            file.setLength(0);
+        }
+
+        writer = mStore.openWriter("track");
+        assertEquals(0, writer.getResumeFrame());
+        writer.close();
+        assertEquals(0, new File(mDir, "track.4096.peaks.part").length());
+        assertNull(mStore.read("track", 256, 0, 1));
+    }
+
+    @Test
+    public void store_evictsLeastRecentlyUsedBeyondBudget() throws Exception {
+        write(mStore, "a_1", 100000);
+        long trackBytes = mStore.getSize();
+        mStore = new WaveformStore(mDir, 2 * trackBytes);
+        write(mStore, "b_1", 100000);
+        assertNotNull(mStore.read("a_1", 256, 0, 1));
+        write(mStore, "c_1", 100000);
+
+        assertTrue(mStore.isComplete("a_1"));
+        assertFalse(mStore.isComplete("b_1"));
+        assertTrue(mStore.isComplete("c_1"));
+        assertEquals(2 * trackBytes, mStore.getSize());
+        assertFalse(new File(mDir, "b_1.256.peaks").exists());
+
+        // the order survives reopening through the modification times
+        new File(mDir, "a_1.4096.peaks").setLastModified(1000);
+        new File(mDir, "c_1.4096.peaks").setLastModified(2000);
+        mStore = new WaveformStore(mDir, trackBytes);
+        assertFalse(mStore.isComplete("a_1"));
+        assertTrue(mStore.isComplete("c_1"));
+    }
+
+    @Test
+    public void complete_deletesOtherVersionsOfTrack() throws Exception {
+        write(mStore, "track_1", 100000);
+        write(mStore, "other_1", 100000);
+        // an edit interrupted before the current one
+        WaveformStore.Writer writer = mStore.openWriter("track_2");
+        new PeakAccumulator(1, WaveformStore.LEVELS, writer).add(noise(50000, 1), 0, 50000);
+        writer.close();
+
+        write(mStore, "track_3", 50000);
+
+        assertFalse(mStore.isComplete("track_1"));
+        assertTrue(mStore.isComplete("other_1"));
+        assertTrue(mStore.isComplete("track_3"));
+        for (String name : mDir.list()) {
+            assertTrue(name, name.startsWith("track_3.") || name.startsWith("other_1."));
+        }
+        assertEquals(mStore.getSize(), new WaveformStore(mDir, Long.MAX_VALUE).getSize());
+    }
+}
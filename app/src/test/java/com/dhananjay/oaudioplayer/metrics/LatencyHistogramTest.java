@@ -0,0 +1,73 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguous() throws Exception {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long highest = LatencyHistogram.highestInBucket(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            assertEquals(i + 1, LatencyHistogram.bucketIndex(highest + 1));
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS,
+                LatencyHistogram.highestInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void buckets_keepRelativePrecision() throws Exception {
+        for (long value = 1; value < LatencyHistogram.MAX_TRACKABLE_NANOS; value = value * 3 + 1) {
+            long highest = LatencyHistogram.highestInBucket(LatencyHistogram.bucketIndex(value));
+            assertTrue(highest >= value);
+            assertTrue((double) (highest - value) / value <= 1.0 / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * 1000000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000000, snapshot.getMinNanos());
+        assertEquals(1000000000, snapshot.getMaxNanos());
+        assertEquals(500500000, snapshot.getMeanNanos());
+        assertEquals(500e6, snapshot.getValueAtPercentile(50), 500e6 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990e6, snapshot.getValueAtPercentile(99), 990e6 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(1000000000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void record_clampsHugeValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getMinNanos());
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getMaxNanos());
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void snapshot_isUnaffectedByLaterRecords() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        histogram.record(20);
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(10, snapshot.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,144 @@
+package com.dhananjay.oaudioplayer.metrics;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link PlaybackMetrics}, {@link MetricsSnapshot} and {@link MetricsDumpFile}
+ */
+public class PlaybackMetricsTest {
+    private static final long MS = 1000000;
+
+    @Test
+    public void timeToFirstAudio_countsOnlyTheFirstStart() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.markStartRequested(100 * MS);
+        metrics.markPlaybackStarted(350 * MS);
+        // resuming later isn't a first start
+        metrics.markPlaybackStarted(900 * MS);
+
+        MetricsSnapshot snapshot = metrics.snapshot(1000 * MS);
+        assertEquals(1, snapshot.timeToFirstAudio.getCount());
+        assertEquals(250 * MS, snapshot.timeToFirstAudio.getMaxNanos());
+    }
+
+    @Test
+    public void prepare_replacedByNewerPrepare() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.markPrepareStarted(0);
+        metrics.markPrepareStarted(40 * MS);
+        metrics.markPrepared(70 * MS);
+        metrics.markPrepared(90 * MS);
+
+        MetricsSnapshot snapshot = metrics.snapshot(100 * MS);
+        assertEquals(1, snapshot.prepareLatency.getCount());
+        assertEquals(30 * MS, snapshot.prepareLatency.getMaxNanos());
+    }
+
+    @Test
+    public void buffering_countsStallsIncludingOngoing() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.markBufferingStarted(10 * MS);
+        metrics.markBufferingStarted(20 * MS);
+        metrics.markBufferingEnded(60 * MS);
+        metrics.markBufferingEnded(70 * MS);
+        metrics.markBufferingStarted(100 * MS);
+
+        MetricsSnapshot snapshot = metrics.snapshot(130 * MS);
+        assertEquals(2, snapshot.bufferingCount);
+        assertEquals(1, snapshot.stallDuration.getCount());
+        assertEquals(80 * MS, snapshot.totalStallNanos);
+    }
+
+    @Test
+    public void errors_countedByWhatAndExtra() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.recordError(1, -1004);
+        metrics.recordError(1, -1004);
+        metrics.recordError(100, 0);
+
+        MetricsSnapshot snapshot = metrics.snapshot(0);
+        assertEquals(2, snapshot.errorCounts.size());
+        assertEquals(2, (int) snapshot.errorCounts.get("1/-1004"));
+        assertEquals(1, (int) snapshot.errorCounts.get("100/0"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshot_isImmutable() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.recordError(1, 1);
+        metrics.snapshot(0).errorCounts.clear();
+    }
+
+    @Test
+    public void notifications_perMinute() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        for (int i = 0; i < 30; i++) {
+            metrics.recordNotification();
+        }
+        assertEquals(15, metrics.snapshot(120000 * MS).getNotificationsPerMinute(), 0.01);
+    }
+
+    @Test
+    public void openDescriptors_keepLatestAndHighest() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        assertEquals(-1, metrics.snapshot(0).openDescriptors);
+        metrics.recordOpenDescriptors(40);
+        metrics.recordOpenDescriptors(55);
+        metrics.recordOpenDescriptors(42);
+
+        MetricsSnapshot snapshot = metrics.snapshot(0);
+        assertEquals(42, snapshot.openDescriptors);
+        assertEquals(55, snapshot.maxOpenDescriptors);
+        assertTrue(snapshot.format(), snapshot.format().contains(" fds=42/55 "));
+    }
+
+    @Test
+    public void idleReleases_sumFreedBytes() throws Exception {
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.recordIdleRelease(3 * 1024 * 1024);
+        metrics.recordIdleRelease(1024 * 1024);
+        metrics.recordIdleResume(80 * MS);
+
+        MetricsSnapshot snapshot = metrics.snapshot(0);
+        assertEquals(2, snapshot.idleReleaseCount);
+        assertEquals(4 * 1024 * 1024, snapshot.idleFreedBytes);
+        assertEquals(1, snapshot.idleResumeLatency.getCount());
+        assertTrue(snapshot.format(), snapshot.format().contains(" idle_releases=2 idle_freed_kb=4096 "));
+    }
+
+    @Test
+    public void dumpFile_appendsAndRotates() throws Exception {
+        File file = File.createTempFile("metrics", ".log");
+        File rotated = new File(file.getPath() + ".1");
+        file.deleteOnExit();
+        rotated.deleteOnExit();
+        PlaybackMetrics metrics = new PlaybackMetrics(0);
+        metrics.recordCommandLatency(12 * MS);
+        MetricsDumpFile dump = new MetricsDumpFile(file);
+
+        dump.append(metrics.snapshot(MS), 1234);
+        dump.append(metrics.snapshot(2 * MS), 5678);
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = in.readLine();
+            assertTrue(line, line.startsWith("time=1234 uptime_s=0 "));
+            assertTrue(line, line.contains(" command=1/12.0/12.0/12.0/12.0 "));
+            assertTrue(line, line.endsWith(" errors=-"));
+            assertTrue(in.readLine().startsWith("time=5678 "));
+        }
+
+        while (file.length() <= MetricsDumpFile.MAX_BYTES) {
+            dump.append(metrics.snapshot(0), 0);
+        }
+        long full = file.length();
+        dump.append(metrics.snapshot(0), 0);
+        assertEquals(full, rotated.length());
+        assertTrue(file.length() < full);
+    }
+}
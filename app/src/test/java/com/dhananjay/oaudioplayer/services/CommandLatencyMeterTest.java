@@ -0,0 +1,60 @@
+package com.dhananjay.oaudioplayer.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link CommandLatencyMeter}
+ */
+public class CommandLatencyMeterTest {
+
+    @Test
+    public void burst_measuredFromFirstCommand() throws Exception {
+        CommandLatencyMeter meter = new CommandLatencyMeter();
+        meter.markIssued(100);
+        meter.markIssued(150);
+        meter.markIssued(180);
+
+        assertTrue(meter.markStarted(400));
+        assertEquals(300, meter.getLastNanos());
+        assertEquals(1, meter.getSampleCount());
+    }
+
+    @Test
+    public void start_withoutCommandIsNotASample() throws Exception {
+        CommandLatencyMeter meter = new CommandLatencyMeter();
+        meter.markIssued(100);
+        meter.markStarted(200);
+
+        // e.g. the next track started by completion of the current one
+        assertFalse(meter.markStarted(900));
+        assertEquals(1, meter.getSampleCount());
+    }
+
+    @Test
+    public void cancel_dropsUnservedCommand() throws Exception {
+        CommandLatencyMeter meter = new CommandLatencyMeter();
+        meter.markIssued(100);
+        meter.cancel();
+
+        assertFalse(meter.markStarted(500));
+        meter.markIssued(600);
+        meter.markStarted(650);
+        assertEquals(50, meter.getLastNanos());
+    }
+
+    @Test
+    public void statistics_overSamples() throws Exception {
+        CommandLatencyMeter meter = new CommandLatencyMeter();
+        meter.markIssued(0);
+        meter.markStarted(100);
+        meter.markIssued(1000);
+        meter.markStarted(1300);
+
+        assertEquals(300, meter.getMaxNanos());
+        assertEquals(200, meter.getAverageNanos());
+    }
+}
@@ -0,0 +1,60 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.BenchmarkTests;
+import com.dhananjay.oaudioplayer.model.LoudnessCache;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many seconds of audio {@link LoudnessScanner} analyzes per second of wall-clock
+ * time, on one worker and on all cores. Decoding is synthetic, so this is the cost of the
+ * K-weighting and gating alone.
+ */
+@Category(BenchmarkTests.class)
+public class LoudnessScannerBenchmark {
+    private static final int TRACKS = 32;
+    private static final int SECONDS = 30;
+
+    @Test
+    public void scan_throughput() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        // warm up
+        run(cores, 4);
+        report(1);
+        if (cores > 1) report(cores);
+    }
+
+    private static void report(int parallelism) throws Exception {
+        long elapsed = run(parallelism, TRACKS);
+        double audioSeconds = (double) TRACKS * SECONDS;
+        System.out.println(String.format("LoudnessScanner on %d workers: %.0f s of 48 kHz stereo audio per s",
+                parallelism, audioSeconds / (elapsed / 1e9)));
+    }
+
+    private static long run(int parallelism, int tracks) throws Exception {
+        File file = File.createTempFile("loudness", ".cache");
+        file.delete();
+        try {
+            LoudnessScannerTest.SineSource source = new LoudnessScannerTest.SineSource(SECONDS);
+            LoudnessScanner scanner = new LoudnessScanner(
+                    new TrackAnalyzer(LoudnessCache.load(file), null, source, source, parallelism), parallelism);
+            List<MediaItem> items = new ArrayList<>();
+            for (int i = 0; i < tracks; i++) {
+                items.add(new MediaItem("Track " + i, String.valueOf(-6 - i * 0.5), null));
+            }
+            long start = System.nanoTime();
+            LoudnessScannerTest.scanAndWait(scanner, items);
+            long elapsed = System.nanoTime() - start;
+            scanner.shutdown();
+            return elapsed;
+        } finally {
+            file.delete();
+        }
+    }
+}
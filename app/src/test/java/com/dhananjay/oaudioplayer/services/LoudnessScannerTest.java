@@ -0,0 +1,212 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.audio.PcmDecoder;
+import com.dhananjay.oaudioplayer.audio.WaveformStore;
+import com.dhananjay.oaudioplayer.model.LoudnessCache;
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.TrackMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link LoudnessScanner}
+ */
+public class LoudnessScannerTest {
+    private File mFile;
+
+    /**
+     * Tracks whose location is the level of a 1 kHz sine in dBFS
+     */
+    static class SineSource implements MetadataScanner.Probe, DecoderSource {
+        private final int mSeconds;
+
+        SineSource(int seconds) {
+            mSeconds = seconds;
+        }
+
+        @Override
+        public long getSize(MediaItem item) {
+            return item.getLocation().startsWith("missing") ? -1 : 1000;
+        }
+
+        @Override
+        public long getModified(MediaItem item) {
+            return 0;
+        }
+
+        @Override
+        public TrackMetadata extract(MediaItem item) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PcmDecoder open(MediaItem item) throws IOException {
+            // 1 kHz is exactly 48 samples per period at 48 kHz
+            double amplitude = 32767 * Math.pow(10, Double.parseDouble(item.getLocation()) / 20);
+            final short[] period = new short[48];
+            for (int i = 0; i < period.length; i++) {
+                period[i] = (short) (amplitude * Math.sin(2 * Math.PI * i / period.length));
+            }
+            final long frames = 48000L * mSeconds;
+            return new PcmDecoder() {
+                private long mFrame;
+
+                @Override
+                public int getSampleRate() {
+                    return 48000;
+                }
+
+                @Override
+                public int getChannelCount() {
+                    return 2;
+                }
+
+                @Override
+                public long getDurationUs() {
+                    return mSeconds * 1000000L;
+                }
+
+                @Override
+                public int decode(short[] target, int offset, int length) {
+                    if (mFrame == frames) return -1;
+                    int count = (int) Math.min(length / 2, frames - mFrame);
+                    for (int f = 0; f < count; f++) {
+                        short value = period[(int) ((mFrame + f) % period.length)];
+                        target[offset + 2 * f] = value;
+                        target[offset + 2 * f + 1] = value;
+                    }
+                    mFrame += count;
+                    return count * 2;
+                }
+
+                @Override
+                public void seekTo(long us) {
+                    mFrame = us * 48000 / 1000000;
+                }
+
+                @Override
+                public void release() {
+                }
+            };
+        }
+    }
+
+    static List<MediaItem> items(String... levels) {
+        List<MediaItem> items = new ArrayList<>();
+        for (String level : levels) {
+            items.add(new MediaItem("Track " + level, level, null));
+        }
+        return items;
+    }
+
+    static void scanAndWait(LoudnessScanner scanner, List<MediaItem> items) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        scanner.scan(items, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+
+    private LoudnessScanner scanner(SineSource source, int parallelism) {
+        return new LoudnessScanner(
+                new TrackAnalyzer(LoudnessCache.load(mFile), null, source, source, parallelism), parallelism);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("loudness", ".cache");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void scan_derivesAttenuatingGains() throws Exception {
+        SineSource source = new SineSource(2);
+        LoudnessScanner scanner = scanner(source, 3);
+        List<MediaItem> items = items("-6", "-12", "-30", "missing");
+
+        scanAndWait(scanner, items);
+        scanner.shutdown();
+
+        // -6 dBFS stereo measures -6 LUFS, 12 dB above the target
+        assertEquals(Math.pow(10, -12 / 20.0), scanner.getGain(items.get(0)), 0.01);
+        assertEquals(Math.pow(10, -6 / 20.0), scanner.getGain(items.get(1)), 0.01);
+        // quieter than the target, players can't boost
+        assertEquals(1, scanner.getGain(items.get(2)), 0);
+        assertEquals(1, scanner.getGain(items.get(3)), 0);
+        assertEquals(3, scanner.getMeasuredCount());
+    }
+
+    @Test
+    public void rescan_onlyLooksUpUnchangedItems() throws Exception {
+        SineSource source = new SineSource(1);
+        LoudnessScanner scanner = scanner(source, 2);
+        scanAndWait(scanner, items("-6", "-12"));
+        scanner.shutdown();
+
+        scanner = scanner(source, 2);
+        scanAndWait(scanner, items("-6", "-12", "-20"));
+        scanner.shutdown();
+
+        assertEquals(1, scanner.getMeasuredCount());
+        assertEquals(2, scanner.getSkippedCount());
+    }
+
+    @Test
+    public void scan_computesPeakWindowInSamePass() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        SineSource source = new SineSource(1) {
+            @Override
+            public PcmDecoder open(MediaItem item) throws IOException {
+                opened.incrementAndGet();
+                return super.open(item);
+            }
+        };
+        File dir = File.createTempFile("waveforms", "");
+        dir.delete();
+        try {
+            TrackAnalyzer analyzer = new TrackAnalyzer(LoudnessCache.load(mFile),
+                    new WaveformStore(dir, Long.MAX_VALUE), source, source, 2);
+            analyzer.setPeakWindow(1, 1, 2);
+            LoudnessScanner scanner = new LoudnessScanner(analyzer, 2);
+            List<MediaItem> items = items("-6", "-12");
+            scanAndWait(scanner, items);
+            scanner.shutdown();
+
+            assertEquals(2, opened.get());
+            assertEquals(2, scanner.getMeasuredCount());
+            assertNull(analyzer.readPeaks(items.get(0), 4096, 0, 1));
+            assertNotNull(analyzer.readPeaks(items.get(1), 4096, 0, 1));
+            // nothing left for the waveform scan of the window
+            assertEquals(0, analyzer.analyze(items.get(1), true));
+            assertEquals(2, opened.get());
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
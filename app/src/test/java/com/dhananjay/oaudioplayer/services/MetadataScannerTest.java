@@ -0,0 +1,148 @@
+package com.dhananjay.oaudioplayer.services;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.MetadataCache;
+import com.dhananjay.oaudioplayer.model.TrackMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link MetadataScanner}
+ */
+public class MetadataScannerTest {
+    private File mFile;
+    private FakeProbe mProbe;
+    private MetadataScanner mScanner;
+
+    /**
+     * Sources of one second per item, the location is the size
+     */
+    private static class FakeProbe implements MetadataScanner.Probe {
+        final Map<String, Long> mModified = new HashMap<>();
+        final AtomicInteger mExtractCount = new AtomicInteger();
+
+        @Override
+        public long getSize(MediaItem item) {
+            return item.getLocation().startsWith("missing") ? -1 : Long.parseLong(item.getLocation());
+        }
+
+        @Override
+        public synchronized long getModified(MediaItem item) {
+            Long modified = mModified.get(item.getLocation());
+            return modified != null ? modified : 0;
+        }
+
+        @Override
+        public TrackMetadata extract(MediaItem item) throws IOException {
+            mExtractCount.incrementAndGet();
+            if (item.getLocation().equals("13")) throw new IOException("unreadable");
+            return new TrackMetadata("audio/test", 1000, 48000, 2, 0, item.getTitle(), null, null);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("metadata", ".cache");
+        mFile.delete();
+        mProbe = new FakeProbe();
+        mScanner = new MetadataScanner(MetadataCache.load(mFile), mProbe, 3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mScanner.shutdown();
+        mFile.delete();
+    }
+
+    private static List<MediaItem> items(int count) {
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new MediaItem("Track " + i, String.valueOf(100 + i), null));
+        }
+        return items;
+    }
+
+    private void scan(List<MediaItem> items) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        mScanner.scan(items, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void scan_extractsEveryItemOnce() throws Exception {
+        List<MediaItem> items = items(200);
+        scan(items);
+
+        assertEquals(200, mProbe.mExtractCount.get());
+        assertEquals(200000, mScanner.getQueueDurationMs());
+        assertEquals("Track 7", mScanner.get(items.get(7)).title);
+    }
+
+    @Test
+    public void rescan_skipsUnchangedItems() throws Exception {
+        List<MediaItem> items = items(50);
+        scan(items);
+        synchronized (mProbe) {
+            mProbe.mModified.put("110", 1L);
+        }
+        scan(items);
+
+        assertEquals(51, mProbe.mExtractCount.get());
+        assertEquals(49, mScanner.getSkippedCount());
+    }
+
+    @Test
+    public void scan_persistsCache() throws Exception {
+        scan(items(20));
+
+        MetadataScanner restarted = new MetadataScanner(MetadataCache.load(mFile), mProbe, 1);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            restarted.scan(items(20), new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, restarted.getExtractedCount());
+            assertEquals(20, restarted.getSkippedCount());
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void scan_countsUnknownItems() throws Exception {
+        List<MediaItem> items = new ArrayList<>();
+        items.add(new MediaItem("Missing", "missing", null));
+        items.add(new MediaItem("Broken", "13", null));
+        items.add(new MediaItem("Fine", "42", null));
+        scan(items);
+
+        assertEquals(2, mScanner.getUnknownCount());
+        assertEquals(1000, mScanner.getQueueDurationMs());
+        assertNull(mScanner.get(items.get(1)));
+    }
+}
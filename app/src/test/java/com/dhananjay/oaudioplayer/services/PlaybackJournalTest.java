@@ -0,0 +1,101 @@
+package com.dhananjay.oaudioplayer.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link PlaybackJournal}
+ */
+public class PlaybackJournalTest {
+    private File mFile;
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("playback", ".journal");
+        mFile.delete();
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        mFile.delete();
+    }
+
+    private void drain() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void recordNow_roundTrips() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(mFile, mExecutor, 5000);
+        journal.recordNow(new PlaybackJournal.State(42L, 17, 83000,
+                PlaybackJournal.State.FLAG_SHUFFLE, 2));
+        drain();
+
+        PlaybackJournal.State state = journal.read();
+        assertEquals(42L, state.playlistId);
+        assertEquals(17, state.index);
+        assertEquals(83000, state.positionMs);
+        assertFalse(state.isPlaying());
+        assertTrue(state.isShuffled());
+        assertEquals(2, state.repeatMode);
+    }
+
+    @Test
+    public void record_coalescesBurstIntoOneWrite() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(mFile, mExecutor, 200);
+        journal.recordNow(new PlaybackJournal.State(1L, 0, 0, 0, 0));
+        drain();
+
+        for (int i = 1; i <= 100; i++) {
+            journal.record(new PlaybackJournal.State(1L, 0, i, PlaybackJournal.State.FLAG_PLAYING, 0));
+        }
+        Thread.sleep(400);
+        drain();
+
+        assertEquals(2, journal.getWriteCount());
+        assertEquals(100, journal.read().positionMs);
+    }
+
+    @Test
+    public void read_rejectsCorruptJournal() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(mFile, mExecutor, 5000);
+        journal.recordNow(new PlaybackJournal.State(1L, 3, 1000, 0, 0));
+        drain();
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.seek(20);
+        file.write(0xff);
+        file.close();
+
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void clear_removesJournal() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(mFile, mExecutor, 5000);
+        journal.recordNow(new PlaybackJournal.State(1L, 3, 1000, 0, 0));
+        journal.clear();
+        drain();
+
+        assertNull(journal.read());
+    }
+}
@@ -0,0 +1,64 @@
+package com.dhananjay.oaudioplayer.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link TransitionGapMeter}
+ */
+public class TransitionGapMeterTest {
+
+    @Test
+    public void gap_fromCompletionToStart() throws Exception {
+        TransitionGapMeter meter = new TransitionGapMeter();
+
+        assertFalse(meter.markCompleted(1000));
+        assertTrue(meter.markStarted(1400));
+        assertEquals(400, meter.getLastGapNanos());
+        assertEquals(1, meter.getTransitionCount());
+    }
+
+    @Test
+    public void startBeforeCompletion_isNoGap() throws Exception {
+        TransitionGapMeter meter = new TransitionGapMeter();
+
+        // the next player was already playing when the previous one finished
+        assertFalse(meter.markStarted(1000));
+        assertTrue(meter.markCompleted(1200));
+        assertEquals(0, meter.getLastGapNanos());
+        assertEquals(1, meter.getTransitionCount());
+    }
+
+    @Test
+    public void cancel_dropsHalfRecordedTransition() throws Exception {
+        TransitionGapMeter meter = new TransitionGapMeter();
+        meter.markCompleted(1000);
+        meter.cancel();
+
+        // e.g. skipped to another track, its start doesn't pair with the old completion
+        assertFalse(meter.markStarted(5000));
+        assertEquals(0, meter.getTransitionCount());
+        meter.cancel();
+        meter.markCompleted(6000);
+        assertTrue(meter.markStarted(6100));
+        assertEquals(100, meter.getLastGapNanos());
+    }
+
+    @Test
+    public void statistics_overTransitions() throws Exception {
+        TransitionGapMeter meter = new TransitionGapMeter();
+        meter.markCompleted(0);
+        meter.markStarted(100);
+        meter.markCompleted(1000);
+        meter.markStarted(1300);
+
+        assertEquals(2, meter.getTransitionCount());
+        assertEquals(300, meter.getMaxGapNanos());
+        assertEquals(200, meter.getAverageGapNanos());
+        assertTrue(meter.isWithin(300));
+        assertFalse(meter.isWithin(299));
+    }
+}
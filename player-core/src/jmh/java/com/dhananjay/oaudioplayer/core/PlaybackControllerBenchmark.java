@@ -0,0 +1,121 @@
+package com.dhananjay.oaudioplayer.core;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.Playlist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State transitions of {@link PlaybackController} per second, against a player and a listener
+ * which do nothing, plus diffing of the resulting {@link NotificationState}s
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaybackControllerBenchmark {
+    private static final int ITEM_COUNT = 1000;
+
+    private PlaybackController mController;
+    private NotificationState mPlaying;
+    private NotificationState mPaused;
+
+    @Setup
+    public void setUp() {
+        List<MediaItem> items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(new MediaItem("Track " + i, "track_" + i, "ic_music"));
+        }
+        mController = new PlaybackController(new PlaybackController.Player() {
+            @Override
+            public void prepare(MediaItem item) {
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void pause() {
+            }
+
+            @Override
+            public void seekTo(int ms) {
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public void stop() {
+            }
+        }, new PlaybackController.Listener() {
+            @Override
+            public void onStateChanged(int previousState, boolean checkpoint) {
+            }
+
+            @Override
+            public void onQuit() {
+            }
+        });
+        Playlist playlist = new Playlist(items);
+        playlist.setRepeatMode(Playlist.REPEAT_ALL);
+        mController.open(playlist, -1, true);
+        mController.onPrepared();
+
+        mPlaying = new NotificationState("Track 1", 7, null, true, true, true, false, true);
+        mPaused = new NotificationState("Track 1", 7, null, true, true, true, false, false);
+    }
+
+    /**
+     * Pause and resume
+     */
+    @Benchmark
+    public int playPause() {
+        mController.playPause();
+        return mController.getState();
+    }
+
+    /**
+     * A user skip through to the next item playing
+     */
+    @Benchmark
+    public MediaItem skipAndPrepare() {
+        MediaItem item = mController.skipToNext();
+        mController.prepareCurrent();
+        mController.onPrepared();
+        return item;
+    }
+
+    /**
+     * A track completing and the next one taking over without a prepare
+     */
+    @Benchmark
+    public MediaItem nextStarted() {
+        mController.onNextStarted();
+        return mController.getCurrent();
+    }
+
+    @Benchmark
+    public int notificationDiff() {
+        return mPaused.changedFields(mPlaying);
+    }
+}
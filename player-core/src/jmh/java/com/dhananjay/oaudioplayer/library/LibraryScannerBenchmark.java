@@ -0,0 +1,120 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning a 100k file library on all cores, initially and again without changes: 50 artists
+ * with 40 albums of 50 tracks each, every album next to a cover image.
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryScannerBenchmark {
+    private static final int ARTISTS = 50;
+    private static final int ALBUMS = 40;
+    private static final int TRACKS = 50;
+
+    @Param({"false", "true"})
+    public boolean unchanged;
+
+    private File mRoot;
+    private File mIndexFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        mRoot = File.createTempFile("library", "");
+        mRoot.delete();
+        mIndexFile = File.createTempFile("library", ".index");
+        mIndexFile.delete();
+        for (int artist = 0; artist < ARTISTS; artist++) {
+            for (int album = 0; album < ALBUMS; album++) {
+                File dir = new File(mRoot, "Artist " + artist + "/Album " + album);
+                if (!dir.mkdirs()) throw new IOException("Can't create " + dir);
+                for (int track = 0; track < TRACKS; track++) {
+                    touch(new File(dir, String.format("%02d Track %d.opus", track, track)));
+                }
+                touch(new File(dir, "cover.jpg"));
+            }
+        }
+        // the index of an earlier scan, kept by every run
+        if (unchanged) scan();
+    }
+
+    @Setup(Level.Invocation)
+    public void forget() {
+        if (!unchanged) mIndexFile.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mIndexFile.delete();
+        delete(mRoot);
+    }
+
+    @Benchmark
+    public List<MediaItem> scan() throws Exception {
+        LibraryScanner scanner = new LibraryScanner(LibraryIndex.load(mIndexFile), null, 500,
+                Runtime.getRuntime().availableProcessors());
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<List<MediaItem>> library = new ArrayList<>(1);
+        scanner.scan(Collections.singletonList(mRoot), new LibraryScanner.Listener() {
+            @Override
+            public void onBatch(List<MediaItem> items) {
+            }
+
+            @Override
+            public void onFinished(List<MediaItem> items) {
+                library.add(items);
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } finally {
+            scanner.shutdown();
+        }
+        if (library.get(0).size() != ARTISTS * ALBUMS * TRACKS) throw new IllegalStateException("Scan incomplete");
+        return library.get(0);
+    }
+
+    private static void touch(File file) throws IOException {
+        if (!file.createNewFile()) throw new IOException("exists: " + file);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
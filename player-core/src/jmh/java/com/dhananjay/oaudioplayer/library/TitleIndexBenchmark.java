@@ -0,0 +1,86 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link TitleIndex} over 100k titles made of words from a vocabulary of 5000, some of
+ * them with diacritics, and searching it. The gc profiler shows what a build allocates.
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleIndexBenchmark {
+    private static final int ITEM_COUNT = 100000;
+
+    @Param({"love", "lo", "ove you", "sørensen", "night 12", "zzz"})
+    public String query;
+
+    private List<MediaItem> mItems;
+    private TitleIndex mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        String[] vocabulary = new String[5000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random) + (i % 50 == 0 ? "é" : "");
+        }
+        vocabulary[0] = "love";
+        vocabulary[1] = "you";
+        vocabulary[2] = "Sørensen";
+        vocabulary[3] = "night";
+        mItems = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0, words = 2 + random.nextInt(4); w < words; w++) {
+                // skewed towards the first words, like real titles
+                title.append(vocabulary[(int) (vocabulary.length * Math.pow(random.nextDouble(), 3))]).append(' ');
+            }
+            title.append(i % 100);
+            mItems.add(new MediaItem(title.toString(), "track_" + i, null));
+        }
+        mIndex = TitleIndex.build(mItems);
+    }
+
+    @Benchmark
+    public int[] search() {
+        return mIndex.search(query, 50);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TitleIndex build() {
+        // independent of the query, run it with e.g. -PjmhArgs="TitleIndex.build -p query=zzz"
+        return TitleIndex.build(mItems);
+    }
+
+    private static String word(Random random) {
+        char[] chars = new char[3 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
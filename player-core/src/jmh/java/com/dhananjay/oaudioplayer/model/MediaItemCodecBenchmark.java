@@ -0,0 +1,88 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding {@link MediaItem}s into a {@link PlaylistFile} and decoding them back, the latter both
+ * for a fresh mapping and for one whose strings are already decoded
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaItemCodecBenchmark {
+    private static final int ITEM_COUNT = 10000;
+
+    private List<MediaItem> mItems;
+    private File mFile;
+    private File mScratch;
+    private PlaylistFile mWarm;
+    private Random mRandom;
+
+    @Setup
+    public void setUp() throws IOException {
+        mItems = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mItems.add(new MediaItem("Artist " + (i % 50) + " - Track " + i, "track_" + (i % 200), "ic_music"));
+        }
+        mFile = File.createTempFile("playlist", ".bin");
+        mScratch = File.createTempFile("playlist", ".bin");
+        PlaylistFile.write(mFile, mItems);
+        mWarm = PlaylistFile.open(mFile);
+        mWarm.getItems(0, ITEM_COUNT);
+        mRandom = new Random(7);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+        mScratch.delete();
+    }
+
+    /**
+     * Writes the whole playlist
+     */
+    @Benchmark
+    public File encode() throws IOException {
+        PlaylistFile.write(mScratch, mItems);
+        return mScratch;
+    }
+
+    /**
+     * Maps the playlist and decodes its first page
+     */
+    @Benchmark
+    public List<MediaItem> decodeFirstPage() throws IOException {
+        return PlaylistFile.open(mFile).getItems(0, PagedMediaList.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Decodes a single item of an open playlist
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public MediaItem decodeItem() {
+        return mWarm.get(mRandom.nextInt(ITEM_COUNT));
+    }
+}
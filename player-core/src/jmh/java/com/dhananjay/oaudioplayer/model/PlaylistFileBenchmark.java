@@ -0,0 +1,114 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a 100k item {@link PlaylistFile} against restoring the same playlist through Java
+ * serialization. Parcel isn't available off-device, serialization of the same three strings per
+ * item stands in for it.
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistFileBenchmark {
+    private static final int ITEM_COUNT = 100000;
+
+    private List<MediaItem> mItems;
+    private File mFile;
+    private File mScratch;
+    private byte[] mSerialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        mItems = new ArrayList<>(ITEM_COUNT);
+        ArrayList<String[]> serializable = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            String title = "Artist " + (i % 500) + " - Track " + i;
+            String location = "track_" + (i % 2000);
+            mItems.add(new MediaItem(title, location, "ic_music"));
+            serializable.add(new String[]{title, location, "ic_music"});
+        }
+        mFile = File.createTempFile("playlist", ".bin");
+        mScratch = File.createTempFile("playlist", ".bin");
+        PlaylistFile.write(mFile, mItems);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(serializable);
+        out.close();
+        mSerialized = bytes.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+        mScratch.delete();
+    }
+
+    /**
+     * Writes the whole playlist
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public File write() throws IOException {
+        PlaylistFile.write(mScratch, mItems);
+        return mScratch;
+    }
+
+    /**
+     * Maps the playlist without decoding any item
+     */
+    @Benchmark
+    public PlaylistFile open() throws IOException {
+        return PlaylistFile.open(mFile);
+    }
+
+    /**
+     * Maps the playlist and decodes the page shown first
+     */
+    @Benchmark
+    public List<MediaItem> openFirstPage() throws IOException {
+        return PlaylistFile.open(mFile).getItems(0, PagedMediaList.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Restores every item of the serialized playlist, as a Parcel would have to
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<MediaItem> deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(mSerialized));
+        @SuppressWarnings("unchecked")
+        ArrayList<String[]> restored = (ArrayList<String[]>) in.readObject();
+        List<MediaItem> items = new ArrayList<>(restored.size());
+        for (String[] fields : restored) {
+            items.add(new MediaItem(fields[0], fields[1], fields[2]));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,88 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Navigation of a {@link Playlist} over a queue of a million items, in order and shuffled. None
+ * of the steps should depend on the queue length or allocate.
+ *
+ * @author Dhananjay Kumar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistNavigationBenchmark {
+    private static final int ITEM_COUNT = 1000000;
+
+    @Param({"false", "true"})
+    public boolean shuffled;
+
+    private Playlist mPlaylist;
+    private Random mRandom;
+
+    @Setup
+    public void setUp() {
+        final MediaItem item = new MediaItem("Track", "track", "ic_music");
+        // the same item at every index, only the navigation is measured
+        List<MediaItem> items = new AbstractList<MediaItem>() {
+            @Override
+            public MediaItem get(int index) {
+                return item;
+            }
+
+            @Override
+            public int size() {
+                return ITEM_COUNT;
+            }
+        };
+        mPlaylist = new Playlist(items, new Random(42));
+        mPlaylist.setRepeatMode(Playlist.REPEAT_ALL);
+        mPlaylist.setShuffle(shuffled);
+        mRandom = new Random(7);
+    }
+
+    @Benchmark
+    public MediaItem next() {
+        return mPlaylist.next();
+    }
+
+    @Benchmark
+    public MediaItem prev() {
+        return mPlaylist.prev();
+    }
+
+    @Benchmark
+    public MediaItem peekNext() {
+        return mPlaylist.peekNext();
+    }
+
+    @Benchmark
+    public MediaItem moveTo() {
+        return mPlaylist.moveTo(mRandom.nextInt(ITEM_COUNT));
+    }
+
+    @Benchmark
+    public boolean toggleShuffle() {
+        // allocates the permutation arrays when switching on, which is what this shows
+        mPlaylist.setShuffle(!mPlaylist.isShuffled());
+        return mPlaylist.isShuffled();
+    }
+}
@@ -0,0 +1,65 @@
+package com.dhananjay.oaudioplayer.core;
+
+/**
+ * Immutable snapshot of everything the media notification shows, used to find out whether
+ * anything visible changed since the last update
+ *
+ * @author Dhananjay Kumar
+ */
+public final class NotificationState {
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_IMAGE = 1 << 1;
+    public static final int FIELD_PREV = 1 << 2;
+    public static final int FIELD_NEXT = 1 << 3;
+    public static final int FIELD_READY = 1 << 4;
+    public static final int FIELD_BUFFERING = 1 << 5;
+    public static final int FIELD_PLAYING = 1 << 6;
+    public static final int FIELD_ARTWORK = 1 << 7;
+
+    public final String title;
+    public final int imageId;
+    // Key of a loaded artwork bitmap, shown instead of imageId
+    public final String artwork;
+    public final boolean canGoPrev;
+    public final boolean canGoNext;
+    public final boolean isReady;
+    public final boolean isBuffering;
+    public final boolean isPlaying;
+
+    public NotificationState(String title, int imageId, String artwork, boolean canGoPrev, boolean canGoNext,
+                      boolean isReady, boolean isBuffering, boolean isPlaying) {
+        this.title = title;
+        this.imageId = imageId;
+        this.artwork = artwork;
+        this.canGoPrev = canGoPrev;
+        this.canGoNext = canGoNext;
+        this.isReady = isReady;
+        this.isBuffering = isBuffering;
+        this.isPlaying = isPlaying;
+    }
+
+    /**
+     * Compares this state against a previously rendered one
+     *
+     * @param previous last rendered state, may be null
+     * @return bit mask of FIELD_* constants which differ, all bits if there is no previous state
+     */
+    public int changedFields(NotificationState previous) {
+        if (previous == null) {
+            return FIELD_TITLE | FIELD_IMAGE | FIELD_PREV | FIELD_NEXT | FIELD_READY
+                    | FIELD_BUFFERING | FIELD_PLAYING | FIELD_ARTWORK;
+        }
+        int changed = 0;
+        if (title == null ? previous.title != null : !title.equals(previous.title)) changed |= FIELD_TITLE;
+        if (imageId != previous.imageId) changed |= FIELD_IMAGE;
+        if (canGoPrev != previous.canGoPrev) changed |= FIELD_PREV;
+        if (canGoNext != previous.canGoNext) changed |= FIELD_NEXT;
+        if (isReady != previous.isReady) changed |= FIELD_READY;
+        if (isBuffering != previous.isBuffering) changed |= FIELD_BUFFERING;
+        if (isPlaying != previous.isPlaying) changed |= FIELD_PLAYING;
+        if (artwork == null ? previous.artwork != null : !artwork.equals(previous.artwork)) {
+            changed |= FIELD_ARTWORK;
+        }
+        return changed;
+    }
+}
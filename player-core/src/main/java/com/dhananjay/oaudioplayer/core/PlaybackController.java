@@ -0,0 +1,406 @@
+package com.dhananjay.oaudioplayer.core;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.Playlist;
+
+import java.io.IOException;
+
+/**
+ * State machine behind the transport controls: which item is current, whether it's preparing,
+ * paused or playing, and what play, pause, next, previous and the callbacks of the player lead to.
+ * The players sit behind {@link Player} and everything shown or persisted behind {@link Listener},
+ * so the controller has no Android dependencies.
+ * <p>
+ * All methods except the getters of the current item and the state must be called on one thread,
+ * the callbacks arrive on that thread too.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PlaybackController {
+    /**
+     * Nothing loaded, or playback was quit
+     */
+    public static final int STATE_IDLE = 0;
+    /**
+     * The current item is being prepared
+     */
+    public static final int STATE_PREPARING = 1;
+    /**
+     * The current item is prepared but not playing
+     */
+    public static final int STATE_PAUSED = 2;
+    public static final int STATE_PLAYING = 3;
+    /**
+     * The players were released, e.g. after losing the audio focus or a long pause, the current
+     * item and position are kept and prepared again on play
+     */
+    public static final int STATE_RELEASED = 4;
+
+    /**
+     * Plays the items for the controller
+     */
+    public interface Player {
+        /**
+         * Starts preparing the item, answered by {@link PlaybackController#onPrepared()}
+         *
+         * @param item media-item to load
+         * @throws IOException if the item can't be opened, the controller quits then
+         */
+        void prepare(MediaItem item) throws IOException;
+
+        /**
+         * @throws IllegalStateException if the player can't start, the controller quits then
+         */
+        void start();
+
+        /**
+         * @throws IllegalStateException if the player can't pause, the controller quits then
+         */
+        void pause();
+
+        void seekTo(int ms);
+
+        /**
+         * Releases the players, the next {@link #prepare(MediaItem)} has to open them again
+         */
+        void release();
+
+        /**
+         * Stops playback and drops the current item
+         */
+        void stop();
+    }
+
+    /**
+     * Receives the changes of the controller
+     */
+    public interface Listener {
+        /**
+         * The state, the current item or one of the flags changed
+         *
+         * @param previousState state before the change, the current one if only the item or a flag
+         *                      changed
+         * @param checkpoint    true if the change is worth persisting, false for transient ones like
+         *                      buffering or a skip which may be merged with the following ones
+         */
+        void onStateChanged(int previousState, boolean checkpoint);
+
+        /**
+         * Playback ended for good, at the end of the playlist, on an error or when quit
+         */
+        void onQuit();
+    }
+
+    private final Player mPlayer;
+    private final Listener mListener;
+
+    private Playlist mPlaylist;
+    private volatile MediaItem mCurrent;
+    private volatile int mState = STATE_IDLE;
+    // true once the player was asked to prepare the current item, earlier prepares are stale
+    private boolean mPrepareRequested;
+    private boolean mBuffering;
+    // false when restoring a paused session, the item is then only prepared
+    private boolean mPlayWhenReady = true;
+    private int mPendingSeekMs = -1;
+
+    public PlaybackController(Player player, Listener listener) {
+        mPlayer = player;
+        mListener = listener;
+    }
+
+    /**
+     * Starts a playlist at its current item
+     *
+     * @param playlist      items to play
+     * @param positionMs    position to start from, -1 for the beginning
+     * @param playWhenReady false to only prepare the item, e.g. when restoring a paused session
+     */
+    public void open(Playlist playlist, int positionMs, boolean playWhenReady) {
+        mPlaylist = playlist;
+        mPlayWhenReady = playWhenReady;
+        prepare(playlist.getCurrent(), positionMs);
+    }
+
+    /**
+     * Moves to the next item as requested by the user. The item is only prepared by
+     * {@link #prepareCurrent()}, so the caller can merge a burst of skips into one prepare.
+     *
+     * @return the new current item or null if there is none
+     */
+    public MediaItem skipToNext() {
+        return select(mPlaylist != null ? mPlaylist.next() : null);
+    }
+
+    /**
+     * Moves to the previous item as requested by the user, see {@link #skipToNext()}
+     *
+     * @return the new current item or null if there is none
+     */
+    public MediaItem skipToPrevious() {
+        return select(mPlaylist != null ? mPlaylist.prev() : null);
+    }
+
+    private MediaItem select(MediaItem item) {
+        if (item == null) return null;
+        int previous = mState;
+        mCurrent = item;
+        mState = STATE_PREPARING;
+        mPrepareRequested = false;
+        mBuffering = true;
+        mListener.onStateChanged(previous, false);
+        return item;
+    }
+
+    /**
+     * Prepares the current item from the beginning and plays it once prepared
+     */
+    public void prepareCurrent() {
+        if (mCurrent == null) return;
+        mPlayWhenReady = true;
+        prepare(mCurrent, -1);
+    }
+
+    private void prepare(MediaItem item, int positionMs) {
+        int previous = mState;
+        mCurrent = item;
+        mState = STATE_PREPARING;
+        mPrepareRequested = true;
+        mBuffering = true;
+        mPendingSeekMs = positionMs;
+        try {
+            mPlayer.prepare(item);
+        } catch (IOException e) {
+            quit();
+            return;
+        }
+        mListener.onStateChanged(previous, true);
+    }
+
+    /**
+     * Pauses if playing and plays otherwise
+     */
+    public void playPause() {
+        if (mState == STATE_PLAYING) {
+            pause();
+        } else if (mState == STATE_PREPARING) {
+            mPlayWhenReady = !mPlayWhenReady;
+            mListener.onStateChanged(mState, true);
+        } else {
+            play();
+        }
+    }
+
+    /**
+     * Starts or resumes playback. While preparing, playback starts once prepared, and released
+     * players are opened again with the current item, seeking to where it was released.
+     */
+    public void play() {
+        switch (mState) {
+            case STATE_PAUSED:
+                try {
+                    mPlayer.start();
+                } catch (IllegalStateException e) {
+                    quit();
+                    return;
+                }
+                mState = STATE_PLAYING;
+                mListener.onStateChanged(STATE_PAUSED, true);
+                break;
+            case STATE_PREPARING:
+                mPlayWhenReady = true;
+                break;
+            case STATE_RELEASED:
+                mPlayWhenReady = true;
+                prepare(mCurrent, mPendingSeekMs);
+                break;
+        }
+    }
+
+    /**
+     * Pauses playback, or keeps an item being prepared from starting
+     */
+    public void pause() {
+        switch (mState) {
+            case STATE_PLAYING:
+                try {
+                    mPlayer.pause();
+                } catch (IllegalStateException e) {
+                    quit();
+                    return;
+                }
+                mState = STATE_PAUSED;
+                mListener.onStateChanged(STATE_PLAYING, true);
+                break;
+            case STATE_PREPARING:
+                mPlayWhenReady = false;
+                break;
+        }
+    }
+
+    /**
+     * Seeks within the current item, a seek issued while it prepares is applied before it starts
+     *
+     * @param ms position in milliseconds
+     */
+    public void seekTo(int ms) {
+        if (mCurrent == null) return;
+        if (isReady()) {
+            mPlayer.seekTo(ms);
+        } else {
+            mPendingSeekMs = ms;
+        }
+    }
+
+    /**
+     * To be called once the player prepared the current item
+     */
+    public void onPrepared() {
+        // a prepare of an item skipped meanwhile
+        if (mState != STATE_PREPARING || !mPrepareRequested) return;
+
+        mState = STATE_PAUSED;
+        mBuffering = false;
+        if (mPendingSeekMs >= 0) {
+            mPlayer.seekTo(mPendingSeekMs);
+            mPendingSeekMs = -1;
+        }
+        if (mPlayWhenReady) {
+            play();
+        } else {
+            mPlayWhenReady = true;
+            mListener.onStateChanged(STATE_PREPARING, false);
+        }
+    }
+
+    /**
+     * To be called once the current item played to its end and no following item took over,
+     * moves on to the following item or quits at the end of the playlist
+     */
+    public void onCompleted() {
+        if (mPlaylist == null || mPlaylist.peekNext() == null) {
+            quit();
+            return;
+        }
+        mPlayWhenReady = true;
+        prepare(mPlaylist.advance(), -1);
+    }
+
+    /**
+     * To be called once the following item started playing right after the current one, e.g.
+     * through a gapless chain or a crossfade, without a prepare of its own
+     */
+    public void onNextStarted() {
+        int previous = mState;
+        mCurrent = mPlaylist.advance();
+        mState = STATE_PLAYING;
+        mBuffering = false;
+        mListener.onStateChanged(previous, true);
+    }
+
+    /**
+     * @param buffering true while the player waits for data
+     */
+    public void setBuffering(boolean buffering) {
+        if (buffering == mBuffering) return;
+        mBuffering = buffering;
+        mListener.onStateChanged(mState, false);
+    }
+
+    /**
+     * To be called once the play order of the playlist changed, which may change the buttons
+     */
+    public void onPlayOrderChanged() {
+        mListener.onStateChanged(mState, false);
+    }
+
+    /**
+     * Releases the players but keeps the current item, {@link #play()} or {@link #warmUp()}
+     * prepare it again and seek to the position
+     *
+     * @param positionMs position to resume from, -1 for the beginning
+     */
+    public void release(int positionMs) {
+        if (mState == STATE_IDLE || mState == STATE_RELEASED) return;
+        int previous = mState;
+        mPlayer.release();
+        mState = STATE_RELEASED;
+        mPrepareRequested = false;
+        mBuffering = false;
+        mPendingSeekMs = positionMs;
+        mListener.onStateChanged(previous, false);
+    }
+
+    /**
+     * Prepares the released item again without playing it, so a following {@link #play()} only
+     * has to start the player
+     */
+    public void warmUp() {
+        if (mState != STATE_RELEASED) return;
+        mPlayWhenReady = false;
+        prepare(mCurrent, mPendingSeekMs);
+    }
+
+    /**
+     * Stops playback and ends the session
+     */
+    public void quit() {
+        mState = STATE_IDLE;
+        mPrepareRequested = false;
+        mPendingSeekMs = -1;
+        mPlayer.stop();
+        mListener.onQuit();
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return current media-item or null before a playlist was opened
+     */
+    public MediaItem getCurrent() {
+        return mCurrent;
+    }
+
+    public Playlist getPlaylist() {
+        return mPlaylist;
+    }
+
+    /**
+     * @return true if the current item is prepared, playing or not
+     */
+    public boolean isReady() {
+        return mState == STATE_PAUSED || mState == STATE_PLAYING;
+    }
+
+    public boolean isPlaying() {
+        return mState == STATE_PLAYING;
+    }
+
+    public boolean isBuffering() {
+        return mBuffering;
+    }
+
+    /**
+     * @return true if the item being prepared starts playing once prepared
+     */
+    public boolean isPlayWhenReady() {
+        return mPlayWhenReady;
+    }
+
+    /**
+     * @return position the item being prepared starts from, -1 for the beginning
+     */
+    public int getPendingSeekMs() {
+        return mPendingSeekMs;
+    }
+
+    public boolean canGoPrevious() {
+        return mPlaylist != null && mCurrent != null && mPlaylist.hasPrev();
+    }
+
+    public boolean canGoNext() {
+        return mPlaylist != null && mCurrent != null && mPlaylist.hasNext();
+    }
+}
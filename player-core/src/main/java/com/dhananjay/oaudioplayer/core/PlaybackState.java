@@ -0,0 +1,53 @@
+package com.dhananjay.oaudioplayer.core;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+/**
+ * Immutable snapshot of the playback as published to bound clients by {@link StatePublisher}
+ *
+ * @author Dhananjay Kumar
+ */
+public final class PlaybackState {
+    /**
+     * Current item, null before a playlist was opened
+     */
+    public final MediaItem item;
+    /**
+     * Index of the item in the playlist, -1 if there is none
+     */
+    public final int index;
+    /**
+     * One of the PlaybackController STATE_* constants
+     */
+    public final int state;
+    public final boolean isBuffering;
+    public final int positionMs;
+    /**
+     * Time the position was sampled at, on the clock of the publisher, so clients can extrapolate
+     * the position of a playing item between updates
+     */
+    public final long sampledAtMs;
+
+    public PlaybackState(MediaItem item, int index, int state, boolean isBuffering, int positionMs,
+                         long sampledAtMs) {
+        this.item = item;
+        this.index = index;
+        this.state = state;
+        this.isBuffering = isBuffering;
+        this.positionMs = positionMs;
+        this.sampledAtMs = sampledAtMs;
+    }
+
+    public boolean isPlaying() {
+        return state == PlaybackController.STATE_PLAYING;
+    }
+
+    /**
+     * @param previous state published before, may be null
+     * @return true if anything but the sampling time differs
+     */
+    public boolean differsFrom(PlaybackState previous) {
+        return previous == null || item != previous.item || index != previous.index || state != previous.state
+                || isBuffering != previous.isBuffering || positionMs != previous.positionMs;
+    }
+}
@@ -0,0 +1,236 @@
+package com.dhananjay.oaudioplayer.core;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes {@link PlaybackState} snapshots to subscribed clients instead of them polling the player.
+ * One thread, the player thread of the host, publishes changes and runs the position ticks, while
+ * clients subscribe from any thread and receive the states on their own executor.
+ * <p>
+ * Every subscription holds at most one pending state. Publishing swaps the newest state in and only
+ * posts a delivery if none was pending, so slow clients skip intermediate states instead of queuing
+ * them, and no lock is shared between the publisher and the clients.
+ * <p>
+ * Position ticks come from a single timer of the host running at the shortest interval any
+ * subscriber asked for, and only while playing. Without subscribers wanting ticks there are no
+ * wakeups at all.
+ *
+ * @author Dhananjay Kumar
+ */
+public class StatePublisher {
+
+    public interface Listener {
+        /**
+         * Called on the executor of the subscription with the newest state
+         */
+        void onPlaybackState(PlaybackState state);
+    }
+
+    /**
+     * Player side of the publisher
+     */
+    public interface Host {
+        /**
+         * Runs {@link #tick()} on the publishing thread after the delay, replacing a tick already
+         * scheduled, may be called from any thread
+         */
+        void scheduleTick(long delayMs);
+
+        /**
+         * Drops a scheduled tick, may be called from any thread
+         */
+        void cancelTick();
+
+        /**
+         * @return the current state with a fresh position, called on the publishing thread
+         */
+        PlaybackState sample();
+    }
+
+    /**
+     * State numbered in publishing order, so a delivery never goes back to an older one
+     */
+    private static final class Version {
+        final PlaybackState state;
+        final long number;
+
+        Version(PlaybackState state, long number) {
+            this.state = state;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Registration of one listener, returned to unsubscribe with
+     */
+    public static final class Subscription {
+        private final Listener mListener;
+        private final Executor mExecutor;
+        private final int mTickIntervalMs;
+        private final AtomicReference<Version> mPending = new AtomicReference<>();
+        private volatile boolean mClosed;
+        // Only used by the delivery on the executor
+        private long mDelivered = -1;
+        // Sampling time of the last state offered, set before subscribing and then only used by
+        // the publishing thread, -1 if there was none
+        private long mLastTickMs = -1;
+
+        private final Runnable mDeliver = new Runnable() {
+            @Override
+            public void run() {
+                Version version = mPending.getAndSet(null);
+                if (version == null || mClosed || version.number <= mDelivered) return;
+                mDelivered = version.number;
+                mListener.onPlaybackState(version.state);
+            }
+        };
+
+        private Subscription(Listener listener, Executor executor, int tickIntervalMs) {
+            mListener = listener;
+            mExecutor = executor;
+            mTickIntervalMs = tickIntervalMs;
+        }
+
+        private void offer(Version version) {
+            while (true) {
+                Version pending = mPending.get();
+                if (pending != null && pending.number >= version.number) return;
+                if (mPending.compareAndSet(pending, version)) {
+                    if (pending == null) mExecutor.execute(mDeliver);
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Host mHost;
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    // Written by the publishing thread only
+    private volatile Version mCurrent;
+    private volatile int mTickCount;
+
+    public StatePublisher(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * Subscribes a listener, which first receives the current state if there is one
+     *
+     * @param listener       receives the states
+     * @param executor       runs the deliveries one after another, e.g. posting to a Handler
+     * @param tickIntervalMs interval of position updates while playing, 0 for changes only
+     * @return subscription to pass to {@link #unsubscribe(Subscription)}
+     */
+    public Subscription subscribe(Listener listener, Executor executor, int tickIntervalMs) {
+        Subscription subscription = new Subscription(listener, executor, tickIntervalMs);
+        Version current = mCurrent;
+        if (current != null) subscription.mLastTickMs = current.state.sampledAtMs;
+        mSubscriptions.add(subscription);
+        // read again after adding, a newer state published meanwhile is offered by the publisher too
+        current = mCurrent;
+        if (current != null) subscription.offer(current);
+        updateTicking();
+        return subscription;
+    }
+
+    /**
+     * Stops deliveries to a listener, one already running completes
+     */
+    public void unsubscribe(Subscription subscription) {
+        subscription.mClosed = true;
+        mSubscriptions.remove(subscription);
+        updateTicking();
+    }
+
+    /**
+     * Publishes a state to all subscribers unless nothing but its time changed, called on the
+     * publishing thread
+     */
+    public void publish(PlaybackState state) {
+        Version current = mCurrent;
+        if (current != null && !state.differsFrom(current.state)) return;
+        Version version = new Version(state, current != null ? current.number + 1 : 0);
+        mCurrent = version;
+        for (Subscription subscription : mSubscriptions) {
+            subscription.mLastTickMs = state.sampledAtMs;
+            subscription.offer(version);
+        }
+        updateTicking();
+    }
+
+    /**
+     * Samples the position and hands it to the subscribers whose interval passed, called on the
+     * publishing thread when the host's timer fires
+     */
+    public void tick() {
+        int interval = getTickInterval();
+        Version current = mCurrent;
+        if (interval == 0 || current == null || !current.state.isPlaying()) return;
+        mTickCount++;
+
+        PlaybackState state = mHost.sample();
+        if (state.differsFrom(current.state)) {
+            Version version = new Version(state, current.number + 1);
+            mCurrent = version;
+            for (Subscription subscription : mSubscriptions) {
+                if (!isTickDue(subscription, state.sampledAtMs, interval)) continue;
+                subscription.mLastTickMs = state.sampledAtMs;
+                subscription.offer(version);
+            }
+        }
+        updateTicking();
+    }
+
+    /**
+     * A subscriber slower than the timer takes every n-th tick, allowing for the timer firing a
+     * little early
+     */
+    private static boolean isTickDue(Subscription subscription, long now, int interval) {
+        if (subscription.mTickIntervalMs == 0) return false;
+        long last = subscription.mLastTickMs;
+        return last < 0 || now - last >= subscription.mTickIntervalMs - interval / 2;
+    }
+
+    /**
+     * @return shortest tick interval of the subscribers, 0 if none wants ticks
+     */
+    public int getTickInterval() {
+        int interval = 0;
+        for (Subscription subscription : mSubscriptions) {
+            int own = subscription.mTickIntervalMs;
+            if (own > 0 && (interval == 0 || own < interval)) interval = own;
+        }
+        return interval;
+    }
+
+    private void updateTicking() {
+        int interval = getTickInterval();
+        Version current = mCurrent;
+        if (interval > 0 && current != null && current.state.isPlaying()) {
+            mHost.scheduleTick(interval);
+        } else {
+            mHost.cancelTick();
+        }
+    }
+
+    /**
+     * @return the state published last, null if none was
+     */
+    public PlaybackState getState() {
+        Version current = mCurrent;
+        return current != null ? current.state : null;
+    }
+
+    public int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+
+    /**
+     * @return number of timer ticks run so far
+     */
+    public int getTickCount() {
+        return mTickCount;
+    }
+}
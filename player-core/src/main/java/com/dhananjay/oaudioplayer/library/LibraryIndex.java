@@ -0,0 +1,183 @@
+package com.dhananjay.oaudioplayer.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent listing of the scanned directories: the modification time each one had when it was
+ * listed, its subdirectories and its audio files. A directory's time changes whenever entries are
+ * added, removed or renamed in it, so an unchanged time means the stored listing is still valid
+ * and the directory doesn't need to be listed again.
+ * <p>
+ * Stored like the metadata cache, written as a whole through a rename and ending with a checksum.
+ *
+ * @author Dhananjay Kumar
+ */
+public class LibraryIndex {
+    private static final int MAGIC = 0x4f414c49; // "OALI"
+    private static final int VERSION = 1;
+
+    private final File mFile;
+    // Serializes writers of the file, the map itself is guarded by this
+    private final Object mSaveLock = new Object();
+    private final HashMap<String, Directory> mDirectories = new HashMap<>();
+    private boolean mDirty;
+
+    /**
+     * Listing of one directory, names are relative to it
+     */
+    public static class Directory {
+        public final long modified;
+        public final String[] subdirectories;
+        public final String[] files;
+
+        public Directory(long modified, String[] subdirectories, String[] files) {
+            this.modified = modified;
+            this.subdirectories = subdirectories;
+            this.files = files;
+        }
+    }
+
+    private LibraryIndex(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the index stored in the file
+     *
+     * @param file index file, doesn't need to exist
+     * @return the stored index or an empty one if the file is missing or unreadable
+     */
+    public static LibraryIndex load(File file) {
+        LibraryIndex index = new LibraryIndex(file);
+        if (!file.exists()) return index;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) return index;
+            int count = data.readInt();
+            HashMap<String, Directory> directories = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String path = data.readUTF();
+                long modified = data.readLong();
+                directories.put(path, new Directory(modified, readNames(data), readNames(data)));
+            }
+            long checksum = crc.getValue();
+            if (in.readLong() != checksum) return index;
+            index.mDirectories.putAll(directories);
+        } catch (IOException e) {
+            // a damaged index only costs a full scan
+        }
+        return index;
+    }
+
+    /**
+     * @param path path of the directory
+     * @return the listing stored for the directory or null if there is none
+     */
+    public synchronized Directory get(String path) {
+        return mDirectories.get(path);
+    }
+
+    /**
+     * Stores the current listing of a directory
+     *
+     * @param path      path of the directory
+     * @param directory its listing
+     */
+    public synchronized void put(String path, Directory directory) {
+        mDirectories.put(path, directory);
+        mDirty = true;
+    }
+
+    /**
+     * Drops the listings of directories not in the given set, those which disappeared since
+     *
+     * @param paths paths of the directories to keep
+     */
+    public synchronized void retain(Set<String> paths) {
+        if (mDirectories.keySet().retainAll(paths)) mDirty = true;
+    }
+
+    public synchronized int size() {
+        return mDirectories.size();
+    }
+
+    /**
+     * Writes the index if it changed since it was loaded or last saved
+     *
+     * @throws IOException if the file can't be written, the previous one stays in place then
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            HashMap<String, Directory> directories;
+            synchronized (this) {
+                if (!mDirty) return;
+                directories = new HashMap<>(mDirectories);
+                mDirty = false;
+            }
+
+            File temp = new File(mFile.getPath() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                DataOutputStream data = new DataOutputStream(new CheckedOutputStream(out, crc));
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(directories.size());
+                for (Map.Entry<String, Directory> item : directories.entrySet()) {
+                    Directory directory = item.getValue();
+                    data.writeUTF(item.getKey());
+                    data.writeLong(directory.modified);
+                    writeNames(data, directory.subdirectories);
+                    writeNames(data, directory.files);
+                }
+                data.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                file.getFD().sync();
+            } catch (IOException e) {
+                temp.delete();
+                markDirty();
+                throw e;
+            }
+            if (!temp.renameTo(mFile)) {
+                temp.delete();
+                markDirty();
+                throw new IOException("Can't replace " + mFile);
+            }
+        }
+    }
+
+    private synchronized void markDirty() {
+        mDirty = true;
+    }
+
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static String[] readNames(DataInputStream in) throws IOException {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+}
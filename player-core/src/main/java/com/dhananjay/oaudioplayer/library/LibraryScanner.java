@@ -0,0 +1,260 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the audio files below a set of root directories. Every directory is a fork-join task, so
+ * idle workers steal subtrees of busy ones, and directories whose modification time matches the
+ * {@link LibraryIndex} aren't listed again. Found items are handed out in batches while the scan
+ * runs, and sorted by path once it's done.
+ * <p>
+ * A directory's time only covers its own entries, so unchanged directories are still descended
+ * into, but that costs one stat per directory instead of one per file.
+ *
+ * @author Dhananjay Kumar
+ */
+public class LibraryScanner {
+    private static final String[] EXTENSIONS = {".opus", ".ogg", ".mp3", ".m4a", ".aac", ".flac", ".wav"};
+
+    public interface Listener {
+        /**
+         * Items found since the last batch, called on a worker thread
+         *
+         * @param items new items, owned by the listener
+         */
+        void onBatch(List<MediaItem> items);
+
+        /**
+         * The scan completed and the index was saved, called on a worker thread
+         *
+         * @param library all items found, sorted by path
+         */
+        void onFinished(List<MediaItem> library);
+    }
+
+    private final LibraryIndex mIndex;
+    private final String mImage;
+    private final int mBatchSize;
+    private final ForkJoinPool mPool;
+
+    // Incremented by every scan, directories of a replaced scan are no longer listed
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicInteger mListedCount = new AtomicInteger();
+    private final AtomicInteger mSkippedCount = new AtomicInteger();
+
+    /**
+     * @param index       listings of the previous scan, saved after every scan
+     * @param image       image of the created items
+     * @param batchSize   number of items per batch
+     * @param parallelism number of workers
+     */
+    public LibraryScanner(LibraryIndex index, String image, int batchSize, int parallelism) {
+        mIndex = index;
+        mImage = image;
+        mBatchSize = batchSize;
+        mPool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                };
+                thread.setName("LibraryScanner-" + thread.getPoolIndex());
+                return thread;
+            }
+        }, null, false);
+    }
+
+    /**
+     * @return true if the name has one of the supported audio extensions
+     */
+    static boolean isAudioFile(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        for (String extension : EXTENSIONS) {
+            if (lower.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts scanning, abandoning a scan still running
+     *
+     * @param roots    directories to scan, missing ones are ignored
+     * @param listener receives the found items
+     */
+    public void scan(final List<File> roots, final Listener listener) {
+        final int generation = mGeneration.incrementAndGet();
+        mPool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                Scan scan = new Scan(generation, listener);
+                List<DirectoryTask> tasks = new ArrayList<>();
+                for (File root : roots) {
+                    tasks.add(new DirectoryTask(scan, root));
+                }
+                invokeAll(tasks);
+                if (mGeneration.get() != generation) return;
+                scan.flush();
+
+                mIndex.retain(scan.mVisited);
+                try {
+                    mIndex.save();
+                } catch (IOException e) {
+                    // the index stays dirty, the next scan saves it again
+                }
+                Collections.sort(scan.mLibrary, new Comparator<MediaItem>() {
+                    @Override
+                    public int compare(MediaItem a, MediaItem b) {
+                        return a.getLocation().compareTo(b.getLocation());
+                    }
+                });
+                listener.onFinished(scan.mLibrary);
+            }
+        });
+    }
+
+    /**
+     * State of one scan shared by its tasks
+     */
+    private class Scan {
+        final int mGen;
+        final Listener mListener;
+        final Set<String> mVisited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        // Guarded by this
+        final List<MediaItem> mLibrary = new ArrayList<>();
+        private List<MediaItem> mBatch = new ArrayList<>();
+
+        Scan(int generation, Listener listener) {
+            mGen = generation;
+            mListener = listener;
+        }
+
+        void add(List<MediaItem> items) {
+            // a task still listing when a newer scan started mustn't report to the old listener
+            if (mGeneration.get() != mGen) return;
+            List<MediaItem> full = null;
+            synchronized (this) {
+                mLibrary.addAll(items);
+                mBatch.addAll(items);
+                if (mBatch.size() >= mBatchSize) {
+                    full = mBatch;
+                    mBatch = new ArrayList<>();
+                }
+            }
+            if (full != null) mListener.onBatch(full);
+        }
+
+        void flush() {
+            List<MediaItem> rest;
+            synchronized (this) {
+                rest = mBatch;
+                mBatch = new ArrayList<>();
+            }
+            if (!rest.isEmpty()) mListener.onBatch(rest);
+        }
+    }
+
+    /**
+     * Lists one directory, or takes its listing from the index, and forks its subdirectories
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Scan mScan;
+        private final File mDir;
+
+        DirectoryTask(Scan scan, File dir) {
+            mScan = scan;
+            mDir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            if (mGeneration.get() != mScan.mGen) return;
+            String path = mDir.getPath();
+            LibraryIndex.Directory directory = list(path);
+            if (directory == null) return;
+            mScan.mVisited.add(path);
+
+            if (directory.files.length > 0) {
+                List<MediaItem> items = new ArrayList<>(directory.files.length);
+                for (String name : directory.files) {
+                    int dot = name.lastIndexOf('.');
+                    items.add(new MediaItem(name.substring(0, dot), path + File.separator + name, mImage));
+                }
+                mScan.add(items);
+            }
+
+            List<DirectoryTask> tasks = new ArrayList<>(directory.subdirectories.length);
+            for (String name : directory.subdirectories) {
+                tasks.add(new DirectoryTask(mScan, new File(mDir, name)));
+            }
+            invokeAll(tasks);
+        }
+
+        /**
+         * @return the current listing of the directory or null if it doesn't exist
+         */
+        private LibraryIndex.Directory list(String path) {
+            long modified = mDir.lastModified();
+            if (modified == 0) return null;
+            LibraryIndex.Directory directory = mIndex.get(path);
+            if (directory != null && directory.modified == modified) {
+                mSkippedCount.incrementAndGet();
+                return directory;
+            }
+
+            File[] children = mDir.listFiles();
+            if (children == null) return null;
+            List<String> subdirectories = new ArrayList<>();
+            List<String> files = new ArrayList<>();
+            for (File child : children) {
+                String name = child.getName();
+                // hidden directories hold thumbnails and app data, not music
+                if (name.startsWith(".")) continue;
+                if (child.isDirectory()) {
+                    subdirectories.add(name);
+                } else if (isAudioFile(name)) {
+                    files.add(name);
+                }
+            }
+            directory = new LibraryIndex.Directory(modified,
+                    subdirectories.toArray(new String[subdirectories.size()]),
+                    files.toArray(new String[files.size()]));
+            mIndex.put(path, directory);
+            mListedCount.incrementAndGet();
+            return directory;
+        }
+    }
+
+    /**
+     * @return number of directories listed, their time differed from the index
+     */
+    public int getListedCount() {
+        return mListedCount.get();
+    }
+
+    /**
+     * @return number of directories taken from the index
+     */
+    public int getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    public void shutdown() {
+        mGeneration.incrementAndGet();
+        mPool.shutdown();
+    }
+}
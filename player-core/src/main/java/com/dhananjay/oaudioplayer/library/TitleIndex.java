@@ -0,0 +1,422 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index over the titles of media items, each identified by an ordinal assigned in the order
+ * items are added. Titles are folded to lower case without diacritics, and the index keeps two
+ * posting lists: ordinals per title word, answering word prefix queries, and ordinals per trigram
+ * of the whole folded title, narrowing substring queries down to a few candidates.
+ * <p>
+ * Posting lists are ascending ordinals stored as varint deltas, a few bytes per entry. They're
+ * frozen into a segment; items added later stay in a short pending list searched linearly until
+ * {@link #compact()} folds them in, and removed items are masked. All methods are thread safe, and
+ * compacting only blocks queries while the new segment is swapped in.
+ *
+ * @author Dhananjay Kumar
+ */
+public class TitleIndex {
+    // Substring queries shorter than this match word prefixes instead
+    private static final int GRAM = 3;
+
+    private MediaItem[] mItems = new MediaItem[16];
+    private String[] mFolded = new String[16];
+    private int mCount;
+    private final BitSet mRemoved = new BitSet();
+    private Segment mSegment = Segment.EMPTY;
+
+    /**
+     * Frozen posting lists of the ordinals below count
+     */
+    private static class Segment {
+        static final Segment EMPTY = new Segment(0, new String[0], new byte[0][], new long[0], new byte[0][]);
+
+        final int count;
+        // Sorted words and trigrams with the encoded ordinals of each
+        final String[] words;
+        final byte[][] wordPostings;
+        final long[] grams;
+        final byte[][] gramPostings;
+
+        Segment(int count, String[] words, byte[][] wordPostings, long[] grams, byte[][] gramPostings) {
+            this.count = count;
+            this.words = words;
+            this.wordPostings = wordPostings;
+            this.grams = grams;
+            this.gramPostings = gramPostings;
+        }
+    }
+
+    /**
+     * Growable list of ascending ordinals, encoded when the segment is frozen
+     */
+    private static class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            // a word or trigram occurring twice in one title is listed once
+            if (size > 0 && ordinals[size - 1] == ordinal) return;
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            ordinals[size++] = ordinal;
+        }
+
+        byte[] encode() {
+            byte[] buffer = new byte[size * 5];
+            int length = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = ordinals[i] - previous;
+                previous = ordinals[i];
+                while ((delta & ~0x7f) != 0) {
+                    buffer[length++] = (byte) (delta & 0x7f | 0x80);
+                    delta >>>= 7;
+                }
+                buffer[length++] = (byte) delta;
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    /**
+     * Indexes a list of items, meant to run off the main thread
+     *
+     * @param items items getting the ordinals of their list index
+     * @return the compacted index
+     */
+    public static TitleIndex build(List<MediaItem> items) {
+        TitleIndex index = new TitleIndex();
+        for (int i = 0, size = items.size(); i < size; i++) {
+            index.add(items.get(i));
+        }
+        index.compact();
+        return index;
+    }
+
+    /**
+     * Folds a title for indexing and matching: lower case, diacritics removed, and every run of
+     * characters other than letters and digits replaced by a single space
+     *
+     * @param title title to fold, may be null
+     * @return folded title without leading or trailing spaces
+     */
+    static String fold(String title) {
+        if (title == null) return "";
+        // lower case first, it may decompose into a letter and a mark
+        String decomposed = Normalizer.normalize(title.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(c);
+                space = false;
+            } else if (!space) {
+                folded.append(' ');
+                space = true;
+            }
+        }
+        int length = folded.length();
+        if (length > 0 && folded.charAt(length - 1) == ' ') folded.setLength(length - 1);
+        return folded.toString();
+    }
+
+    /**
+     * Adds an item, searchable at once
+     *
+     * @param item item to add
+     * @return ordinal of the item
+     */
+    public synchronized int add(MediaItem item) {
+        if (mCount == mItems.length) {
+            mItems = Arrays.copyOf(mItems, mCount * 2);
+            mFolded = Arrays.copyOf(mFolded, mCount * 2);
+        }
+        mItems[mCount] = item;
+        mFolded[mCount] = fold(item.getTitle());
+        return mCount++;
+    }
+
+    /**
+     * Removes an item from the results, its ordinal isn't reused
+     *
+     * @param ordinal ordinal from {@link #add(MediaItem)}
+     */
+    public synchronized void remove(int ordinal) {
+        if (ordinal < 0 || ordinal >= mCount) throw new IndexOutOfBoundsException("ordinal: " + ordinal);
+        mRemoved.set(ordinal);
+    }
+
+    /**
+     * @param ordinal ordinal from {@link #add(MediaItem)}
+     * @return the item
+     */
+    public synchronized MediaItem get(int ordinal) {
+        if (ordinal < 0 || ordinal >= mCount) throw new IndexOutOfBoundsException("ordinal: " + ordinal);
+        return mItems[ordinal];
+    }
+
+    /**
+     * @return number of items added and not removed
+     */
+    public synchronized int size() {
+        return mCount - mRemoved.cardinality();
+    }
+
+    /**
+     * @return number of items added since the last {@link #compact()}, searched linearly
+     */
+    public synchronized int getPendingCount() {
+        return mCount - mSegment.count;
+    }
+
+    /**
+     * Freezes the items added so far into new posting lists. Removed items are left out, so this
+     * also reclaims their postings. Runs on the calling thread, queries continue meanwhile.
+     */
+    public void compact() {
+        int count;
+        String[] folded;
+        BitSet removed;
+        synchronized (this) {
+            count = mCount;
+            folded = mFolded;
+            removed = (BitSet) mRemoved.clone();
+        }
+        // folded titles below count are never written again
+        Segment segment = freeze(folded, count, removed);
+        synchronized (this) {
+            // a concurrent compaction may have frozen more items already
+            if (segment.count >= mSegment.count) mSegment = segment;
+        }
+    }
+
+    private static Segment freeze(String[] folded, int count, BitSet removed) {
+        HashMap<String, Postings> words = new HashMap<>();
+        HashMap<Long, Postings> grams = new HashMap<>();
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (removed.get(ordinal)) continue;
+            String title = folded[ordinal];
+            int start = 0;
+            while (start < title.length()) {
+                int end = title.indexOf(' ', start);
+                if (end < 0) end = title.length();
+                String word = title.substring(start, end);
+                Postings postings = words.get(word);
+                if (postings == null) words.put(word, postings = new Postings());
+                postings.add(ordinal);
+                start = end + 1;
+            }
+            for (int i = 0; i + GRAM <= title.length(); i++) {
+                Long gram = gram(title, i);
+                Postings postings = grams.get(gram);
+                if (postings == null) grams.put(gram, postings = new Postings());
+                postings.add(ordinal);
+            }
+        }
+
+        String[] wordKeys = words.keySet().toArray(new String[words.size()]);
+        Arrays.sort(wordKeys);
+        byte[][] wordPostings = new byte[wordKeys.length][];
+        for (int i = 0; i < wordKeys.length; i++) {
+            wordPostings[i] = words.get(wordKeys[i]).encode();
+        }
+        long[] gramKeys = new long[grams.size()];
+        int i = 0;
+        for (Long gram : grams.keySet()) {
+            gramKeys[i++] = gram;
+        }
+        Arrays.sort(gramKeys);
+        byte[][] gramPostings = new byte[gramKeys.length][];
+        for (i = 0; i < gramKeys.length; i++) {
+            gramPostings[i] = grams.get(gramKeys[i]).encode();
+        }
+        return new Segment(count, wordKeys, wordPostings, gramKeys, gramPostings);
+    }
+
+    private static long gram(String folded, int offset) {
+        return (long) folded.charAt(offset) << 32 | (long) folded.charAt(offset + 1) << 16 | folded.charAt(offset + 2);
+    }
+
+    private static int[] decode(byte[] encoded) {
+        int[] ordinals = new int[encoded.length];
+        int size = 0;
+        int ordinal = 0;
+        for (int i = 0; i < encoded.length; ) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[i++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            ordinal += delta;
+            ordinals[size++] = ordinal;
+        }
+        return Arrays.copyOf(ordinals, size);
+    }
+
+    /**
+     * Keeps the ordinals of a which also are in b, both ascending
+     *
+     * @return number of ordinals kept at the start of a
+     */
+    private static int intersect(int[] a, int size, int[] b) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < b.length; i++) {
+            while (j < b.length && b[j] < a[i]) j++;
+            if (j < b.length && b[j] == a[i]) a[kept++] = a[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the items whose title contains the query. Queries shorter than three characters match
+     * the start of title words instead, as nearly every title contains them somewhere.
+     *
+     * @param query text to look for, folded like the titles
+     * @param limit maximum number of results
+     * @return ordinals of the matching items in ascending order
+     */
+    public int[] search(String query, int limit) {
+        String folded = fold(query);
+        if (folded.isEmpty()) return new int[0];
+        if (folded.length() < GRAM) return searchPrefix(query, limit);
+
+        synchronized (this) {
+            Segment segment = mSegment;
+            int[] candidates = null;
+            int size = 0;
+            for (int i = 0; i + GRAM <= folded.length(); i++) {
+                int found = Arrays.binarySearch(segment.grams, gram(folded, i));
+                if (found < 0) {
+                    size = 0;
+                    break;
+                }
+                int[] postings = decode(segment.gramPostings[found]);
+                if (candidates == null) {
+                    candidates = postings;
+                    size = postings.length;
+                } else {
+                    size = intersect(candidates, size, postings);
+                }
+                if (size == 0) break;
+            }
+
+            int[] results = new int[Math.min(limit, size + getPendingCount())];
+            int count = 0;
+            // the trigrams only narrow down, word boundaries and order are checked on the title
+            for (int i = 0; i < size && count < results.length; i++) {
+                int ordinal = candidates[i];
+                if (!mRemoved.get(ordinal) && mFolded[ordinal].contains(folded)) results[count++] = ordinal;
+            }
+            for (int ordinal = segment.count; ordinal < mCount && count < results.length; ordinal++) {
+                if (!mRemoved.get(ordinal) && mFolded[ordinal].contains(folded)) results[count++] = ordinal;
+            }
+            return Arrays.copyOf(results, count);
+        }
+    }
+
+    /**
+     * Finds the items having a title word starting with each word of the query, in any order
+     *
+     * @param query words to look for, folded like the titles
+     * @param limit maximum number of results
+     * @return ordinals of the matching items in ascending order
+     */
+    public int[] searchPrefix(String query, int limit) {
+        String folded = fold(query);
+        if (folded.isEmpty()) return new int[0];
+        String[] prefixes = folded.split(" ");
+
+        synchronized (this) {
+            Segment segment = mSegment;
+            int[] candidates = null;
+            int size = 0;
+            for (String prefix : prefixes) {
+                int[] postings = unionOfPrefix(segment, prefix);
+                if (candidates == null) {
+                    candidates = postings;
+                    size = postings.length;
+                } else {
+                    size = intersect(candidates, size, postings);
+                }
+                if (size == 0) break;
+            }
+
+            int[] results = new int[Math.min(limit, size + getPendingCount())];
+            int count = 0;
+            for (int i = 0; i < size && count < results.length; i++) {
+                if (!mRemoved.get(candidates[i])) results[count++] = candidates[i];
+            }
+            for (int ordinal = segment.count; ordinal < mCount && count < results.length; ordinal++) {
+                if (!mRemoved.get(ordinal) && hasWordPrefixes(mFolded[ordinal], prefixes)) results[count++] = ordinal;
+            }
+            return Arrays.copyOf(results, count);
+        }
+    }
+
+    /**
+     * @return ascending ordinals of all words starting with the prefix
+     */
+    private static int[] unionOfPrefix(Segment segment, String prefix) {
+        int first = Arrays.binarySearch(segment.words, prefix);
+        if (first < 0) first = -first - 1;
+        int last = first;
+        while (last < segment.words.length && segment.words[last].startsWith(prefix)) last++;
+        if (last == first) return new int[0];
+        if (last == first + 1) return decode(segment.wordPostings[first]);
+
+        BitSet union = new BitSet();
+        for (int w = first; w < last; w++) {
+            for (int ordinal : decode(segment.wordPostings[w])) {
+                union.set(ordinal);
+            }
+        }
+        int[] ordinals = new int[union.cardinality()];
+        int i = 0;
+        for (int ordinal = union.nextSetBit(0); ordinal >= 0; ordinal = union.nextSetBit(ordinal + 1)) {
+            ordinals[i++] = ordinal;
+        }
+        return ordinals;
+    }
+
+    private static boolean hasWordPrefixes(String folded, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (!folded.startsWith(prefix) && !folded.contains(" " + prefix)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the memory taken by the posting lists and their keys, without the items and titles
+     *
+     * @return approximate size in bytes
+     */
+    public synchronized long getPostingBytes() {
+        Segment segment = mSegment;
+        long bytes = segment.grams.length * 8L;
+        for (byte[] postings : segment.gramPostings) {
+            bytes += postings.length + 16;
+        }
+        for (int i = 0; i < segment.words.length; i++) {
+            // header, hash and length of the string, and its chars
+            bytes += 32 + segment.words[i].length() * 2 + segment.wordPostings[i].length + 16;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,167 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of measured integrated loudness keyed by media location. Like
+ * {@link MetadataCache} every entry remembers the size and modification time of its source, and
+ * the file is replaced as a whole and checked by a checksum.
+ *
+ * @author Dhananjay Kumar
+ */
+public class LoudnessCache {
+    private static final int MAGIC = 0x4f414c55; // "OALU"
+    private static final int VERSION = 1;
+
+    private final File mFile;
+    // Serializes writers of the file, the map itself is guarded by this
+    private final Object mSaveLock = new Object();
+    private final HashMap<String, Record> mEntries = new HashMap<>();
+    private boolean mDirty;
+
+    private static class Record {
+        final long size;
+        final long modified;
+        final float loudness;
+
+        Record(long size, long modified, float loudness) {
+            this.size = size;
+            this.modified = modified;
+            this.loudness = loudness;
+        }
+    }
+
+    private LoudnessCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the cache stored in the file
+     *
+     * @param file cache file, doesn't need to exist
+     * @return the stored cache or an empty one if the file is missing or unreadable
+     */
+    public static LoudnessCache load(File file) {
+        LoudnessCache cache = new LoudnessCache(file);
+        if (!file.exists()) return cache;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) return cache;
+            int count = data.readInt();
+            HashMap<String, Record> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String location = data.readUTF();
+                entries.put(location, new Record(data.readLong(), data.readLong(), data.readFloat()));
+            }
+            long checksum = crc.getValue();
+            if (in.readLong() != checksum) return cache;
+            cache.mEntries.putAll(entries);
+        } catch (IOException e) {
+            // a damaged cache is rebuilt by the next scan
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the cached loudness regardless of whether the source changed since
+     *
+     * @param location location of the media item
+     * @return loudness in LUFS, NaN if there is none
+     */
+    public synchronized float get(String location) {
+        Record entry = mEntries.get(location);
+        return entry != null ? entry.loudness : Float.NaN;
+    }
+
+    /**
+     * @param location location of the media item
+     * @param size     current size of the source in bytes
+     * @param modified current modification time of the source
+     * @return true if the loudness was measured from a source of the same size and modification time
+     */
+    public synchronized boolean isCurrent(String location, long size, long modified) {
+        Record entry = mEntries.get(location);
+        return entry != null && entry.size == size && entry.modified == modified;
+    }
+
+    /**
+     * Stores the loudness measured from the source in its current state
+     *
+     * @param location location of the media item
+     * @param size     size of the source in bytes
+     * @param modified modification time of the source
+     * @param loudness integrated loudness in LUFS, negative infinity for silence
+     */
+    public synchronized void put(String location, long size, long modified, float loudness) {
+        mEntries.put(location, new Record(size, modified, loudness));
+        mDirty = true;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the cache if it changed since it was loaded or last saved
+     *
+     * @throws IOException if the file can't be written, the previous one stays in place then
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            HashMap<String, Record> entries;
+            synchronized (this) {
+                if (!mDirty) return;
+                entries = new HashMap<>(mEntries);
+                mDirty = false;
+            }
+
+            File temp = new File(mFile.getPath() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                DataOutputStream data = new DataOutputStream(new CheckedOutputStream(out, crc));
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(entries.size());
+                for (Map.Entry<String, Record> item : entries.entrySet()) {
+                    Record entry = item.getValue();
+                    data.writeUTF(item.getKey());
+                    data.writeLong(entry.size);
+                    data.writeLong(entry.modified);
+                    data.writeFloat(entry.loudness);
+                }
+                data.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                file.getFD().sync();
+            } catch (IOException e) {
+                temp.delete();
+                markDirty();
+                throw e;
+            }
+            if (!temp.renameTo(mFile)) {
+                temp.delete();
+                markDirty();
+                throw new IOException("Can't replace " + mFile);
+            }
+        }
+    }
+
+    private synchronized void markDirty() {
+        mDirty = true;
+    }
+}
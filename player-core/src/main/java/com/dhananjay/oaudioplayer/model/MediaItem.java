@@ -0,0 +1,54 @@
+package com.dhananjay.oaudioplayer.model;
+
+/**
+ * Created by Dhananjay on 02-06-2017.
+ */
+public class MediaItem {
+    /**
+     * Value of a resource id which hasn't been looked up yet
+     */
+    public static final int UNRESOLVED = -1;
+
+    private String mTitle;
+    private String mLocation;
+    private String mImage;
+
+    // Resource ids resolved from location and image, not persisted. 0 means there is no such
+    // resource. Written at most once per name, so a racing lookup only repeats the same work.
+    private int mLocationResId = UNRESOLVED;
+    private int mImageResId = UNRESOLVED;
+
+    public MediaItem(String title, String location, String image) {
+        mTitle = title;
+        mLocation = location;
+        mImage = image;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public String getImage() {
+        return mImage;
+    }
+
+    public int getLocationResId() {
+        return mLocationResId;
+    }
+
+    public void setLocationResId(int locationResId) {
+        mLocationResId = locationResId;
+    }
+
+    public int getImageResId() {
+        return mImageResId;
+    }
+
+    public void setImageResId(int imageResId) {
+        mImageResId = imageResId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of {@link TrackMetadata} keyed by media location. Every entry remembers the
+ * size and modification time of the source it was extracted from, so a rescan only has to compare
+ * those to know whether the entry is still valid.
+ * <p>
+ * The cache is held in memory and written as a whole through a rename, the file ends with a
+ * checksum and an unreadable file just yields an empty cache.
+ *
+ * @author Dhananjay Kumar
+ */
+public class MetadataCache {
+    private static final int MAGIC = 0x4f414d44; // "OAMD"
+    private static final int VERSION = 1;
+    // Keeps every string within the limit of writeUTF, tags longer than that are garbage anyway
+    private static final int MAX_STRING_LENGTH = 4096;
+
+    private final File mFile;
+    // Serializes writers of the file, the map itself is guarded by this
+    private final Object mSaveLock = new Object();
+    private final HashMap<String, Record> mEntries = new HashMap<>();
+    private boolean mDirty;
+
+    private static class Record {
+        final long size;
+        final long modified;
+        final TrackMetadata metadata;
+
+        Record(long size, long modified, TrackMetadata metadata) {
+            this.size = size;
+            this.modified = modified;
+            this.metadata = metadata;
+        }
+    }
+
+    private MetadataCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the cache stored in the file
+     *
+     * @param file cache file, doesn't need to exist
+     * @return the stored cache or an empty one if the file is missing or unreadable
+     */
+    public static MetadataCache load(File file) {
+        MetadataCache cache = new MetadataCache(file);
+        if (!file.exists()) return cache;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) return cache;
+            int count = data.readInt();
+            HashMap<String, Record> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String location = data.readUTF();
+                long size = data.readLong();
+                long modified = data.readLong();
+                TrackMetadata metadata = new TrackMetadata(readString(data), data.readLong(),
+                        data.readInt(), data.readInt(), data.readInt(), readString(data),
+                        readString(data), readString(data));
+                entries.put(location, new Record(size, modified, metadata));
+            }
+            long checksum = crc.getValue();
+            if (in.readLong() != checksum) return cache;
+            cache.mEntries.putAll(entries);
+        } catch (IOException e) {
+            // a damaged cache is rebuilt by the next scan
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the cached metadata regardless of whether the source changed since
+     *
+     * @param location location of the media item
+     * @return the metadata or null if there is none
+     */
+    public synchronized TrackMetadata get(String location) {
+        Record entry = mEntries.get(location);
+        return entry != null ? entry.metadata : null;
+    }
+
+    /**
+     * Gets the cached metadata if it was extracted from a source of the same size and modification
+     * time
+     *
+     * @param location location of the media item
+     * @param size     current size of the source in bytes
+     * @param modified current modification time of the source
+     * @return the metadata or null if there is none or it's outdated
+     */
+    public synchronized TrackMetadata getIfCurrent(String location, long size, long modified) {
+        Record entry = mEntries.get(location);
+        return entry != null && entry.size == size && entry.modified == modified ? entry.metadata : null;
+    }
+
+    /**
+     * Stores metadata extracted from the source in its current state
+     *
+     * @param location location of the media item
+     * @param size     size of the source in bytes
+     * @param modified modification time of the source
+     * @param metadata extracted metadata
+     */
+    public synchronized void put(String location, long size, long modified, TrackMetadata metadata) {
+        mEntries.put(location, new Record(size, modified, metadata));
+        mDirty = true;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the cache if it changed since it was loaded or last saved
+     *
+     * @throws IOException if the file can't be written, the previous one stays in place then
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            HashMap<String, Record> entries;
+            synchronized (this) {
+                if (!mDirty) return;
+                entries = new HashMap<>(mEntries);
+                mDirty = false;
+            }
+
+            File temp = new File(mFile.getPath() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                DataOutputStream data = new DataOutputStream(new CheckedOutputStream(out, crc));
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(entries.size());
+                for (Map.Entry<String, Record> item : entries.entrySet()) {
+                    Record entry = item.getValue();
+                    TrackMetadata metadata = entry.metadata;
+                    data.writeUTF(item.getKey());
+                    data.writeLong(entry.size);
+                    data.writeLong(entry.modified);
+                    writeString(data, metadata.mimeType);
+                    data.writeLong(metadata.durationMs);
+                    data.writeInt(metadata.sampleRate);
+                    data.writeInt(metadata.channels);
+                    data.writeInt(metadata.bitrate);
+                    writeString(data, metadata.title);
+                    writeString(data, metadata.artist);
+                    writeString(data, metadata.album);
+                }
+                data.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                file.getFD().sync();
+            } catch (IOException e) {
+                temp.delete();
+                markDirty();
+                throw e;
+            }
+            if (!temp.renameTo(mFile)) {
+                temp.delete();
+                markDirty();
+                throw new IOException("Can't replace " + mFile);
+            }
+        }
+    }
+
+    private synchronized void markDirty() {
+        mDirty = true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value == null) return;
+        out.writeUTF(value.length() > MAX_STRING_LENGTH ? value.substring(0, MAX_STRING_LENGTH) : value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
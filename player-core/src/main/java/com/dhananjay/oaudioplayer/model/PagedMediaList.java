@@ -0,0 +1,67 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only {@link List} over a {@link PlaylistSource} which fetches items page by page on first
+ * access and keeps only the most recently used pages
+ *
+ * @author Dhananjay Kumar
+ */
+public class PagedMediaList extends AbstractList<MediaItem> implements RandomAccess {
+    public static final int DEFAULT_PAGE_SIZE = 256;
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    private final PlaylistSource mSource;
+    private final int mSize;
+    private final int mPageSize;
+    private final LinkedHashMap<Integer, List<MediaItem>> mPages;
+    private int mFetchCount;
+
+    public PagedMediaList(PlaylistSource source) {
+        this(source, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    public PagedMediaList(PlaylistSource source, int pageSize, final int maxPages) {
+        mSource = source;
+        mSize = source.size();
+        mPageSize = pageSize;
+        mPages = new LinkedHashMap<Integer, List<MediaItem>>(maxPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<MediaItem>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    @Override
+    public synchronized MediaItem get(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("index: " + index);
+
+        int page = index / mPageSize;
+        List<MediaItem> items = mPages.get(page);
+        if (items == null) {
+            int from = page * mPageSize;
+            items = mSource.getItems(from, Math.min(mPageSize, mSize - from));
+            mPages.put(page, items);
+            mFetchCount++;
+        }
+        return items.get(index - page * mPageSize);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets the number of pages pulled from the source so far
+     */
+    public synchronized int getFetchCount() {
+        return mFetchCount;
+    }
+}
@@ -0,0 +1,220 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Play queue over a list of {@link MediaItem}s with a cursor, so that every navigation step is
+ * constant time and the same item may appear more than once.
+ * <p>
+ * The shuffle order is a Fisher-Yates permutation of item indices which is only drawn as far as
+ * playback has reached, the items themselves are never copied or reordered.
+ *
+ * @author Dhananjay Kumar
+ */
+public class Playlist {
+    public static final int REPEAT_OFF = 0;
+    public static final int REPEAT_ONE = 1;
+    public static final int REPEAT_ALL = 2;
+
+    private final List<MediaItem> mItems;
+    private final Random mRandom;
+
+    // Cursor into the play order, equals the item index unless shuffled
+    private int mPosition;
+    private int mRepeatMode = REPEAT_OFF;
+
+    // Shuffle permutation and its inverse, stored as index + 1 so that 0 means "not moved yet"
+    // and the arrays don't need to be initialised.
+    private int[] mOrder;
+    private int[] mInverse;
+    // Number of leading positions of mOrder already drawn
+    private int mDrawn;
+
+    public Playlist(List<MediaItem> items) {
+        this(items, new Random());
+    }
+
+    /**
+     * @param items  items to play, the list is used as is and must not change size afterwards
+     * @param random source for the shuffle order
+     */
+    public Playlist(List<MediaItem> items, Random random) {
+        mItems = items;
+        mRandom = random;
+        mPosition = items.isEmpty() ? -1 : 0;
+    }
+
+    public int size() {
+        return mItems.size();
+    }
+
+    public MediaItem get(int index) {
+        return mItems.get(index);
+    }
+
+    /**
+     * Gets the item under the cursor
+     *
+     * @return current media-item or null if the playlist is empty
+     */
+    public MediaItem getCurrent() {
+        return mPosition < 0 ? null : mItems.get(itemAt(mPosition));
+    }
+
+    /**
+     * Gets the list index of the item under the cursor
+     *
+     * @return index into the items or -1 if the playlist is empty
+     */
+    public int getCurrentIndex() {
+        return mPosition < 0 ? -1 : itemAt(mPosition);
+    }
+
+    /**
+     * Moves the cursor to the given item
+     *
+     * @param index index into the items
+     * @return the item at index
+     */
+    public MediaItem moveTo(int index) {
+        if (index < 0 || index >= mItems.size()) throw new IndexOutOfBoundsException("index: " + index);
+        mPosition = isShuffled() ? positionOf(index) : index;
+        return mItems.get(index);
+    }
+
+    public boolean hasPrev() {
+        return mPosition > 0 || (mPosition == 0 && mRepeatMode == REPEAT_ALL);
+    }
+
+    public boolean hasNext() {
+        return mPosition >= 0 && (mPosition + 1 < mItems.size() || mRepeatMode == REPEAT_ALL);
+    }
+
+    /**
+     * Moves the cursor one item back, as requested by the user
+     *
+     * @return the new current item or null if there is none
+     */
+    public MediaItem prev() {
+        if (!hasPrev()) return null;
+        mPosition = mPosition == 0 ? mItems.size() - 1 : mPosition - 1;
+        return getCurrent();
+    }
+
+    /**
+     * Moves the cursor one item forward, as requested by the user
+     *
+     * @return the new current item or null if there is none
+     */
+    public MediaItem next() {
+        if (!hasNext()) return null;
+        mPosition = mPosition + 1 == mItems.size() ? 0 : mPosition + 1;
+        return getCurrent();
+    }
+
+    /**
+     * Gets the item which plays once the current one completes, without moving the cursor
+     *
+     * @return following media-item, the current one when repeating it, or null at the end
+     */
+    public MediaItem peekNext() {
+        if (mPosition < 0) return null;
+        if (mRepeatMode == REPEAT_ONE) return getCurrent();
+        if (!hasNext()) return null;
+        return mItems.get(itemAt(mPosition + 1 == mItems.size() ? 0 : mPosition + 1));
+    }
+
+    /**
+     * Moves the cursor to the item returned by {@link #peekNext()}
+     *
+     * @return the new current item or null at the end of the playlist
+     */
+    public MediaItem advance() {
+        if (mPosition < 0) return null;
+        if (mRepeatMode == REPEAT_ONE) return getCurrent();
+        return next();
+    }
+
+    public int getRepeatMode() {
+        return mRepeatMode;
+    }
+
+    /**
+     * @param repeatMode one of {@link #REPEAT_OFF}, {@link #REPEAT_ONE} or {@link #REPEAT_ALL}
+     */
+    public void setRepeatMode(int repeatMode) {
+        if (repeatMode < REPEAT_OFF || repeatMode > REPEAT_ALL) {
+            throw new IllegalArgumentException("repeatMode: " + repeatMode);
+        }
+        mRepeatMode = repeatMode;
+    }
+
+    public boolean isShuffled() {
+        return mOrder != null;
+    }
+
+    /**
+     * Switches shuffle on or off, the current item stays current. A new shuffle order starts with
+     * the current item and is drawn further only as playback moves forward.
+     *
+     * @param shuffle true to play in random order
+     */
+    public void setShuffle(boolean shuffle) {
+        if (shuffle == isShuffled()) return;
+
+        int current = getCurrentIndex();
+        if (shuffle) {
+            mOrder = new int[mItems.size()];
+            mInverse = new int[mItems.size()];
+            mDrawn = 0;
+            if (current >= 0) {
+                swap(0, current);
+                mDrawn = 1;
+                mPosition = 0;
+            }
+        } else {
+            mOrder = null;
+            mInverse = null;
+            mPosition = current;
+        }
+    }
+
+    /**
+     * Maps a position of the play order to an item index, drawing the shuffle order up to it
+     */
+    private int itemAt(int position) {
+        if (mOrder == null) return position;
+        while (mDrawn <= position) {
+            swap(mDrawn, mDrawn + mRandom.nextInt(mItems.size() - mDrawn));
+            mDrawn++;
+        }
+        return orderAt(position);
+    }
+
+    /**
+     * Maps an item index to its position in the shuffle order. An item not reached yet is drawn
+     * next, so it plays right away and the rest of the order stays random.
+     */
+    private int positionOf(int index) {
+        int position = mInverse[index] == 0 ? index : mInverse[index] - 1;
+        if (position >= mDrawn) {
+            swap(mDrawn, position);
+            position = mDrawn++;
+        }
+        return position;
+    }
+
+    private int orderAt(int position) {
+        return mOrder[position] == 0 ? position : mOrder[position] - 1;
+    }
+
+    private void swap(int a, int b) {
+        int itemA = orderAt(a);
+        int itemB = orderAt(b);
+        mOrder[a] = itemB + 1;
+        mOrder[b] = itemA + 1;
+        mInverse[itemB] = a + 1;
+        mInverse[itemA] = b + 1;
+    }
+}
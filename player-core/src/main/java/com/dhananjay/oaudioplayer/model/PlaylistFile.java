@@ -0,0 +1,197 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Versioned binary playlist file. Layout, all ints big endian:
+ * <pre>
+ * header   magic, version, item count, string count, string data size
+ * items    item count records of (title, location, image) string indices, -1 for null
+ * strings  string count start offsets into the string data
+ * data     UTF-8 bytes of all distinct strings
+ * </pre>
+ * Strings are stored once however many items use them. Files are read through a memory mapping
+ * and {@link MediaItem}s are only created for the items actually accessed.
+ *
+ * @author Dhananjay Kumar
+ */
+public class PlaylistFile implements PlaylistSource {
+    private static final int MAGIC = 0x4f41504c; // "OAPL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int RECORD_SIZE = 12;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mItemCount;
+    private final int mStringCount;
+    private final int mStringsOffset;
+    private final int mDataOffset;
+    private final int mDataSize;
+    // Decoded strings, shared by all items using them
+    private final String[] mStrings;
+    private byte[] mScratch = new byte[64];
+
+    private PlaylistFile(ByteBuffer buffer, int itemCount, int stringCount, int dataSize) {
+        mBuffer = buffer;
+        mItemCount = itemCount;
+        mStringCount = stringCount;
+        mStringsOffset = HEADER_SIZE + itemCount * RECORD_SIZE;
+        mDataOffset = mStringsOffset + stringCount * 4;
+        mDataSize = dataSize;
+        mStrings = new String[stringCount];
+    }
+
+    /**
+     * Writes the items to the file. The data goes to a temporary file first which then replaces
+     * the target, so readers see either the old or the new playlist, never a partial one.
+     *
+     * @param file  target file
+     * @param items items to store
+     * @throws IOException if writing fails, the target is left untouched then
+     */
+    public static void write(File file, List<MediaItem> items) throws IOException {
+        HashMap<String, Integer> indices = new HashMap<>();
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int size = items.size();
+        int[] records = new int[size * 3];
+        int dataSize = 0;
+        for (int i = 0; i < size; i++) {
+            MediaItem item = items.get(i);
+            String[] fields = {item.getTitle(), item.getLocation(), item.getImage()};
+            for (int f = 0; f < 3; f++) {
+                String value = fields[f];
+                int index = -1;
+                if (value != null) {
+                    Integer known = indices.get(value);
+                    if (known == null) {
+                        byte[] bytes = value.getBytes(UTF_8);
+                        known = strings.size();
+                        indices.put(value, known);
+                        strings.add(bytes);
+                        dataSize += bytes.length;
+                    }
+                    index = known;
+                }
+                records[i * 3 + f] = index;
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(strings.size());
+            out.writeInt(dataSize);
+            for (int record : records) {
+                out.writeInt(record);
+            }
+            int offset = 0;
+            for (byte[] bytes : strings) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            for (byte[] bytes : strings) {
+                out.write(bytes);
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    /**
+     * Maps a playlist file for reading, only the header is parsed
+     *
+     * @param file file written by {@link #write(File, List)}
+     * @return playlist reading from the mapping
+     * @throws IOException if the file is missing, of another version or truncated
+     */
+    public static PlaylistFile open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a playlist file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported playlist version " + buffer.getInt(4) + ": " + file);
+            }
+            int itemCount = buffer.getInt(8);
+            int stringCount = buffer.getInt(12);
+            int dataSize = buffer.getInt(16);
+            long expected = HEADER_SIZE + (long) itemCount * RECORD_SIZE + (long) stringCount * 4 + dataSize;
+            if (itemCount < 0 || stringCount < 0 || dataSize < 0 || expected != buffer.limit()) {
+                throw new IOException("Corrupt playlist file: " + file);
+            }
+            return new PlaylistFile(buffer, itemCount, stringCount, dataSize);
+        } finally {
+            // the mapping stays valid after the file is closed
+            in.close();
+        }
+    }
+
+    @Override
+    public int size() {
+        return mItemCount;
+    }
+
+    /**
+     * Decodes a single item
+     *
+     * @param index index of the item
+     * @return new media-item
+     */
+    public synchronized MediaItem get(int index) {
+        if (index < 0 || index >= mItemCount) throw new IndexOutOfBoundsException("index: " + index);
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        return new MediaItem(string(mBuffer.getInt(record)), string(mBuffer.getInt(record + 4)),
+                string(mBuffer.getInt(record + 8)));
+    }
+
+    @Override
+    public List<MediaItem> getItems(int from, int count) {
+        ArrayList<MediaItem> items = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            items.add(get(i));
+        }
+        return items;
+    }
+
+    private String string(int index) {
+        if (index < 0) return null;
+        String value = mStrings[index];
+        if (value == null) {
+            int start = mBuffer.getInt(mStringsOffset + index * 4);
+            int end = index + 1 < mStringCount ? mBuffer.getInt(mStringsOffset + (index + 1) * 4) : mDataSize;
+            int length = end - start;
+            if (mScratch.length < length) mScratch = new byte[Math.max(length, mScratch.length * 2)];
+            ByteBuffer data = mBuffer.duplicate();
+            data.position(mDataOffset + start);
+            data.get(mScratch, 0, length);
+            value = new String(mScratch, 0, length, UTF_8);
+            mStrings[index] = value;
+        }
+        return value;
+    }
+}
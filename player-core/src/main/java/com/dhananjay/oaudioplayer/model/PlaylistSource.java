@@ -0,0 +1,25 @@
+package com.dhananjay.oaudioplayer.model;
+
+import java.util.List;
+
+/**
+ * Provider of playlist items which are pulled in pages when needed, instead of being handed over
+ * as a whole
+ *
+ * @author Dhananjay Kumar
+ */
+public interface PlaylistSource {
+    /**
+     * @return number of items in the playlist
+     */
+    int size();
+
+    /**
+     * Gets a page of items
+     *
+     * @param from  index of the first item
+     * @param count number of items, from + count never exceeds {@link #size()}
+     * @return the items, may be a view which must not be modified
+     */
+    List<MediaItem> getItems(int from, int count);
+}
@@ -0,0 +1,44 @@
+package com.dhananjay.oaudioplayer.model;
+
+/**
+ * Immutable technical data and tags of a track, extracted once and cached so that they are known
+ * without preparing a player.
+ *
+ * @author Dhananjay Kumar
+ */
+public class TrackMetadata {
+    public static final String MIME_OPUS = "audio/opus";
+
+    /**
+     * MIME type of the audio, null if unknown
+     */
+    public final String mimeType;
+    public final long durationMs;
+    /**
+     * Output sample rate in Hz, 0 if unknown
+     */
+    public final int sampleRate;
+    /**
+     * Number of channels, 0 if unknown
+     */
+    public final int channels;
+    /**
+     * Average bitrate in bits per second, 0 if unknown
+     */
+    public final int bitrate;
+    public final String title;
+    public final String artist;
+    public final String album;
+
+    public TrackMetadata(String mimeType, long durationMs, int sampleRate, int channels, int bitrate,
+                         String title, String artist, String album) {
+        this.mimeType = mimeType;
+        this.durationMs = durationMs;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitrate = bitrate;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+    }
+}
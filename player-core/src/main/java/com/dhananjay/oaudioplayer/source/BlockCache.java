@@ -0,0 +1,231 @@
+package com.dhananjay.oaudioplayer.source;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache of fixed-size blocks of remote sources, evicting the least recently used blocks once
+ * the byte budget is exceeded. Every block is a file named after the source key and its offset,
+ * starting with the length of the whole source, so any cached block also answers the size. The
+ * access order survives restarts through the file modification times.
+ *
+ * @author Dhananjay Kumar
+ */
+public class BlockCache {
+    private static final String SUFFIX = ".blk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Length of the whole source preceding the data
+    private static final int HEADER_BYTES = 8;
+
+    private final File mDir;
+    private final int mBlockSize;
+    private final long mMaxBytes;
+
+    // File name to file length in access order, guarded by this
+    private final LinkedHashMap<String, Long> mBlocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mFetchedBytes = new AtomicLong();
+    private final AtomicLong mEvictedCount = new AtomicLong();
+
+    /**
+     * Opens the cache stored in a directory, evicting down to the budget
+     *
+     * @param dir       directory of the block files, created if missing
+     * @param blockSize bytes per block, blocks stored with a different size are never hit
+     * @param maxBytes  budget of the block files
+     */
+    public BlockCache(File dir, int blockSize, long maxBytes) {
+        mDir = dir;
+        mBlockSize = blockSize;
+        mMaxBytes = maxBytes;
+        dir.mkdirs();
+
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        for (int i : order) {
+            File file = files[i];
+            if (file.getName().endsWith(SUFFIX)) {
+                mBlocks.put(file.getName(), file.length());
+                mBytes += file.length();
+            } else if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // left by a write which didn't complete
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * Reads a cached block
+     *
+     * @param key    key of the source
+     * @param index  index of the block
+     * @param buffer receives the data of the block, at least {@link #getBlockSize()} long
+     * @return length of the whole source or -1 if the block isn't cached
+     */
+    public long read(String key, long index, byte[] buffer) {
+        String name = getName(key, index);
+        synchronized (this) {
+            if (mBlocks.get(name) == null) {
+                mMissCount.incrementAndGet();
+                return -1;
+            }
+        }
+        File file = new File(mDir, name);
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long length = in.readLong();
+            long expected = Math.min(mBlockSize, length - index * mBlockSize);
+            if (expected <= 0 || file.length() != HEADER_BYTES + expected) throw new IOException("Bad block " + name);
+            in.readFully(buffer, 0, (int) expected);
+            file.setLastModified(System.currentTimeMillis());
+            mHitCount.incrementAndGet();
+            return length;
+        } catch (IOException e) {
+            // evicted meanwhile or damaged, either way it's fetched again
+            remove(name);
+            mMissCount.incrementAndGet();
+            return -1;
+        }
+    }
+
+    /**
+     * @return true if the block is cached, doesn't count as an access
+     */
+    public synchronized boolean contains(String key, long index) {
+        return mBlocks.containsKey(getName(key, index));
+    }
+
+    /**
+     * Stores a block, evicting the least recently used ones beyond the budget
+     *
+     * @param key    key of the source
+     * @param index  index of the block
+     * @param length length of the whole source
+     * @param data   data of the block
+     * @param size   number of bytes of the block, less than the block size only for the last one
+     * @throws IOException if the block can't be written
+     */
+    public void write(String key, long index, long length, byte[] data, int size) throws IOException {
+        String name = getName(key, index);
+        File temp = new File(mDir, name + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeLong(length);
+            out.write(data, 0, size);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(new File(mDir, name))) {
+            temp.delete();
+            throw new IOException("Can't store " + name);
+        }
+        synchronized (this) {
+            Long previous = mBlocks.put(name, (long) HEADER_BYTES + size);
+            mBytes += HEADER_BYTES + size - (previous != null ? previous : 0);
+        }
+        evict();
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> eldest = mBlocks.entrySet().iterator();
+            while (mBytes > mMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> block = eldest.next();
+                mBytes -= block.getValue();
+                evicted.add(block.getKey());
+                eldest.remove();
+            }
+        }
+        for (String name : evicted) {
+            new File(mDir, name).delete();
+        }
+        mEvictedCount.addAndGet(evicted.size());
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = mBlocks.remove(name);
+            if (size == null) return;
+            mBytes -= size;
+        }
+        new File(mDir, name).delete();
+    }
+
+    private String getName(String key, long index) {
+        return key + "." + index * mBlockSize + SUFFIX;
+    }
+
+    /**
+     * Counts bytes a source fetched from the network
+     */
+    void addFetchedBytes(long count) {
+        mFetchedBytes.addAndGet(count);
+    }
+
+    /**
+     * @return bytes of the block files
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * @return share of block reads served from disk, between 0 and 1
+     */
+    public float getHitRatio() {
+        long hits = mHitCount.get();
+        long total = hits + mMissCount.get();
+        return total > 0 ? (float) hits / total : 0;
+    }
+
+    /**
+     * @return bytes fetched from the network by the sources using this cache
+     */
+    public long getFetchedBytes() {
+        return mFetchedBytes.get();
+    }
+
+    public long getEvictedCount() {
+        return mEvictedCount.get();
+    }
+}
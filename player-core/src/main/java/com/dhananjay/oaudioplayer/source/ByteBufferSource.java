@@ -0,0 +1,42 @@
+package com.dhananjay.oaudioplayer.source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link RandomAccessSource} over a buffer, usually a slice of a mapped file. Reads copy straight
+ * from the buffer into the caller's array, and closing leaves the buffer to its owner, so any
+ * number of sources can share one mapping without holding a descriptor each.
+ *
+ * @author Dhananjay Kumar
+ */
+public class ByteBufferSource implements RandomAccessSource {
+    // Own view of the bytes, its position is moved by every read, guarded by this
+    private final ByteBuffer mBuffer;
+
+    /**
+     * @param buffer bytes from its position to its limit, the buffer itself isn't modified
+     */
+    public ByteBufferSource(ByteBuffer buffer) {
+        mBuffer = buffer.slice();
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) {
+        int capacity = mBuffer.capacity();
+        if (position >= capacity) return -1;
+        int count = (int) Math.min(size, capacity - position);
+        mBuffer.position((int) position);
+        mBuffer.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public long getSize() {
+        return mBuffer.capacity();
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released with the last buffer referring to it
+    }
+}
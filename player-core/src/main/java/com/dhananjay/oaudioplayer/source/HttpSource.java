@@ -0,0 +1,182 @@
+package com.dhananjay.oaudioplayer.source;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * {@link RandomAccessSource} of an HTTP resource fetched in byte ranges through a
+ * {@link BlockCache}. Reads are served from the block last read, then from the cache, and only a
+ * miss goes to the network, fetching that block and the following uncached ones in one request.
+ * Replays and seeks back therefore cost no network I/O as long as the blocks stay cached.
+ * <p>
+ * Resources are keyed by their URL and expected not to change, like the files of a catalog.
+ * Origins ignoring range requests still work, the response is skipped up to the block then.
+ *
+ * @author Dhananjay Kumar
+ */
+public class HttpSource implements RandomAccessSource {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    // Blocks fetched by one request, playback reads on sequentially after a miss
+    private static final int FETCH_BLOCKS = 4;
+
+    private final URL mUrl;
+    private final String mKey;
+    private final BlockCache mCache;
+
+    // Block last read, reads of a player are much smaller than a block
+    private final byte[] mBlock;
+    private long mBlockIndex = -1;
+    private int mBlockLength;
+    // Receives the blocks fetched beyond the one requested, allocated on first use
+    private byte[] mScratch;
+    // Length of the resource, -1 until a block was read
+    private long mLength = -1;
+
+    /**
+     * @param url   http or https URL of the resource
+     * @param cache cache of the fetched blocks, may be shared with other sources
+     * @throws IOException if the URL is malformed
+     */
+    public HttpSource(String url, BlockCache cache) throws IOException {
+        mUrl = new URL(url);
+        mKey = UUID.nameUUIDFromBytes(url.getBytes(UTF_8)).toString();
+        mCache = cache;
+        mBlock = new byte[cache.getBlockSize()];
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        if (mLength < 0) load(0);
+        return mLength;
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (position >= getSize()) return -1;
+        if (size == 0) return 0;
+        long index = position / mBlock.length;
+        if (index != mBlockIndex) load(index);
+        int start = (int) (position - index * mBlock.length);
+        int count = Math.min(size, mBlockLength - start);
+        System.arraycopy(mBlock, start, buffer, offset, count);
+        return count;
+    }
+
+    private void load(long index) throws IOException {
+        mBlockIndex = -1;
+        long length = mCache.read(mKey, index, mBlock);
+        if (length < 0) length = fetch(index);
+        mLength = length;
+        mBlockLength = (int) Math.max(0, Math.min(mBlock.length, length - index * mBlock.length));
+        mBlockIndex = index;
+    }
+
+    /**
+     * Fetches a block into {@link #mBlock} and the uncached blocks following it into the cache
+     *
+     * @return length of the resource
+     */
+    private long fetch(long index) throws IOException {
+        int count = 1;
+        while (count < FETCH_BLOCKS && !mCache.contains(mKey, index + count)) {
+            count++;
+        }
+        long start = index * mBlock.length;
+        long end = start + (long) count * mBlock.length;
+        if (mLength >= 0) end = Math.min(end, mLength);
+
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+        long length;
+        int code = connection.getResponseCode();
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            String range = connection.getHeaderField("Content-Range");
+            length = parseTotal(range);
+            if (length < 0 || !range.startsWith("bytes " + start + "-")) {
+                connection.disconnect();
+                throw new IOException("Unexpected range " + range + " from " + mUrl);
+            }
+        } else if (code == HttpURLConnection.HTTP_OK) {
+            length = parseLong(connection.getHeaderField("Content-Length"));
+            if (length < 0) {
+                connection.disconnect();
+                throw new IOException("Unknown length of " + mUrl);
+            }
+        } else if (code == 416) {
+            // Range Not Satisfiable, only requested for an empty resource
+            connection.disconnect();
+            length = parseTotal(connection.getHeaderField("Content-Range"));
+            if (length < 0) throw new IOException("HTTP 416 from " + mUrl);
+            return length;
+        } else {
+            connection.disconnect();
+            throw new IOException("HTTP " + code + " from " + mUrl);
+        }
+        end = Math.min(end, length);
+
+        try (DataInputStream in = new DataInputStream(connection.getInputStream())) {
+            if (code == HttpURLConnection.HTTP_OK) skipFully(in, start);
+            for (long block = index; block * mBlock.length < end; block++) {
+                int size = (int) Math.min(mBlock.length, end - block * mBlock.length);
+                byte[] data = block == index ? mBlock : scratch();
+                in.readFully(data, 0, size);
+                mCache.addFetchedBytes(size);
+                try {
+                    mCache.write(mKey, block, length, data, size);
+                } catch (IOException e) {
+                    // only costs fetching the block again later
+                }
+            }
+        }
+        return length;
+    }
+
+    private byte[] scratch() {
+        if (mScratch == null) mScratch = new byte[mBlock.length];
+        return mScratch;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new IOException("Response ended before the range");
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * @return total length of a "bytes first-last/total" or "bytes *&#47;total" range, -1 if unknown
+     */
+    private static long parseTotal(String range) {
+        if (range == null) return -1;
+        int slash = range.lastIndexOf('/');
+        return slash >= 0 ? parseLong(range.substring(slash + 1)) : -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        // the cache holds all state worth keeping
+        mBlockIndex = -1;
+    }
+}
@@ -0,0 +1,30 @@
+package com.dhananjay.oaudioplayer.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Bytes of a media source read at arbitrary positions, the contract of
+ * {@code android.media.MediaDataSource} without depending on Android
+ *
+ * @author Dhananjay Kumar
+ */
+public interface RandomAccessSource extends Closeable {
+    /**
+     * Reads bytes at a position, fewer than requested if they cross an internal boundary
+     *
+     * @param position offset in the source
+     * @param buffer   buffer receiving the bytes
+     * @param offset   offset in the buffer
+     * @param size     maximum number of bytes
+     * @return number of bytes read, -1 at the end of the source
+     * @throws IOException if the bytes can't be read
+     */
+    int readAt(long position, byte[] buffer, int offset, int size) throws IOException;
+
+    /**
+     * @return length of the source in bytes
+     * @throws IOException if the length can't be determined
+     */
+    long getSize() throws IOException;
+}
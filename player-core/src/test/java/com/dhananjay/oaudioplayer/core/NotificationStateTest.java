@@ -0,0 +1,35 @@
+package com.dhananjay.oaudioplayer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link NotificationState}
+ */
+public class NotificationStateTest {
+
+    @Test
+    public void changedFields_emptyForEqualStates() throws Exception {
+        NotificationState a = new NotificationState("Track", 7, null, true, false, true, false, true);
+        NotificationState b = new NotificationState("Track", 7, null, true, false, true, false, true);
+
+        assertEquals(0, b.changedFields(a));
+    }
+
+    @Test
+    public void changedFields_reportsOnlyDifferences() throws Exception {
+        NotificationState buffering = new NotificationState("Track", 7, null, true, true, true, true, false);
+        NotificationState playing = new NotificationState("Track", 7, null, true, true, true, false, true);
+
+        assertEquals(NotificationState.FIELD_BUFFERING | NotificationState.FIELD_PLAYING,
+                playing.changedFields(buffering));
+    }
+
+    @Test
+    public void changedFields_allWithoutPreviousState() throws Exception {
+        NotificationState state = new NotificationState(null, 0, null, false, false, false, true, false);
+
+        assertEquals(0xff, state.changedFields(null));
+    }
+}
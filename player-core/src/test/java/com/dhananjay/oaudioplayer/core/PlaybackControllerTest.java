@@ -0,0 +1,221 @@
+package com.dhananjay.oaudioplayer.core;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+import com.dhananjay.oaudioplayer.model.Playlist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link PlaybackController} against a player recording its calls
+ */
+public class PlaybackControllerTest {
+    private final List<String> mCalls = new ArrayList<>();
+    private final List<MediaItem> mItems = new ArrayList<>();
+    private int mCheckpoints;
+    private int mQuits;
+    private boolean mFailPrepare;
+    private PlaybackController mController;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mItems.add(new MediaItem("Track " + i, "track_" + i, "ic_music"));
+        }
+        mController = new PlaybackController(new PlaybackController.Player() {
+            @Override
+            public void prepare(MediaItem item) throws IOException {
+                if (mFailPrepare) throw new IOException("broken");
+                mCalls.add("prepare " + item.getLocation());
+            }
+
+            @Override
+            public void start() {
+                mCalls.add("start");
+            }
+
+            @Override
+            public void pause() {
+                mCalls.add("pause");
+            }
+
+            @Override
+            public void seekTo(int ms) {
+                mCalls.add("seek " + ms);
+            }
+
+            @Override
+            public void release() {
+                mCalls.add("release");
+            }
+
+            @Override
+            public void stop() {
+                mCalls.add("stop");
+            }
+        }, new PlaybackController.Listener() {
+            @Override
+            public void onStateChanged(int previousState, boolean checkpoint) {
+                if (checkpoint) mCheckpoints++;
+            }
+
+            @Override
+            public void onQuit() {
+                mQuits++;
+            }
+        });
+    }
+
+    @Test
+    public void open_preparesAndPlaysFirstItem() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+
+        assertEquals(PlaybackController.STATE_PREPARING, mController.getState());
+        assertTrue(mController.isBuffering());
+        mController.onPrepared();
+
+        assertEquals(PlaybackController.STATE_PLAYING, mController.getState());
+        assertFalse(mController.isBuffering());
+        assertEquals("[prepare track_0, start]", mCalls.toString());
+    }
+
+    @Test
+    public void open_pausedSessionSeeksAndStaysPaused() throws Exception {
+        mController.open(new Playlist(mItems), 4200, false);
+        mController.onPrepared();
+
+        assertEquals(PlaybackController.STATE_PAUSED, mController.getState());
+        assertEquals("[prepare track_0, seek 4200]", mCalls.toString());
+        assertEquals(-1, mController.getPendingSeekMs());
+    }
+
+    @Test
+    public void playPause_togglesAndCheckpoints() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mCheckpoints = 0;
+
+        mController.playPause();
+        assertEquals(PlaybackController.STATE_PAUSED, mController.getState());
+        mController.playPause();
+        assertEquals(PlaybackController.STATE_PLAYING, mController.getState());
+
+        assertEquals(2, mCheckpoints);
+        assertEquals("[prepare track_0, start, pause, start]", mCalls.toString());
+    }
+
+    @Test
+    public void skips_areMergedIntoOnePrepare() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mCalls.clear();
+
+        assertSame(mItems.get(1), mController.skipToNext());
+        assertSame(mItems.get(2), mController.skipToNext());
+        assertNull(mController.skipToNext());
+        // the prepare of the first item answering late is stale
+        mController.onPrepared();
+        assertEquals(PlaybackController.STATE_PREPARING, mController.getState());
+
+        mController.prepareCurrent();
+        mController.onPrepared();
+        assertEquals("[prepare track_2, start]", mCalls.toString());
+        assertTrue(mController.canGoPrevious());
+        assertFalse(mController.canGoNext());
+    }
+
+    @Test
+    public void seekWhilePreparing_isAppliedOncePrepared() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.seekTo(1500);
+        mController.onPrepared();
+        mController.seekTo(3000);
+
+        assertEquals("[prepare track_0, seek 1500, start, seek 3000]", mCalls.toString());
+    }
+
+    @Test
+    public void completion_advancesAndQuitsAtTheEnd() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mController.onNextStarted();
+        assertSame(mItems.get(1), mController.getCurrent());
+        mController.onCompleted();
+        assertSame(mItems.get(2), mController.getCurrent());
+        mController.onPrepared();
+        mController.onCompleted();
+
+        assertEquals(PlaybackController.STATE_IDLE, mController.getState());
+        assertEquals(1, mQuits);
+        assertEquals("[prepare track_0, start, prepare track_2, start, stop]", mCalls.toString());
+    }
+
+    @Test
+    public void release_reopensOnPlay() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mController.skipToNext();
+        mController.prepareCurrent();
+        mController.onPrepared();
+        mController.release(-1);
+        mController.release(-1);
+        assertEquals(PlaybackController.STATE_RELEASED, mController.getState());
+        assertSame(mItems.get(1), mController.getCurrent());
+
+        mController.play();
+        mController.onPrepared();
+        assertEquals(PlaybackController.STATE_PLAYING, mController.getState());
+        assertEquals("[prepare track_0, start, prepare track_1, start, release, prepare track_1, start]",
+                mCalls.toString());
+    }
+
+    @Test
+    public void release_resumesAtPosition() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mController.pause();
+        mController.release(61000);
+        assertEquals(61000, mController.getPendingSeekMs());
+
+        mController.play();
+        assertEquals(PlaybackController.STATE_PREPARING, mController.getState());
+        mController.onPrepared();
+        assertEquals(PlaybackController.STATE_PLAYING, mController.getState());
+        assertEquals("[prepare track_0, start, pause, release, prepare track_0, seek 61000, start]",
+                mCalls.toString());
+    }
+
+    @Test
+    public void warmUp_preparesWithoutPlaying() throws Exception {
+        mController.open(new Playlist(mItems), -1, true);
+        mController.onPrepared();
+        mController.warmUp();
+        mController.release(5000);
+        mController.warmUp();
+        mController.onPrepared();
+        assertEquals(PlaybackController.STATE_PAUSED, mController.getState());
+
+        mController.play();
+        assertEquals(PlaybackController.STATE_PLAYING, mController.getState());
+        assertEquals("[prepare track_0, start, release, prepare track_0, seek 5000, start]", mCalls.toString());
+    }
+
+    @Test
+    public void failedPrepare_quits() throws Exception {
+        mFailPrepare = true;
+        mController.open(new Playlist(mItems), -1, true);
+
+        assertEquals(PlaybackController.STATE_IDLE, mController.getState());
+        assertEquals(1, mQuits);
+    }
+}
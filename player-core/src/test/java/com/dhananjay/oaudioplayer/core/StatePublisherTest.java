@@ -0,0 +1,147 @@
+package com.dhananjay.oaudioplayer.core;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * JVM tests for {@link StatePublisher}
+ */
+public class StatePublisherTest {
+    private static final MediaItem ITEM = new MediaItem("Track", "track", null);
+
+    /**
+     * Host whose timer is driven by the test, -1 while no tick is scheduled
+     */
+    private static class FakeHost implements StatePublisher.Host {
+        long mTickDelay = -1;
+        int mPositionMs;
+        long mNow;
+
+        @Override
+        public void scheduleTick(long delayMs) {
+            mTickDelay = delayMs;
+        }
+
+        @Override
+        public void cancelTick() {
+            mTickDelay = -1;
+        }
+
+        @Override
+        public PlaybackState sample() {
+            return state(PlaybackController.STATE_PLAYING, mPositionMs, mNow);
+        }
+    }
+
+    /**
+     * Executor queuing the deliveries until run
+     */
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                mQueue.remove(0).run();
+            }
+        }
+    }
+
+    private static class Recorder implements StatePublisher.Listener {
+        final List<PlaybackState> mStates = new ArrayList<>();
+
+        @Override
+        public void onPlaybackState(PlaybackState state) {
+            mStates.add(state);
+        }
+    }
+
+    private static PlaybackState state(int state, int positionMs, long now) {
+        return new PlaybackState(ITEM, 0, state, false, positionMs, now);
+    }
+
+    @Test
+    public void publish_deliversChangesOnly() throws Exception {
+        FakeHost host = new FakeHost();
+        StatePublisher publisher = new StatePublisher(host);
+        publisher.publish(state(PlaybackController.STATE_PREPARING, 0, 0));
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+
+        publisher.subscribe(recorder, executor, 0);
+        executor.runAll();
+        publisher.publish(state(PlaybackController.STATE_PREPARING, 0, 10));
+        executor.runAll();
+        publisher.publish(state(PlaybackController.STATE_PAUSED, 0, 20));
+        executor.runAll();
+
+        assertEquals(2, recorder.mStates.size());
+        assertEquals(PlaybackController.STATE_PREPARING, recorder.mStates.get(0).state);
+        assertEquals(PlaybackController.STATE_PAUSED, recorder.mStates.get(1).state);
+    }
+
+    @Test
+    public void publish_coalescesForSlowSubscribers() throws Exception {
+        StatePublisher publisher = new StatePublisher(new FakeHost());
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder, executor, 0);
+
+        publisher.publish(state(PlaybackController.STATE_PREPARING, 0, 0));
+        publisher.publish(state(PlaybackController.STATE_PAUSED, 0, 1));
+        PlaybackState last = state(PlaybackController.STATE_PLAYING, 0, 2);
+        publisher.publish(last);
+        assertEquals(1, executor.mQueue.size());
+        executor.runAll();
+
+        assertEquals(1, recorder.mStates.size());
+        assertSame(last, recorder.mStates.get(0));
+    }
+
+    @Test
+    public void ticks_followTheFastestSubscriberWhilePlaying() throws Exception {
+        FakeHost host = new FakeHost();
+        StatePublisher publisher = new StatePublisher(host);
+        QueueExecutor executor = new QueueExecutor();
+        publisher.publish(state(PlaybackController.STATE_PLAYING, 0, 0));
+        assertEquals(-1, host.mTickDelay);
+
+        Recorder visible = new Recorder();
+        Recorder slow = new Recorder();
+        StatePublisher.Subscription fast = publisher.subscribe(visible, executor, 250);
+        publisher.subscribe(slow, executor, 1000);
+        executor.runAll();
+        assertEquals(250, host.mTickDelay);
+
+        for (int i = 1; i <= 8; i++) {
+            host.mNow = i * 250;
+            host.mPositionMs = i * 250;
+            publisher.tick();
+            executor.runAll();
+        }
+        assertEquals(1 + 8, visible.mStates.size());
+        assertEquals(1 + 2, slow.mStates.size());
+        assertEquals(2000, slow.mStates.get(2).positionMs);
+
+        publisher.unsubscribe(fast);
+        assertEquals(1000, host.mTickDelay);
+        publisher.publish(state(PlaybackController.STATE_PAUSED, 2000, 2100));
+        assertEquals(-1, host.mTickDelay);
+        publisher.tick();
+        executor.runAll();
+        assertEquals(8, publisher.getTickCount());
+        assertEquals(9, visible.mStates.size());
+    }
+}
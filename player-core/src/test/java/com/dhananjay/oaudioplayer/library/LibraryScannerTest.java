@@ -0,0 +1,136 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link LibraryScanner} and {@link LibraryIndex}
+ */
+public class LibraryScannerTest {
+    private File mRoot;
+    private File mIndexFile;
+
+    /**
+     * Collects the batches and the final library of one scan
+     */
+    static class Collector implements LibraryScanner.Listener {
+        final List<List<MediaItem>> mBatches = Collections.synchronizedList(new ArrayList<List<MediaItem>>());
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile List<MediaItem> mLibrary;
+
+        @Override
+        public void onBatch(List<MediaItem> items) {
+            mBatches.add(items);
+        }
+
+        @Override
+        public void onFinished(List<MediaItem> library) {
+            mLibrary = library;
+            mDone.countDown();
+        }
+
+        List<String> await() throws InterruptedException {
+            assertTrue(mDone.await(60, TimeUnit.SECONDS));
+            List<String> names = new ArrayList<>();
+            for (MediaItem item : mLibrary) {
+                names.add(item.getTitle());
+            }
+            return names;
+        }
+    }
+
+    static List<MediaItem> scan(LibraryScanner scanner, File root, Collector collector) throws InterruptedException {
+        scanner.scan(Collections.singletonList(root), collector);
+        collector.await();
+        return collector.mLibrary;
+    }
+
+    static void touch(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        if (!file.createNewFile()) throw new IOException("exists: " + file);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = File.createTempFile("library", "");
+        mRoot.delete();
+        mIndexFile = File.createTempFile("library", ".index");
+        mIndexFile.delete();
+        touch(new File(mRoot, "a/one.opus"));
+        touch(new File(mRoot, "a/two.MP3"));
+        touch(new File(mRoot, "a/cover.jpg"));
+        touch(new File(mRoot, "b/c/three.flac"));
+        touch(new File(mRoot, ".thumbnails/four.ogg"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(mRoot);
+        mIndexFile.delete();
+    }
+
+    @Test
+    public void scan_findsAudioFilesInBatches() throws Exception {
+        LibraryScanner scanner = new LibraryScanner(LibraryIndex.load(mIndexFile), "ic_music", 2, 3);
+        Collector collector = new Collector();
+
+        List<MediaItem> library = scan(scanner, mRoot, collector);
+        scanner.shutdown();
+
+        assertEquals("[one, two, three]", collector.await().toString());
+        assertEquals(new File(mRoot, "a/one.opus").getPath(), library.get(0).getLocation());
+        assertEquals("ic_music", library.get(0).getImage());
+        int batched = 0;
+        for (List<MediaItem> batch : collector.mBatches) {
+            batched += batch.size();
+        }
+        assertEquals(3, batched);
+        assertEquals(4, scanner.getListedCount());
+    }
+
+    @Test
+    public void rescan_onlyListsChangedDirectories() throws Exception {
+        LibraryScanner scanner = new LibraryScanner(LibraryIndex.load(mIndexFile), "ic_music", 100, 2);
+        scan(scanner, mRoot, new Collector());
+        scanner.shutdown();
+
+        // a time the directory can't have had at the first scan
+        touch(new File(mRoot, "b/c/five.m4a"));
+        new File(mRoot, "b/c").setLastModified(System.currentTimeMillis() + 60000);
+        delete(new File(mRoot, "a"));
+
+        scanner = new LibraryScanner(LibraryIndex.load(mIndexFile), "ic_music", 100, 2);
+        Collector collector = new Collector();
+        scan(scanner, mRoot, collector);
+        scanner.shutdown();
+
+        assertEquals("[five, three]", collector.await().toString());
+        assertEquals(2, scanner.getListedCount());
+        assertEquals(1, scanner.getSkippedCount());
+        assertEquals(3, LibraryIndex.load(mIndexFile).size());
+    }
+}
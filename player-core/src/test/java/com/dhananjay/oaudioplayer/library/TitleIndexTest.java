@@ -0,0 +1,92 @@
+package com.dhananjay.oaudioplayer.library;
+
+import com.dhananjay.oaudioplayer.model.MediaItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link TitleIndex}
+ */
+public class TitleIndexTest {
+
+    private static List<MediaItem> items(String... titles) {
+        List<MediaItem> items = new ArrayList<>();
+        for (String title : titles) {
+            items.add(new MediaItem(title, "track", null));
+        }
+        return items;
+    }
+
+    private static final List<MediaItem> ITEMS = items(
+            "Björk - Jóga",
+            "Daft Punk – One More Time",
+            "Time After Time",
+            "Sigur Rós: Hoppípolla",
+            "ONE",
+            null);
+
+    @Test
+    public void fold_dropsCaseDiacriticsAndPunctuation() throws Exception {
+        assertEquals("bjork joga", TitleIndex.fold("  Björk - Jóga!"));
+        assertEquals("sigur ros hoppipolla", TitleIndex.fold("Sigur Rós: Hoppípolla"));
+        assertEquals("", TitleIndex.fold("--"));
+    }
+
+    @Test
+    public void search_matchesSubstringsAcrossWords() throws Exception {
+        TitleIndex index = TitleIndex.build(ITEMS);
+
+        assertEquals("[0]", Arrays.toString(index.search("JOGA", 10)));
+        assertEquals("[3]", Arrays.toString(index.search("ppip", 10)));
+        assertEquals("[1, 2]", Arrays.toString(index.search("time", 10)));
+        assertEquals("[2]", Arrays.toString(index.search("after ti", 10)));
+        assertEquals("[1]", Arrays.toString(index.search("more-time", 10)));
+        assertEquals("[]", Arrays.toString(index.search("timeafter", 10)));
+        assertEquals("[1]", Arrays.toString(index.search("time", 1)));
+    }
+
+    @Test
+    public void searchPrefix_matchesStartsOfWordsInAnyOrder() throws Exception {
+        TitleIndex index = TitleIndex.build(ITEMS);
+
+        assertEquals("[1, 4]", Arrays.toString(index.searchPrefix("on", 10)));
+        assertEquals("[1]", Arrays.toString(index.searchPrefix("ti on", 10)));
+        assertEquals("[]", Arrays.toString(index.searchPrefix("ime", 10)));
+        // short substring queries fall back to prefixes
+        assertEquals("[0]", Arrays.toString(index.search("jo", 10)));
+    }
+
+    @Test
+    public void updates_areSearchableBeforeAndAfterCompacting() throws Exception {
+        TitleIndex index = TitleIndex.build(ITEMS);
+        int added = index.add(new MediaItem("Time to Pretend", "track", null));
+        index.remove(2);
+
+        assertEquals(1, index.getPendingCount());
+        assertEquals("[1, 6]", Arrays.toString(index.search("time", 10)));
+        assertEquals("[1, 6]", Arrays.toString(index.searchPrefix("tim", 10)));
+
+        index.compact();
+        assertEquals(0, index.getPendingCount());
+        assertEquals("[1, 6]", Arrays.toString(index.search("time", 10)));
+        assertEquals("Time to Pretend", index.get(added).getTitle());
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    public void postings_roundTripLargeGaps() throws Exception {
+        TitleIndex index = new TitleIndex();
+        for (int i = 0; i < 300000; i++) {
+            index.add(new MediaItem(i == 5 || i == 200 || i == 299999 ? "needle" : "hay", "track", null));
+        }
+        index.compact();
+
+        assertEquals("[5, 200, 299999]", Arrays.toString(index.search("needle", 10)));
+    }
+}
@@ -0,0 +1,71 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * JVM tests for {@link MetadataCache}
+ */
+public class MetadataCacheTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("metadata", ".cache");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void save_roundTrips() throws Exception {
+        MetadataCache cache = MetadataCache.load(mFile);
+        cache.put("my_file", 56239, 1000, new TrackMetadata(TrackMetadata.MIME_OPUS, 23513, 48000, 1,
+                19134, "Opus Audio", null, "Album"));
+        cache.save();
+
+        TrackMetadata metadata = MetadataCache.load(mFile).get("my_file");
+        assertEquals(TrackMetadata.MIME_OPUS, metadata.mimeType);
+        assertEquals(23513, metadata.durationMs);
+        assertEquals(48000, metadata.sampleRate);
+        assertEquals(1, metadata.channels);
+        assertEquals(19134, metadata.bitrate);
+        assertEquals("Opus Audio", metadata.title);
+        assertNull(metadata.artist);
+        assertEquals("Album", metadata.album);
+    }
+
+    @Test
+    public void getIfCurrent_checksSizeAndTime() throws Exception {
+        MetadataCache cache = MetadataCache.load(mFile);
+        cache.put("/music/a.opus", 100, 5, new TrackMetadata(null, 1, 0, 0, 0, null, null, null));
+
+        assertEquals(1, cache.getIfCurrent("/music/a.opus", 100, 5).durationMs);
+        assertNull(cache.getIfCurrent("/music/a.opus", 101, 5));
+        assertNull(cache.getIfCurrent("/music/a.opus", 100, 6));
+        assertEquals(1, cache.get("/music/a.opus").durationMs);
+    }
+
+    @Test
+    public void load_corruptFileGivesEmptyCache() throws Exception {
+        MetadataCache cache = MetadataCache.load(mFile);
+        cache.put("a", 1, 1, new TrackMetadata(null, 1, 0, 0, 0, "Title", null, null));
+        cache.save();
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(20);
+            file.write(0x7f);
+        }
+        assertEquals(0, MetadataCache.load(mFile).size());
+    }
+}
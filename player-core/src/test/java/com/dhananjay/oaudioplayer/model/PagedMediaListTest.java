@@ -0,0 +1,83 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link PagedMediaList}
+ */
+public class PagedMediaListTest {
+
+    private static class CountingSource implements PlaylistSource {
+        private final int mSize;
+        int requestedItems;
+
+        CountingSource(int size) {
+            mSize = size;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public List<MediaItem> getItems(int from, int count) {
+            requestedItems += count;
+            List<MediaItem> items = new ArrayList<>(count);
+            for (int i = from; i < from + count; i++) {
+                items.add(new MediaItem("Track " + i, "track_" + i, "ic_music"));
+            }
+            return items;
+        }
+    }
+
+    @Test
+    public void get_fetchesOnlyTouchedPages() throws Exception {
+        CountingSource source = new CountingSource(100000);
+        PagedMediaList list = new PagedMediaList(source, 100, 4);
+
+        assertEquals(100000, list.size());
+        assertEquals("Track 0", list.get(0).getTitle());
+        assertEquals("Track 99999", list.get(99999).getTitle());
+        assertEquals("Track 150", list.get(150).getTitle());
+        list.get(199);
+
+        assertEquals(3, list.getFetchCount());
+        assertEquals(300, source.requestedItems);
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsedPage() throws Exception {
+        CountingSource source = new CountingSource(1000);
+        PagedMediaList list = new PagedMediaList(source, 10, 2);
+
+        list.get(0);
+        list.get(10);
+        list.get(0);
+        list.get(20);
+        // page 1 was evicted, page 0 stayed
+        list.get(0);
+        assertEquals(3, list.getFetchCount());
+        list.get(10);
+        assertEquals(4, list.getFetchCount());
+    }
+
+    @Test
+    public void get_handlesShortLastPage() throws Exception {
+        CountingSource source = new CountingSource(25);
+        PagedMediaList list = new PagedMediaList(source, 10, 2);
+
+        assertEquals("Track 24", list.get(24).getTitle());
+        assertEquals(5, source.requestedItems);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_rejectsOutOfRange() throws Exception {
+        new PagedMediaList(new CountingSource(5)).get(5);
+    }
+}
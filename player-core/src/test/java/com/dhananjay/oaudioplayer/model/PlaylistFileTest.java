@@ -0,0 +1,109 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * JVM round-trip tests for {@link PlaylistFile}
+ */
+public class PlaylistFileTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("playlist", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void roundTrip_keepsAllFields() throws Exception {
+        List<MediaItem> items = new ArrayList<>();
+        items.add(new MediaItem("Opus Audio", "my_file", "ic_music"));
+        items.add(new MediaItem("Ünïcödé ♫", "my_file", null));
+        items.add(new MediaItem("", "other_file", "ic_music"));
+
+        PlaylistFile.write(mFile, items);
+        PlaylistFile playlist = PlaylistFile.open(mFile);
+
+        assertEquals(3, playlist.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getTitle(), playlist.get(i).getTitle());
+            assertEquals(items.get(i).getLocation(), playlist.get(i).getLocation());
+            assertEquals(items.get(i).getImage(), playlist.get(i).getImage());
+        }
+        assertNull(playlist.get(1).getImage());
+    }
+
+    @Test
+    public void roundTrip_sharesRepeatedStrings() throws Exception {
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(new MediaItem("Track " + i, "my_file", "ic_music"));
+        }
+
+        PlaylistFile.write(mFile, items);
+        PlaylistFile playlist = PlaylistFile.open(mFile);
+
+        // 1000 titles plus one location and one image
+        assertEquals(20 + 1000 * 12 + 1002 * 4, mFile.length() - stringBytes(items));
+        assertSame(playlist.get(3).getLocation(), playlist.get(999).getLocation());
+        assertEquals("Track 500", playlist.getItems(500, 10).get(0).getTitle());
+    }
+
+    @Test
+    public void write_replacesExistingFile() throws Exception {
+        List<MediaItem> first = new ArrayList<>();
+        first.add(new MediaItem("First", "a", "b"));
+        List<MediaItem> second = new ArrayList<>();
+        second.add(new MediaItem("Second", "a", "b"));
+        second.add(new MediaItem("Third", "a", "b"));
+
+        PlaylistFile.write(mFile, first);
+        PlaylistFile.write(mFile, second);
+
+        assertEquals(2, PlaylistFile.open(mFile).size());
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void open_rejectsTruncatedFile() throws Exception {
+        List<MediaItem> items = new ArrayList<>();
+        items.add(new MediaItem("Opus Audio", "my_file", "ic_music"));
+        PlaylistFile.write(mFile, items);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 1);
+        file.close();
+
+        try {
+            PlaylistFile.open(mFile);
+            fail("truncated file accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static int stringBytes(List<MediaItem> items) {
+        int size = "my_file".length() + "ic_music".length();
+        for (MediaItem item : items) {
+            size += item.getTitle().length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dhananjay.oaudioplayer.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link Playlist}
+ */
+public class PlaylistTest {
+
+    private static List<MediaItem> items(int count) {
+        List<MediaItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new MediaItem("Track " + i, "track_" + i, "ic_music"));
+        }
+        return items;
+    }
+
+    @Test
+    public void navigation_walksInOrder() throws Exception {
+        Playlist playlist = new Playlist(items(3));
+
+        assertEquals(0, playlist.getCurrentIndex());
+        assertFalse(playlist.hasPrev());
+        assertTrue(playlist.hasNext());
+        assertSame(playlist.get(1), playlist.next());
+        assertSame(playlist.get(2), playlist.next());
+        assertFalse(playlist.hasNext());
+        assertNull(playlist.next());
+        assertNull(playlist.peekNext());
+        assertSame(playlist.get(1), playlist.prev());
+    }
+
+    @Test
+    public void navigation_handlesDuplicateItems() throws Exception {
+        MediaItem item = new MediaItem("Same", "same", "ic_music");
+        List<MediaItem> items = new ArrayList<>();
+        items.add(item);
+        items.add(item);
+        items.add(item);
+        Playlist playlist = new Playlist(items);
+
+        playlist.next();
+        playlist.next();
+        assertEquals(2, playlist.getCurrentIndex());
+        assertFalse(playlist.hasNext());
+    }
+
+    @Test
+    public void repeatAll_wrapsAround() throws Exception {
+        Playlist playlist = new Playlist(items(2));
+        playlist.setRepeatMode(Playlist.REPEAT_ALL);
+
+        assertTrue(playlist.hasPrev());
+        assertSame(playlist.get(1), playlist.prev());
+        assertSame(playlist.get(0), playlist.peekNext());
+        assertSame(playlist.get(0), playlist.advance());
+    }
+
+    @Test
+    public void repeatOne_replaysOnCompletionButSkipsOnNext() throws Exception {
+        Playlist playlist = new Playlist(items(2));
+        playlist.setRepeatMode(Playlist.REPEAT_ONE);
+
+        assertSame(playlist.get(0), playlist.peekNext());
+        assertSame(playlist.get(0), playlist.advance());
+        assertSame(playlist.get(1), playlist.next());
+    }
+
+    @Test
+    public void shuffle_visitsEveryItemOnceStartingWithCurrent() throws Exception {
+        Playlist playlist = new Playlist(items(1000), new Random(42));
+        playlist.moveTo(500);
+        playlist.setShuffle(true);
+
+        assertEquals(500, playlist.getCurrentIndex());
+        assertFalse(playlist.hasPrev());
+
+        Set<Integer> seen = new HashSet<>();
+        seen.add(playlist.getCurrentIndex());
+        while (playlist.hasNext()) {
+            playlist.next();
+            assertTrue(seen.add(playlist.getCurrentIndex()));
+        }
+        assertEquals(1000, seen.size());
+    }
+
+    @Test
+    public void shuffle_prevRetracesOrder() throws Exception {
+        Playlist playlist = new Playlist(items(50), new Random(7));
+        playlist.setShuffle(true);
+
+        int[] visited = new int[10];
+        for (int i = 0; i < visited.length; i++) {
+            visited[i] = playlist.getCurrentIndex();
+            playlist.next();
+        }
+        for (int i = visited.length - 1; i >= 0; i--) {
+            playlist.prev();
+            assertEquals(visited[i], playlist.getCurrentIndex());
+        }
+    }
+
+    @Test
+    public void shuffleOff_keepsCurrentItem() throws Exception {
+        Playlist playlist = new Playlist(items(100), new Random(1));
+        playlist.setShuffle(true);
+        playlist.next();
+        playlist.next();
+        int current = playlist.getCurrentIndex();
+
+        playlist.setShuffle(false);
+        assertEquals(current, playlist.getCurrentIndex());
+
+        playlist.setShuffle(true);
+        playlist.moveTo(3);
+        assertEquals(3, playlist.getCurrentIndex());
+    }
+
+    @Test
+    public void emptyPlaylist_hasNoCurrent() throws Exception {
+        Playlist playlist = new Playlist(new ArrayList<MediaItem>());
+
+        assertNull(playlist.getCurrent());
+        assertFalse(playlist.hasNext());
+        assertFalse(playlist.hasPrev());
+        assertNull(playlist.advance());
+    }
+}
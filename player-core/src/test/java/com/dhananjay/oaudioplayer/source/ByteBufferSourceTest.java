@@ -0,0 +1,55 @@
+package com.dhananjay.oaudioplayer.source;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for {@link ByteBufferSource}
+ */
+public class ByteBufferSourceTest {
+
+    @Test
+    public void readAt_readsTheRegionOfASharedMapping() throws Exception {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        File file = File.createTempFile("package", ".apk");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        MappedByteBuffer mapping;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            mapping = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, data.length);
+        }
+
+        ByteBuffer region = mapping.duplicate();
+        region.position(1000).limit(5000);
+        ByteBufferSource first = new ByteBufferSource(region);
+        region.position(4000).limit(10000);
+        ByteBufferSource second = new ByteBufferSource(region);
+
+        assertEquals(4000, first.getSize());
+        byte[] buffer = new byte[3000];
+        assertEquals(3000, first.readAt(0, buffer, 0, 3000));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 4000), buffer);
+        assertEquals(1000, first.readAt(3000, buffer, 0, 3000));
+        assertEquals(-1, first.readAt(4000, buffer, 0, 3000));
+
+        first.close();
+        assertEquals(10, second.readAt(5990, buffer, 5, 10));
+        assertArrayEquals(Arrays.copyOfRange(data, 9990, 10000), Arrays.copyOfRange(buffer, 5, 15));
+        assertEquals(0, mapping.position());
+    }
+}
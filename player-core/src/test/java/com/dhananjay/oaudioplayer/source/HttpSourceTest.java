@@ -0,0 +1,153 @@
+package com.dhananjay.oaudioplayer.source;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link HttpSource} and {@link BlockCache} against a local HTTP server
+ */
+public class HttpSourceTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    private final byte[] mData = new byte[100000];
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private volatile boolean mIgnoreRanges;
+    private HttpServer mServer;
+    private String mUrl;
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(7).nextBytes(mData);
+        mDir = Files.createTempDirectory("blocks").toFile();
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/track.opus", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequestCount.incrementAndGet();
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                int from = 0;
+                int to = mData.length - 1;
+                if (range != null && !mIgnoreRanges) {
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    from = Integer.parseInt(bounds[0]);
+                    to = Math.min(to, Integer.parseInt(bounds[1]));
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + from + "-" + to + "/" + mData.length);
+                    exchange.sendResponseHeaders(206, to - from + 1);
+                } else {
+                    exchange.sendResponseHeaders(200, mData.length);
+                }
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(mData, from, to - from + 1);
+                }
+            }
+        });
+        mServer.start();
+        mUrl = "http://" + mServer.getAddress().getHostString() + ":" + mServer.getAddress().getPort()
+                + "/track.opus";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.stop(0);
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static byte[] readAll(HttpSource source, int chunk) throws IOException {
+        byte[] data = new byte[(int) source.getSize()];
+        int position = 0;
+        int count;
+        while ((count = source.readAt(position, data, position, Math.min(chunk, data.length - position))) > 0) {
+            position += count;
+        }
+        assertEquals(-1, source.readAt(position, data, 0, chunk));
+        return data;
+    }
+
+    @Test
+    public void readAt_fetchesRangesAcrossBlocks() throws Exception {
+        BlockCache cache = new BlockCache(mDir, BLOCK_SIZE, 1 << 20);
+        HttpSource source = new HttpSource(mUrl, cache);
+
+        assertEquals(mData.length, source.getSize());
+        assertArrayEquals(mData, readAll(source, 1000));
+        // 25 blocks fetched four at a time
+        assertEquals(7, mRequestCount.get());
+        assertEquals(mData.length, cache.getFetchedBytes());
+    }
+
+    @Test
+    public void replayAndSeekBack_costNoNetwork() throws Exception {
+        BlockCache cache = new BlockCache(mDir, BLOCK_SIZE, 1 << 20);
+        readAll(new HttpSource(mUrl, cache), 1000);
+        int requests = mRequestCount.get();
+
+        HttpSource replay = new HttpSource(mUrl, cache);
+        assertArrayEquals(mData, readAll(replay, 777));
+        byte[] back = new byte[10];
+        assertEquals(10, replay.readAt(5000, back, 0, 10));
+        assertArrayEquals(Arrays.copyOfRange(mData, 5000, 5010), back);
+
+        // also after a restart
+        BlockCache reopened = new BlockCache(mDir, BLOCK_SIZE, 1 << 20);
+        assertArrayEquals(mData, readAll(new HttpSource(mUrl, reopened), 4096));
+        assertEquals(requests, mRequestCount.get());
+        assertEquals(1f, reopened.getHitRatio(), 0);
+        assertEquals(0, reopened.getFetchedBytes());
+    }
+
+    @Test
+    public void write_evictsLeastRecentlyUsedBlocksBeyondBudget() throws Exception {
+        BlockCache cache = new BlockCache(mDir, BLOCK_SIZE, 10 * (BLOCK_SIZE + 8));
+        HttpSource source = new HttpSource(mUrl, cache);
+        assertArrayEquals(mData, readAll(source, BLOCK_SIZE));
+
+        assertTrue(cache.getSize() <= 10 * (BLOCK_SIZE + 8));
+        assertEquals(15, cache.getEvictedCount());
+        assertEquals(10, mDir.list().length);
+
+        int requests = mRequestCount.get();
+        byte[] first = new byte[16];
+        new HttpSource(mUrl, cache).readAt(0, first, 0, 16);
+        assertArrayEquals(Arrays.copyOf(mData, 16), first);
+        assertEquals(requests + 1, mRequestCount.get());
+    }
+
+    @Test
+    public void readAt_skipsToTheBlockIfRangesAreIgnored() throws Exception {
+        mIgnoreRanges = true;
+        BlockCache cache = new BlockCache(mDir, BLOCK_SIZE, 1 << 20);
+        HttpSource source = new HttpSource(mUrl, cache);
+
+        byte[] middle = new byte[100];
+        assertEquals(100, source.readAt(50000, middle, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(mData, 50000, 50100), middle);
+        assertArrayEquals(mData, readAll(source, 3000));
+    }
+}